@@ -0,0 +1,93 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: AimParsingBenchmarks.java
+* First created on Oct 18, 2026 at 10:15 PM
+* 
+* Benchmarks for the parsing of AIM image annotation collections before
+* upload, scaled from the checked-in sample by repeating its annotation.
+*********************************************************************/
+
+package benchmarks;
+
+import etherj.aim.AimToolkit;
+import etherj.aim.XmlParser;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AimParsingBenchmarks
+{
+   private AimParsingBenchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      for (int nAnnotations : new int[] {1, 50}) list.add(new ParseBenchmark(nAnnotations));
+      
+      return list;
+   }
+   
+   
+   private static class ParseBenchmark extends Benchmark
+   {
+      private final int       nAnnotations;
+      private final XmlParser parser = AimToolkit.getToolkit().createXmlParser();
+      private byte[]          xml;
+      
+      ParseBenchmark(int nAnnotations)
+      {
+         super("AimParsing.imageAnnotationCollection[annotations=" + nAnnotations + "]");
+         this.nAnnotations = nAnnotations;
+      }
+      
+      @Override
+      public void setUp() throws Exception
+      {
+         String sample = SampleData.load("imageAnnotationCollection.xml");
+         xml = SampleData.toBytes(SampleData.expand(sample, "ImageAnnotation", nAnnotations));
+      }
+      
+      @Override
+      public Object run() throws Exception
+      {
+         return parser.parse(new ByteArrayInputStream(xml));
+      }
+   }
+}
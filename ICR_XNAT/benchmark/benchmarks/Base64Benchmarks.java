@@ -0,0 +1,109 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: Base64Benchmarks.java
+* First created on Oct 18, 2026 at 10:00 PM
+* 
+* Benchmarks for base64.Base64, which encodes the credentials sent with
+* every request that has no session and is also used for larger binary
+* payloads.
+*********************************************************************/
+
+package benchmarks;
+
+import base64.Base64;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Base64Benchmarks
+{
+   private Base64Benchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      
+      for (final int size : new int[] {48, 1024*1024})
+      {
+         list.add(new CodecBenchmark("encode", size)
+         {
+            @Override
+            public Object run()
+            {
+               return Base64.encodeBase64(data);
+            }
+         });
+         
+         list.add(new CodecBenchmark("decode", size)
+         {
+            @Override
+            public Object run()
+            {
+               return codec.decode(encoded);
+            }
+         });
+      }
+      
+      return list;
+   }
+   
+   
+   private abstract static class CodecBenchmark extends Benchmark
+   {
+      private final int size;
+      final Base64      codec = new Base64();
+      byte[]            data;
+      byte[]            encoded;
+      
+      CodecBenchmark(String operation, int size)
+      {
+         super("Base64." + operation + "[bytes=" + size + "]");
+         this.size = size;
+      }
+      
+      @Override
+      public void setUp()
+      {
+         data = new byte[size];
+         new Random(42).nextBytes(data);
+         encoded = Base64.encodeBase64(data);
+      }
+   }
+}
@@ -0,0 +1,93 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: Benchmark.java
+* First created on Oct 18, 2026 at 9:40 PM
+* 
+* A single benchmark run by BenchmarkRunner. Subclasses prepare their
+* input in setUp, outside the timed region, and perform exactly one
+* operation in each call to run. The value returned by run is consumed
+* by the runner, so that the JIT compiler cannot discard the work.
+*********************************************************************/
+
+package benchmarks;
+
+public abstract class Benchmark
+{
+   private final String name;
+   
+   
+   protected Benchmark(String name)
+   {
+      this.name = name;
+   }
+   
+   
+   /**
+    * @return the name under which results are reported, including any
+    * parameters, e.g., "SearchParsing.search[rows=10000]"
+    */
+   public String getName()
+   {
+      return name;
+   }
+   
+   
+   /**
+    * Prepare the input for the benchmark. Called once, before warm-up.
+    * @throws Exception if the input cannot be prepared
+    */
+   public void setUp() throws Exception
+   {
+   }
+   
+   
+   /**
+    * Perform one operation.
+    * @return the result of the operation
+    * @throws Exception if the operation fails, which aborts the benchmark
+    */
+   public abstract Object run() throws Exception;
+   
+   
+   /**
+    * Release anything held by the benchmark. Called once, after measurement.
+    * @throws Exception if resources cannot be released
+    */
+   public void tearDown() throws Exception
+   {
+   }
+}
@@ -0,0 +1,198 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: BenchmarkRunner.java
+* First created on Oct 18, 2026 at 10:20 PM
+* 
+* Command-line runner for the benchmarks, which need neither a live XNAT
+* server nor a display. Each benchmark is warmed up for a number of
+* timed iterations, so that the JIT compiler has settled, and then
+* measured over further iterations. The mean time per operation and its
+* standard deviation across the measurement iterations are reported.
+* 
+* Usage: BenchmarkRunner [-list] [-include regex] [-warmup n]
+*                        [-iterations n] [-time ms]
+*********************************************************************/
+
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class BenchmarkRunner
+{
+   private static final int  DEFAULT_WARMUP_ITERATIONS = 3;
+   private static final int  DEFAULT_ITERATIONS        = 5;
+   private static final long DEFAULT_ITERATION_MILLIS  = 1000;
+   
+   // Results are written here so that the work producing them cannot be
+   // eliminated as dead code.
+   private static volatile Object sink;
+   
+   private int  nWarmup          = DEFAULT_WARMUP_ITERATIONS;
+   private int  nIterations      = DEFAULT_ITERATIONS;
+   private long iterationMillis  = DEFAULT_ITERATION_MILLIS;
+   
+   
+   public static List<Benchmark> getAllBenchmarks()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      list.addAll(SearchParsingBenchmarks.create());
+      list.addAll(ResultTableBenchmarks.create());
+      list.addAll(Base64Benchmarks.create());
+      list.addAll(ThumbnailBenchmarks.create());
+      list.addAll(DicomSequenceBenchmarks.create());
+      list.addAll(AimParsingBenchmarks.create());
+      
+      return list;
+   }
+   
+   
+   public static void main(String[] args)
+   {
+      BenchmarkRunner runner  = new BenchmarkRunner();
+      Pattern         include = Pattern.compile(".*");
+      boolean         isList  = false;
+      
+      try
+      {
+         for (int i=0; i<args.length; i++)
+         {
+            switch (args[i])
+            {
+               case "-list":       isList = true;                                    break;
+               case "-include":    include = Pattern.compile(args[++i]);             break;
+               case "-warmup":     runner.nWarmup = Integer.parseInt(args[++i]);     break;
+               case "-iterations": runner.nIterations = Integer.parseInt(args[++i]); break;
+               case "-time":       runner.iterationMillis = Long.parseLong(args[++i]); break;
+               default:
+                  throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+         }
+         if ((runner.nWarmup < 0) || (runner.nIterations < 1) || (runner.iterationMillis < 1))
+            throw new IllegalArgumentException("Iteration counts and times must be positive.");
+      }
+      catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex)
+      {
+         System.err.println((ex instanceof ArrayIndexOutOfBoundsException)
+                            ? "Missing value for the last option." : ex.getMessage());
+         System.err.println("Usage: BenchmarkRunner [-list] [-include regex] [-warmup n]"
+                            + " [-iterations n] [-time ms]");
+         System.exit(1);
+      }
+      
+      int nFailed = 0;
+      System.out.println(String.format("%-62s %14s %12s %12s", "Benchmark", "us/op", "error", "ops/s"));
+      for (Benchmark b : getAllBenchmarks())
+      {
+         if (!include.matcher(b.getName()).find()) continue;
+         if (isList)
+         {
+            System.out.println(b.getName());
+            continue;
+         }
+         
+         try
+         {
+            runner.run(b);
+         }
+         catch (Exception ex)
+         {
+            nFailed++;
+            System.out.println(String.format("%-62s FAILED: %s", b.getName(), ex));
+         }
+      }
+      
+      if (nFailed > 0) System.exit(2);
+   }
+   
+   
+   /**
+    * Warm up and measure a single benchmark, printing the result.
+    * @param b the benchmark
+    * @throws Exception if the benchmark fails
+    */
+   public void run(Benchmark b) throws Exception
+   {
+      b.setUp();
+      try
+      {
+         for (int i=0; i<nWarmup; i++) iterate(b);
+         
+         double[] nanosPerOp = new double[nIterations];
+         for (int i=0; i<nIterations; i++) nanosPerOp[i] = iterate(b);
+         
+         double mean = 0;
+         for (double t : nanosPerOp) mean += t;
+         mean /= nIterations;
+         
+         double var = 0;
+         for (double t : nanosPerOp) var += (t - mean) * (t - mean);
+         double sd = (nIterations > 1) ? Math.sqrt(var / (nIterations - 1)) : 0;
+         
+         System.out.println(String.format("%-62s %14.3f %12.3f %12.1f",
+                                          b.getName(), mean / 1000, sd / 1000, 1.0e9 / mean));
+      }
+      finally
+      {
+         b.tearDown();
+      }
+   }
+   
+   
+   /**
+    * Run operations until the iteration time has elapsed.
+    * @return the mean time per operation in nanoseconds
+    */
+   private double iterate(Benchmark b) throws Exception
+   {
+      long budget = iterationMillis * 1000000;
+      long start  = System.nanoTime();
+      long ops    = 0;
+      long elapsed;
+      
+      do
+      {
+         sink = b.run();
+         ops++;
+         elapsed = System.nanoTime() - start;
+      }
+      while (elapsed < budget);
+      
+      return (double) elapsed / ops;
+   }
+}
@@ -0,0 +1,136 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: DicomSequenceBenchmarks.java
+* First created on Oct 18, 2026 at 10:10 PM
+* 
+* Benchmarks for DicomEntity.readSequence, through the construction of
+* the ROI contours of an RT-STRUCT, which is where sequences are most
+* deeply nested and most numerous. A binary RT-STRUCT is not checked in:
+* the DICOM object is synthesised at realistic sizes in setUp, with the
+* same attributes as a structure set exported by a planning system.
+*********************************************************************/
+
+package benchmarks;
+
+import dataRepresentations.dicom.RoiContour;
+import java.util.ArrayList;
+import java.util.List;
+import org.dcm4che2.data.BasicDicomObject;
+import org.dcm4che2.data.DicomElement;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+import org.dcm4che2.data.VR;
+
+public class DicomSequenceBenchmarks
+{
+   private static final String CT_IMAGE_STORAGE = "1.2.840.10008.5.1.4.1.1.2";
+   private static final String UID_ROOT         = "1.2.826.0.1.3680043.2.1125.1.";
+   
+   
+   private DicomSequenceBenchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      list.add(new RoiContourBenchmark(40, 64));
+      list.add(new RoiContourBenchmark(150, 256));
+      
+      return list;
+   }
+   
+   
+   private static class RoiContourBenchmark extends Benchmark
+   {
+      private final int   nContours;
+      private final int   nPoints;
+      private DicomObject rcDo;
+      
+      RoiContourBenchmark(int nContours, int nPoints)
+      {
+         super("DicomSequence.roiContour[contours=" + nContours + ",points=" + nPoints + "]");
+         this.nContours = nContours;
+         this.nPoints   = nPoints;
+      }
+      
+      @Override
+      public void setUp()
+      {
+         rcDo = new BasicDicomObject();
+         rcDo.putInt(Tag.ReferencedROINumber, VR.IS, 1);
+         rcDo.putInts(Tag.ROIDisplayColor, VR.IS, new int[] {255, 0, 0});
+         
+         DicomElement contourSeq = rcDo.putSequence(Tag.ContourSequence);
+         for (int c=0; c<nContours; c++)
+         {
+            DicomObject ciDo = new BasicDicomObject();
+            ciDo.putString(Tag.ReferencedSOPClassUID,    VR.UI, CT_IMAGE_STORAGE);
+            ciDo.putString(Tag.ReferencedSOPInstanceUID, VR.UI, UID_ROOT + (c+1));
+            
+            DicomObject cDo = new BasicDicomObject();
+            cDo.putInt(Tag.ContourNumber, VR.IS, c+1);
+            cDo.putSequence(Tag.ContourImageSequence).addDicomObject(ciDo);
+            cDo.putString(Tag.ContourGeometricType, VR.CS, "CLOSED_PLANAR");
+            cDo.putInt(Tag.NumberOfContourPoints, VR.IS, nPoints);
+            
+            // An ellipse on a slice 2.5 mm from the last.
+            float[] coords = new float[3*nPoints];
+            for (int p=0; p<nPoints; p++)
+            {
+               double theta  = 2 * Math.PI * p / nPoints;
+               coords[3*p]     = (float) (12.5 + 45.0 * Math.cos(theta));
+               coords[3*p + 1] = (float) (-30.0 + 32.0 * Math.sin(theta));
+               coords[3*p + 2] = (float) (-120.0 + 2.5 * c);
+            }
+            cDo.putFloats(Tag.ContourData, VR.DS, coords);
+            contourSeq.addDicomObject(cDo);
+         }
+      }
+      
+      @Override
+      public Object run()
+      {
+         RoiContour rc = new RoiContour(rcDo);
+         if (!rc.errors.isEmpty())
+            throw new IllegalStateException("Synthetic contour rejected: " + rc.errors.get(0));
+         
+         return rc;
+      }
+   }
+}
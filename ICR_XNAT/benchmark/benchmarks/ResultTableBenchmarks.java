@@ -0,0 +1,174 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: ResultTableBenchmarks.java
+* First created on Oct 18, 2026 at 9:55 PM
+* 
+* Benchmarks for building and querying the tables that hold search
+* results: conversion of an XNATResultSet to the Vector2D used by the
+* older DAO classes, and the column extraction, lookups and sorting
+* performed when the tree of results is populated, both on Vector2D
+* and on the ColumnarTable that has replaced it.
+*********************************************************************/
+
+package benchmarks;
+
+import generalUtilities.ColumnarTable;
+import generalUtilities.Vector2D;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import xnatRestToolkit.XNATRESTToolkit;
+import xnatRestToolkit.XNATResultSet;
+
+public class ResultTableBenchmarks
+{
+   private static final String LABEL_COLUMN   = "xnat_mrsessiondata_label";
+   private static final String SUBJECT_COLUMN = "xnat_subjectdata_label";
+   
+   
+   private ResultTableBenchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      
+      for (final int nRows : new int[] {1000, 10000})
+      {
+         list.add(new TableBenchmark("toVector2D", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return resultSet.toVector2D();
+            }
+         });
+         
+         list.add(new TableBenchmark("getColumn", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return table.getColumn(labelCol);
+            }
+         });
+         
+         list.add(new TableBenchmark("indicesOfForCol", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return table.indicesOfForCol(subjectCol, "BRN-0031");
+            }
+         });
+         
+         list.add(new TableBenchmark("columnar.getColumn", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               // Force the view to be traversed, as a caller would.
+               int n = 0;
+               for (String s : columnar.getColumn(labelCol)) n += s.length();
+               return n;
+            }
+         });
+         
+         list.add(new TableBenchmark("columnar.indicesOf", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return columnar.indicesOf(subjectCol, "BRN-0031");
+            }
+         });
+         
+         list.add(new TableBenchmark("columnar.indicesOf[indexed]", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return indexed.indicesOf(subjectCol, "BRN-0031");
+            }
+         });
+         
+         list.add(new TableBenchmark("columnar.sortRows", nRows)
+         {
+            @Override
+            public Object run()
+            {
+               return columnar.sortRows();
+            }
+         });
+      }
+      
+      return list;
+   }
+   
+   
+   private abstract static class TableBenchmark extends Benchmark
+   {
+      private final int  nRows;
+      XNATResultSet      resultSet;
+      Vector2D<String>   table;
+      ColumnarTable      columnar;
+      ColumnarTable      indexed;
+      int                labelCol;
+      int                subjectCol;
+      
+      TableBenchmark(String operation, int nRows)
+      {
+         super("ResultTable." + operation + "[rows=" + nRows + "]");
+         this.nRows = nRows;
+      }
+      
+      @Override
+      public void setUp() throws Exception
+      {
+         String xml = SampleData.expand(SampleData.load("searchResults.xml"), "row", nRows);
+         resultSet  = XNATRESTToolkit.parseResultSet(
+                         new ByteArrayInputStream(SampleData.toBytes(xml)), true);
+         table      = resultSet.toVector2D();
+         columnar   = resultSet.getTable();
+         labelCol   = resultSet.getColumnIndex(LABEL_COLUMN);
+         subjectCol = resultSet.getColumnIndex(SUBJECT_COLUMN);
+         indexed    = columnar.withIndexes(subjectCol);
+      }
+   }
+}
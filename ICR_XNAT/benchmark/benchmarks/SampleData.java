@@ -0,0 +1,152 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: SampleData.java
+* First created on Oct 18, 2026 at 9:45 PM
+* 
+* Access to the sample XNAT responses and AIM documents checked in
+* alongside the benchmarks. The samples are small, so that they can be
+* read and maintained by hand, and are scaled up to realistic sizes by
+* repeating their records.
+*********************************************************************/
+
+package benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SampleData
+{
+   private SampleData()
+   {
+   }
+   
+   
+   /**
+    * Read a sample from the samples directory on the class path.
+    * @param name the file name of the sample
+    * @return the contents of the sample
+    * @throws IOException if the sample cannot be read
+    */
+   public static String load(String name) throws IOException
+   {
+      try (InputStream is = SampleData.class.getResourceAsStream("samples/" + name))
+      {
+         if (is == null) throw new FileNotFoundException("Sample " + name + " is not on the class path.");
+         
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         byte[]                buff = new byte[8192];
+         int                   n;
+         while ((n = is.read(buff)) != -1) baos.write(buff, 0, n);
+         
+         return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+      }
+   }
+   
+   
+   /**
+    * Scale a sample by repeating, in turn, the elements with the given
+    * name until there are nCopies of them. All the elements must be
+    * consecutive, apart from white space. A totalRecords attribute, as
+    * returned by XNAT searches, is updated to match.
+    * @param xml the sample
+    * @param element the name of the repeated element, e.g., "row"
+    * @param nCopies the number of elements required
+    * @return the scaled sample
+    */
+   public static String expand(String xml, String element, int nCopies)
+   {
+      String       open   = "<" + element;
+      String       close  = "</" + element + ">";
+      List<String> blocks = new ArrayList<>();
+      int          first  = -1;
+      int          end    = -1;
+      int          from   = 0;
+      
+      while (true)
+      {
+         int start = indexOfElement(xml, open, from);
+         if (start < 0) break;
+         
+         int stop = xml.indexOf(close, start);
+         if (stop < 0) throw new IllegalArgumentException("Element " + element + " is not closed.");
+         
+         stop += close.length();
+         blocks.add(xml.substring(start, stop));
+         if (first < 0) first = start;
+         end  = stop;
+         from = stop;
+      }
+      if (blocks.isEmpty())
+         throw new IllegalArgumentException("The sample contains no " + element + " elements.");
+      
+      StringBuilder sb = new StringBuilder(xml.length() / blocks.size() * nCopies);
+      sb.append(xml, 0, first);
+      for (int i=0; i<nCopies; i++) sb.append(blocks.get(i % blocks.size())).append('\n');
+      sb.append(xml, end, xml.length());
+      
+      return sb.toString().replaceFirst("totalRecords=\"\\d+\"", "totalRecords=\"" + nCopies + "\"");
+   }
+   
+   
+   /**
+    * Find the start of an element, rather than of another element whose
+    * name has the same prefix, e.g., "row" and "rows".
+    */
+   private static int indexOfElement(String xml, String open, int from)
+   {
+      int i = xml.indexOf(open, from);
+      while (i >= 0)
+      {
+         char c = xml.charAt(i + open.length());
+         if ((c == '>') || (c == ' ') || (c == '/')) return i;
+         i = xml.indexOf(open, i + 1);
+      }
+      
+      return -1;
+   }
+   
+   
+   public static byte[] toBytes(String s)
+   {
+      return s.getBytes(StandardCharsets.UTF_8);
+   }
+}
@@ -0,0 +1,101 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: SearchParsingBenchmarks.java
+* First created on Oct 18, 2026 at 9:50 PM
+* 
+* Benchmarks for the SAX adapters that turn the XML returned by XNAT
+* into result sets: the output of /data/search, which the DAO browser
+* requests for every query, and file listings, which are requested for
+* every scan downloaded or checked before an upload.
+*********************************************************************/
+
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import xnatRestToolkit.XNATRESTToolkit;
+
+public class SearchParsingBenchmarks
+{
+   private SearchParsingBenchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      
+      for (int nRows : new int[] {1000, 10000})
+         list.add(new ParseBenchmark("search", "searchResults.xml", true, nRows));
+      
+      for (int nFiles : new int[] {500, 5000})
+         list.add(new ParseBenchmark("fileListing", "fileListing.xml", false, nFiles));
+      
+      return list;
+   }
+   
+   
+   private static class ParseBenchmark extends Benchmark
+   {
+      private final String  sample;
+      private final boolean isSearch;
+      private final int     nRows;
+      private byte[]        xml;
+      
+      ParseBenchmark(String kind, String sample, boolean isSearch, int nRows)
+      {
+         super("SearchParsing." + kind + "[rows=" + nRows + "]");
+         this.sample   = sample;
+         this.isSearch = isSearch;
+         this.nRows    = nRows;
+      }
+      
+      @Override
+      public void setUp() throws Exception
+      {
+         xml = SampleData.toBytes(SampleData.expand(SampleData.load(sample), "row", nRows));
+      }
+      
+      @Override
+      public Object run() throws Exception
+      {
+         return XNATRESTToolkit.parseResultSet(new ByteArrayInputStream(xml), isSearch);
+      }
+   }
+}
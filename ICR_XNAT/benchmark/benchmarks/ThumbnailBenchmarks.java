@@ -0,0 +1,125 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: ThumbnailBenchmarks.java
+* First created on Oct 18, 2026 at 10:05 PM
+* 
+* Benchmarks for the rescaling of colour images performed when the
+* thumbnails of an RT-STRUCT's contours are generated before upload.
+* The input is a synthetic phantom built in the same format as the base
+* images rendered by ContourRendererHelper.
+*********************************************************************/
+
+package benchmarks;
+
+import imageUtilities.ImageUtilities;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ThumbnailBenchmarks
+{
+   private static final int THUMBNAIL_SIZE = 512;
+   
+   
+   private ThumbnailBenchmarks()
+   {
+   }
+   
+   
+   public static List<Benchmark> create()
+   {
+      List<Benchmark> list = new ArrayList<>();
+      
+      for (final int size : new int[] {256, 512})
+      {
+         list.add(new ScaleBenchmark("scaleColourImageByFFT", size)
+         {
+            @Override
+            public Object run() throws Exception
+            {
+               return ImageUtilities.scaleColourImageByFFT(image, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            }
+         });
+         
+         list.add(new ScaleBenchmark("scaleColourImageByInterpolation", size)
+         {
+            @Override
+            public Object run() throws Exception
+            {
+               return ImageUtilities.scaleColourImageByInterpolation(image, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            }
+         });
+      }
+      
+      return list;
+   }
+   
+   
+   private abstract static class ScaleBenchmark extends Benchmark
+   {
+      private final int size;
+      BufferedImage     image;
+      
+      ScaleBenchmark(String method, int size)
+      {
+         super("Thumbnail." + method + "[" + size + "->" + THUMBNAIL_SIZE + "]");
+         this.size = size;
+      }
+      
+      @Override
+      public void setUp() throws Exception
+      {
+         // A disc of tissue with a brighter insert and some noise, so that
+         // the image has realistic spatial frequency content.
+         short[] data   = new short[size*size];
+         Random  random = new Random(42);
+         double  c      = size / 2.0;
+         for (int j=0; j<size; j++)
+         {
+            for (int i=0; i<size; i++)
+            {
+               double r     = Math.hypot(i - c, j - c);
+               double value = (r < 0.45*size) ? 800 : 0;
+               if (Math.hypot(i - 0.6*size, j - 0.4*size) < 0.08*size) value += 600;
+               data[j*size + i] = (short) Math.max(0, value + 40*random.nextGaussian());
+            }
+         }
+         image = ImageUtilities.createColourImageFromGreyScaleUShort(data, size);
+      }
+   }
+}
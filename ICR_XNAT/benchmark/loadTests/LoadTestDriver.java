@@ -0,0 +1,682 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: LoadTestDriver.java
+* First created on Oct 18, 2026 at 11:05 AM
+* 
+* Load tests of the REST clients against the embedded MockXnatServer, so
+* that their throughput can be measured, and checked for regressions,
+* without a real XNAT server. Each scenario reproduces the requests made
+* by one client:
+* 
+*    download  the per-file retrieval of FileListWorker: a search for
+*              the sessions, then the scan, resource and file listings
+*              of each session, with the files fetched through the
+*              DownloadScheduler into the CacheManager, resuming from
+*              the last byte received after a failure
+*    zip       the same, but retrieving each resource as a ZIP archive,
+*              as FileListWorker does for retrievalMode = zip
+*    upload    DataUploader, putting the files of one scan to each
+*              session through uploadResourcesToRepository
+*    etherj    etherj's XnatDataSource, retrieving every series by UID
+*              into an XnatCache (this scenario always uses HTTPS, which
+*              etherj requires)
+* 
+* FileListWorker itself is bound to the DAO's user interface, so the
+* download scenarios call the same components in the same order instead.
+* Each scenario reports its throughput and the latencies of the REST
+* endpoints it used. The process exits with status 2 if more files
+* failed than allowed and 3 if a scenario was slower than the minimum
+* throughput, so that a run can serve as a regression test.
+* 
+* Usage: LoadTestDriver [-scenarios list] [-repeat n] [-https]
+*                       [-projects n] [-subjects n] [-sessions n]
+*                       [-scans n] [-files n] [-imageSize n]
+*                       [-threads n] [-latency ms] [-jitter ms]
+*                       [-errorRate p] [-errorStatus code]
+*                       [-truncationRate p] [-bandwidth bytes/s]
+*                       [-faultPaths regex] [-seed n]
+*                       [-maxFailures n] [-minFilesPerSecond x]
+*********************************************************************/
+
+package loadTests;
+
+import etherj.dicom.DataSource;
+import etherj.dicom.Series;
+import etherj.xnat.XnatServerConnection;
+import etherj.xnat.XnatToolkit;
+import exceptions.XNATException;
+import fileDownloads.CacheManager;
+import fileDownloads.DownloadScheduler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.net.ssl.HttpsURLConnection;
+import javax.swing.tree.TreeNode;
+import mockXnat.FaultInjector;
+import mockXnat.MockXnatServer;
+import mockXnat.SyntheticDataSet;
+import mockXnat.SyntheticDataSet.Project;
+import mockXnat.SyntheticDataSet.Scan;
+import mockXnat.SyntheticDataSet.Session;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import xnatDAO.XNATProfile;
+import xnatUploader.DataUploader;
+import xnatRestToolkit.EndpointStatistics;
+import xnatRestToolkit.MetadataCache;
+import xnatRestToolkit.RangedInputStream;
+import xnatRestToolkit.RestMetrics;
+import xnatRestToolkit.XNATRESTToolkit;
+import xnatRestToolkit.XNATResultSet;
+import xnatRestToolkit.XNATReturnedField;
+import xnatRestToolkit.XNATSearchCriterion;
+import xnatRestToolkit.XNATServerConnection;
+
+public class LoadTestDriver
+{
+   private static final List<String> ALL_SCENARIOS = Arrays.asList("download", "zip", "upload", "etherj");
+   private static final int          N_UPLOAD_RESOURCES = 4;
+   
+   private List<String>     scenarios         = ALL_SCENARIOS;
+   private int              nRepeats          = 1;
+   private boolean          isHttps;
+   private int              nProjects         = 1;
+   private int              nSubjects         = 4;
+   private int              nSessions         = 2;
+   private int              nScans            = 2;
+   private int              nFiles            = 20;
+   private int              imageSize         = 256;
+   private int              nThreads          = DownloadScheduler.DEFAULT_CONCURRENT_FETCHES;
+   private long             latencyMillis;
+   private long             jitterMillis;
+   private double           errorRate;
+   private int              errorStatus       = FaultInjector.DEFAULT_ERROR_STATUS;
+   private double           truncationRate;
+   private long             bandwidth;
+   private String           faultPaths;
+   private long             seed              = 1;
+   private long             maxFailures;
+   private double           minFilesPerSecond;
+   
+   private SyntheticDataSet dataSet;
+   private FaultInjector    faults;
+   private MockXnatServer   httpServer;
+   private MockXnatServer   httpsServer;
+   
+   
+   public static void main(String[] args)
+   {
+      LoadTestDriver driver = new LoadTestDriver();
+      try
+      {
+         for (int i=0; i<args.length; i++)
+         {
+            switch (args[i])
+            {
+               case "-scenarios":         driver.scenarios = Arrays.asList(args[++i].split(",")); break;
+               case "-repeat":            driver.nRepeats = Integer.parseInt(args[++i]);          break;
+               case "-https":             driver.isHttps = true;                                  break;
+               case "-projects":          driver.nProjects = Integer.parseInt(args[++i]);         break;
+               case "-subjects":          driver.nSubjects = Integer.parseInt(args[++i]);         break;
+               case "-sessions":          driver.nSessions = Integer.parseInt(args[++i]);         break;
+               case "-scans":             driver.nScans = Integer.parseInt(args[++i]);            break;
+               case "-files":             driver.nFiles = Integer.parseInt(args[++i]);            break;
+               case "-imageSize":         driver.imageSize = Integer.parseInt(args[++i]);         break;
+               case "-threads":           driver.nThreads = Integer.parseInt(args[++i]);          break;
+               case "-latency":           driver.latencyMillis = Long.parseLong(args[++i]);       break;
+               case "-jitter":            driver.jitterMillis = Long.parseLong(args[++i]);        break;
+               case "-errorRate":         driver.errorRate = Double.parseDouble(args[++i]);       break;
+               case "-errorStatus":       driver.errorStatus = Integer.parseInt(args[++i]);       break;
+               case "-truncationRate":    driver.truncationRate = Double.parseDouble(args[++i]);  break;
+               case "-bandwidth":         driver.bandwidth = Long.parseLong(args[++i]);           break;
+               case "-faultPaths":        driver.faultPaths = args[++i];                          break;
+               case "-seed":              driver.seed = Long.parseLong(args[++i]);                break;
+               case "-maxFailures":       driver.maxFailures = Long.parseLong(args[++i]);         break;
+               case "-minFilesPerSecond": driver.minFilesPerSecond = Double.parseDouble(args[++i]); break;
+               default:
+                  throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+         }
+         for (String s : driver.scenarios)
+            if (!ALL_SCENARIOS.contains(s))
+               throw new IllegalArgumentException("Unknown scenario " + s + ": choose from " + ALL_SCENARIOS);
+         if ((driver.nRepeats < 1) || (driver.nThreads < 1))
+            throw new IllegalArgumentException("The repeat and thread counts must be positive.");
+      }
+      catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex)
+      {
+         System.err.println((ex instanceof ArrayIndexOutOfBoundsException)
+                            ? "Missing value for the last option." : ex.getMessage());
+         System.err.println("See the documentation of loadTests.LoadTestDriver for the options.");
+         System.exit(1);
+      }
+      
+      Logger.getRootLogger().setLevel(Level.WARN);
+      
+      int status;
+      try
+      {
+         status = driver.run();
+      }
+      catch (Exception ex)
+      {
+         ex.printStackTrace();
+         status = 1;
+      }
+      System.exit(status);
+   }
+   
+   
+   /**
+    * Run the selected scenarios the requested number of times.
+    * @return the exit status of the process
+    * @throws Exception if the servers cannot be started
+    */
+   public int run() throws Exception
+   {
+      dataSet = new SyntheticDataSet(nProjects, nSubjects, nSessions, nScans, nFiles, imageSize);
+      faults  = new FaultInjector(seed);
+      faults.setLatency(latencyMillis, jitterMillis);
+      faults.setErrors(errorRate, errorStatus);
+      faults.setTruncationRate(truncationRate);
+      faults.setBandwidth(bandwidth);
+      faults.setPathPattern(faultPaths);
+      
+      RestMetrics.getDefault().setSummaryInterval(0);
+      DataUploader.setMaxConcurrentUploads(nThreads);
+      
+      System.out.println(String.format("Data set: %d sessions, %d scans, %d files of %dx%d pixels;"
+                                       + " %d threads; latency %d+%d ms; error rate %.3f;"
+                                       + " truncation rate %.3f",
+                                       dataSet.getSessionCount(), dataSet.getScanCount(),
+                                       dataSet.getFileCount(), imageSize, imageSize, nThreads,
+                                       latencyMillis, jitterMillis, errorRate, truncationRate));
+      System.out.println(String.format("%-12s %8s %10s %10s %10s %10s", "Scenario", "files",
+                                       "failures", "seconds", "files/s", "MB/s"));
+      
+      boolean isTooSlow = false;
+      long    nFailed   = 0;
+      try
+      {
+         for (int r=0; r<nRepeats; r++)
+         {
+            for (String scenario : scenarios)
+            {
+               Map<String, EndpointStatistics> before = getEndpointStatistics();
+               Result result = runScenario(scenario);
+               System.out.println(result);
+               for (EndpointStatistics stats : getEndpointStatistics().values())
+               {
+                  EndpointStatistics delta = stats.since(before.get(stats.getEndpoint()));
+                  if (delta.getRequests() > 0) System.out.println("      " + delta);
+               }
+               
+               nFailed += result.nFailures;
+               if (result.getFilesPerSecond() < minFilesPerSecond) isTooSlow = true;
+            }
+         }
+         
+         if (httpServer  != null) System.out.println(httpServer);
+         if (httpsServer != null) System.out.println(httpsServer);
+      }
+      finally
+      {
+         if (httpServer  != null) httpServer.stop();
+         if (httpsServer != null) httpsServer.stop();
+      }
+      
+      if (nFailed > maxFailures)
+      {
+         System.out.println(nFailed + " files failed, but at most " + maxFailures + " are allowed.");
+         return 2;
+      }
+      if (isTooSlow)
+      {
+         System.out.println("At least one scenario ran at less than " + minFilesPerSecond + " files/s.");
+         return 3;
+      }
+      return 0;
+   }
+   
+   
+   private Result runScenario(String scenario) throws Exception
+   {
+      switch (scenario)
+      {
+         case "download": return runDownload(false);
+         case "zip":      return runDownload(true);
+         case "upload":   return runUpload();
+         case "etherj":   return runEtherj();
+         default:
+            throw new IllegalArgumentException("Unknown scenario " + scenario);
+      }
+   }
+   
+   
+   /**
+    * Retrieve every DICOM file in the data set to an empty cache, following
+    * the sequence of requests made by FileListWorker.
+    */
+   private Result runDownload(boolean isZip) throws Exception
+   {
+      MockXnatServer server  = getServer(isHttps);
+      File           dir     = Files.createTempDirectory("loadTestCache").toFile();
+      Result         result  = new Result(isZip ? "zip" : "download", server);
+      
+      DownloadScheduler.setMaxConcurrentFetches(server.getURL(), nThreads);
+      final XNATProfile       xnprf     = connect(server, null);
+      final CacheManager      cache     = CacheManager.getInstance(dir.getPath());
+      DownloadScheduler       scheduler = new DownloadScheduler(server.getURL());
+      XNATRESTToolkit         xnrt      = new XNATRESTToolkit(xnprf);
+      
+      // Each run starts cold, as the first retrieval in a session of the DAO would.
+      MetadataCache.getDefault().invalidate(xnprf);
+      try
+      {
+         for (String sessionId : searchSessions(xnrt))
+         {
+            String scansCmd = "/data/archive/experiments/" + sessionId + "/scans?format=xml";
+            for (String scanId : xnrt.getResultSet(scansCmd).getColumn(1))
+            {
+               String restPrefix = "/data/archive/experiments/" + sessionId + "/scans/"
+                                   + scanId + "/resources";
+               for (String resource : xnrt.getResultSet(restPrefix + "?format=xml").getColumn(1))
+               {
+                  XNATResultSet files = xnrt.getResultSet(restPrefix + "/" + resource + "/files?format=xml");
+                  Map<String, CacheManager.CatalogEntry> entries = CacheManager.getCatalogEntries(files);
+                  List<String> URIs = files.getColumn(2);
+                  
+                  List<File> retrieved = isZip
+                        ? retrieveAsZip(xnprf, cache, restPrefix + "/" + resource, URIs, entries)
+                        : retrieveFiles(xnprf, cache, scheduler, URIs, entries);
+                  for (File f : retrieved)
+                  {
+                     if (f == null) result.nFailures++;
+                     else result.nFiles++;
+                  }
+               }
+            }
+         }
+      }
+      finally
+      {
+         scheduler.shutdown();
+         cache.flush();
+         result.finish(server);
+         delete(dir);
+      }
+      
+      return result;
+   }
+   
+   
+   /**
+    * Find the sessions in the profile's projects with the same kind of
+    * search that the DAO makes.
+    */
+   private List<String> searchSessions(XNATRESTToolkit xnrt) throws XNATException, IOException
+   {
+      String              root   = SyntheticDataSet.SESSION_ELEMENT;
+      XNATReturnedField[] fields = {new XNATReturnedField(root, "ID",      "string"),
+                                    new XNATReturnedField(root, "label",   "string"),
+                                    new XNATReturnedField(root, "project", "string")};
+      XNATSearchCriterion[] criteria = {new XNATSearchCriterion(root + "/label", "LIKE", "%")};
+      
+      XNATResultSet rs = xnrt.searchResultSet(root, fields, "AND", criteria,
+                                              getProjectIds(), new TreeNode[1]);
+      return rs.getColumn(0);
+   }
+   
+   
+   private List<File> retrieveFiles(final XNATServerConnection xnsc, final CacheManager cache,
+                                    DownloadScheduler scheduler, List<String> URIs,
+                                    final Map<String, CacheManager.CatalogEntry> entries)
+           throws InterruptedException
+   {
+      return scheduler.fetchAll(URIs, new DownloadScheduler.Fetcher()
+      {
+         @Override
+         public File fetch(final String URI)
+         {
+            File cacheFile = cache.lookup(URI);
+            if (cacheFile != null) return cacheFile;
+            
+            try
+            {
+               return cache.retrieve(URI, new CacheManager.Source()
+               {
+                  @Override
+                  public RangedInputStream open(long offset) throws Exception
+                  {
+                     return xnsc.doRESTGetRange(URI, offset);
+                  }
+               }, entries.get(URI));
+            }
+            catch (Exception ex)
+            {
+               Logger.getLogger(LoadTestDriver.class).warn("Failed to download " + URI + ": "
+                                                           + ex.getMessage());
+               return null;
+            }
+         }
+         
+         @Override
+         public boolean isCancelled()
+         {
+            return false;
+         }
+      });
+   }
+   
+   
+   private List<File> retrieveAsZip(XNATServerConnection xnsc, CacheManager cache,
+                                    String resourcePrefix, List<String> URIs,
+                                    Map<String, CacheManager.CatalogEntry> entries)
+   {
+      File[]               retrieved = new File[URIs.size()];
+      Map<String, Integer> positions = new HashMap<>();
+      for (int i=0; i<URIs.size(); i++)
+      {
+         String URI = URIs.get(i);
+         positions.put(URI.substring(URI.indexOf("/files/") + 7), i);
+      }
+      
+      try (ZipInputStream zis = new ZipInputStream(xnsc.doRESTGet(resourcePrefix + "/files?format=zip")))
+      {
+         ZipEntry entry;
+         while ((entry = zis.getNextEntry()) != null)
+         {
+            String name = entry.getName();
+            name = name.substring(name.indexOf("/files/") + 7);
+            Integer i = positions.get(name);
+            if ((i != null) && !entry.isDirectory())
+            {
+               // The cache closes the stream it is given, which must not
+               // close the archive.
+               retrieved[i] = cache.store(URIs.get(i), new FilterInputStream(zis)
+               {
+                  @Override
+                  public void close()
+                  {
+                  }
+               }, entries.get(URIs.get(i)));
+            }
+            zis.closeEntry();
+         }
+      }
+      catch (Exception ex)
+      {
+         Logger.getLogger(LoadTestDriver.class).warn("Failed to download " + resourcePrefix
+                                                     + " as a ZIP archive: " + ex.getMessage());
+      }
+      
+      return Arrays.asList(retrieved);
+   }
+   
+   
+   /**
+    * Upload the files of the first scan of every session back to that
+    * session, as new resources. The files are written to disk before
+    * timing starts, as the uploader reads them from there.
+    */
+   private Result runUpload() throws Exception
+   {
+      MockXnatServer server = getServer(isHttps);
+      File           dir    = Files.createTempDirectory("loadTestUpload").toFile();
+      Result         result;
+      
+      try
+      {
+         Map<Session, List<File>> filesMap = new HashMap<>();
+         long                     expected = 0;
+         for (Session session : dataSet.getSessions())
+         {
+            File       sessionDir = new File(dir, session.id);
+            Scan       scan       = session.scans.get(0);
+            List<File> files      = new ArrayList<>();
+            sessionDir.mkdirs();
+            for (int i=0; i<scan.getFileCount(); i++)
+            {
+               File f = new File(sessionDir, scan.getFileName(i));
+               try (OutputStream os = new FileOutputStream(f))
+               {
+                  os.write(dataSet.getFile(scan, i));
+               }
+               files.add(f);
+            }
+            filesMap.put(session, files);
+            expected += files.size();
+         }
+         
+         server.clearUploads();
+         result = new Result("upload", server);
+         Map<Project, XNATProfile> profiles = new HashMap<>();
+         for (Session session : dataSet.getSessions())
+         {
+            Project     project = session.subject.project;
+            XNATProfile xnprf   = profiles.get(project);
+            if (xnprf == null)
+            {
+               xnprf = connect(server, project.id);
+               profiles.put(project, xnprf);
+            }
+            
+            LoadTestUploader uploader = new LoadTestUploader(xnprf, session.subject.id, session.id,
+                                                             filesMap.get(session), N_UPLOAD_RESOURCES);
+            try
+            {
+               uploader.uploadResourcesToRepository();
+            }
+            catch (XNATException exXNAT)
+            {
+               Logger.getLogger(LoadTestDriver.class).warn("Upload to " + session.id + " failed: "
+                                                           + exXNAT.getMessage());
+            }
+         }
+         
+         result.nFiles    = server.getUploadedFiles().size();
+         result.nFailures = expected - result.nFiles;
+         result.finish(server);
+      }
+      finally
+      {
+         delete(dir);
+      }
+      
+      return result;
+   }
+   
+   
+   /**
+    * Retrieve every series in the data set by its UID through etherj's
+    * data source, each into an empty cache.
+    */
+   private Result runEtherj() throws Exception
+   {
+      MockXnatServer server = getServer(true);
+      File           dir    = Files.createTempDirectory("loadTestEtherj").toFile();
+      Result         result = new Result("etherj", server);
+      
+      XnatToolkit          toolkit = XnatToolkit.getToolkit();
+      XnatServerConnection xsc     = toolkit.createServerConnection(server.getURL(),
+                                              server.getUser(), server.getPassword());
+      try
+      {
+         xsc.open();
+         DataSource source = toolkit.createDataSource(xsc, toolkit.createCache(dir.getPath() + File.separator));
+         for (Scan scan : dataSet.getScans())
+         {
+            Series series = source.getSeries(scan.uid, SyntheticDataSet.MODALITY);
+            int    n      = (series == null) ? 0 : series.getSopInstanceCount();
+            result.nFiles    += n;
+            result.nFailures += scan.getFileCount() - n;
+         }
+      }
+      finally
+      {
+         xsc.close();
+         result.finish(server);
+         delete(dir);
+      }
+      
+      return result;
+   }
+   
+   
+   /**
+    * Servers are started on first use and shared by all the scenarios,
+    * so that the data set is generated only once.
+    */
+   private MockXnatServer getServer(boolean https) throws Exception
+   {
+      if (https)
+      {
+         if (httpsServer == null)
+         {
+            httpsServer = new MockXnatServer(dataSet, faults, true);
+            httpsServer.start();
+            
+            // The certificate is self-signed, so the application's own
+            // connections must be told to trust it.
+            HttpsURLConnection.setDefaultSSLSocketFactory(httpsServer.getClientSocketFactory());
+         }
+         return httpsServer;
+      }
+      
+      if (httpServer == null)
+      {
+         httpServer = new MockXnatServer(dataSet, faults, false);
+         httpServer.start();
+      }
+      return httpServer;
+   }
+   
+   
+   /**
+    * @param projectId the single project of the profile, or null for all
+    * the projects in the data set
+    */
+   private XNATProfile connect(MockXnatServer server, String projectId) throws IOException
+   {
+      ArrayList<String> projectList = (projectId == null) ? getProjectIds()
+                                      : new ArrayList<>(Arrays.asList(projectId));
+      XNATProfile xnprf = new XNATProfile("loadTest", new URL(server.getURL()), server.getUser(),
+                                          server.getPassword(), projectList,
+                                          System.currentTimeMillis(), "", 0, "");
+      xnprf.connect();
+      if (!xnprf.isConnected())
+         throw new IOException("Unable to log in to " + server.getURL() + ": "
+                               + xnprf.getMostRecentErrorMessage());
+      
+      return xnprf;
+   }
+   
+   
+   private ArrayList<String> getProjectIds()
+   {
+      ArrayList<String> ids = new ArrayList<>();
+      for (Project p : dataSet.getProjects()) ids.add(p.id);
+      
+      return ids;
+   }
+   
+   
+   private static Map<String, EndpointStatistics> getEndpointStatistics()
+   {
+      Map<String, EndpointStatistics> map = new HashMap<>();
+      for (EndpointStatistics stats : RestMetrics.getDefault().getStatistics())
+         map.put(stats.getEndpoint(), stats);
+      
+      return map;
+   }
+   
+   
+   private static void delete(File f)
+   {
+      File[] children = f.listFiles();
+      if (children != null) for (File c : children) delete(c);
+      f.delete();
+   }
+   
+   
+   private static class Result
+   {
+      final String name;
+      final long   startNanos;
+      final long   startBytes;
+      long         nanos;
+      long         bytes;
+      long         nFiles;
+      long         nFailures;
+      
+      Result(String name, MockXnatServer server)
+      {
+         this.name  = name;
+         startBytes = server.getBytesSent() + server.getBytesReceived();
+         startNanos = System.nanoTime();
+      }
+      
+      void finish(MockXnatServer server)
+      {
+         nanos = System.nanoTime() - startNanos;
+         bytes = server.getBytesSent() + server.getBytesReceived() - startBytes;
+      }
+      
+      double getFilesPerSecond()
+      {
+         return nFiles * 1.0e9 / nanos;
+      }
+      
+      @Override
+      public String toString()
+      {
+         return String.format("%-12s %8d %10d %10.3f %10.1f %10.2f", name, nFiles, nFailures,
+                              nanos / 1.0e9, getFilesPerSecond(), bytes * 1.0e3 / nanos / 1.048576);
+      }
+   }
+}
@@ -0,0 +1,137 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: LoadTestUploader.java
+* First created on Oct 18, 2026 at 10:45 AM
+* 
+* A DataUploader that sends a set of files that are already on disk to
+* an existing session, for load tests of the upload path. There is no
+* file to parse and no metadata document: the resources are put to the
+* server exactly as the concrete uploaders put theirs, through
+* uploadResourcesToRepository, so that the concurrency, retries and
+* progress reporting are the same.
+*********************************************************************/
+
+package loadTests;
+
+import java.io.File;
+import java.util.List;
+import org.w3c.dom.Document;
+import xnatDAO.XNATProfile;
+import xnatRestToolkit.XnatResource;
+import xnatUploader.DataUploader;
+
+public class LoadTestUploader extends DataUploader
+{
+   private final List<File> files;
+   private final int        nResources;
+   
+   
+   /**
+    * @param xnprf the profile for the server, whose first project receives
+    * the upload
+    * @param subjectId the ID of the subject
+    * @param sessionId the ID of the session to which the resources are added
+    * @param files the files to upload
+    * @param nResources the number of resource folders across which the
+    * files are spread
+    */
+   public LoadTestUploader(XNATProfile xnprf, String subjectId, String sessionId,
+                           List<File> files, int nResources)
+   {
+      super(xnprf);
+      if (files.isEmpty()) throw new IllegalArgumentException("There are no files to upload.");
+      
+      this.files       = files;
+      this.nResources  = nResources;
+      XNATSubjectID    = subjectId;
+      XNATAccessionID  = sessionId;
+      XNATExperimentID = sessionId;
+      uploadFile       = files.get(0);
+   }
+   
+   
+   @Override
+   protected void createPrimaryResource()
+   {
+      primaryResource = createResource(0);
+   }
+   
+   
+   @Override
+   protected void createAuxiliaryResources()
+   {
+      auxiliaryResources.clear();
+      for (int i=1; i<files.size(); i++) auxiliaryResources.add(createResource(i));
+   }
+   
+   
+   private XnatResource createResource(int i)
+   {
+      File file = files.get(i);
+      return new XnatResource(file, "", "LOADTEST_" + (i % nResources), "DICOM", "RAW",
+                              "Load test upload", file.getName());
+   }
+   
+   
+   @Override
+   protected String getRootElement()
+   {
+      return "MRSession";
+   }
+   
+   
+   @Override
+   protected String getRootComplexType()
+   {
+      return "xnat:mrSessionData";
+   }
+   
+   
+   @Override
+   protected String getUploadRootCommand(String uploadItem)
+   {
+      return "/data/archive/projects/" + XNATProject + "/subjects/" + XNATSubjectID
+             + "/experiments/" + uploadItem;
+   }
+   
+   
+   @Override
+   protected Document createMetadataXml()
+   {
+      return null;
+   }
+}
@@ -0,0 +1,296 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: FaultInjector.java
+* First created on Oct 18, 2026 at 9:25 AM
+* 
+* The misbehaviour of the mock XNAT server, set independently of the
+* data it serves: a fixed latency with random jitter before each
+* response, a proportion of requests that fail with a given HTTP status,
+* a proportion of downloads that are cut off part way through and a
+* limit on the bandwidth of each response. The settings may be changed
+* while the server is running, e.g., to observe recovery after an
+* outage. Requests for a session are exempt, so that a client can always
+* log in.
+*********************************************************************/
+
+package mockXnat;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+public class FaultInjector
+{
+   public  static final int DEFAULT_ERROR_STATUS = 503;
+   
+   private final Random     random;
+   private volatile long    latencyMillis;
+   private volatile long    jitterMillis;
+   private volatile double  errorRate;
+   private volatile int     errorStatus    = DEFAULT_ERROR_STATUS;
+   private volatile double  truncationRate;
+   private volatile long    bytesPerSecond;
+   private volatile Pattern pathPattern;
+   private final AtomicLong nErrors        = new AtomicLong();
+   private final AtomicLong nTruncations   = new AtomicLong();
+   
+   
+   /**
+    * Create an injector that introduces no faults until it is configured.
+    * @param seed the seed for the random choice of failing requests, so
+    * that a run can be repeated
+    */
+   public FaultInjector(long seed)
+   {
+      random = new Random(seed);
+   }
+   
+   
+   public long getLatencyMillis()
+   {
+      return latencyMillis;
+   }
+   
+   
+   /**
+    * @param latencyMillis the fixed delay before the server responds
+    * @param jitterMillis the maximum additional random delay
+    */
+   public void setLatency(long latencyMillis, long jitterMillis)
+   {
+      if ((latencyMillis < 0) || (jitterMillis < 0))
+         throw new IllegalArgumentException("Latencies must not be negative.");
+      this.latencyMillis = latencyMillis;
+      this.jitterMillis  = jitterMillis;
+   }
+   
+   
+   public long getJitterMillis()
+   {
+      return jitterMillis;
+   }
+   
+   
+   public double getErrorRate()
+   {
+      return errorRate;
+   }
+   
+   
+   /**
+    * @param errorRate the probability that a request fails
+    * @param errorStatus the HTTP status returned for a failed request
+    */
+   public void setErrors(double errorRate, int errorStatus)
+   {
+      checkProbability(errorRate);
+      if ((errorStatus < 400) || (errorStatus > 599))
+         throw new IllegalArgumentException("The error status must be a 4xx or 5xx code.");
+      this.errorRate   = errorRate;
+      this.errorStatus = errorStatus;
+   }
+   
+   
+   public int getErrorStatus()
+   {
+      return errorStatus;
+   }
+   
+   
+   public double getTruncationRate()
+   {
+      return truncationRate;
+   }
+   
+   
+   /**
+    * @param truncationRate the probability that a file download is cut off
+    * half way through
+    */
+   public void setTruncationRate(double truncationRate)
+   {
+      checkProbability(truncationRate);
+      this.truncationRate = truncationRate;
+   }
+   
+   
+   public long getBandwidth()
+   {
+      return bytesPerSecond;
+   }
+   
+   
+   /**
+    * @param bytesPerSecond the maximum rate at which each response is sent,
+    * or 0 for no limit
+    */
+   public void setBandwidth(long bytesPerSecond)
+   {
+      if (bytesPerSecond < 0) throw new IllegalArgumentException("The bandwidth must not be negative.");
+      this.bytesPerSecond = bytesPerSecond;
+   }
+   
+   
+   /**
+    * Restrict the faults to requests whose paths match a regular expression,
+    * e.g., "/files/" to leave listings and searches alone.
+    * @param regex the expression, or null to affect all requests
+    */
+   public void setPathPattern(String regex)
+   {
+      pathPattern = (regex == null) ? null : Pattern.compile(regex);
+   }
+   
+   
+   public long getErrorCount()
+   {
+      return nErrors.get();
+   }
+   
+   
+   public long getTruncationCount()
+   {
+      return nTruncations.get();
+   }
+   
+   
+   /**
+    * Wait for the configured latency.
+    * @param path the path of the request
+    * @throws InterruptedException if the server is stopped while waiting
+    */
+   void delay(String path) throws InterruptedException
+   {
+      if (!applies(path)) return;
+      
+      long millis = latencyMillis;
+      long jitter = jitterMillis;
+      if (jitter > 0) millis += (long) (random.nextDouble() * jitter);
+      if (millis > 0) Thread.sleep(millis);
+   }
+   
+   
+   /**
+    * @param path the path of the request
+    * @return the HTTP status with which the request should fail, or 0 if
+    * it should succeed
+    */
+   int nextError(String path)
+   {
+      if (!applies(path) || (errorRate == 0) || (random.nextDouble() >= errorRate)) return 0;
+      
+      nErrors.incrementAndGet();
+      return errorStatus;
+   }
+   
+   
+   /**
+    * @param path the path of a file download
+    * @return true if the download should be cut off
+    */
+   boolean nextTruncation(String path)
+   {
+      if (!applies(path) || (truncationRate == 0) || (random.nextDouble() >= truncationRate))
+         return false;
+      
+      nTruncations.incrementAndGet();
+      return true;
+   }
+   
+   
+   /**
+    * @param os the stream to which the body of a response is written
+    * @return a stream that respects the bandwidth limit
+    */
+   OutputStream throttle(OutputStream os)
+   {
+      final long rate = bytesPerSecond;
+      if (rate == 0) return os;
+      
+      return new FilterOutputStream(os)
+      {
+         private final long start = System.nanoTime();
+         private long       sent;
+         
+         @Override
+         public void write(int b) throws IOException
+         {
+            write(new byte[] {(byte) b}, 0, 1);
+         }
+         
+         @Override
+         public void write(byte[] b, int off, int len) throws IOException
+         {
+            out.write(b, off, len);
+            sent += len;
+            
+            long due = sent * 1000 / rate - (System.nanoTime() - start) / 1000000;
+            if (due > 0)
+            {
+               try
+               {
+                  Thread.sleep(due);
+               }
+               catch (InterruptedException exIE)
+               {
+                  Thread.currentThread().interrupt();
+                  throw new InterruptedIOException("Interrupted while throttling a response");
+               }
+            }
+         }
+      };
+   }
+   
+   
+   private boolean applies(String path)
+   {
+      if (path.endsWith("/JSESSION")) return false;
+      
+      Pattern p = pathPattern;
+      return (p == null) || p.matcher(path).find();
+   }
+   
+   
+   private static void checkProbability(double p)
+   {
+      if ((p < 0) || (p > 1)) throw new IllegalArgumentException("Rates must lie between 0 and 1.");
+   }
+}
@@ -0,0 +1,376 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: MockSearch.java
+* First created on Oct 18, 2026 at 10:20 AM
+* 
+* Evaluation of an XNAT search document, as posted to /data/search, over
+* a SyntheticDataSet. The search fields become the columns of the result
+* and the criteria of the search_where element, with their nested
+* child_set elements, are applied to each session or, when any scan
+* field is involved, to each scan. Only the fields that the data set
+* holds are known: any other field is treated as empty, as XNAT treats a
+* field with no value.
+*********************************************************************/
+
+package mockXnat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import mockXnat.SyntheticDataSet.Scan;
+import mockXnat.SyntheticDataSet.Session;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+class MockSearch
+{
+   private final List<Field> fields = new ArrayList<>();
+   private String            rootElement = "";
+   private Condition         where;
+   private boolean           isScanLevel;
+   
+   
+   MockSearch(Element search)
+   {
+      for (Element child : children(search))
+      {
+         switch (localName(child))
+         {
+            case "root_element_name":
+               rootElement = child.getTextContent().trim();
+               break;
+               
+            case "search_field":
+               Field f = new Field(childText(child, "element_name"), childText(child, "field_ID"),
+                                   childText(child, "header"));
+               fields.add(f);
+               break;
+               
+            case "search_where":
+               where = parseSet(child);
+               break;
+         }
+      }
+      
+      isScanLevel |= isScanElement(rootElement);
+      for (Field f : fields) isScanLevel |= isScanElement(f.element);
+   }
+   
+   
+   String getRootElement()
+   {
+      return rootElement;
+   }
+   
+   
+   List<Field> getFields()
+   {
+      return fields;
+   }
+   
+   
+   /**
+    * @return one row for each matching session or scan, with one cell for
+    * each search field
+    */
+   List<String[]> execute(SyntheticDataSet dataSet)
+   {
+      List<String[]> rows = new ArrayList<>();
+      for (Session session : dataSet.getSessions())
+      {
+         if (isScanLevel)
+         {
+            for (Scan scan : session.scans) addIfMatches(rows, getValues(session, scan));
+         }
+         else addIfMatches(rows, getValues(session, null));
+      }
+      
+      return rows;
+   }
+   
+   
+   private void addIfMatches(List<String[]> rows, Map<String, String> values)
+   {
+      if ((where != null) && !where.matches(values)) return;
+      
+      String[] row = new String[fields.size()];
+      for (int i=0; i<row.length; i++) row[i] = getValue(values, fields.get(i).getKey());
+      rows.add(row);
+   }
+   
+   
+   private static Map<String, String> getValues(Session session, Scan scan)
+   {
+      Map<String, String> v = new HashMap<>();
+      v.put("session/id",              session.id);
+      v.put("session/label",           session.label);
+      v.put("session/project",         session.subject.project.id);
+      v.put("session/subject_id",      session.subject.id);
+      v.put("session/subject_label",   session.subject.label);
+      v.put("session/uid",             session.uid);
+      v.put("session/date",            session.date);
+      v.put("session/modality",        SyntheticDataSet.MODALITY);
+      v.put("session/scanner",         "LOADTEST");
+      v.put("session/dcmpatientname",  session.subject.label + "^LoadTest");
+      v.put("session/dcmpatientid",    session.subject.label);
+      v.put("session/insert_date",     session.date + " 12:00:00.0");
+      v.put("subject/id",              session.subject.id);
+      v.put("subject/label",           session.subject.label);
+      v.put("subject/project",         session.subject.project.id);
+      v.put("project/id",              session.subject.project.id);
+      if (scan != null)
+      {
+         v.put("scan/id",                 scan.id);
+         v.put("scan/type",               scan.type);
+         v.put("scan/uid",                scan.uid);
+         v.put("scan/series_description", scan.type);
+         v.put("scan/quality",            "usable");
+         v.put("scan/image_session_id",   session.id);
+         v.put("scan/frames",             Integer.toString(scan.getFileCount()));
+      }
+      
+      return v;
+   }
+   
+   
+   private static String getValue(Map<String, String> values, String key)
+   {
+      String value = values.get(key);
+      return (value == null) ? "" : value;
+   }
+   
+   
+   /**
+    * Reduce a schema element and field to the form used by getValues,
+    * e.g., xnat:mrSessionData and PROJECT become session/project.
+    */
+   private static String getKey(String element, String field)
+   {
+      String e = element.toLowerCase(Locale.ROOT);
+      String kind;
+      if (e.contains("scandata"))                                         kind = "scan";
+      else if (e.contains("sessiondata") || e.endsWith("experimentdata")) kind = "session";
+      else if (e.endsWith("subjectdata"))                                 kind = "subject";
+      else if (e.endsWith("projectdata"))                                 kind = "project";
+      else                                                                kind = e;
+      
+      return kind + "/" + field.toLowerCase(Locale.ROOT);
+   }
+   
+   
+   private static boolean isScanElement(String element)
+   {
+      return element.toLowerCase(Locale.ROOT).contains("scandata");
+   }
+   
+   
+   private Condition parseSet(Element set)
+   {
+      final boolean         isOr       = "OR".equalsIgnoreCase(set.getAttribute("method"));
+      final List<Condition> conditions = new ArrayList<>();
+      for (Element child : children(set))
+      {
+         switch (localName(child))
+         {
+            case "child_set":
+               conditions.add(parseSet(child));
+               break;
+               
+            case "criteria":
+               conditions.add(parseCriterion(child));
+               break;
+         }
+      }
+      
+      return new Condition()
+      {
+         @Override
+         public boolean matches(Map<String, String> values)
+         {
+            for (Condition c : conditions)
+            {
+               boolean m = c.matches(values);
+               if (m && isOr)   return true;
+               if (!m && !isOr) return false;
+            }
+            return !isOr || conditions.isEmpty();
+         }
+      };
+   }
+   
+   
+   private Condition parseCriterion(Element criterion)
+   {
+      String schemaField = childText(criterion, "schema_field");
+      int    colon       = schemaField.indexOf(':');
+      int    sep         = schemaField.length();
+      for (int i=colon+1; i<schemaField.length(); i++)
+      {
+         char c = schemaField.charAt(i);
+         if ((c == '/') || (c == '.'))
+         {
+            sep = i;
+            break;
+         }
+      }
+      String element = schemaField.substring(0, sep);
+      String field   = (sep < schemaField.length()) ? schemaField.substring(sep + 1) : "";
+      isScanLevel   |= isScanElement(element);
+      
+      final String key        = getKey(element, field);
+      final String comparison = childText(criterion, "comparison_type").toUpperCase(Locale.ROOT);
+      final String value      = childText(criterion, "value");
+      final Pattern like      = comparison.contains("LIKE") ? toPattern(value) : null;
+      
+      return new Condition()
+      {
+         @Override
+         public boolean matches(Map<String, String> values)
+         {
+            String actual = getValue(values, key);
+            switch (comparison)
+            {
+               case "=":        return actual.equals(value);
+               case "!=":       return !actual.equals(value);
+               case "LIKE":     return like.matcher(actual).matches();
+               case "NOT LIKE": return !like.matcher(actual).matches();
+               case "<":        return actual.compareTo(value) < 0;
+               case "<=":       return actual.compareTo(value) <= 0;
+               case ">":        return actual.compareTo(value) > 0;
+               case ">=":       return actual.compareTo(value) >= 0;
+               case "IS":       return actual.isEmpty() == value.equalsIgnoreCase("NULL");
+               case "IS NOT":   return actual.isEmpty() != value.equalsIgnoreCase("NULL");
+               default:
+                  throw new IllegalArgumentException("Unsupported comparison " + comparison);
+            }
+         }
+      };
+   }
+   
+   
+   /**
+    * Convert an SQL LIKE expression, with % and _ as wild cards, into a
+    * case-insensitive regular expression.
+    */
+   private static Pattern toPattern(String like)
+   {
+      StringBuilder sb      = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      for (char c : like.toCharArray())
+      {
+         if ((c == '%') || (c == '_'))
+         {
+            if (literal.length() > 0) sb.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+            sb.append((c == '%') ? ".*" : ".");
+         }
+         else literal.append(c);
+      }
+      if (literal.length() > 0) sb.append(Pattern.quote(literal.toString()));
+      
+      return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+   }
+   
+   
+   private static List<Element> children(Element parent)
+   {
+      List<Element> list = new ArrayList<>();
+      for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling())
+         if (n instanceof Element) list.add((Element) n);
+      
+      return list;
+   }
+   
+   
+   /**
+    * The document is parsed without namespace awareness, so the prefix,
+    * usually xdat, is removed from the tag name.
+    */
+   private static String localName(Element e)
+   {
+      String name = e.getTagName();
+      return name.substring(name.indexOf(':') + 1);
+   }
+   
+   
+   private static String childText(Element parent, String name)
+   {
+      for (Element child : children(parent))
+         if (localName(child).equals(name)) return child.getTextContent().trim();
+      
+      return "";
+   }
+   
+   
+   private interface Condition
+   {
+      boolean matches(Map<String, String> values);
+   }
+   
+   
+   static class Field
+   {
+      final String element;
+      final String fieldId;
+      final String header;
+      
+      Field(String element, String fieldId, String header)
+      {
+         this.element = element;
+         this.fieldId = fieldId;
+         this.header  = header;
+      }
+      
+      String getKey()
+      {
+         return MockSearch.getKey(element, fieldId);
+      }
+      
+      /**
+       * @return the column name that XNAT gives the field, e.g.,
+       * xnat_mrsessiondata_project
+       */
+      String getAlias()
+      {
+         return (element.replace(':', '_') + "_" + fieldId).toLowerCase(Locale.ROOT)
+                                                          .replaceAll("[^a-z0-9_]", "_");
+      }
+   }
+}
@@ -0,0 +1,1110 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: MockXnatServer.java
+* First created on Oct 18, 2026 at 9:50 AM
+* 
+* An embedded, in-process stand-in for XNAT, for load tests of the REST
+* clients that need neither a real server nor a network. It implements
+* the parts of the REST API that this application and etherj actually
+* use:
+* 
+*    /data/JSESSION and /data/version
+*    /data/search, evaluating the criteria of the posted search document
+*    listings of projects, subjects, experiments, scans, resources and
+*    files, under /data/archive/projects/... or /data/archive/experiments/...
+*    the files themselves, including byte ranges for resumed downloads
+*    a resource's files as a single archive, with format=zip
+*    PUTs that create resources and upload files, which are counted and
+*    then discarded
+* 
+* The data come from a SyntheticDataSet and the timing and failures of
+* the responses from a FaultInjector. The /REST prefix of older XNAT
+* versions is accepted as a synonym for /data. Over HTTPS, the server
+* uses a self-signed certificate for localhost, which is generated when
+* the server is created and which clients can trust by using the socket
+* factory returned by getClientSocketFactory.
+*********************************************************************/
+
+package mockXnat;
+
+import base64.Base64;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import javax.xml.parsers.DocumentBuilderFactory;
+import mockXnat.SyntheticDataSet.Project;
+import mockXnat.SyntheticDataSet.Scan;
+import mockXnat.SyntheticDataSet.Session;
+import mockXnat.SyntheticDataSet.Subject;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+
+public class MockXnatServer
+{
+   static  Logger logger = Logger.getLogger(MockXnatServer.class);
+   
+   public  static final String DEFAULT_USER     = "loadtest";
+   public  static final String DEFAULT_PASSWORD = "loadtest";
+   public  static final String VERSION          = "1.6.5";
+   public  static final int    DEFAULT_THREADS  = 32;
+   
+   private static final String NAMESPACE        = "http://www.nbirn.net/prototype/xnat/namespace";
+   private static final char[] KEYSTORE_PASS    = "mockXnat".toCharArray();
+   
+   private final SyntheticDataSet      dataSet;
+   private final FaultInjector         faults;
+   private final HttpServer            server;
+   private final ExecutorService       executor;
+   private final SSLContext            sslContext;
+   private final String                user;
+   private final String                password;
+   private final Set<String>           sessions       = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+   private final Map<String, Long>     uploadedFiles  = new ConcurrentHashMap<>();
+   private final AtomicLong            nRequests      = new AtomicLong();
+   private final AtomicLong            nSessions      = new AtomicLong();
+   private final AtomicLong            nResources     = new AtomicLong();
+   private final AtomicLong            bytesSent      = new AtomicLong();
+   private final AtomicLong            bytesReceived  = new AtomicLong();
+   
+   
+   /**
+    * Create a server, which listens on a free port of the loopback interface
+    * once it is started.
+    * @param dataSet the data to serve
+    * @param faults the latency and failures to introduce
+    * @param isHttps true for HTTPS, which etherj requires, false for HTTP
+    * @throws IOException if the server cannot be created
+    * @throws GeneralSecurityException if the certificate cannot be created
+    */
+   public MockXnatServer(SyntheticDataSet dataSet, FaultInjector faults, boolean isHttps)
+          throws IOException, GeneralSecurityException
+   {
+      this(dataSet, faults, isHttps, DEFAULT_USER, DEFAULT_PASSWORD, DEFAULT_THREADS);
+   }
+   
+   
+   public MockXnatServer(SyntheticDataSet dataSet, FaultInjector faults, boolean isHttps,
+                         String user, String password, int nThreads)
+          throws IOException, GeneralSecurityException
+   {
+      this.dataSet  = dataSet;
+      this.faults   = faults;
+      this.user     = user;
+      this.password = password;
+      
+      InetSocketAddress address = new InetSocketAddress(InetAddress.getByName("localhost"), 0);
+      if (isHttps)
+      {
+         sslContext = createSslContext();
+         HttpsServer hs = HttpsServer.create(address, 0);
+         hs.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+         server = hs;
+      }
+      else
+      {
+         sslContext = null;
+         server     = HttpServer.create(address, 0);
+      }
+      
+      executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+         
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "MockXnatServer-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      server.setExecutor(executor);
+      server.createContext("/", new HttpHandler()
+      {
+         @Override
+         public void handle(HttpExchange exchange)
+         {
+            MockXnatServer.this.handle(exchange);
+         }
+      });
+   }
+   
+   
+   public void start()
+   {
+      server.start();
+      logger.info("Mock XNAT server listening on " + getURL());
+   }
+   
+   
+   public void stop()
+   {
+      server.stop(0);
+      executor.shutdownNow();
+      try
+      {
+         executor.awaitTermination(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException exIE)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+   
+   
+   /**
+    * @return the base URL of the server, e.g., http://localhost:51234
+    */
+   public String getURL()
+   {
+      return ((sslContext == null) ? "http" : "https") + "://localhost:"
+             + server.getAddress().getPort();
+   }
+   
+   
+   public String getUser()
+   {
+      return user;
+   }
+   
+   
+   public String getPassword()
+   {
+      return password;
+   }
+   
+   
+   public SyntheticDataSet getDataSet()
+   {
+      return dataSet;
+   }
+   
+   
+   public FaultInjector getFaultInjector()
+   {
+      return faults;
+   }
+   
+   
+   /**
+    * @return a socket factory that trusts this server's certificate, or
+    * null if the server uses HTTP
+    */
+   public SSLSocketFactory getClientSocketFactory()
+   {
+      return (sslContext == null) ? null : sslContext.getSocketFactory();
+   }
+   
+   
+   /**
+    * Forget all the sessions issued, so that clients must log in again,
+    * as they must when a real server is restarted.
+    */
+   public void expireSessions()
+   {
+      sessions.clear();
+   }
+   
+   
+   public long getRequestCount()
+   {
+      return nRequests.get();
+   }
+   
+   
+   public long getSessionCount()
+   {
+      return nSessions.get();
+   }
+   
+   
+   public long getBytesSent()
+   {
+      return bytesSent.get();
+   }
+   
+   
+   public long getBytesReceived()
+   {
+      return bytesReceived.get();
+   }
+   
+   
+   public long getResourcesCreated()
+   {
+      return nResources.get();
+   }
+   
+   
+   /**
+    * @return the path and size of every file uploaded since the server
+    * was started or cleared
+    */
+   public Map<String, Long> getUploadedFiles()
+   {
+      return Collections.unmodifiableMap(uploadedFiles);
+   }
+   
+   
+   public void clearUploads()
+   {
+      uploadedFiles.clear();
+      nResources.set(0);
+   }
+   
+   
+   @Override
+   public String toString()
+   {
+      return String.format("%s: %d requests, %d sessions, %d errors and %d truncations injected, "
+                           + "%d bytes sent, %d bytes received, %d files uploaded",
+                           getURL(), getRequestCount(), getSessionCount(),
+                           faults.getErrorCount(), faults.getTruncationCount(),
+                           getBytesSent(), getBytesReceived(), uploadedFiles.size());
+   }
+   
+   
+   private void handle(HttpExchange exchange)
+   {
+      nRequests.incrementAndGet();
+      String method = exchange.getRequestMethod();
+      String path   = exchange.getRequestURI().getRawPath();
+      
+      try
+      {
+         faults.delay(path);
+         int status = faults.nextError(path);
+         if (status != 0)
+         {
+            drain(exchange);
+            sendText(exchange, status, "Injected failure");
+            return;
+         }
+         
+         Target target = parse(path, exchange.getRequestURI().getRawQuery());
+         if (target == null)
+         {
+            drain(exchange);
+            sendText(exchange, 404, "Not Found");
+            return;
+         }
+         
+         if (target.collection.equals("JSESSION"))
+         {
+            handleSession(exchange, method);
+            return;
+         }
+         
+         if (!isAuthorised(exchange))
+         {
+            drain(exchange);
+            sendText(exchange, 401, "Login required");
+            return;
+         }
+         
+         switch (method)
+         {
+            case "GET":
+               handleGet(exchange, target);
+               break;
+               
+            case "POST":
+               if (target.collection.equals("search")) handleSearch(exchange, target);
+               else handleUpload(exchange, target);
+               break;
+               
+            case "PUT":
+               handleUpload(exchange, target);
+               break;
+               
+            case "DELETE":
+               drain(exchange);
+               sendText(exchange, 200, "");
+               break;
+               
+            default:
+               drain(exchange);
+               sendText(exchange, 405, "Method Not Allowed");
+         }
+      }
+      catch (InterruptedException exIE)
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch (IOException exIO)
+      {
+         // Usually the client has gone away, or a truncation was injected.
+         logger.debug("Mock XNAT request " + method + " " + path + " failed: " + exIO.getMessage());
+      }
+      catch (RuntimeException exRT)
+      {
+         logger.error("Mock XNAT request " + method + " " + path + " failed", exRT);
+         try
+         {
+            sendText(exchange, 500, "Internal Server Error");
+         }
+         catch (IOException exIOignore) {}
+      }
+      finally
+      {
+         exchange.close();
+      }
+   }
+   
+   
+   private void handleSession(HttpExchange exchange, String method) throws IOException
+   {
+      drain(exchange);
+      if (method.equals("DELETE"))
+      {
+         String session = getSessionCookie(exchange);
+         if (session != null) sessions.remove(session);
+         sendText(exchange, 200, "");
+         return;
+      }
+      
+      if (!hasValidCredentials(exchange))
+      {
+         sendText(exchange, 401, "Login attempt failed. Please try again.");
+         return;
+      }
+      
+      String session = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+      sessions.add(session);
+      nSessions.incrementAndGet();
+      sendText(exchange, 200, session);
+   }
+   
+   
+   private void handleGet(HttpExchange exchange, Target t) throws IOException
+   {
+      if (t.other != null)
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (t.collection.equals("version"))
+      {
+         sendText(exchange, 200, VERSION);
+         return;
+      }
+      
+      if (t.projectId == null)
+      {
+         if (t.collection.equals("projects")) listProjects(exchange);
+         else if (t.sessionId != null) handleSessionGet(exchange, t, null, null);
+         else sendText(exchange, 404, "Not Found");
+         return;
+      }
+      
+      Project project = dataSet.getProject(t.projectId);
+      if (project == null)
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (t.subjectId == null)
+      {
+         if (t.collection.equals("subjects")) listSubjects(exchange, project);
+         else sendXml(exchange, "<xnat:Project ID=\"" + esc(project.id)
+                                + "\" xmlns:xnat=\"http://nrg.wustl.edu/xnat\"/>");
+         return;
+      }
+      
+      Subject subject = dataSet.getSubject(project, t.subjectId);
+      if (subject == null)
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (t.sessionId == null)
+      {
+         if (t.collection.equals("experiments")) listExperiments(exchange, subject);
+         else sendXml(exchange, "<xnat:Subject ID=\"" + esc(subject.id) + "\" project=\""
+                                + esc(project.id) + "\" label=\"" + esc(subject.label) + "\""
+                                + " xmlns:xnat=\"http://nrg.wustl.edu/xnat\">"
+                                + "<xnat:demographics><xnat:gender>unknown</xnat:gender>"
+                                + "</xnat:demographics></xnat:Subject>");
+         return;
+      }
+      
+      handleSessionGet(exchange, t, project, subject);
+   }
+   
+   
+   private void handleSessionGet(HttpExchange exchange, Target t, Project project,
+                                 Subject subject) throws IOException
+   {
+      Session session = dataSet.getSession(project, subject, t.sessionId);
+      if (session == null)
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (t.scanId == null)
+      {
+         if (t.collection.equals("scans")) listScans(exchange, session);
+         else sendXml(exchange, "<xnat:MRSession ID=\"" + esc(session.id) + "\" project=\""
+                                + esc(session.subject.project.id) + "\" label=\""
+                                + esc(session.label) + "\" UID=\"" + session.uid + "\""
+                                + " xmlns:xnat=\"http://nrg.wustl.edu/xnat\"/>");
+         return;
+      }
+      
+      // XNAT accepts ALL in place of a scan ID for operations on every scan.
+      List<Scan> scans = new ArrayList<>();
+      if (t.scanId.equals("ALL")) scans.addAll(session.scans);
+      else if (session.getScan(t.scanId) != null) scans.add(session.getScan(t.scanId));
+      if (scans.isEmpty())
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (t.resource == null)
+      {
+         if (t.collection.equals("resources")) listResources(exchange, scans.get(0));
+         else sendText(exchange, 404, "Not Found");
+         return;
+      }
+      if (!t.resource.equals(SyntheticDataSet.RESOURCE_NAME))
+      {
+         sendText(exchange, 404, "Not Found");
+         return;
+      }
+      
+      if (t.fileName != null)
+      {
+         Scan scan  = scans.get(0);
+         int  index = scan.indexOfFile(t.fileName);
+         if ((scans.size() > 1) || (index < 0)) sendText(exchange, 404, "Not Found");
+         else sendFile(exchange, t.path, dataSet.getFile(scan, index));
+      }
+      else if (t.isFiles && "zip".equals(t.query.get("format"))) sendZip(exchange, scans);
+      else if (t.isFiles) listFiles(exchange, t, scans);
+      else sendText(exchange, 404, "Not Found");
+   }
+   
+   
+   private void listProjects(HttpExchange exchange) throws IOException
+   {
+      List<String[]> rows = new ArrayList<>();
+      for (Project p : dataSet.getProjects())
+      {
+         rows.add(new String[] {p.id, p.id, "Load test project " + p.id, "Synthetic data",
+                                "", "", "/data/projects/" + p.id});
+      }
+      sendResultSet(exchange, Arrays.asList("ID", "secondary_ID", "name", "description",
+                                            "pi_firstname", "pi_lastname", "URI"), rows);
+   }
+   
+   
+   private void listSubjects(HttpExchange exchange, Project project) throws IOException
+   {
+      List<String[]> rows = new ArrayList<>();
+      for (Subject s : project.subjects)
+      {
+         rows.add(new String[] {s.id, project.id, s.label, "2015-01-01 00:00:00.0", user,
+                                "/data/subjects/" + s.id});
+      }
+      sendResultSet(exchange, Arrays.asList("ID", "project", "label", "insert_date",
+                                            "insert_user", "URI"), rows);
+   }
+   
+   
+   private void listExperiments(HttpExchange exchange, Subject subject) throws IOException
+   {
+      List<String[]> rows = new ArrayList<>();
+      for (Session e : subject.sessions)
+      {
+         rows.add(new String[] {e.id, subject.project.id, e.label, SyntheticDataSet.SESSION_ELEMENT,
+                                e.date, e.date + " 12:00:00.0", "/data/experiments/" + e.id});
+      }
+      sendResultSet(exchange, Arrays.asList("ID", "project", "label", "xsiType", "date",
+                                            "insert_date", "URI"), rows);
+   }
+   
+   
+   private void listScans(HttpExchange exchange, Session session) throws IOException
+   {
+      List<String[]> rows = new ArrayList<>();
+      for (Scan c : session.scans)
+      {
+         rows.add(new String[] {Integer.toString(resourceId(c)), c.id, c.type, c.type, "usable",
+                                SyntheticDataSet.SCAN_ELEMENT, "",
+                                "/data/experiments/" + session.id + "/scans/" + c.id});
+      }
+      sendResultSet(exchange, Arrays.asList("xnat_imagescandata_id", "ID", "type",
+                                            "series_description", "quality", "xsiType",
+                                            "note", "URI"), rows);
+   }
+   
+   
+   private void listResources(HttpExchange exchange, Scan scan) throws IOException
+   {
+      long size = 0;
+      for (int i=0; i<scan.getFileCount(); i++) size += dataSet.getFileInfo(scan, i).size;
+      
+      List<String[]> rows = new ArrayList<>();
+      rows.add(new String[] {Integer.toString(resourceId(scan)), SyntheticDataSet.RESOURCE_NAME,
+                             "xnat:resourceCatalog", "scans", scan.id, "DICOM",
+                             Integer.toString(scan.getFileCount()), Long.toString(size),
+                             "", "RAW", ""});
+      sendResultSet(exchange, Arrays.asList("xnat_abstractresource_id", "label", "element_name",
+                                            "category", "cat_id", "format", "file_count",
+                                            "file_size", "tags", "content", "cat_desc"), rows);
+   }
+   
+   
+   /**
+    * The URIs of the files follow the form of the request, as XNAT's do,
+    * so that a listing obtained through a project's hierarchy gives URIs
+    * within that hierarchy.
+    */
+   private void listFiles(HttpExchange exchange, Target t, List<Scan> scans) throws IOException
+   {
+      String prefix = t.path.replaceFirst("^/(data|REST)(/archive)?", "/data");
+      if (t.scanId.equals("ALL")) prefix = prefix.substring(0, prefix.indexOf("/scans/") + 7);
+      
+      List<String[]> rows = new ArrayList<>();
+      for (Scan c : scans)
+      {
+         String scanPrefix = t.scanId.equals("ALL")
+                             ? prefix + c.id + "/resources/" + SyntheticDataSet.RESOURCE_NAME + "/files"
+                             : prefix;
+         for (int i=0; i<c.getFileCount(); i++)
+         {
+            SyntheticDataSet.FileInfo info = dataSet.getFileInfo(c, i);
+            rows.add(new String[] {c.getFileName(i), Long.toString(info.size),
+                                   scanPrefix + "/" + c.getFileName(i),
+                                   SyntheticDataSet.RESOURCE_NAME, "", "DICOM", "RAW",
+                                   Integer.toString(resourceId(c)), info.digest});
+         }
+      }
+      sendResultSet(exchange, Arrays.asList("Name", "Size", "URI", "collection", "file_tags",
+                                            "file_format", "file_content", "cat_ID", "digest"), rows);
+   }
+   
+   
+   private static int resourceId(Scan scan)
+   {
+      return 1000 + ((scan.session.id + "/" + scan.id).hashCode() & 0xFFFFF);
+   }
+   
+   
+   /**
+    * Send a file, or the part of it after the start of a requested byte
+    * range. Only open-ended ranges, which are the kind used to resume a
+    * download, are supported: other range requests receive the whole file.
+    */
+   private void sendFile(HttpExchange exchange, String path, byte[] data) throws IOException
+   {
+      int    start = 0;
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      if ((range != null) && range.matches("bytes=\\d+-"))
+      {
+         start = Integer.parseInt(range.substring(6, range.length() - 1));
+         if (start >= data.length)
+         {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length);
+            sendText(exchange, 416, "Requested Range Not Satisfiable");
+            return;
+         }
+         if (start > 0)
+            exchange.getResponseHeaders().set("Content-Range",
+                                              "bytes " + start + "-" + (data.length - 1) + "/" + data.length);
+      }
+      
+      int length = data.length - start;
+      exchange.getResponseHeaders().set("Content-Type", "application/dicom");
+      exchange.sendResponseHeaders((start > 0) ? 206 : 200, length);
+      
+      // A truncated response promises the whole file and then stops half
+      // way through, as when a connection drops.
+      int          n  = faults.nextTruncation(path) ? length / 2 : length;
+      OutputStream os = faults.throttle(exchange.getResponseBody());
+      os.write(data, start, n);
+      bytesSent.addAndGet(n);
+      if (n < length) throw new IOException("Injected truncation of " + path);
+      os.close();
+   }
+   
+   
+   /**
+    * Send the DICOM files of one or more scans as an archive, with entry
+    * names of the form XNAT uses, i.e., including the session label and
+    * scan description as well as the file name.
+    */
+   private void sendZip(HttpExchange exchange, List<Scan> scans) throws IOException
+   {
+      exchange.getResponseHeaders().set("Content-Type", "application/zip");
+      exchange.sendResponseHeaders(200, 0);
+      
+      CountingOutputStream cos = new CountingOutputStream(faults.throttle(exchange.getResponseBody()));
+      try (ZipOutputStream zos = new ZipOutputStream(cos))
+      {
+         for (Scan c : scans)
+         {
+            String dir = c.session.label + "/scans/" + c.id + "-" + c.type + "/resources/"
+                         + SyntheticDataSet.RESOURCE_NAME + "/files/";
+            for (int i=0; i<c.getFileCount(); i++)
+            {
+               zos.putNextEntry(new ZipEntry(dir + c.getFileName(i)));
+               zos.write(dataSet.getFile(c, i));
+               zos.closeEntry();
+            }
+         }
+      }
+      finally
+      {
+         bytesSent.addAndGet(cos.count);
+      }
+   }
+   
+   
+   private void handleUpload(HttpExchange exchange, Target t) throws IOException
+   {
+      long n = drain(exchange);
+      
+      if (t.fileName != null) uploadedFiles.put(t.path, n);
+      else if (t.resource != null) nResources.incrementAndGet();
+      
+      sendText(exchange, 200, "");
+   }
+   
+   
+   private void handleSearch(HttpExchange exchange, Target t) throws IOException
+   {
+      Document doc;
+      try (InputStream is = exchange.getRequestBody())
+      {
+         byte[] body = readAll(is);
+         bytesReceived.addAndGet(body.length);
+         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+         doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(body));
+      }
+      catch (Exception ex)
+      {
+         sendText(exchange, 400, "The search document could not be parsed: " + ex.getMessage());
+         return;
+      }
+      
+      MockSearch search = new MockSearch(doc.getDocumentElement());
+      List<String[]> rows = search.execute(dataSet);
+      
+      StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      sb.append("<ResultSet xmlns=\"").append(NAMESPACE).append("\" totalRecords=\"")
+        .append(rows.size()).append("\" title=\"").append(esc(search.getRootElement())).append("\">\n");
+      // As in XNAT's own output, there is no whitespace between the columns:
+      // etherj indexes them by their position among the child nodes.
+      sb.append("<results>\n<columns>");
+      for (MockSearch.Field f : search.getFields())
+      {
+         sb.append("<column element_name=\"").append(esc(f.element)).append("\" id=\"")
+           .append(esc(f.fieldId)).append("\" header=\"").append(esc(f.header)).append("\">")
+           .append(esc(f.getAlias())).append("</column>");
+      }
+      sb.append("</columns>\n");
+      appendRows(sb, rows);
+      sb.append("</results>\n</ResultSet>\n");
+      
+      sendBytes(exchange, 200, "text/xml", sb.toString().getBytes(StandardCharsets.UTF_8));
+   }
+   
+   
+   private void sendResultSet(HttpExchange exchange, List<String> columns, List<String[]> rows)
+           throws IOException
+   {
+      StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      sb.append("<ResultSet Result=\"").append(rows.size()).append("\" xmlns=\"")
+        .append(NAMESPACE).append("\">\n<results>\n<columns>");
+      for (String c : columns) sb.append("<column>").append(esc(c)).append("</column>");
+      sb.append("</columns>\n");
+      appendRows(sb, rows);
+      sb.append("</results>\n</ResultSet>\n");
+      
+      sendBytes(exchange, 200, "text/xml", sb.toString().getBytes(StandardCharsets.UTF_8));
+   }
+   
+   
+   private static void appendRows(StringBuilder sb, List<String[]> rows)
+   {
+      sb.append("<rows>\n");
+      for (String[] row : rows)
+      {
+         sb.append("<row>");
+         for (String cell : row) sb.append("<cell>").append(esc(cell)).append("</cell>");
+         sb.append("</row>\n");
+      }
+      sb.append("</rows>\n");
+   }
+   
+   
+   private void sendXml(HttpExchange exchange, String xml) throws IOException
+   {
+      sendBytes(exchange, 200, "text/xml",
+                ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml).getBytes(StandardCharsets.UTF_8));
+   }
+   
+   
+   private void sendText(HttpExchange exchange, int status, String text) throws IOException
+   {
+      sendBytes(exchange, status, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+   }
+   
+   
+   private void sendBytes(HttpExchange exchange, int status, String contentType, byte[] data)
+           throws IOException
+   {
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      if (data.length == 0)
+      {
+         exchange.sendResponseHeaders(status, -1);
+         return;
+      }
+      
+      exchange.sendResponseHeaders(status, data.length);
+      try (OutputStream os = faults.throttle(exchange.getResponseBody()))
+      {
+         os.write(data);
+      }
+      bytesSent.addAndGet(data.length);
+   }
+   
+   
+   /**
+    * Read and discard the body of a request, which must be consumed before
+    * the connection can be reused.
+    * @return the number of bytes read
+    */
+   private long drain(HttpExchange exchange) throws IOException
+   {
+      long   n    = 0;
+      byte[] buff = new byte[64*1024];
+      int    count;
+      try (InputStream is = exchange.getRequestBody())
+      {
+         while ((count = is.read(buff)) != -1) n += count;
+      }
+      bytesReceived.addAndGet(n);
+      
+      return n;
+   }
+   
+   
+   private static byte[] readAll(InputStream is) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[]                buff = new byte[8192];
+      int                   n;
+      while ((n = is.read(buff)) != -1) baos.write(buff, 0, n);
+      
+      return baos.toByteArray();
+   }
+   
+   
+   private boolean isAuthorised(HttpExchange exchange)
+   {
+      String session = getSessionCookie(exchange);
+      if ((session != null) && sessions.contains(session)) return true;
+      
+      // A stale cookie is rejected even if credentials are also sent, so
+      // that clients see the expiry, as they do with a real server.
+      return (session == null) && hasValidCredentials(exchange);
+   }
+   
+   
+   private boolean hasValidCredentials(HttpExchange exchange)
+   {
+      String auth = exchange.getRequestHeaders().getFirst("Authorization");
+      if ((auth == null) || !auth.startsWith("Basic ")) return false;
+      
+      String decoded = new String(Base64.decodeBase64(auth.substring(6).trim()),
+                                  StandardCharsets.UTF_8);
+      return decoded.equals(user + ":" + password);
+   }
+   
+   
+   private static String getSessionCookie(HttpExchange exchange)
+   {
+      List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+      if (cookies == null) return null;
+      
+      for (String header : cookies)
+      {
+         for (String cookie : header.split(";"))
+         {
+            String c = cookie.trim();
+            if (c.startsWith("JSESSIONID=")) return c.substring(11);
+         }
+      }
+      return null;
+   }
+   
+   
+   /**
+    * Split the path of a request into the identifiers of the items in the
+    * XNAT hierarchy that it addresses.
+    * @return the target, or null if the path is not part of the REST API
+    */
+   private static Target parse(String rawPath, String rawQuery) throws IOException
+   {
+      List<String> segments = new ArrayList<>();
+      for (String s : rawPath.split("/"))
+         if (!s.isEmpty()) segments.add(URLDecoder.decode(s, "UTF-8"));
+      
+      if (segments.isEmpty() || !(segments.get(0).equals("data") || segments.get(0).equals("REST")))
+         return null;
+      segments.remove(0);
+      if (!segments.isEmpty() && segments.get(0).equals("archive")) segments.remove(0);
+      
+      Target t = new Target();
+      t.path = rawPath;
+      if (rawQuery != null)
+      {
+         for (String param : rawQuery.split("&"))
+         {
+            int eq = param.indexOf('=');
+            if (eq > 0) t.query.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+                                    URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+         }
+      }
+      
+      int i = 0;
+      while (i < segments.size())
+      {
+         String key = segments.get(i);
+         if (key.equals("files"))
+         {
+            t.isFiles = true;
+            if (i + 1 < segments.size())
+            {
+               StringBuilder sb = new StringBuilder(segments.get(i + 1));
+               for (int j=i+2; j<segments.size(); j++) sb.append('/').append(segments.get(j));
+               t.fileName = sb.toString();
+            }
+            break;
+         }
+         
+         // Uploaders may place resources under an "in" or "out" folder.
+         if (key.equals("in") || key.equals("out"))
+         {
+            i++;
+            continue;
+         }
+         
+         if (i + 1 == segments.size())
+         {
+            t.collection = key;
+            break;
+         }
+         
+         String value = segments.get(i + 1);
+         switch (key)
+         {
+            case "projects":    t.projectId = value; break;
+            case "subjects":    t.subjectId = value; break;
+            case "experiments": t.sessionId = value; break;
+            case "scans":       t.scanId    = value; break;
+            case "resources":   t.resource  = value; break;
+            default:            t.other     = key;
+         }
+         i += 2;
+      }
+      
+      return t;
+   }
+   
+   
+   private static String esc(String s)
+   {
+      if (s == null) return "";
+      
+      StringBuilder sb = new StringBuilder(s.length());
+      for (int i=0; i<s.length(); i++)
+      {
+         char c = s.charAt(i);
+         switch (c)
+         {
+            case '&':  sb.append("&amp;");  break;
+            case '<':  sb.append("&lt;");   break;
+            case '>':  sb.append("&gt;");   break;
+            case '"':  sb.append("&quot;"); break;
+            default:   sb.append(c);
+         }
+      }
+      return sb.toString();
+   }
+   
+   
+   /**
+    * Create a key pair and self-signed certificate for localhost with the
+    * JDK's keytool, which avoids any dependency on non-public classes for
+    * certificate generation. The key store is deleted once loaded.
+    */
+   private static SSLContext createSslContext() throws IOException, GeneralSecurityException
+   {
+      File dir      = Files.createTempDirectory("mockXnat").toFile();
+      File keyStore = new File(dir, "mockXnat.jks");
+      try
+      {
+         String keytool = System.getProperty("java.home") + File.separator + "bin"
+                          + File.separator + "keytool";
+         ProcessBuilder pb = new ProcessBuilder(keytool, "-genkeypair", "-alias", "mockxnat",
+               "-keyalg", "RSA", "-keysize", "2048", "-validity", "7",
+               "-dname", "CN=localhost, O=Mock XNAT", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+               "-storetype", "JKS", "-keystore", keyStore.getPath(),
+               "-storepass", new String(KEYSTORE_PASS), "-keypass", new String(KEYSTORE_PASS));
+         pb.redirectErrorStream(true);
+         Process process = pb.start();
+         String  output  = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8);
+         try
+         {
+            if (process.waitFor() != 0)
+               throw new IOException("keytool failed to create a certificate: " + output);
+         }
+         catch (InterruptedException exIE)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating a certificate");
+         }
+         
+         KeyStore ks = KeyStore.getInstance("JKS");
+         try (InputStream is = new FileInputStream(keyStore))
+         {
+            ks.load(is, KEYSTORE_PASS);
+         }
+         
+         KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+         kmf.init(ks, KEYSTORE_PASS);
+         TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+         tmf.init(ks);
+         
+         SSLContext context = SSLContext.getInstance("TLS");
+         context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+         return context;
+      }
+      finally
+      {
+         keyStore.delete();
+         dir.delete();
+      }
+   }
+   
+   
+   /**
+    * The parts of a request path, e.g., /data/archive/projects/P/subjects/S
+    * has projectId P and subjectId S, while /data/archive/projects/P/subjects
+    * has projectId P and collection "subjects".
+    */
+   private static class Target
+   {
+      String              path;
+      String              projectId;
+      String              subjectId;
+      String              sessionId;
+      String              scanId;
+      String              resource;
+      String              fileName;
+      String              other;
+      String              collection = "";
+      boolean             isFiles;
+      Map<String, String> query      = new HashMap<>();
+   }
+   
+   
+   private static class CountingOutputStream extends FilterOutputStream
+   {
+      long count;
+      
+      CountingOutputStream(OutputStream os)
+      {
+         super(os);
+      }
+      
+      @Override
+      public void write(int b) throws IOException
+      {
+         out.write(b);
+         count++;
+      }
+      
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         out.write(b, off, len);
+         count += len;
+      }
+   }
+}
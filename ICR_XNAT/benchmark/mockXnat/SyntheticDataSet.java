@@ -0,0 +1,560 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: SyntheticDataSet.java
+* First created on Oct 18, 2026 at 9:05 AM
+* 
+* A synthetic XNAT archive for the mock server: a fixed hierarchy of
+* projects, subjects, MR sessions and scans, each scan holding a DICOM
+* resource of generated images. Everything, including the UIDs, is
+* derived from the counts given to the constructor, so two data sets
+* built with the same parameters are identical and the results of load
+* tests can be compared from one run to the next.
+* 
+* The DICOM files are generated on first use and kept in a cache of
+* bounded size. Their sizes and MD5 digests, which are needed for the
+* file listings, are kept for every file generated.
+*********************************************************************/
+
+package mockXnat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.dcm4che2.data.BasicDicomObject;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+import org.dcm4che2.data.UID;
+import org.dcm4che2.data.VR;
+import org.dcm4che2.io.DicomOutputStream;
+
+public class SyntheticDataSet
+{
+   public  static final String MODALITY          = "MR";
+   public  static final String SESSION_ELEMENT   = "xnat:mrSessionData";
+   public  static final String SCAN_ELEMENT      = "xnat:mrScanData";
+   public  static final String RESOURCE_NAME     = "DICOM";
+   public  static final long   DEFAULT_MAX_CACHE = 256L*1024*1024;
+   
+   private static final String[] SCAN_TYPES = {"T1_MPRAGE", "T2_TSE", "DWI", "FLAIR", "PD"};
+   
+   private final int                  nProjects;
+   private final int                  nSubjects;
+   private final int                  nSessions;
+   private final int                  nScans;
+   private final int                  nFiles;
+   private final int                  imageSize;
+   private final List<Project>        projects   = new ArrayList<>();
+   private final Map<String, Project> projectMap = new HashMap<>();
+   private final Map<String, Subject> subjectMap = new HashMap<>();
+   private final Map<String, Session> sessionMap = new HashMap<>();
+   private final Map<String, FileInfo> infoMap   = new ConcurrentHashMap<>();
+   private final LinkedHashMap<String, byte[]> fileCache;
+   private long                       maxCacheBytes = DEFAULT_MAX_CACHE;
+   private long                       cacheBytes;
+   
+   
+   /**
+    * Create a data set in which every level of the hierarchy has the same
+    * number of children.
+    * @param nProjects the number of projects
+    * @param nSubjects the number of subjects in each project
+    * @param nSessions the number of sessions for each subject
+    * @param nScans the number of scans in each session
+    * @param nFiles the number of DICOM files in each scan
+    * @param imageSize the number of rows and columns of each image
+    */
+   public SyntheticDataSet(int nProjects, int nSubjects, int nSessions, int nScans,
+                           int nFiles, int imageSize)
+   {
+      if ((nProjects < 1) || (nSubjects < 1) || (nSessions < 1) || (nScans < 1)
+                          || (nFiles < 1) || (imageSize < 1))
+         throw new IllegalArgumentException("All the counts in a data set must be positive.");
+      
+      this.nProjects = nProjects;
+      this.nSubjects = nSubjects;
+      this.nSessions = nSessions;
+      this.nScans    = nScans;
+      this.nFiles    = nFiles;
+      this.imageSize = imageSize;
+      
+      fileCache = new LinkedHashMap<>(16, 0.75f, true);
+      
+      int subjectNo = 0;
+      int sessionNo = 0;
+      for (int p=1; p<=nProjects; p++)
+      {
+         Project project = new Project(String.format("LOADTEST_%02d", p));
+         projects.add(project);
+         projectMap.put(project.id, project);
+         
+         for (int s=1; s<=nSubjects; s++)
+         {
+            subjectNo++;
+            Subject subject = new Subject(project, String.format("XNAT_S%05d", subjectNo),
+                                          String.format("SUBJ_%02d_%04d", p, s));
+            project.subjects.add(subject);
+            subjectMap.put(subject.id, subject);
+            
+            for (int e=1; e<=nSessions; e++)
+            {
+               sessionNo++;
+               String  date    = String.format("2015-%02d-%02d", 1 + (e-1) % 12, 1 + (s-1) % 28);
+               Session session = new Session(subject, String.format("XNAT_E%05d", sessionNo),
+                                             subject.label + "_MR_" + date.replace("-", ""),
+                                             date);
+               subject.sessions.add(session);
+               sessionMap.put(session.id, session);
+               
+               for (int c=1; c<=nScans; c++)
+                  session.scans.add(new Scan(session, Integer.toString(c),
+                                             SCAN_TYPES[(c-1) % SCAN_TYPES.length]));
+            }
+         }
+      }
+   }
+   
+   
+   public int getProjectCount()
+   {
+      return nProjects;
+   }
+   
+   
+   public int getSubjectCount()
+   {
+      return nProjects * nSubjects;
+   }
+   
+   
+   public int getSessionCount()
+   {
+      return nProjects * nSubjects * nSessions;
+   }
+   
+   
+   public int getScanCount()
+   {
+      return getSessionCount() * nScans;
+   }
+   
+   
+   public int getFileCount()
+   {
+      return getScanCount() * nFiles;
+   }
+   
+   
+   public int getFilesPerScan()
+   {
+      return nFiles;
+   }
+   
+   
+   public List<Project> getProjects()
+   {
+      return Collections.unmodifiableList(projects);
+   }
+   
+   
+   public Project getProject(String id)
+   {
+      return projectMap.get(id);
+   }
+   
+   
+   /**
+    * Look up a subject, as XNAT does, by its ID or by its label within
+    * a project.
+    * @param project the project, or null if the subject is identified by ID
+    * @param idOrLabel the ID or label of the subject
+    * @return the subject, or null if there is no such subject
+    */
+   public Subject getSubject(Project project, String idOrLabel)
+   {
+      Subject subject = subjectMap.get(idOrLabel);
+      if (subject != null) return ((project == null) || (subject.project == project)) ? subject : null;
+      if (project == null) return null;
+      
+      for (Subject s : project.subjects) if (s.label.equals(idOrLabel)) return s;
+      return null;
+   }
+   
+   
+   /**
+    * Look up a session by its ID or by its label within a subject or project.
+    * @param project the project, or null
+    * @param subject the subject, or null
+    * @param idOrLabel the ID or label of the session
+    * @return the session, or null if there is no such session
+    */
+   public Session getSession(Project project, Subject subject, String idOrLabel)
+   {
+      Session session = sessionMap.get(idOrLabel);
+      if (session == null)
+      {
+         List<Subject> candidates = (subject != null) ? Collections.singletonList(subject)
+                                  : (project != null) ? project.subjects
+                                  : Collections.<Subject>emptyList();
+         for (Subject s : candidates)
+            for (Session e : s.sessions)
+               if (e.label.equals(idOrLabel)) session = e;
+      }
+      if (session == null) return null;
+      if ((subject != null) && (session.subject != subject)) return null;
+      if ((project != null) && (session.subject.project != project)) return null;
+      
+      return session;
+   }
+   
+   
+   public List<Session> getSessions()
+   {
+      List<Session> list = new ArrayList<>();
+      for (Project p : projects)
+         for (Subject s : p.subjects) list.addAll(s.sessions);
+      
+      return list;
+   }
+   
+   
+   public List<Scan> getScans()
+   {
+      List<Scan> list = new ArrayList<>();
+      for (Session e : getSessions()) list.addAll(e.scans);
+      
+      return list;
+   }
+   
+   
+   /**
+    * Set the maximum amount of generated DICOM data retained in memory.
+    * Files evicted from the cache are generated again when next requested.
+    * @param maxBytes the maximum size of the cache in bytes
+    */
+   public synchronized void setMaxCacheBytes(long maxBytes)
+   {
+      maxCacheBytes = maxBytes;
+      trimCache();
+   }
+   
+   
+   /**
+    * @param scan the scan
+    * @param index the position of the file in the scan, starting from 0
+    * @return the contents of the DICOM file
+    */
+   public byte[] getFile(Scan scan, int index)
+   {
+      String sopUid = scan.getSopInstanceUid(index);
+      synchronized (this)
+      {
+         byte[] data = fileCache.get(sopUid);
+         if (data != null) return data;
+      }
+      
+      // Generation is done outside the lock, so that concurrent requests
+      // for different files are not serialised. Occasionally, the same file
+      // is generated twice, which is harmless.
+      byte[] data = createDicomFile(scan, index);
+      infoMap.put(sopUid, new FileInfo(data.length, md5(data)));
+      synchronized (this)
+      {
+         if (fileCache.put(sopUid, data) == null) cacheBytes += data.length;
+         trimCache();
+      }
+      
+      return data;
+   }
+   
+   
+   /**
+    * @param scan the scan
+    * @param index the position of the file in the scan, starting from 0
+    * @return the size and digest of the file, generating it if necessary
+    */
+   public FileInfo getFileInfo(Scan scan, int index)
+   {
+      FileInfo info = infoMap.get(scan.getSopInstanceUid(index));
+      if (info != null) return info;
+      
+      getFile(scan, index);
+      return infoMap.get(scan.getSopInstanceUid(index));
+   }
+   
+   
+   private void trimCache()
+   {
+      Iterator<byte[]> it = fileCache.values().iterator();
+      while ((cacheBytes > maxCacheBytes) && it.hasNext())
+      {
+         cacheBytes -= it.next().length;
+         it.remove();
+      }
+   }
+   
+   
+   /**
+    * Generate an MR image with the attributes needed to place it in the
+    * patient, study and series hierarchy. The pixel data are a simple
+    * pattern that varies from slice to slice, so that the files do not
+    * compress unrealistically well.
+    */
+   private byte[] createDicomFile(Scan scan, int index)
+   {
+      Session session = scan.session;
+      Subject subject = session.subject;
+      
+      DicomObject dcm = new BasicDicomObject();
+      dcm.putString(Tag.SOPClassUID,             VR.UI, UID.MRImageStorage);
+      dcm.putString(Tag.SOPInstanceUID,          VR.UI, scan.getSopInstanceUid(index));
+      dcm.putString(Tag.StudyInstanceUID,        VR.UI, session.uid);
+      dcm.putString(Tag.SeriesInstanceUID,       VR.UI, scan.uid);
+      dcm.putString(Tag.FrameOfReferenceUID,     VR.UI, uid("frame:" + scan.uid));
+      dcm.putString(Tag.Modality,                VR.CS, MODALITY);
+      dcm.putString(Tag.PatientName,             VR.PN, subject.label + "^LoadTest");
+      dcm.putString(Tag.PatientID,               VR.LO, subject.label);
+      dcm.putString(Tag.StudyDate,               VR.DA, session.date.replace("-", ""));
+      dcm.putString(Tag.StudyTime,               VR.TM, "120000");
+      dcm.putString(Tag.StudyID,                 VR.SH, session.id);
+      dcm.putString(Tag.AccessionNumber,         VR.SH, session.id);
+      dcm.putString(Tag.StudyDescription,        VR.LO, "Load test");
+      dcm.putString(Tag.SeriesDescription,       VR.LO, scan.type);
+      dcm.putInt(Tag.SeriesNumber,               VR.IS, Integer.parseInt(scan.id));
+      dcm.putInt(Tag.InstanceNumber,             VR.IS, index + 1);
+      dcm.putDoubles(Tag.ImagePositionPatient,   VR.DS, new double[] {0, 0, 2.5*index});
+      dcm.putDoubles(Tag.ImageOrientationPatient, VR.DS, new double[] {1, 0, 0, 0, 1, 0});
+      dcm.putDoubles(Tag.PixelSpacing,           VR.DS, new double[] {1, 1});
+      dcm.putDouble(Tag.SliceThickness,          VR.DS, 2.5);
+      dcm.putInt(Tag.SamplesPerPixel,            VR.US, 1);
+      dcm.putString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+      dcm.putInt(Tag.Rows,                       VR.US, imageSize);
+      dcm.putInt(Tag.Columns,                    VR.US, imageSize);
+      dcm.putInt(Tag.BitsAllocated,              VR.US, 16);
+      dcm.putInt(Tag.BitsStored,                 VR.US, 12);
+      dcm.putInt(Tag.HighBit,                    VR.US, 11);
+      dcm.putInt(Tag.PixelRepresentation,        VR.US, 0);
+      
+      // A disc whose radius changes through the series, with some texture.
+      ByteBuffer bb     = ByteBuffer.allocate(2*imageSize*imageSize);
+      double     c      = imageSize / 2.0;
+      double     radius = imageSize * (0.2 + 0.2 * Math.sin(Math.PI * (index + 1) / (nFiles + 1)));
+      int        seed   = scan.uid.hashCode() + index;
+      for (int j=0; j<imageSize; j++)
+      {
+         for (int i=0; i<imageSize; i++)
+         {
+            double r     = Math.hypot(i - c, j - c);
+            int    noise = ((i * 31 + j * 17 + seed) * 1103515245 >>> 20) & 0x3F;
+            int    value = ((r < radius) ? 2000 : 200) + noise;
+            bb.put((byte) value).put((byte) (value >> 8));
+         }
+      }
+      dcm.putBytes(Tag.PixelData, VR.OW, bb.array());
+      dcm.initFileMetaInformation(UID.ExplicitVRLittleEndian);
+      
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(bb.capacity() + 2048);
+      try (DicomOutputStream dos = new DicomOutputStream(baos))
+      {
+         dos.writeDicomFile(dcm);
+      }
+      catch (IOException exIO)
+      {
+         // Not possible for an in-memory stream.
+         throw new IllegalStateException(exIO);
+      }
+      
+      return baos.toByteArray();
+   }
+   
+   
+   private static String md5(byte[] data)
+   {
+      try
+      {
+         byte[]        digest = MessageDigest.getInstance("MD5").digest(data);
+         StringBuilder sb     = new StringBuilder();
+         for (byte b : digest) sb.append(String.format("%02x", b));
+         
+         return sb.toString();
+      }
+      catch (NoSuchAlgorithmException exNSA)
+      {
+         throw new IllegalStateException("MD5 is always available", exNSA);
+      }
+   }
+   
+   
+   /**
+    * Derive a UID from a name, using the 2.25 root for UIDs made from
+    * UUIDs (ISO/IEC 9834-8), so that the UID is both valid and repeatable.
+    */
+   private static String uid(String name)
+   {
+      UUID       uuid = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+      ByteBuffer bb   = ByteBuffer.allocate(16);
+      bb.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+      
+      return "2.25." + new BigInteger(1, bb.array()).toString();
+   }
+   
+   
+   public static class Project
+   {
+      public final String        id;
+      public final List<Subject> subjects = new ArrayList<>();
+      
+      Project(String id)
+      {
+         this.id = id;
+      }
+   }
+   
+   
+   public static class Subject
+   {
+      public final Project       project;
+      public final String        id;
+      public final String        label;
+      public final List<Session> sessions = new ArrayList<>();
+      
+      Subject(Project project, String id, String label)
+      {
+         this.project = project;
+         this.id      = id;
+         this.label   = label;
+      }
+   }
+   
+   
+   public static class Session
+   {
+      public final Subject    subject;
+      public final String     id;
+      public final String     label;
+      public final String     date;
+      public final String     uid;
+      public final List<Scan> scans = new ArrayList<>();
+      
+      Session(Subject subject, String id, String label, String date)
+      {
+         this.subject = subject;
+         this.id      = id;
+         this.label   = label;
+         this.date    = date;
+         this.uid     = uid("study:" + id);
+      }
+      
+      public Scan getScan(String id)
+      {
+         for (Scan scan : scans) if (scan.id.equals(id)) return scan;
+         return null;
+      }
+   }
+   
+   
+   public class Scan
+   {
+      public final Session session;
+      public final String  id;
+      public final String  type;
+      public final String  uid;
+      private final String[] sopUids;
+      
+      Scan(Session session, String id, String type)
+      {
+         this.session = session;
+         this.id      = id;
+         this.type    = type;
+         this.uid     = uid("series:" + session.id + ":" + id);
+         
+         sopUids = new String[nFiles];
+         for (int i=0; i<nFiles; i++) sopUids[i] = uid("instance:" + session.id + ":" + id + ":" + i);
+      }
+      
+      public int getFileCount()
+      {
+         return nFiles;
+      }
+      
+      public String getSopInstanceUid(int index)
+      {
+         return sopUids[index];
+      }
+      
+      public String getFileName(int index)
+      {
+         return getSopInstanceUid(index) + ".dcm";
+      }
+      
+      /**
+       * @param name the name of a file in the scan's DICOM resource
+       * @return the position of the file in the scan, or -1 if there is
+       * no such file
+       */
+      public int indexOfFile(String name)
+      {
+         for (int i=0; i<nFiles; i++) if (name.equals(sopUids[i] + ".dcm")) return i;
+         return -1;
+      }
+   }
+   
+   
+   public static class FileInfo
+   {
+      public final long   size;
+      public final String digest;
+      
+      FileInfo(long size, String digest)
+      {
+         this.size   = size;
+         this.digest = digest;
+      }
+   }
+}
@@ -11,6 +11,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -18,10 +19,23 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Base for scans of a directory tree. With a thread count greater than one,
+ * files are parsed by a pool of worker threads, which pass their results
+ * through a bounded queue to the scanning thread. Contexts are therefore
+ * always notified on the scanning thread, one item at a time, but in
+ * parallel mode not necessarily in directory order. Subclasses must make
+ * scanFile() thread-safe to support parallel mode.
  *
  * @author jamesd
  * @param <T>
@@ -30,7 +44,11 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 {
 	private static final Logger logger =
 		LoggerFactory.getLogger(AbstractPathScan.class);
+	// Results waiting for the contexts, per worker thread. Small, as parsed
+	// items may be large.
+	private static final int QueueLengthPerThread = 4;
 	private final List<PathScanContext<T>> contexts = new ArrayList<>();
+	private int nThreads = 1;
 	private volatile boolean stopScanning = false;
 
 	@Override
@@ -45,12 +63,29 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 		return Collections.unmodifiableList(contexts);
 	}
 
+	@Override
+	public int getThreadCount()
+	{
+		return nThreads;
+	}
+
 	@Override
 	public boolean removeContext(PathScanContext<T> context)
 	{
 		return contexts.remove(context);
 	}
 
+	@Override
+	public void setThreadCount(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException(
+				"Thread count must be at least one");
+		}
+		this.nThreads = nThreads;
+	}
+
 	@Override
 	public void scan(String path) throws IOException
 	{
@@ -113,14 +148,19 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 		taskMonitor.setMaximum(fileWalker.getFileCount());
 		taskMonitor.setValue(0);
 		logger.info(taskMonitor.getDescription());
-		ContextTreeWalker contextWalker = new ContextTreeWalker(contexts,
-			taskMonitor);
 		Iterator<PathScanContext<T>> iter = contexts.iterator();
 		while (iter.hasNext())
 		{
 			iter.next().notifyScanStart();
 		}
-		walkTree(tree, contextWalker);
+		if (nThreads > 1)
+		{
+			scanParallel(tree, taskMonitor);
+		}
+		else
+		{
+			walkTree(tree, new ContextTreeWalker(contexts, taskMonitor));
+		}
 		iter = contexts.iterator();
 		while (iter.hasNext())
 		{
@@ -163,6 +203,108 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 		}
 	}
 
+	private void notifyItemFound(File file, T item)
+	{
+		if (item == null)
+		{
+			return;
+		}
+		Iterator<PathScanContext<T>> iter = contexts.iterator();
+		while (iter.hasNext())
+		{
+			iter.next().notifyItemFound(file, item);
+		}
+	}
+
+	private void scanParallel(SortedMap<String,List<File>> tree,
+		TaskMonitor taskMonitor) throws IOException
+	{
+		FileListTreeWalker listWalker = new FileListTreeWalker();
+		walkTree(tree, listWalker);
+		List<File> files = listWalker.getFileList();
+		int nWorkers = Math.min(nThreads, files.size());
+		if (nWorkers == 0)
+		{
+			return;
+		}
+		logger.debug("Scanning with {} threads", nWorkers);
+
+		BlockingQueue<ScanResult<T>> queue =
+			new ArrayBlockingQueue<>(QueueLengthPerThread*nWorkers);
+		AtomicInteger nextFile = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(nWorkers,
+			new ScanThreadFactory());
+		for (int i=0; i<nWorkers; i++)
+		{
+			executor.execute(new ScanWorker(files, nextFile, queue));
+		}
+		executor.shutdown();
+
+		// Deliver the results on this thread until every worker has finished.
+		// After cancellation or a failure, the workers stop taking new files
+		// and the results still queued are discarded.
+		Exception failure = null;
+		int nFinished = 0;
+		try
+		{
+			while (nFinished < nWorkers)
+			{
+				ScanResult<T> result = queue.poll(1, TimeUnit.SECONDS);
+				if (result == null)
+				{
+					// Only a worker killed by an Error leaves no end marker
+					if (executor.isTerminated() && queue.isEmpty())
+					{
+						failure = new IOException("Scan worker terminated abnormally");
+						break;
+					}
+					continue;
+				}
+				if (result.file == null)
+				{
+					nFinished++;
+					continue;
+				}
+				if (result.exception != null)
+				{
+					if (failure == null)
+					{
+						failure = result.exception;
+					}
+					stopScanning = true;
+					continue;
+				}
+				if (stopScanning)
+				{
+					continue;
+				}
+				notifyItemFound(result.file, result.item);
+				taskMonitor.setValue(taskMonitor.getValue()+1);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			stopScanning = true;
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Scan interrupted");
+		}
+		finally
+		{
+			if (nFinished < nWorkers)
+			{
+				executor.shutdownNow();
+			}
+		}
+		if (failure instanceof IOException)
+		{
+			throw (IOException) failure;
+		}
+		if (failure instanceof RuntimeException)
+		{
+			throw (RuntimeException) failure;
+		}
+	}
+
 	private void walkTree(SortedMap<String,List<File>> tree, TreeWalker walker)
 		throws IOException
 	{
@@ -220,6 +362,29 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 		}
 	}
 
+	/**
+	 *
+	 */
+	private class FileListTreeWalker implements TreeWalker
+	{
+		private final List<File> fileList = new ArrayList<>();
+
+		public List<File> getFileList()
+		{
+			return fileList;
+		}
+
+		@Override
+		public void onDirectory(File directory) throws IOException
+		{}
+
+		@Override
+		public void onFile(File file) throws IOException
+		{
+			fileList.add(file);
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -245,15 +410,92 @@ public abstract class AbstractPathScan<T> implements PathScan<T>
 		{
 			logger.trace("Scanning file: {}", file.getPath());
 			T item = scanFile(file);
-			if (item != null)
+			notifyItemFound(file, item);
+			taskMonitor.setValue(taskMonitor.getValue()+1);
+		}
+	}
+
+	/*
+	 *	Outcome of scanning one file. A result with no file marks the end of
+	 *	a worker's output.
+	 */
+	private static class ScanResult<T>
+	{
+		private final File file;
+		private final T item;
+		private final Exception exception;
+
+		ScanResult(File file, T item, Exception exception)
+		{
+			this.file = file;
+			this.item = item;
+			this.exception = exception;
+		}
+	}
+
+	/**
+	 *
+	 */
+	private static class ScanThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger nThreads = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "PathScan-"+nThreads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/*
+	 *	Takes files from the shared list until it is exhausted or the scan is
+	 *	stopped, blocking while the queue of results is full.
+	 */
+	private class ScanWorker implements Runnable
+	{
+		private final List<File> files;
+		private final AtomicInteger nextFile;
+		private final BlockingQueue<ScanResult<T>> queue;
+
+		ScanWorker(List<File> files, AtomicInteger nextFile,
+			BlockingQueue<ScanResult<T>> queue)
+		{
+			this.files = files;
+			this.nextFile = nextFile;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run()
+		{
+			try
 			{
-				Iterator<PathScanContext<T>> iter = contexts.iterator();
-				while (iter.hasNext())
+				int idx;
+				while (!stopScanning &&
+					((idx = nextFile.getAndIncrement()) < files.size()))
 				{
-					iter.next().notifyItemFound(file, item);
+					File file = files.get(idx);
+					logger.trace("Scanning file: {}", file.getPath());
+					ScanResult<T> result;
+					try
+					{
+						result = new ScanResult<>(file, scanFile(file), null);
+					}
+					catch (IOException | RuntimeException ex)
+					{
+						result = new ScanResult<>(file, null, ex);
+					}
+					queue.put(result);
 				}
+				queue.put(new ScanResult<T>(null, null, null));
+			}
+			catch (InterruptedException ex)
+			{
+				// The scanning thread has given up waiting for results
+				Thread.currentThread().interrupt();
 			}
-			taskMonitor.setValue(taskMonitor.getValue()+1);
 		}
 	}
 }
@@ -31,6 +31,12 @@ public interface PathScan<T extends Object>
 	 */
 	List<PathScanContext<T>> getContextList();
 
+	/**
+	 * Returns the number of threads used to scan files
+	 * @return
+	 */
+	int getThreadCount();
+
 	/**
 	 *
 	 * @param context
@@ -70,6 +76,14 @@ public interface PathScan<T extends Object>
 	 */
 	void scan(String path, boolean recurse, TaskMonitor taskMonitor) throws IOException;
 
+	/**
+	 * Sets the number of threads used to scan files. With more than one, files
+	 * are parsed concurrently but contexts are still notified on the thread
+	 * calling scan(), one item at a time.
+	 * @param nThreads
+	 */
+	void setThreadCount(int nThreads);
+
 	/**
 	 *
 	 * @param file
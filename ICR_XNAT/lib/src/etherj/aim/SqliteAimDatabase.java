@@ -8,6 +8,7 @@ package etherj.aim;
 import etherj.PathScanContext;
 import etherj.aim.ImageAnnotationCollection.FileUidPair;
 import etherj.db.DatabaseException;
+import etherj.db.ReadConnection;
 import etherj.db.SqliteDatabase;
 import java.io.File;
 import java.io.IOException;
@@ -16,7 +17,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -74,16 +77,18 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 	private static final String IMAGE_INSTANCE_UID = "instUid";
 	private static final String IMAGE_SOP_CLASS_UID = "sopClassUid";
 	// Statements
-	private PreparedStatement selectDicomUidStmt;
-	private PreparedStatement selectIacPkStmt;
-	private PreparedStatement selectIaPkStmt;
-	private PreparedStatement selectImagePkStmt;
-	private PreparedStatement selectMarkupPkStmt;
-	private PreparedStatement selectRefPkStmt;
+	private static final String SELECT_DICOM_UID_SQL = "SELECT DISTINCT "+
+		IAC+"."+IAC_PATH+","+IAC+"."+IAC_UID+
+		" FROM "+REFERENCE+" AS r,"+IA+","+IAC+
+		" WHERE "+
+		"(r."+REFERENCE_STUDY_UID+"=(?) OR r."+REFERENCE_SERIES_UID+"=(?))"+
+		" AND "+IAC+"."+IAC_PK+"="+IA+"."+IA_IACFK+
+		" AND "+IA+"."+IA_PK+"=r."+REFERENCE_IAFK;
 	//
 	private int bufferMax = 256;
 	private final List<ImageAnnotationCollection> iacBuffer = new ArrayList<>();
 	private boolean isScanning = false;
+	private BulkWriter writer;
 
 	public SqliteAimDatabase(String filename) throws DatabaseException
 	{
@@ -102,12 +107,10 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 	@Override
 	public void close() throws DatabaseException
 	{
-		safeClose(selectDicomUidStmt);
-		safeClose(selectIacPkStmt);
-		safeClose(selectIaPkStmt);
-		safeClose(selectImagePkStmt);
-		safeClose(selectMarkupPkStmt);
-		safeClose(selectRefPkStmt);
+		if (writer != null)
+		{
+			writer.close();
+		}
 		super.close();
 	}
 
@@ -162,9 +165,13 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 	public List<FileUidPair> searchDicomUid(String uid) throws DatabaseException
 	{
 		List<FileUidPair> list = new ArrayList<>();
+		ReadConnection reader = null;
 		ResultSet rs = null;
 		try
 		{
+			reader = acquireReader();
+			PreparedStatement selectDicomUidStmt =
+				reader.prepareStatement(SELECT_DICOM_UID_SQL);
 			selectDicomUidStmt.setString(1, uid);
 			selectDicomUidStmt.setString(2, uid);
 			rs = selectDicomUidStmt.executeQuery();
@@ -184,10 +191,16 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 		finally
 		{
 			safeClose(rs);
+			releaseReader(reader);
 		}
 		return list;
 	}
 
+	/**
+	 * Sets the number of items buffered during import before they are
+	 * written and committed as one batch.
+	 * @param length
+	 */
 	public void setImportQueueLength(int length)
 	{
 		if (length < 1)
@@ -214,20 +227,6 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 		}
 	}
 
-	private int getPk(PreparedStatement stmt, String uid) throws SQLException
-	{
-		stmt.setString(1, uid);
-		ResultSet rs = stmt.executeQuery();
-		int pk = 0;
-		if (!rs.isAfterLast())
-		{
-			pk = rs.getInt(1);
-		}
-		rs.close();
-
-		return pk;
-	}
-
 	private void initIndices()
 	{
 		// IAC
@@ -309,221 +308,11 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 		addTableSpec(IMAGE, imageSql);
 	}
 
-	private int insertIa(ImageAnnotation ia, int iacPk) throws SQLException
-	{
-		String uid = ia.getUid();
-		String sql = "INSERT INTO "+IA+"("+IA_IACFK+","+IA_UID+","+IA_COMMENT+","+
-			IA_DATETIME+","+IA_NAME+") "+"VALUES (?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int iaPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, iacPk);
-			stmt.setString(2, uid);
-			stmt.setString(3, ia.getComment());
-			stmt.setString(4, ia.getDateTime());
-			stmt.setString(5, ia.getName());
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			iaPk = rs.getInt(1);
-			logger.debug("IA key {} inserted with PK {}", uid, iaPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return iaPk;
-	}
-
-	private int insertIac(ImageAnnotationCollection iac) throws SQLException
-	{
-		String uid = iac.getUid();
-		String sql = "INSERT INTO "+IAC+"("+IAC_UID+","+IAC_DATETIME+","+
-			IAC_PATH+","+IAC_VERSION+") "+"VALUES (?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int iacPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setString(1, uid);
-			stmt.setString(2, iac.getDateTime());
-			stmt.setString(3, iac.getPath());
-			stmt.setString(4, iac.getAimVersion());
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			iacPk = rs.getInt(1);
-			logger.debug("IAC key {} inserted with PK {}", uid, iacPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return iacPk;
-	}
-
-	private int insertImage(Image image, int refPk) throws SQLException
-	{
-		String uid = image.getInstanceUid();
-		String sql = "INSERT INTO "+IMAGE+"("+IMAGE_REFERENCEFK+","+
-			IMAGE_INSTANCE_UID+","+IMAGE_SOP_CLASS_UID+") "+"VALUES (?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int imagePk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, refPk);
-			stmt.setString(2, image.getInstanceUid());
-			stmt.setString(3, image.getSopClassUid());
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			imagePk = rs.getInt(1);
-			logger.debug("Image key {} inserted with PK {}", uid, imagePk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return imagePk;
-	}
-
-	private int insertMarkup(Markup markup, int iaPk) throws SQLException
-	{
-		String uid = markup.getUid();
-		String markupClass = markup.getClass().getName();
-		String sql = "INSERT INTO "+MARKUP+"("+MARKUP_IAFK+","+MARKUP_UID+","+
-			MARKUP_CLASS+","+MARKUP_DIMENSIONS+","+MARKUP_INCLUDE+","+
-			MARKUP_SHAPE_ID+","+MARKUP_IMAGE_REF_UID+","+MARKUP_REF_FRAME_NUMBER+
-			") VALUES (?,?,?,?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int markupPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, iaPk);
-			stmt.setString(2, uid);
-			stmt.setInt(3, Markup.getClassCode(markupClass));
-			stmt.setInt(4, markup.getDimensionCount());
-			switch (markupClass)
-			{
-				case Markup.TwoDimensionCircle:
-				case Markup.TwoDimensionEllipse:
-				case Markup.TwoDimensionMultiPoint:
-				case Markup.TwoDimensionPoint:
-				case Markup.TwoDimensionPolyline:
-					TwoDimensionGeometricShape shape2D =
-						(TwoDimensionGeometricShape) markup;
-					stmt.setBoolean(5, shape2D.getIncludeFlag());
-					stmt.setInt(6, shape2D.getShapeId());
-					stmt.setString(7, shape2D.getImageReferenceUid());
-					stmt.setInt(8, shape2D.getReferencedFrameNumber());
-					break;
-
-				default:
-					stmt.setBoolean(5, false);
-					stmt.setInt(6, -1);
-					stmt.setString(7, "");
-					stmt.setInt(8, -1);
-					break;
-			}
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			markupPk = rs.getInt(1);
-			logger.debug("Markup key {} inserted with PK {}", uid, markupPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return markupPk;
-	}
-
-	private int insertReference(ImageReference ref, int iaPk) throws SQLException
-	{
-		String uid = ref.getUid();
-		String refClass = ref.getClass().getName();
-		String sql = "INSERT INTO "+REFERENCE+"("+REFERENCE_IAFK+","+REFERENCE_UID+","+
-			REFERENCE_CLASS+","+REFERENCE_MODALITY_CODE+","+REFERENCE_SERIES_UID+","+
-			REFERENCE_STUDY_START_DATE+","+REFERENCE_STUDY_START_TIME+","+
-			REFERENCE_STUDY_UID+
-			") VALUES (?,?,?,?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int refPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, iaPk);
-			stmt.setString(2, uid);
-			stmt.setInt(3, ImageReference.getClassCode(refClass));
-			switch (refClass)
-			{
-				case ImageReference.DicomImageReference:
-					DicomImageReference dcmRef = (DicomImageReference) ref;
-					ImageStudy study = dcmRef.getStudy();
-					ImageSeries series = study.getSeries();
-					stmt.setString(4, series.getModality().getCode());
-					stmt.setString(5, series.getInstanceUid());
-					stmt.setString(6, study.getStartDate());
-					stmt.setString(7, study.getStartTime());
-					stmt.setString(8, study.getInstanceUid());
-					break;
-
-				default:
-					stmt.setString(4, "");
-					stmt.setString(5, "");
-					stmt.setString(6, "");
-					stmt.setString(7, "");
-					stmt.setString(8, "");
-					break;
-			}
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			refPk = rs.getInt(1);
-			logger.debug("ImageReference key {} inserted with PK {}", uid, refPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return refPk;
-	}
-
 	private void prepareStatements() throws DatabaseException
 	{
 		try
 		{
-			String sql;
-
-			// Primary key searches
-			sql = "SELECT "+IAC_PK+" FROM "+IAC+" WHERE "+IAC_UID+"=(?)";
-			selectIacPkStmt = prepareStatement(sql);
-			sql = "SELECT "+IA_PK+" FROM "+IA+" WHERE "+IA_UID+"=(?)";
-			selectIaPkStmt = prepareStatement(sql);
-			sql = "SELECT "+MARKUP_PK+" FROM "+MARKUP+" WHERE "+MARKUP_UID+"=(?)";
-			selectMarkupPkStmt = prepareStatement(sql);
-			sql = "SELECT "+REFERENCE_PK+" FROM "+REFERENCE+" WHERE "+REFERENCE_UID+"=(?)";
-			selectRefPkStmt = prepareStatement(sql);
-			sql = "SELECT "+IMAGE_PK+" FROM "+IMAGE+" WHERE "+IMAGE_INSTANCE_UID+"=(?)";
-			selectImagePkStmt = prepareStatement(sql);
-
-			// DICOM UID search
-			sql = "SELECT DISTINCT "+IAC+"."+IAC_PATH+","+IAC+"."+IAC_UID+
-				" FROM "+REFERENCE+" AS r,"+IA+","+IAC+
-				" WHERE "+
-				"(r."+REFERENCE_STUDY_UID+"=(?) OR r."+REFERENCE_SERIES_UID+"=(?))"+
-				" AND "+IAC+"."+IAC_PK+"="+IA+"."+IA_IACFK+
-				" AND "+IA+"."+IA_PK+"=r."+REFERENCE_IAFK;
-			selectDicomUidStmt = prepareStatement(sql);
+			writer = new BulkWriter();
 		}
 		catch (SQLException ex)
 		{
@@ -540,35 +329,31 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 			stmt.executeUpdate("BEGIN TRANSACTION");
 			for (ImageAnnotationCollection iac : iacBuffer)
 			{
-				int iacPk = getPk(selectIacPkStmt, iac.getUid());
+				int iacPk = writer.getIacPk(iac.getUid());
 				if (iacPk == 0)
 				{
-					iacPk = insertIac(iac);
+					iacPk = writer.insertIac(iac);
 				}
 				List<ImageAnnotation> iaList = iac.getAnnotationList();
 				for (ImageAnnotation ia : iaList)
 				{
-					int iaPk = getPk(selectIaPkStmt, ia.getUid());
+					int iaPk = writer.getIaPk(ia.getUid());
 					if (iaPk == 0)
 					{
-						iaPk = insertIa(ia, iacPk);
+						iaPk = writer.insertIa(ia, iacPk);
 					}
 					List<Markup> markupList = ia.getMarkupList();
 					for (Markup markup : markupList)
 					{
-						int markupPk = getPk(selectMarkupPkStmt, markup.getUid());
-						if (markupPk == 0)
-						{
-							insertMarkup(markup, iaPk);
-						}
+						writer.addMarkup(markup, iaPk);
 					}
 					List<ImageReference> refList = ia.getReferenceList();
 					for (ImageReference ref : refList)
 					{
-						int refPk = getPk(selectRefPkStmt, ref.getUid());
+						int refPk = writer.getReferencePk(ref.getUid());
 						if (refPk == 0)
 						{
-							refPk = insertReference(ref, iaPk);
+							refPk = writer.insertReference(ref, iaPk);
 						}
 						switch (ref.getClass().getName())
 						{
@@ -578,12 +363,7 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 								List<Image> imageList = series.getImageList();
 								for (Image image : imageList)
 								{
-									int imagePk = getPk(selectImagePkStmt,
-										image.getInstanceUid());
-									if (imagePk == 0)
-									{
-										insertImage(image, refPk);
-									}
+									writer.addImage(image, refPk);
 								}
 								break;
 
@@ -592,12 +372,15 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 					}
 				}
 			}
+			writer.flush();
 			stmt.executeUpdate("COMMIT TRANSACTION");
 			stmt.close();
 		}
 		catch (SQLException exSql)
 		{
 			logger.warn("Rolling back transaction: "+exSql.getMessage());
+			// Cached PKs may refer to rows that no longer exist
+			writer.clear();
 			try
 			{
 				if (stmt != null)
@@ -616,6 +399,10 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 		finally
 		{
 			iacBuffer.clear();
+			if (!isScanning)
+			{
+				writer.clear();
+			}
 		}
 		
 	}
@@ -647,13 +434,222 @@ public class SqliteAimDatabase extends SqliteDatabase implements AimDatabase
 				logger.error("Exception caught", ex);
 			}
 			isScanning = false;
+			writer.clear();
 		}
 
 		@Override
 		public void notifyScanStart()
 		{
 			iacBuffer.clear();
+			writer.clear();
 			isScanning = true;
 		}
 	}
+
+	/*
+	 *	Writes collections with INSERT OR IGNORE. PKs of collections, annotations
+	 * and references are cached for the current import so each is resolved at
+	 * most once, markups and images are batched until flush().
+	 */
+	private class BulkWriter
+	{
+		private final Map<String,Integer> iacPkMap = new HashMap<>();
+		private final Map<String,Integer> iaPkMap = new HashMap<>();
+		private final PreparedStatement insertIacStmt;
+		private final PreparedStatement insertIaStmt;
+		private final PreparedStatement insertImageStmt;
+		private final PreparedStatement insertMarkupStmt;
+		private final PreparedStatement insertRefStmt;
+		private final Map<String,Integer> refPkMap = new HashMap<>();
+		private final PreparedStatement selectIacPkStmt;
+		private final PreparedStatement selectIaPkStmt;
+		private final PreparedStatement selectRefPkStmt;
+
+		BulkWriter() throws SQLException
+		{
+			String sql = "INSERT OR IGNORE INTO "+IAC+"("+IAC_UID+","+
+				IAC_DATETIME+","+IAC_PATH+","+IAC_VERSION+") VALUES (?,?,?,?)";
+			insertIacStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+IA+"("+IA_IACFK+","+IA_UID+","+
+				IA_COMMENT+","+IA_DATETIME+","+IA_NAME+") VALUES (?,?,?,?,?)";
+			insertIaStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+MARKUP+"("+MARKUP_IAFK+","+MARKUP_UID+","+
+				MARKUP_CLASS+","+MARKUP_DIMENSIONS+","+MARKUP_INCLUDE+","+
+				MARKUP_SHAPE_ID+","+MARKUP_IMAGE_REF_UID+","+MARKUP_REF_FRAME_NUMBER+
+				") VALUES (?,?,?,?,?,?,?,?)";
+			insertMarkupStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+REFERENCE+"("+REFERENCE_IAFK+","+
+				REFERENCE_UID+","+REFERENCE_CLASS+","+REFERENCE_MODALITY_CODE+","+
+				REFERENCE_SERIES_UID+","+REFERENCE_STUDY_START_DATE+","+
+				REFERENCE_STUDY_START_TIME+","+REFERENCE_STUDY_UID+
+				") VALUES (?,?,?,?,?,?,?,?)";
+			insertRefStmt = prepareStatement(sql);
+			// Image instance UID isn't a unique column, test for it explicitly
+			sql = "INSERT INTO "+IMAGE+"("+IMAGE_REFERENCEFK+","+
+				IMAGE_INSTANCE_UID+","+IMAGE_SOP_CLASS_UID+") SELECT ?,?,?"+
+				" WHERE NOT EXISTS (SELECT 1 FROM "+IMAGE+" WHERE "+
+				IMAGE_INSTANCE_UID+"=(?))";
+			insertImageStmt = prepareStatement(sql);
+
+			sql = "SELECT "+IAC_PK+" FROM "+IAC+" WHERE "+IAC_UID+"=(?)";
+			selectIacPkStmt = prepareStatement(sql);
+			sql = "SELECT "+IA_PK+" FROM "+IA+" WHERE "+IA_UID+"=(?)";
+			selectIaPkStmt = prepareStatement(sql);
+			sql = "SELECT "+REFERENCE_PK+" FROM "+REFERENCE+" WHERE "+REFERENCE_UID+"=(?)";
+			selectRefPkStmt = prepareStatement(sql);
+		}
+
+		void addImage(Image image, int refPk) throws SQLException
+		{
+			insertImageStmt.setInt(1, refPk);
+			insertImageStmt.setString(2, image.getInstanceUid());
+			insertImageStmt.setString(3, image.getSopClassUid());
+			insertImageStmt.setString(4, image.getInstanceUid());
+			insertImageStmt.addBatch();
+		}
+
+		void addMarkup(Markup markup, int iaPk) throws SQLException
+		{
+			String markupClass = markup.getClass().getName();
+			insertMarkupStmt.setInt(1, iaPk);
+			insertMarkupStmt.setString(2, markup.getUid());
+			insertMarkupStmt.setInt(3, Markup.getClassCode(markupClass));
+			insertMarkupStmt.setInt(4, markup.getDimensionCount());
+			switch (markupClass)
+			{
+				case Markup.TwoDimensionCircle:
+				case Markup.TwoDimensionEllipse:
+				case Markup.TwoDimensionMultiPoint:
+				case Markup.TwoDimensionPoint:
+				case Markup.TwoDimensionPolyline:
+					TwoDimensionGeometricShape shape2D =
+						(TwoDimensionGeometricShape) markup;
+					insertMarkupStmt.setBoolean(5, shape2D.getIncludeFlag());
+					insertMarkupStmt.setInt(6, shape2D.getShapeId());
+					insertMarkupStmt.setString(7, shape2D.getImageReferenceUid());
+					insertMarkupStmt.setInt(8, shape2D.getReferencedFrameNumber());
+					break;
+
+				default:
+					insertMarkupStmt.setBoolean(5, false);
+					insertMarkupStmt.setInt(6, -1);
+					insertMarkupStmt.setString(7, "");
+					insertMarkupStmt.setInt(8, -1);
+					break;
+			}
+			insertMarkupStmt.addBatch();
+		}
+
+		void clear()
+		{
+			iacPkMap.clear();
+			iaPkMap.clear();
+			refPkMap.clear();
+			try
+			{
+				insertImageStmt.clearBatch();
+				insertMarkupStmt.clearBatch();
+			}
+			catch (SQLException exIgnore)
+			{}
+		}
+
+		void close()
+		{
+			clear();
+			safeClose(insertIacStmt);
+			safeClose(insertIaStmt);
+			safeClose(insertImageStmt);
+			safeClose(insertMarkupStmt);
+			safeClose(insertRefStmt);
+			safeClose(selectIacPkStmt);
+			safeClose(selectIaPkStmt);
+			safeClose(selectRefPkStmt);
+		}
+
+		void flush() throws SQLException
+		{
+			insertMarkupStmt.executeBatch();
+			insertImageStmt.executeBatch();
+		}
+
+		int getIacPk(String uid)
+		{
+			Integer pk = iacPkMap.get(uid);
+			return (pk != null) ? pk : 0;
+		}
+
+		int getIaPk(String uid)
+		{
+			Integer pk = iaPkMap.get(uid);
+			return (pk != null) ? pk : 0;
+		}
+
+		int getReferencePk(String uid)
+		{
+			Integer pk = refPkMap.get(uid);
+			return (pk != null) ? pk : 0;
+		}
+
+		int insertIa(ImageAnnotation ia, int iacPk) throws SQLException
+		{
+			String uid = ia.getUid();
+			insertIaStmt.setInt(1, iacPk);
+			insertIaStmt.setString(2, uid);
+			insertIaStmt.setString(3, ia.getComment());
+			insertIaStmt.setString(4, ia.getDateTime());
+			insertIaStmt.setString(5, ia.getName());
+			int iaPk = upsert(insertIaStmt, selectIaPkStmt, uid);
+			iaPkMap.put(uid, iaPk);
+			logger.debug("IA key {} has PK {}", uid, iaPk);
+			return iaPk;
+		}
+
+		int insertIac(ImageAnnotationCollection iac) throws SQLException
+		{
+			String uid = iac.getUid();
+			insertIacStmt.setString(1, uid);
+			insertIacStmt.setString(2, iac.getDateTime());
+			insertIacStmt.setString(3, iac.getPath());
+			insertIacStmt.setString(4, iac.getAimVersion());
+			int iacPk = upsert(insertIacStmt, selectIacPkStmt, uid);
+			iacPkMap.put(uid, iacPk);
+			logger.debug("IAC key {} has PK {}", uid, iacPk);
+			return iacPk;
+		}
+
+		int insertReference(ImageReference ref, int iaPk) throws SQLException
+		{
+			String uid = ref.getUid();
+			String refClass = ref.getClass().getName();
+			insertRefStmt.setInt(1, iaPk);
+			insertRefStmt.setString(2, uid);
+			insertRefStmt.setInt(3, ImageReference.getClassCode(refClass));
+			switch (refClass)
+			{
+				case ImageReference.DicomImageReference:
+					DicomImageReference dcmRef = (DicomImageReference) ref;
+					ImageStudy study = dcmRef.getStudy();
+					ImageSeries series = study.getSeries();
+					insertRefStmt.setString(4, series.getModality().getCode());
+					insertRefStmt.setString(5, series.getInstanceUid());
+					insertRefStmt.setString(6, study.getStartDate());
+					insertRefStmt.setString(7, study.getStartTime());
+					insertRefStmt.setString(8, study.getInstanceUid());
+					break;
+
+				default:
+					insertRefStmt.setString(4, "");
+					insertRefStmt.setString(5, "");
+					insertRefStmt.setString(6, "");
+					insertRefStmt.setString(7, "");
+					insertRefStmt.setString(8, "");
+					break;
+			}
+			int refPk = upsert(insertRefStmt, selectRefPkStmt, uid);
+			refPkMap.put(uid, refPk);
+			logger.debug("ImageReference key {} has PK {}", uid, refPk);
+			return refPk;
+		}
+	}
 }
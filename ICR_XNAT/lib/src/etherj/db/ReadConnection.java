@@ -0,0 +1,81 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only connection borrowed from a {@link SqliteDatabase}'s reader pool.
+ * Prepared statements are cached per connection so repeated searches are
+ * compiled once. A ReadConnection is used by one thread at a time and must
+ * be returned with <code>releaseReader()</code>.
+ */
+public final class ReadConnection
+{
+	private static final Logger logger =
+		LoggerFactory.getLogger(ReadConnection.class);
+	private final Connection connection;
+	private final Map<String,PreparedStatement> stmtMap = new HashMap<>();
+
+	ReadConnection(Connection connection)
+	{
+		this.connection = connection;
+	}
+
+	/**
+	 * Returns a new statement, the caller is responsible for closing it.
+	 * @return
+	 * @throws SQLException
+	 */
+	public Statement createStatement() throws SQLException
+	{
+		return connection.createStatement();
+	}
+
+	/**
+	 * Returns the cached statement for the SQL, preparing it on first use.
+	 * The statement belongs to this connection and must not be closed by the
+	 * caller, only its result sets.
+	 * @param sql
+	 * @return
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException
+	{
+		PreparedStatement stmt = stmtMap.get(sql);
+		if (stmt == null)
+		{
+			stmt = connection.prepareStatement(sql);
+			stmtMap.put(sql, stmt);
+		}
+		return stmt;
+	}
+
+	void close()
+	{
+		try
+		{
+			for (PreparedStatement stmt : stmtMap.values())
+			{
+				stmt.close();
+			}
+			stmtMap.clear();
+			connection.close();
+		}
+		catch (SQLException ex)
+		{
+			logger.warn("Error closing read connection", ex);
+		}
+	}
+
+}
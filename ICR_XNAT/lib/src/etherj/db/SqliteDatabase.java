@@ -20,10 +20,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * The database is opened in WAL journal mode with one connection for
+ * writing and a small pool of read-only connections. Readers see the last
+ * committed state and are neither blocked by, nor block, a long running
+ * import on the writer.
  *
  * @author jamesd
  */
@@ -31,9 +38,19 @@ public class SqliteDatabase
 {
 	private static final Logger logger =
 		LoggerFactory.getLogger(SqliteDatabase.class);
+	private static final int BusyTimeoutMs = 5000;
+	// Negative cache_size is in KiB rather than pages
+	private static final int CacheSizeKiB = 16384;
+	private static final int MaxReaders = 4;
+	// SQLITE_OPEN_READONLY, passed to the driver as the open_mode property
+	private static final String OpenReadOnly = "1";
+	private boolean closed = false;
 	private final Connection connection;
 	private final File file;
+	private final BlockingQueue<ReadConnection> idleReaders =
+		new LinkedBlockingQueue<>();
 	private final Map<String,String> indexSqlMap;
+	private int readerCount = 0;
 	private final List<String> tableNames;
 	private final Map<String,String> tableSqlMap;
 	private final boolean requireFk;
@@ -66,9 +83,9 @@ public class SqliteDatabase
 		this.requireFk = requireFk;
 		try
 		{
-			connection = DriverManager.getConnection(
-				"jdbc:sqlite:"+this.file.getAbsolutePath());
+			connection = DriverManager.getConnection(getUrl());
 			this.checkForeignKeys();
+			this.configureWriter();
 		}
 		catch (SQLException ex)
 		{
@@ -85,6 +102,15 @@ public class SqliteDatabase
 	 */
 	public void close() throws DatabaseException
 	{
+		synchronized (idleReaders)
+		{
+			closed = true;
+			ReadConnection reader;
+			while ((reader = idleReaders.poll()) != null)
+			{
+				reader.close();
+			}
+		}
 		try
 		{
 			if ((connection != null) && (!connection.isClosed()))
@@ -143,6 +169,56 @@ public class SqliteDatabase
 		return false;
 	}
 
+	/**
+	 * Borrows a read-only connection from the pool, opening one if fewer than
+	 * the maximum are open, otherwise waiting for one to be released. Must be
+	 * paired with {@link #releaseReader(etherj.db.ReadConnection)}.
+	 * @return
+	 * @throws SQLException if the database is closed or a connection cannot be
+	 * opened
+	 */
+	protected ReadConnection acquireReader() throws SQLException
+	{
+		ReadConnection reader = idleReaders.poll();
+		if (reader != null)
+		{
+			return reader;
+		}
+		synchronized (idleReaders)
+		{
+			if (closed)
+			{
+				throw new SQLException("Database closed");
+			}
+			if (readerCount < MaxReaders)
+			{
+				reader = openReader();
+				readerCount++;
+				logger.debug("Read connection opened, {} in pool", readerCount);
+				return reader;
+			}
+		}
+		try
+		{
+			while ((reader = idleReaders.poll(1, TimeUnit.SECONDS)) == null)
+			{
+				synchronized (idleReaders)
+				{
+					if (closed)
+					{
+						throw new SQLException("Database closed");
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for read connection", ex);
+		}
+		return reader;
+	}
+
 	/**
 	 *
 	 * @param table 
@@ -213,6 +289,38 @@ public class SqliteDatabase
 		}
 	}
 
+	private void configureWriter() throws DatabaseException
+	{
+		Statement stmt = null;
+		ResultSet rs = null;
+		try
+		{
+			stmt = connection.createStatement();
+			rs = stmt.executeQuery("PRAGMA journal_mode=WAL");
+			String mode = rs.getString(1);
+			rs.close();
+			if (!"wal".equalsIgnoreCase(mode))
+			{
+				// e.g. network file systems, readers may then see SQLITE_BUSY
+				logger.warn("WAL journal unavailable, using: {}", mode);
+			}
+			// NORMAL is durable across application crashes in WAL mode, only
+			// the last commits may be lost on power failure
+			stmt.execute("PRAGMA synchronous=NORMAL");
+			stmt.execute("PRAGMA cache_size=-"+CacheSizeKiB);
+			stmt.execute("PRAGMA busy_timeout="+BusyTimeoutMs);
+		}
+		catch (SQLException ex)
+		{
+			throw new DatabaseException(ex);
+		}
+		finally
+		{
+			safeClose(rs);
+			safeClose(stmt);
+		}
+	}
+
 	private void checkIndices() throws DatabaseException
 	{
 		Statement stmt = null;
@@ -317,11 +425,74 @@ public class SqliteDatabase
 		return connection.createStatement();
 	}
 
+	/**
+	 * Returns a connection to the pool. Null is ignored so this can be called
+	 * unconditionally in a finally block.
+	 * @param reader
+	 */
+	protected void releaseReader(ReadConnection reader)
+	{
+		if (reader == null)
+		{
+			return;
+		}
+		synchronized (idleReaders)
+		{
+			if (closed)
+			{
+				reader.close();
+				return;
+			}
+			idleReaders.offer(reader);
+		}
+	}
+
 	protected PreparedStatement prepareStatement(String sql) throws SQLException
 	{
 		return connection.prepareStatement(sql);
 	}
 
+	/**
+	 * Executes an INSERT OR IGNORE and returns the PK of the new row or, if
+	 * the row already exists, the PK found by selectStmt for the given key.
+	 * insertStmt must have all its parameters set. selectStmt must take the
+	 * key as its only parameter and return the PK in column one.
+	 * INSERT OR IGNORE also ignores constraint violations such as NOT NULL,
+	 * in which case no row exists for the key and an exception is thrown
+	 * rather than returning a PK that callers would cache.
+	 * @param insertStmt
+	 * @param selectStmt
+	 * @param key
+	 * @return the PK
+	 * @throws SQLException if the row was neither inserted nor found
+	 */
+	protected int upsert(PreparedStatement insertStmt,
+		PreparedStatement selectStmt, String key) throws SQLException
+	{
+		ResultSet rs = null;
+		try
+		{
+			if (insertStmt.executeUpdate() == 1)
+			{
+				rs = insertStmt.getGeneratedKeys();
+				return rs.getInt(1);
+			}
+			selectStmt.setString(1, key);
+			rs = selectStmt.executeQuery();
+			int pk = rs.next() ? rs.getInt(1) : 0;
+			if (pk == 0)
+			{
+				throw new SQLException(
+					"Row for key "+key+" was neither inserted nor found");
+			}
+			return pk;
+		}
+		finally
+		{
+			safeClose(rs);
+		}
+	}
+
 	protected void safeClose(ResultSet rs)
 	{
 		try
@@ -428,6 +599,34 @@ public class SqliteDatabase
 		}
 	}
 
+	private String getUrl()
+	{
+		return "jdbc:sqlite:"+file.getAbsolutePath();
+	}
+
+	private ReadConnection openReader() throws SQLException
+	{
+		Properties props = new Properties();
+		props.setProperty("open_mode", OpenReadOnly);
+		Connection readConn = DriverManager.getConnection(getUrl(), props);
+		Statement stmt = null;
+		try
+		{
+			stmt = readConn.createStatement();
+			stmt.execute("PRAGMA query_only=ON");
+			stmt.execute("PRAGMA cache_size=-"+CacheSizeKiB);
+			stmt.execute("PRAGMA busy_timeout="+BusyTimeoutMs);
+		}
+		catch (SQLException ex)
+		{
+			safeClose(stmt);
+			readConn.close();
+			throw ex;
+		}
+		safeClose(stmt);
+		return new ReadConnection(readConn);
+	}
+
 	private String getIndexSql(String indexName)
 	{
 		return indexSqlMap.containsKey(indexName) ? indexSqlMap.get(indexName) : "";
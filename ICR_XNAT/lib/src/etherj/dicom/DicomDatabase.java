@@ -6,6 +6,7 @@
 package etherj.dicom;
 
 import etherj.Displayable;
+import etherj.concurrent.TaskMonitor;
 import etherj.db.DatabaseException;
 import java.io.IOException;
 import java.util.Collection;
@@ -32,6 +33,17 @@ public interface DicomDatabase extends Displayable
 	 */
 	public void importDirectory(String path, boolean recurse) throws IOException;
 
+	/**
+	 * Imports the DICOM files in a directory, reporting progress to the task
+	 * monitor and stopping early if it is cancelled.
+	 * @param path
+	 * @param recurse
+	 * @param taskMonitor
+	 * @throws java.io.IOException
+	 */
+	public void importDirectory(String path, boolean recurse,
+		TaskMonitor taskMonitor) throws IOException;
+
 	/**
 	 *
 	 * @param specification
@@ -39,6 +51,18 @@ public interface DicomDatabase extends Displayable
 	 */
 	public PatientRoot search(SearchSpecification specification);
 
+	/**
+	 * Searches as {@link #search(SearchSpecification)} but only builds the
+	 * hierarchy down to <code>depth</code>, one of SearchCriterion.Study,
+	 * SearchCriterion.Series or SearchCriterion.Instance. Studies returned
+	 * without their series report an empty modality.
+	 * @param specification
+	 * @param depth
+	 * @return
+	 * @throws IllegalArgumentException if depth is not a valid level
+	 */
+	public PatientRoot search(SearchSpecification specification, int depth);
+
 	/**
 	 *
 	 * @param query
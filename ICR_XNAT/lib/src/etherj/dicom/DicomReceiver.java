@@ -48,7 +48,8 @@ public class DicomReceiver implements PathScanContext<DicomObject>
 	@Override
 	public void notifyItemFound(File file, DicomObject dcm)
 	{
-		processSopInst(toolkit.createSopInstance(file, dcm));
+		// Path scans read only the header
+		processSopInst(toolkit.createSopInstance(file, dcm, true));
 	}
 
 	@Override
@@ -315,6 +315,20 @@ public class DicomToolkit
 		return dicomFactory.createSopInstance(file, dcm);
 	}
 
+	/**
+	 *
+	 * @param file
+	 * @param dcm
+	 * @param headerOnly true if dcm was read only as far as the pixel data, in
+	 * which case the whole file is read when the full object is needed
+	 * @return
+	 */
+	public SopInstance createSopInstance(File file, DicomObject dcm,
+		boolean headerOnly)
+	{
+		return dicomFactory.createSopInstance(file, dcm, headerOnly);
+	}
+
 	/**
 	 *
 	 * @param sopInstance
@@ -517,6 +531,16 @@ public class DicomToolkit
 		 */
 		SopInstance createSopInstance(File file, DicomObject dcm);
 
+		/**
+		 *
+		 * @param file
+		 * @param dcm
+		 * @param headerOnly
+		 * @return
+		 */
+		SopInstance createSopInstance(File file, DicomObject dcm,
+			boolean headerOnly);
+
 		/**
 		 *
 		 * @param sopInstance
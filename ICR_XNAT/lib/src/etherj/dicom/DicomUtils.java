@@ -20,6 +20,7 @@ import org.dcm4che2.data.UID;
 import org.dcm4che2.io.DicomCodingException;
 import org.dcm4che2.io.DicomInputStream;
 import org.dcm4che2.io.DicomOutputStream;
+import org.dcm4che2.io.StopTagInputHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +32,7 @@ public class DicomUtils
 {
 	private static final Logger logger = LoggerFactory.getLogger(DicomUtils.class);
 	private static final Set<String> imageSopClasses = new HashSet<>();
+	private static final int NoStopTag = -1;
 
 	static
 	{
@@ -91,7 +93,7 @@ public class DicomUtils
 	 */
 	public static String makePatientKey(SopInstance sopInst)
 	{
-		DicomObject dcm = sopInst.getDicomObject();
+		DicomObject dcm = sopInst.getDicomHeader();
 		String patName = dcm.getString(Tag.PatientName);
 		patName = (patName == null) ? "" : patName.replace(' ', '_');
 		String birthDate = dcm.getString(Tag.PatientBirthDate);
@@ -114,12 +116,49 @@ public class DicomUtils
 	 * @throws IOException
 	 */
 	public static DicomObject readDicomFile(File file) throws IOException
+	{
+		return readDicomFile(file, NoStopTag);
+	}
+
+	/**
+	 * Reads the DICOM file up to, but not including, the PixelData element.
+	 * UIDs and descriptors are all available without paying for the pixel
+	 * data's I/O and heap.
+	 * @param file
+	 * @return the header or null if the file is not DICOM
+	 * @throws IOException
+	 */
+	public static DicomObject readDicomHeader(File file) throws IOException
+	{
+		return readDicomFile(file, Tag.PixelData);
+	}
+
+	/**
+	 * Reads the DICOM file, stopping at the first top level element whose tag
+	 * is greater than or equal to <code>stopTag</code>.
+	 * @param file
+	 * @param stopTag
+	 * @return the partial object or null if the file is not DICOM
+	 * @throws IOException
+	 */
+	public static DicomObject readDicomHeader(File file, int stopTag)
+		throws IOException
+	{
+		return readDicomFile(file, stopTag);
+	}
+
+	private static DicomObject readDicomFile(File file, int stopTag)
+		throws IOException
 	{
 		DicomObject dcm = new BasicDicomObject();
 		DicomInputStream dcmIS = null;
 		try
 		{
 			dcmIS = new DicomInputStream(file);
+			if (stopTag != NoStopTag)
+			{
+				dcmIS.setHandler(new StopTagInputHandler(stopTag));
+			}
 			dcmIS.readDicomObject(dcm, -1);
 		}
 		catch (DicomCodingException exDC)
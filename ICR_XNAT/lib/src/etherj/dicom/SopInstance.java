@@ -24,7 +24,16 @@ public interface SopInstance extends Displayable
 	public void compact();
 
 	/**
-	 *
+	 * Returns the DICOM object, which may have been read without its pixel
+	 * data. Use when only UIDs and descriptors are needed, this never forces
+	 * a full read of the file.
+	 * @return
+	 */
+	public DicomObject getDicomHeader();
+
+	/**
+	 * Returns the complete DICOM object including pixel data, reloading it
+	 * from the file if only the header is held.
 	 * @return
 	 */
 	public DicomObject getDicomObject();
@@ -88,7 +88,7 @@ public class DefaultDicomFactory implements DicomFactory
 	@Override
 	public Patient createPatient(SopInstance sopInst)
 	{
-		DicomObject dcm = sopInst.getDicomObject();
+		DicomObject dcm = sopInst.getDicomHeader();
 		String name = dcm.getString(Tag.PatientName);
 		name = (name == null) ? "" : name.replace(' ', '_');
 		String birthDate = dcm.getString(Tag.PatientBirthDate);
@@ -208,6 +208,13 @@ public class DefaultDicomFactory implements DicomFactory
 		return new DefaultSopInstance(file, dcm);
 	}
 
+	@Override
+	public SopInstance createSopInstance(File file, DicomObject dcm,
+		boolean headerOnly)
+	{
+		return new DefaultSopInstance(file, dcm, false, headerOnly);
+	}
+
 	@Override
 	public Study createStudy(SopInstance sopInst)
 	{
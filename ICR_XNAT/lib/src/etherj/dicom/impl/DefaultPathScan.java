@@ -46,7 +46,7 @@ class DefaultPathScan extends AbstractPathScan<DicomObject>
 		DicomObject dcm = null;
 		try
 		{
-			dcm = DicomUtils.readDicomFile(file);
+			dcm = DicomUtils.readDicomHeader(file);
 		}
 		catch (IOException exIO)
 		{
@@ -242,7 +242,7 @@ class DefaultRoiConverter implements RoiConverter
 				"Referenced series contains no instances. "+
 					"ImageAnnotation. UID: "+ia.getUid());
 		}
-		String refUid = sopInstList.get(0).getDicomObject().getString(
+		String refUid = sopInstList.get(0).getDicomHeader().getString(
 			Tag.FrameOfReferenceUID);
 		if ((refUid == null) || refUid.isEmpty())
 		{
@@ -253,7 +253,7 @@ class DefaultRoiConverter implements RoiConverter
 		Map<String,DicomObject> sopInstDcmMap = new HashMap<>();
 		for (SopInstance sopInst : sopInstList)
 		{
-			sopInstDcmMap.put(sopInst.getUid(), sopInst.getDicomObject());
+			sopInstDcmMap.put(sopInst.getUid(), sopInst.getDicomHeader());
 		}
 		return sopInstDcmMap;
 	}
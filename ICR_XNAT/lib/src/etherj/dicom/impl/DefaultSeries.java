@@ -33,7 +33,7 @@ class DefaultSeries implements Series
 
 	DefaultSeries(SopInstance sopInst)
 	{
-		DicomObject dcm = sopInst.getDicomObject();
+		DicomObject dcm = sopInst.getDicomHeader();
 		if (dcm.contains(Tag.SeriesDescription))
 		{
 			desc = dcm.getString(Tag.SeriesDescription);
@@ -29,6 +29,9 @@ class DefaultSopInstance implements SopInstance
 	private static final Logger logger =
 		LoggerFactory.getLogger(DefaultSopInstance.class);
 	private SoftReference<DicomObject> softDcm;
+	// True if softDcm's target was read to the end of the file, false if it
+	// is a header-only read that stopped before the pixel data
+	private boolean complete = false;
 	private File file;
 	private int frameCount = 0;
 	private String sopClassUid = "";
@@ -46,10 +49,16 @@ class DefaultSopInstance implements SopInstance
 
 	DefaultSopInstance(File file, DicomObject dcm)
 	{
-		this(file, dcm, false);
+		this(file, dcm, false, false);
 	}
 
 	DefaultSopInstance(File file, DicomObject dcm, boolean discard)
+	{
+		this(file, dcm, discard, false);
+	}
+
+	DefaultSopInstance(File file, DicomObject dcm, boolean discard,
+		boolean headerOnly)
 	{
 		this.file = file;
 		if (dcm == null)
@@ -86,6 +95,9 @@ class DefaultSopInstance implements SopInstance
 		else
 		{
 			softDcm = new SoftReference<>(dcm);
+			// Decided by how the object was read, not by whether it has pixel
+			// data, which many complete objects (RTSTRUCT, SR, KOS) lack
+			complete = !headerOnly;
 		}
 	}
 
@@ -94,6 +106,7 @@ class DefaultSopInstance implements SopInstance
 	{
 		softDcm.clear();
 		softDcm = new SoftReference<>(null);
+		complete = false;
 		logger.trace("SOPInstance compacted: {}", file.getPath());
 	}
 
@@ -132,6 +145,12 @@ class DefaultSopInstance implements SopInstance
 			(softDcm.get() == null ? "true" : "false"));
 	}
 
+	@Override
+	public DicomObject getDicomHeader()
+	{
+		return header();
+	}
+
 	@Override
 	public DicomObject getDicomObject()
 	{
@@ -172,7 +191,7 @@ class DefaultSopInstance implements SopInstance
 	public Set<String> getReferencedSopInstanceUidSet()
 	{
 		Set<String> uids = new HashSet<>();
-		DicomObject dcm = this.dcm();
+		DicomObject dcm = header();
 		DicomElement refSq = dcm.get(Tag.ReferencedImageSequence);
 		if (refSq != null)
 		{
@@ -287,12 +306,13 @@ class DefaultSopInstance implements SopInstance
 	protected DicomObject dcm()
 	{
 		DicomObject dcm = softDcm.get();
-		if (dcm == null)
+		if ((dcm == null) || !complete)
 		{
 			try
 			{
 				dcm = DicomUtils.readDicomFile(file);
 				softDcm = new SoftReference<>(dcm);
+				complete = true;
 				logger.trace("Lazy load of SOPInstance: {}", file.getPath());
 			}
 			catch (IOException exIO)
@@ -305,4 +325,26 @@ class DefaultSopInstance implements SopInstance
 		return dcm;
 	}
 
+	protected DicomObject header()
+	{
+		DicomObject dcm = softDcm.get();
+		if (dcm == null)
+		{
+			try
+			{
+				dcm = DicomUtils.readDicomHeader(file);
+				softDcm = new SoftReference<>(dcm);
+				complete = false;
+				logger.trace("Lazy load of SOPInstance header: {}", file.getPath());
+			}
+			catch (IOException exIO)
+			{
+				logger.error(
+					"Cannot reload soft reference target: {}", file.getPath(),
+					exIO);
+			}
+		}
+		return dcm;
+	}
+
 }
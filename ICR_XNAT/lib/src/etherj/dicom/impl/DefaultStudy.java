@@ -37,7 +37,7 @@ class DefaultStudy implements Study
 
 	DefaultStudy(SopInstance sopInst)
 	{
-		DicomObject dcm = sopInst.getDicomObject();
+		DicomObject dcm = sopInst.getDicomHeader();
 		String value = dcm.getString(Tag.AccessionNumber);
 		if (value != null)
 		{
@@ -7,8 +7,10 @@ package etherj.dicom.impl;
 
 import etherj.PathScan;
 import etherj.PathScanContext;
+import etherj.concurrent.TaskMonitor;
 import etherj.dicom.DicomDatabase;
 import etherj.db.DatabaseException;
+import etherj.db.ReadConnection;
 import etherj.db.SqliteDatabase;
 import etherj.dicom.Modality;
 import etherj.dicom.Patient;
@@ -85,18 +87,15 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 	private static final String STUDY_DESC = "desc";
 	private static final String STUDY_ACCESSION = "accession";
 	private static final String STUDY_MODALITY = "modality";
+	private static final String SELECT_INSTANCE_SQL = "SELECT "+INSTANCE_PATH+
+		","+INSTANCE_FRAMES+","+INSTANCE_MODALITY+","+INSTANCE_SOPCLASSUID+","+
+		INSTANCE_NUMBER+","+INSTANCE_SERIESFK+" FROM "+INSTANCE+" WHERE "+
+		INSTANCE_UID+"=(?)";
 	private int bufferMax = 256;
-	private PreparedStatement insertInstStmt;
-	private PreparedStatement insertRefStmt;
+	private int importThreadCount = Runtime.getRuntime().availableProcessors();
 	private boolean isScanning = false;
-	private PreparedStatement selectInstInSeriesStmt;
-	private PreparedStatement selectInstPkStmt;
-	private PreparedStatement selectInstStmt;
-	private PreparedStatement selectPatPkStmt;
-	private PreparedStatement selectSeriesPkStmt;
-	private PreparedStatement selectSeriesStmt;
-	private PreparedStatement selectStudyPkStmt;
 	private final List<SopInstance> sopInstBuffer = new ArrayList<>();
+	private BulkWriter writer;
 
 	SqliteDicomDatabase(String filename) throws DatabaseException
 	{
@@ -115,14 +114,10 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 	@Override
 	public void close() throws DatabaseException
 	{
-		safeClose(insertInstStmt);
-		safeClose(selectInstInSeriesStmt);
-		safeClose(selectInstPkStmt);
-		safeClose(selectInstStmt);
-		safeClose(selectPatPkStmt);
-		safeClose(selectSeriesPkStmt);
-		safeClose(selectSeriesStmt);
-		safeClose(selectStudyPkStmt);
+		if (writer != null)
+		{
+			writer.close();
+		}
 		sopInstBuffer.clear();
 		super.close();
 	}
@@ -164,6 +159,15 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		return bufferMax;
 	}
 
+	/**
+	 * Returns the number of threads used to read files during import
+	 * @return
+	 */
+	public int getImportThreadCount()
+	{
+		return importThreadCount;
+	}
+
 	@Override
 	public void importDirectory(String path) throws IOException
 	{
@@ -172,34 +176,78 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 
 	@Override
 	public void importDirectory(String path, boolean recurse) throws IOException
+	{
+		importDirectory(path, recurse, null);
+	}
+
+	/**
+	 * Files are read on importThreadCount threads but stored in batches of
+	 * importQueueLength by the calling thread, as the connection is not
+	 * shared between threads.
+	 * @param path
+	 * @param recurse
+	 * @param taskMonitor
+	 * @throws IOException 
+	 */
+	@Override
+	public void importDirectory(String path, boolean recurse,
+		TaskMonitor taskMonitor) throws IOException
 	{
 		File targetDir = new File(path);
 		PathScan<DicomObject> pathScan = new DefaultPathScan();
+		pathScan.setThreadCount(importThreadCount);
 		pathScan.addContext(new DicomReceiver());
-		pathScan.scan(targetDir.getAbsolutePath(), recurse);
+		pathScan.scan(targetDir.getAbsolutePath(), recurse, taskMonitor);
 	}
 
 	@Override
 	public PatientRoot search(SearchSpecification spec)
 	{
+		return search(spec, SearchCriterion.Instance);
+	}
+
+	/**
+	 * The hierarchy is fetched in one query per level for the whole result,
+	 * not one query per study and series, and assembled in memory.
+	 * @param spec
+	 * @param depth
+	 * @return 
+	 */
+	@Override
+	public PatientRoot search(SearchSpecification spec, int depth)
+	{
+		switch (depth)
+		{
+			case SearchCriterion.Study:
+			case SearchCriterion.Series:
+			case SearchCriterion.Instance:
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid search depth: "+depth);
+		}
 		DicomToolkit toolkit = DicomToolkit.getToolkit();
 		PatientRoot root = toolkit.createPatientRoot();
+		ReadConnection reader = null;
 		Statement stmt = null;
 		long tick = System.currentTimeMillis();
 		try
 		{
-			String sql = "SELECT "+
+			// Matching studies are selected by their PKs in the series and
+			// instance queries, the subquery is evaluated once by SQLite
+			String fromSql = " FROM "+STUDY+" AS st JOIN "+PATIENT+" AS p"+
+				" ON p."+PATIENT_PK+"=st."+STUDY_PATIENTFK+
+				" JOIN "+SERIES+" AS se ON se."+SERIES_STUDYFK+"=st."+STUDY_PK+
+				processSpec(spec);
+			String sql = "SELECT DISTINCT "+
 				"p."+PATIENT_KEY+","+"p."+PATIENT_NAME+","+"p."+PATIENT_ID+","+
 				"p."+PATIENT_DOB+","+"p."+PATIENT_OTHERID+","+"p."+PATIENT_COMMENTS+","+
 				"st."+STUDY_PK+","+"st."+STUDY_UID+","+"st."+STUDY_ID+","+
 				"st."+STUDY_DATE+","+"st."+STUDY_DESC+","+"st."+STUDY_ACCESSION+","+
-				"st."+STUDY_MODALITY+
-				" FROM "+STUDY+" AS st JOIN "+PATIENT+" AS p"+
-				" ON p."+PATIENT_PK+"=st."+STUDY_PATIENTFK+
-				" JOIN "+SERIES+" AS se ON se."+SERIES_STUDYFK+"=st."+STUDY_PK;
-			sql += processSpec(spec);
-			stmt = createStatement();
+				"st."+STUDY_MODALITY+fromSql;
+			reader = acquireReader();
+			stmt = reader.createStatement();
 			ResultSet rs = stmt.executeQuery(sql);
+			Map<Integer,Study> studyMap = new HashMap<>();
 			while (rs.next())
 			{
 				String patKey = rs.getString(1);
@@ -227,7 +275,18 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 				study.setDescription(rs.getString(11));
 				study.setAccession(rs.getString(12));
 				patient.addStudy(study);
-				fillStudy(study, stuPk);
+				studyMap.put(stuPk, study);
+			}
+			rs.close();
+			if (!studyMap.isEmpty() && (depth != SearchCriterion.Study))
+			{
+				String studyPkSql = "SELECT DISTINCT st."+STUDY_PK+fromSql;
+				Map<Integer,Series> seriesMap = fillStudies(stmt, studyMap,
+					studyPkSql);
+				if (!seriesMap.isEmpty() && (depth == SearchCriterion.Instance))
+				{
+					fillSeries(stmt, seriesMap, studyPkSql);
+				}
 			}
 			logger.debug("Time taken for query: "+
 				(System.currentTimeMillis()-tick)+"ms");
@@ -239,6 +298,7 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		finally
 		{
 			safeClose(stmt);
+			releaseReader(reader);
 		}
 		return root;
 	}
@@ -277,18 +337,20 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 	public SopInstance searchInstance(String uid) throws DatabaseException
 	{
 		SopInstance sopInst = null;
+		ReadConnection reader = null;
 		Statement stmt = null;
 		ResultSet rs = null;
 		try
 		{
-			InstanceKeyPair ikp = getInstance(uid);
+			reader = acquireReader();
+			InstanceKeyPair ikp = getInstance(reader, uid);
 			sopInst = ikp.sopInstance;
 			if (sopInst == null)
 			{
 				return sopInst;
 			}
 			int seriesFk = ikp.key;
-			stmt = createStatement();
+			stmt = reader.createStatement();
 			String seriesSql = "SELECT "+SERIES_UID+","+SERIES_STUDYFK+" FROM "+
 				SERIES+" WHERE "+SERIES_PK+"="+seriesFk;
 			rs = stmt.executeQuery(seriesSql);
@@ -316,6 +378,7 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		{
 			safeClose(rs);
 			safeClose(stmt);
+			releaseReader(reader);
 		}
 
 		return sopInst;
@@ -338,11 +401,13 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 			"=se."+SERIES_PK+" JOIN "+STUDY+" AS st ON se."+SERIES_STUDYFK+
 			"=st."+STUDY_PK;
 		sql += processSpec(spec);
+		ReadConnection reader = null;
 		Statement stmt = null;
 		ResultSet rs = null;
 		try
 		{
-			stmt = createStatement();
+			reader = acquireReader();
+			stmt = reader.createStatement();
 			rs = stmt.executeQuery(sql);
 			while (rs.next())
 			{
@@ -366,6 +431,7 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		{
 			safeClose(rs);
 			safeClose(stmt);
+			releaseReader(reader);
 		}
 	
 		return sopInstList;
@@ -401,6 +467,11 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		return sopInstList;
 	}
 
+	/**
+	 * Sets the number of items buffered during import before they are
+	 * written and committed as one batch.
+	 * @param length
+	 */
 	public void setImportQueueLength(int length)
 	{
 		if (length < 1)
@@ -411,6 +482,21 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		bufferMax = length;
 	}
 
+	/**
+	 * Sets the number of threads used to read files during import. The
+	 * default is the number of available processors.
+	 * @param nThreads
+	 */
+	public void setImportThreadCount(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException(
+				"Thread count must be at least one");
+		}
+		importThreadCount = nThreads;
+	}
+
 	@Override
 	public void shutdown() throws DatabaseException
 	{
@@ -440,44 +526,43 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		{
 			stmt = createStatement();
 			stmt.executeUpdate("BEGIN TRANSACTION");
-			int patPk = getPk(selectPatPkStmt, DicomUtils.makePatientKey(patient));
+			int patPk = writer.getPatientPk(DicomUtils.makePatientKey(patient));
 			if (patPk == 0)
 			{
-				patPk = insertPatient(patient);
+				patPk = writer.insertPatient(patient);
 			}
 			List<Study> studyList = patient.getStudyList();
 			for (Study study : studyList)
 			{
-				int studyPk = getPk(selectStudyPkStmt, study.getUid());
+				int studyPk = writer.getStudyPk(study.getUid());
 				if (studyPk == 0)
 				{
-					studyPk = insertStudy(study, patPk);
+					studyPk = writer.insertStudy(study, patPk);
 				}
 				List<Series> seriesList = study.getSeriesList();
 				for (Series series : seriesList)
 				{
-					int seriesPk = getPk(selectSeriesPkStmt, series.getUid());
+					int seriesPk = writer.getSeriesPk(series.getUid());
 					if (seriesPk == 0)
 					{
-						seriesPk = insertSeries(series, studyPk);
+						seriesPk = writer.insertSeries(series, studyPk);
 					}
 					List<SopInstance> sopInstList = series.getSopInstanceList();
 					for (SopInstance sopInst : sopInstList)
 					{
-						int sopInstPk = getPk(selectInstPkStmt, sopInst.getUid());
-						if (sopInstPk == 0)
-						{
-							insertInstance(sopInst, seriesPk);
-						}
+						writer.addInstance(sopInst, seriesPk);
 					}
 				}
 			}
+			writer.flush();
 			stmt.executeUpdate("COMMIT TRANSACTION");
 			stmt.close();
 		}
 		catch (SQLException ex)
 		{
 			logger.warn("Rolling back transaction: "+ex.getMessage());
+			// Cached PKs may refer to rows that no longer exist
+			writer.clear();
 			try
 			{
 				if (stmt != null)
@@ -493,6 +578,13 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 			}
 			throw new DatabaseException(ex);
 		}
+		finally
+		{
+			if (!isScanning)
+			{
+				writer.clear();
+			}
+		}
 	}
 
 	private String createCriterionSql(SearchCriterion crit)
@@ -712,66 +804,92 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		return sb;
 	}
 
-	private void fillSeries(Series series, int seriesPk)
+	private void fillSeries(Statement stmt, Map<Integer,Series> seriesMap,
+		String studyPkSql) throws SQLException
 	{
 		DicomToolkit toolkit = DicomToolkit.getToolkit();
+		String sql = "SELECT inst."+INSTANCE_SERIESFK+",inst."+INSTANCE_UID+
+			",inst."+INSTANCE_PATH+",inst."+INSTANCE_FRAMES+",inst."+
+			INSTANCE_MODALITY+",inst."+INSTANCE_SOPCLASSUID+",inst."+
+			INSTANCE_NUMBER+" FROM "+INSTANCE+" AS inst JOIN "+SERIES+
+			" AS ser ON inst."+INSTANCE_SERIESFK+"=ser."+SERIES_PK+
+			" WHERE ser."+SERIES_STUDYFK+" IN ("+studyPkSql+")";
+		ResultSet rs = null;
 		try
 		{
-			selectInstInSeriesStmt.setInt(1, seriesPk);
-			ResultSet rs = selectInstInSeriesStmt.executeQuery();
+			rs = stmt.executeQuery(sql);
 			while (rs.next())
 			{
-				String path = rs.getString(2);
+				Series series = seriesMap.get(rs.getInt(1));
+				if (series == null)
+				{
+					continue;
+				}
+				String path = rs.getString(3);
 				SopInstance sopInst = toolkit.createSopInstance(new File(path));
-				sopInst.setUid(rs.getString(1));
-				sopInst.setNumberOfFrames(rs.getInt(3));
-				sopInst.setModality(Modality.string(rs.getLong(4)));
-				sopInst.setSopClassUid(rs.getString(5));
-				sopInst.setInstanceNumber(rs.getInt(6));
+				sopInst.setUid(rs.getString(2));
+				sopInst.setNumberOfFrames(rs.getInt(4));
+				sopInst.setModality(Modality.string(rs.getLong(5)));
+				sopInst.setSopClassUid(rs.getString(6));
+				sopInst.setInstanceNumber(rs.getInt(7));
 				sopInst.setSeriesUid(series.getUid());
 				sopInst.setStudyUid(series.getStudyUid());
 				series.addSopInstance(sopInst);
 			}
 		}
-		catch (SQLException ex)
+		finally
 		{
-			logger.error("Exception caught", ex);
+			safeClose(rs);
 		}
 	}
 
-	private void fillStudy(Study study, int stuPk)
+	private Map<Integer,Series> fillStudies(Statement stmt,
+		Map<Integer,Study> studyMap, String studyPkSql) throws SQLException
 	{
 		DicomToolkit toolkit = DicomToolkit.getToolkit();
+		Map<Integer,Series> seriesMap = new HashMap<>();
+		String sql = "SELECT ser."+SERIES_PK+",ser."+SERIES_STUDYFK+",ser."+
+			SERIES_UID+",ser."+SERIES_DESC+",ser."+SERIES_NUMBER+",ser."+
+			SERIES_MODALITY+",ser."+SERIES_TIME+" FROM "+SERIES+" AS ser"+
+			" WHERE ser."+SERIES_STUDYFK+" IN ("+studyPkSql+")";
+		ResultSet rs = null;
 		try
 		{
-			selectSeriesStmt.setInt(1, stuPk);
-			ResultSet rs = selectSeriesStmt.executeQuery();
+			rs = stmt.executeQuery(sql);
 			while (rs.next())
 			{
-				int seriesPk = rs.getInt(1);
-				Series series = toolkit.createSeries(rs.getString(2));
-				series.setDescription(rs.getString(3));
-				series.setNumber(rs.getInt(4));
-				series.setModality(Modality.string(rs.getLong(5)));
-				series.setTime(rs.getDouble(6));
+				Study study = studyMap.get(rs.getInt(2));
+				if (study == null)
+				{
+					continue;
+				}
+				Series series = toolkit.createSeries(rs.getString(3));
+				series.setDescription(rs.getString(4));
+				series.setNumber(rs.getInt(5));
+				series.setModality(Modality.string(rs.getLong(6)));
+				series.setTime(rs.getDouble(7));
 				series.setStudyUid(study.getUid());
 				study.addSeries(series);
-				fillSeries(series, seriesPk);
+				seriesMap.put(rs.getInt(1), series);
 			}
 		}
-		catch (SQLException ex)
+		finally
 		{
-			logger.error("Exception caught", ex);
+			safeClose(rs);
 		}
+		return seriesMap;
 	}
 
-	private InstanceKeyPair getInstance(String uid) throws SQLException
+	private InstanceKeyPair getInstance(ReadConnection reader, String uid)
+		throws SQLException
 	{
 		InstanceKeyPair result = new InstanceKeyPair();
 		DicomToolkit toolkit = DicomToolkit.getToolkit();
 		ResultSet rs = null;
 		try
 		{
+			PreparedStatement selectInstStmt =
+				reader.prepareStatement(SELECT_INSTANCE_SQL);
 			selectInstStmt.setString(1, uid);
 			rs = selectInstStmt.executeQuery();
 			if (rs.isAfterLast())
@@ -797,187 +915,6 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		return result;
 	}
 
-	private int getPk(PreparedStatement stmt, String uid) throws SQLException
-	{
-		stmt.setString(1, uid);
-		ResultSet rs = stmt.executeQuery();
-		int pk = 0;
-		if (!rs.isAfterLast())
-		{
-			pk = rs.getInt(1);
-		}
-		rs.close();
-
-		return pk;
-	}
-
-	private int insertInstance(SopInstance sopInst, int seriesFk) throws SQLException
-	{
-		String uid = sopInst.getUid();
-		ResultSet rs = null;
-		int sopInstPk = 0;
-		try
-		{
-			insertInstStmt.setInt(1, seriesFk);
-			insertInstStmt.setString(2, uid);
-			insertInstStmt.setString(3, sopInst.getFile().getAbsolutePath());
-			insertInstStmt.setInt(4, sopInst.getNumberOfFrames());
-			insertInstStmt.setLong(5, Modality.bitmask(sopInst.getModality()));
-			insertInstStmt.setString(6, sopInst.getSopClassUid());
-			insertInstStmt.setInt(7, sopInst.getInstanceNumber());
-			insertInstStmt.executeUpdate();
-			rs = insertInstStmt.getGeneratedKeys();
-			sopInstPk = rs.getInt(1);
-			rs.close();
-			Set<String> uids = sopInst.getReferencedSopInstanceUidSet();
-			Iterator<String> iter = uids.iterator();
-			while (iter.hasNext())
-			{
-				insertReference(iter.next(), sopInstPk);
-			}
-		}
-		finally
-		{
-			safeClose(rs);
-		}
-
-		return sopInstPk;
-	}
-
-	private int insertPatient(Patient patient) throws SQLException
-	{
-		String patKey = DicomUtils.makePatientKey(patient);
-		String sql = "INSERT INTO "+PATIENT+"("+PATIENT_KEY+","+PATIENT_NAME+","+
-			PATIENT_ID+","+PATIENT_DOB+","+PATIENT_OTHERID+","+PATIENT_COMMENTS+") "+
-			"VALUES (?,?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int patPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setString(1, patKey);
-			stmt.setString(2, patient.getName());
-			stmt.setString(3, patient.getId());
-			stmt.setInt(4, DicomUtils.dateToInt(patient.getBirthDate()));
-			stmt.setString(5, patient.getOtherId());
-			stmt.setString(6, patient.getComments());
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			patPk = rs.getInt(1);
-			logger.debug("Patient key {} inserted with PK {}", patKey, patPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-		return patPk;
-	}
-
-	private int insertReference(String uid, int instFk) throws SQLException
-	{
-		ResultSet rs = null;
-		int refPk = 0;
-		try
-		{
-			insertRefStmt.setInt(1, instFk);
-			insertRefStmt.setString(2, uid);
-			insertRefStmt.executeUpdate();
-			rs = insertRefStmt.getGeneratedKeys();
-			refPk = rs.getInt(1);
-		}
-		finally
-		{
-			safeClose(rs);
-		}
-
-		return refPk;
-	}
-
-	private int insertSeries(Series series, int studyFk) throws SQLException
-	{
-		String uid = series.getUid();
-		String sql = "INSERT INTO "+SERIES+"("+SERIES_STUDYFK+","+SERIES_UID+","+
-			SERIES_DESC+","+SERIES_NUMBER+","+SERIES_MODALITY+","+SERIES_TIME+") "+
-			"VALUES (?,?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int seriesPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, studyFk);
-			stmt.setString(2, uid);
-			stmt.setString(3, series.getDescription());
-			stmt.setInt(4, series.getNumber());
-			long seModality = Modality.bitmask(series.getModality());
-			stmt.setLong(5, seModality);
-			stmt.setDouble(6, series.getTime());
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			seriesPk = rs.getInt(1);
-			rs.close();
-			stmt.close();
-			// Triggers in SQL can't use variables, have to do update explicitly
-			String stuModSql = "SELECT "+STUDY_MODALITY+" FROM "+STUDY+" WHERE "+
-				STUDY_PK+"="+studyFk;
-			stmt = prepareStatement(stuModSql);
-			rs = stmt.executeQuery();
-			long stuModality = rs.getLong(1);
-			rs.close();
-			stmt.close();
-			if ((stuModality & seModality) == 0L)
-			{
-				String updateSql = "UPDATE "+STUDY+" SET "+STUDY_MODALITY+"="+
-					(seModality | stuModality)+" WHERE "+STUDY_PK+"="+studyFk;
-				stmt = prepareStatement(updateSql);
-			}
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-
-		return seriesPk;
-	}
-
-	private int insertStudy(Study study, int patFk) throws SQLException
-	{
-		String uid = study.getUid();
-		String sql = "INSERT INTO "+STUDY+"("+STUDY_PATIENTFK+","+STUDY_UID+","+
-			STUDY_ID+","+STUDY_DATE+","+STUDY_DESC+","+STUDY_ACCESSION+
-			","+STUDY_MODALITY+") "+
-			"VALUES (?,?,?,?,?,?,?)";
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
-		int studyPk = 0;
-		try
-		{
-			stmt = prepareStatement(sql);
-			stmt.setInt(1, patFk);
-			stmt.setString(2, uid);
-			stmt.setString(3, study.getId());
-			stmt.setInt(4, DicomUtils.dateToInt(study.getDate()));
-			stmt.setString(5, study.getDescription());
-			stmt.setString(6, study.getAccession());
-			// Modality is zero here, inserting series will update it
-			stmt.setLong(7, 0);
-			stmt.execute();
-			rs = stmt.getGeneratedKeys();
-			studyPk = rs.getInt(1);
-			logger.debug("Study UID {} inserted with PK {}", uid, studyPk);
-		}
-		finally
-		{
-			safeClose(rs);
-			safeClose(stmt);
-		}
-
-		return studyPk;
-	}
-
 	private void initIndices()
 	{
 		// Patient
@@ -1068,42 +1005,7 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 	{
 		try
 		{
-			// Instance searches
-			String sql = "INSERT INTO "+INSTANCE+"("+INSTANCE_SERIESFK+","+
-				INSTANCE_UID+","+INSTANCE_PATH+","+INSTANCE_FRAMES+","+
-				INSTANCE_MODALITY+","+INSTANCE_SOPCLASSUID+","+
-				INSTANCE_NUMBER+") "+"VALUES (?,?,?,?,?,?,?)";
-			insertInstStmt = prepareStatement(sql);
-			sql = "SELECT "+INSTANCE_PATH+","+INSTANCE_FRAMES+","+
-				INSTANCE_MODALITY+","+INSTANCE_SOPCLASSUID+","+INSTANCE_NUMBER+","+
-				INSTANCE_SERIESFK+" FROM "+INSTANCE+" WHERE "+INSTANCE_UID+"=(?)";
-			selectInstStmt = prepareStatement(sql);
-			sql = "SELECT "+INSTANCE_UID+","+INSTANCE_PATH+","+
-				INSTANCE_FRAMES+","+INSTANCE_MODALITY+","+INSTANCE_SOPCLASSUID+","+
-				INSTANCE_NUMBER+" FROM "+INSTANCE+" WHERE "+INSTANCE_SERIESFK+"=(?)";
-			selectInstInSeriesStmt = prepareStatement(sql);
-
-			// Primary key searches
-			sql = "SELECT "+INSTANCE_PK+" FROM "+INSTANCE+" WHERE "+
-				INSTANCE_UID+"=(?)";
-			selectInstPkStmt = prepareStatement(sql);
-			sql = "SELECT "+PATIENT_PK+" FROM "+PATIENT+" WHERE "+
-				PATIENT_KEY+"=(?)";
-			selectPatPkStmt = prepareStatement(sql);
-			sql = "SELECT "+STUDY_PK+" FROM "+STUDY+" WHERE "+STUDY_UID+"=(?)";
-			selectStudyPkStmt = prepareStatement(sql);
-			sql = "SELECT "+SERIES_PK+" FROM "+SERIES+" WHERE "+SERIES_UID+"=(?)";
-			selectSeriesPkStmt = prepareStatement(sql);
-
-			// Series search
-			sql = "SELECT "+SERIES_PK+","+SERIES_UID+","+SERIES_DESC+","+
-				SERIES_NUMBER+","+SERIES_MODALITY+","+SERIES_TIME+
-				" FROM "+SERIES+" WHERE "+SERIES_STUDYFK+"=(?)";
-			selectSeriesStmt = prepareStatement(sql);
-
-			sql = "INSERT INTO "+REFERENCE+"("+REFERENCE_INSTANCEFK+","+
-				REFERENCE_UID+") "+"VALUES (?,?)";
-			insertRefStmt = prepareStatement(sql);
+			writer = new BulkWriter();
 		}
 		catch (SQLException ex)
 		{
@@ -1121,33 +1023,33 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 			stmt.executeUpdate("BEGIN TRANSACTION");
 			for (SopInstance sopInst : sopInstBuffer)
 			{
-				if (getPk(selectInstPkStmt, sopInst.getUid()) != 0)
-				{
-					continue;
-				}
-				int patPk = getPk(selectPatPkStmt, DicomUtils.makePatientKey(sopInst));
+				int patPk = writer.getPatientPk(DicomUtils.makePatientKey(sopInst));
 				if (patPk == 0)
 				{
-					patPk = insertPatient(toolkit.createPatient(sopInst));
+					patPk = writer.insertPatient(toolkit.createPatient(sopInst));
 				}
-				int studyPk = getPk(selectStudyPkStmt, sopInst.getStudyUid());
+				int studyPk = writer.getStudyPk(sopInst.getStudyUid());
 				if (studyPk == 0)
 				{
-					studyPk = insertStudy(toolkit.createStudy(sopInst), patPk);
+					studyPk = writer.insertStudy(toolkit.createStudy(sopInst), patPk);
 				}
-				int seriesPk = getPk(selectSeriesPkStmt, sopInst.getSeriesUid());
+				int seriesPk = writer.getSeriesPk(sopInst.getSeriesUid());
 				if (seriesPk == 0)
 				{
-					seriesPk = insertSeries(toolkit.createSeries(sopInst), studyPk);
+					seriesPk = writer.insertSeries(toolkit.createSeries(sopInst),
+						studyPk);
 				}
-				insertInstance(sopInst, seriesPk);
+				writer.addInstance(sopInst, seriesPk);
 			}
+			writer.flush();
 			stmt.executeUpdate("COMMIT TRANSACTION");
 			stmt.close();
 		}
 		catch (SQLException exSql)
 		{
 			logger.warn("Rolling back transaction: "+exSql.getMessage());
+			// Cached PKs may refer to rows that no longer exist
+			writer.clear();
 			try
 			{
 				if (stmt != null)
@@ -1166,6 +1068,10 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 		finally
 		{
 			sopInstBuffer.clear();
+			if (!isScanning)
+			{
+				writer.clear();
+			}
 		}
 	}
 
@@ -1233,7 +1139,8 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 //				{
 //					return;
 //				}
-				storeInstance(toolkit.createSopInstance(file, dcm));
+				// Path scans read only the header
+				storeInstance(toolkit.createSopInstance(file, dcm, true));
 			}
 			catch (DatabaseException ex)
 			{
@@ -1253,16 +1160,208 @@ class SqliteDicomDatabase extends SqliteDatabase implements DicomDatabase
 				logger.error("Exception caught", ex);
 			}
 			isScanning = false;
+			writer.clear();
 		}
 
 		@Override
 		public void notifyScanStart()
 		{
 			sopInstBuffer.clear();
+			writer.clear();
 			isScanning = true;
 		}
 	}
 
+	/*
+	 *	Writes the hierarchy with INSERT OR IGNORE. PKs of patients, studies and
+	 * series are cached for the current import so each is resolved at most
+	 * once, instances and their references are batched until flush().
+	 */
+	private class BulkWriter
+	{
+		private final PreparedStatement insertInstStmt;
+		private final PreparedStatement insertPatStmt;
+		private final PreparedStatement insertRefStmt;
+		private final PreparedStatement insertSeriesStmt;
+		private final PreparedStatement insertStudyStmt;
+		private final Map<String,Integer> patientPkMap = new HashMap<>();
+		private final PreparedStatement selectPatPkStmt;
+		private final PreparedStatement selectSeriesPkStmt;
+		private final PreparedStatement selectStudyPkStmt;
+		private final Map<String,Integer> seriesPkMap = new HashMap<>();
+		private final Map<String,Integer> studyPkMap = new HashMap<>();
+		private final PreparedStatement updateStudyModStmt;
+
+		BulkWriter() throws SQLException
+		{
+			String sql = "INSERT OR IGNORE INTO "+PATIENT+"("+PATIENT_KEY+","+
+				PATIENT_NAME+","+PATIENT_ID+","+PATIENT_DOB+","+PATIENT_OTHERID+","+
+				PATIENT_COMMENTS+") VALUES (?,?,?,?,?,?)";
+			insertPatStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+STUDY+"("+STUDY_PATIENTFK+","+
+				STUDY_UID+","+STUDY_ID+","+STUDY_DATE+","+STUDY_DESC+","+
+				STUDY_ACCESSION+","+STUDY_MODALITY+") VALUES (?,?,?,?,?,?,?)";
+			insertStudyStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+SERIES+"("+SERIES_STUDYFK+","+
+				SERIES_UID+","+SERIES_DESC+","+SERIES_NUMBER+","+SERIES_MODALITY+","+
+				SERIES_TIME+") VALUES (?,?,?,?,?,?)";
+			insertSeriesStmt = prepareStatement(sql);
+			sql = "INSERT OR IGNORE INTO "+INSTANCE+"("+INSTANCE_SERIESFK+","+
+				INSTANCE_UID+","+INSTANCE_PATH+","+INSTANCE_FRAMES+","+
+				INSTANCE_MODALITY+","+INSTANCE_SOPCLASSUID+","+
+				INSTANCE_NUMBER+") VALUES (?,?,?,?,?,?,?)";
+			insertInstStmt = prepareStatement(sql);
+			// The instance FK is resolved by UID so references can be batched
+			// with their instances
+			sql = "INSERT INTO "+REFERENCE+"("+REFERENCE_INSTANCEFK+","+
+				REFERENCE_UID+") SELECT i."+INSTANCE_PK+",? FROM "+INSTANCE+
+				" AS i WHERE i."+INSTANCE_UID+"=(?) AND NOT EXISTS (SELECT 1 FROM "+
+				REFERENCE+" AS r WHERE r."+REFERENCE_INSTANCEFK+"=i."+INSTANCE_PK+
+				" AND r."+REFERENCE_UID+"=(?))";
+			insertRefStmt = prepareStatement(sql);
+			// Triggers in SQL can't use variables, have to do update explicitly
+			sql = "UPDATE "+STUDY+" SET "+STUDY_MODALITY+"=("+STUDY_MODALITY+
+				" | (?)) WHERE "+STUDY_PK+"=(?)";
+			updateStudyModStmt = prepareStatement(sql);
+
+			sql = "SELECT "+PATIENT_PK+" FROM "+PATIENT+" WHERE "+
+				PATIENT_KEY+"=(?)";
+			selectPatPkStmt = prepareStatement(sql);
+			sql = "SELECT "+STUDY_PK+" FROM "+STUDY+" WHERE "+STUDY_UID+"=(?)";
+			selectStudyPkStmt = prepareStatement(sql);
+			sql = "SELECT "+SERIES_PK+" FROM "+SERIES+" WHERE "+SERIES_UID+"=(?)";
+			selectSeriesPkStmt = prepareStatement(sql);
+		}
+
+		void addInstance(SopInstance sopInst, int seriesPk) throws SQLException
+		{
+			String uid = sopInst.getUid();
+			insertInstStmt.setInt(1, seriesPk);
+			insertInstStmt.setString(2, uid);
+			insertInstStmt.setString(3, sopInst.getFile().getAbsolutePath());
+			insertInstStmt.setInt(4, sopInst.getNumberOfFrames());
+			insertInstStmt.setLong(5, Modality.bitmask(sopInst.getModality()));
+			insertInstStmt.setString(6, sopInst.getSopClassUid());
+			insertInstStmt.setInt(7, sopInst.getInstanceNumber());
+			insertInstStmt.addBatch();
+			Set<String> uids = sopInst.getReferencedSopInstanceUidSet();
+			for (String refUid : uids)
+			{
+				insertRefStmt.setString(1, refUid);
+				insertRefStmt.setString(2, uid);
+				insertRefStmt.setString(3, refUid);
+				insertRefStmt.addBatch();
+			}
+		}
+
+		void clear()
+		{
+			patientPkMap.clear();
+			studyPkMap.clear();
+			seriesPkMap.clear();
+			try
+			{
+				insertInstStmt.clearBatch();
+				insertRefStmt.clearBatch();
+			}
+			catch (SQLException exIgnore)
+			{}
+		}
+
+		void close()
+		{
+			clear();
+			safeClose(insertInstStmt);
+			safeClose(insertPatStmt);
+			safeClose(insertRefStmt);
+			safeClose(insertSeriesStmt);
+			safeClose(insertStudyStmt);
+			safeClose(selectPatPkStmt);
+			safeClose(selectSeriesPkStmt);
+			safeClose(selectStudyPkStmt);
+			safeClose(updateStudyModStmt);
+		}
+
+		void flush() throws SQLException
+		{
+			// Instances first, references find their FK by instance UID
+			insertInstStmt.executeBatch();
+			insertRefStmt.executeBatch();
+		}
+
+		int getPatientPk(String key)
+		{
+			Integer pk = patientPkMap.get(key);
+			return (pk != null) ? pk : 0;
+		}
+
+		int getSeriesPk(String uid)
+		{
+			Integer pk = seriesPkMap.get(uid);
+			return (pk != null) ? pk : 0;
+		}
+
+		int getStudyPk(String uid)
+		{
+			Integer pk = studyPkMap.get(uid);
+			return (pk != null) ? pk : 0;
+		}
+
+		int insertPatient(Patient patient) throws SQLException
+		{
+			String patKey = DicomUtils.makePatientKey(patient);
+			insertPatStmt.setString(1, patKey);
+			insertPatStmt.setString(2, patient.getName());
+			insertPatStmt.setString(3, patient.getId());
+			insertPatStmt.setInt(4, DicomUtils.dateToInt(patient.getBirthDate()));
+			insertPatStmt.setString(5, patient.getOtherId());
+			insertPatStmt.setString(6, patient.getComments());
+			int patPk = upsert(insertPatStmt, selectPatPkStmt, patKey);
+			patientPkMap.put(patKey, patPk);
+			logger.debug("Patient key {} has PK {}", patKey, patPk);
+			return patPk;
+		}
+
+		int insertSeries(Series series, int studyFk) throws SQLException
+		{
+			String uid = series.getUid();
+			long seModality = Modality.bitmask(series.getModality());
+			insertSeriesStmt.setInt(1, studyFk);
+			insertSeriesStmt.setString(2, uid);
+			insertSeriesStmt.setString(3, series.getDescription());
+			insertSeriesStmt.setInt(4, series.getNumber());
+			insertSeriesStmt.setLong(5, seModality);
+			insertSeriesStmt.setDouble(6, series.getTime());
+			int seriesPk = upsert(insertSeriesStmt, selectSeriesPkStmt, uid);
+			seriesPkMap.put(uid, seriesPk);
+			if (seModality != 0L)
+			{
+				updateStudyModStmt.setLong(1, seModality);
+				updateStudyModStmt.setInt(2, studyFk);
+				updateStudyModStmt.executeUpdate();
+			}
+			logger.debug("Series UID {} has PK {}", uid, seriesPk);
+			return seriesPk;
+		}
+
+		int insertStudy(Study study, int patFk) throws SQLException
+		{
+			String uid = study.getUid();
+			insertStudyStmt.setInt(1, patFk);
+			insertStudyStmt.setString(2, uid);
+			insertStudyStmt.setString(3, study.getId());
+			insertStudyStmt.setInt(4, DicomUtils.dateToInt(study.getDate()));
+			insertStudyStmt.setString(5, study.getDescription());
+			insertStudyStmt.setString(6, study.getAccession());
+			// Modality is zero here, inserting series will update it
+			insertStudyStmt.setLong(7, 0);
+			int studyPk = upsert(insertStudyStmt, selectStudyPkStmt, uid);
+			studyPkMap.put(uid, studyPk);
+			logger.debug("Study UID {} has PK {}", uid, studyPk);
+			return studyPk;
+		}
+	}
+
 	/*
 	 *	Structure to allow returning multiple values
 	 */
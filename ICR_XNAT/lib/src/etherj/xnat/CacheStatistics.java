@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat;
+
+/**
+ * Immutable snapshot of the usage of a result set cache.
+ */
+public final class CacheStatistics
+{
+	private final long bytes;
+	private final int entries;
+	private final long evictions;
+	private final long expirations;
+	private final long hits;
+	private final long invalidations;
+	private final long misses;
+
+	/**
+	 *
+	 * @param entries
+	 * @param bytes
+	 * @param hits
+	 * @param misses
+	 * @param expirations
+	 * @param evictions
+	 * @param invalidations
+	 */
+	public CacheStatistics(int entries, long bytes, long hits, long misses,
+		long expirations, long evictions, long invalidations)
+	{
+		this.entries = entries;
+		this.bytes = bytes;
+		this.hits = hits;
+		this.misses = misses;
+		this.expirations = expirations;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+	}
+
+	/**
+	 *
+	 * @return the approximate memory used by the cache in bytes
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	public int getEntries()
+	{
+		return entries;
+	}
+
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	public long getExpirations()
+	{
+		return expirations;
+	}
+
+	public double getHitRatio()
+	{
+		long total = hits+misses;
+		return (total == 0) ? 0.0 : (double) hits/total;
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getInvalidations()
+	{
+		return invalidations;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	@Override
+	public String toString()
+	{
+		return entries+" entries, "+bytes+" bytes, "+hits+" hits, "+misses+
+			" misses, "+expirations+" expired, "+evictions+" evicted, "+
+			invalidations+" invalidated";
+	}
+
+}
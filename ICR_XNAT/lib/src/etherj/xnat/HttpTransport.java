@@ -0,0 +1,88 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * HTTP layer used by {@link XnatServerConnection} implementations. Bounds the
+ * number of simultaneous connections to each host and applies the configured
+ * timeouts.
+ */
+public interface HttpTransport
+{
+	/**
+	 * Returns the response body of a connection obtained from this transport.
+	 * Closing the stream returns the connection to the transport.
+	 * @param conn
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream getInputStream(HttpURLConnection conn) throws IOException;
+
+	/**
+	 *
+	 * @return
+	 */
+	public int getConnectTimeout();
+
+	/**
+	 *
+	 * @return
+	 */
+	public long getIdleEvictionTime();
+
+	/**
+	 * Returns the time in ms allowed for waiting for a free connection, zero
+	 * meaning no limit. Transports created by the default factory use a
+	 * finite limit.
+	 * @return
+	 */
+	public int getLeaseTimeout();
+
+	/**
+	 *
+	 * @return
+	 */
+	public int getMaxConnectionsPerHost();
+
+	/**
+	 *
+	 * @return
+	 */
+	public int getReadTimeout();
+
+	/**
+	 * Returns a snapshot of the connection usage for each host contacted.
+	 * @return
+	 */
+	public List<PoolStatistics> getStatistics();
+
+	/**
+	 * Returns an unconnected connection that counts against the limit for its
+	 * host until its input stream is closed or it is released.
+	 * @param url
+	 * @param method
+	 * @return
+	 * @throws PoolExhaustedException if no connection becomes free within the
+	 * lease timeout
+	 * @throws IOException
+	 */
+	public HttpURLConnection openConnection(URL url, String method)
+		throws IOException;
+
+	/**
+	 * Gives back a connection whose input stream will not be read. Has no
+	 * effect if the connection has already been returned.
+	 * @param conn
+	 */
+	public void release(HttpURLConnection conn);
+
+}
@@ -0,0 +1,30 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat;
+
+import java.io.IOException;
+
+/**
+ * Thrown by an {@link HttpTransport} when no connection to a host becomes free
+ * within the lease timeout. This is caused by the client having too many
+ * requests in flight and says nothing about the health of the server.
+ */
+public class PoolExhaustedException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs an instance of
+	 * <code>PoolExhaustedException</code> with the specified detail message.
+	 *
+	 * @param msg the detail message.
+	 */
+	public PoolExhaustedException(String msg)
+	{
+		super(msg);
+	}
+
+}
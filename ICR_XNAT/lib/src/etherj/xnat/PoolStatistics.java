@@ -0,0 +1,101 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat;
+
+/**
+ * Immutable snapshot of the connection usage for one host.
+ */
+public final class PoolStatistics
+{
+	private final String host;
+	private final long idleMillis;
+	private final int leased;
+	private final long leaseTimeouts;
+	private final int maxConnections;
+	private final long maxWaitMillis;
+	private final long totalLeases;
+	private final long totalWaitMillis;
+
+	/**
+	 *
+	 * @param host
+	 * @param maxConnections
+	 * @param leased
+	 * @param totalLeases
+	 * @param totalWaitMillis
+	 * @param maxWaitMillis
+	 * @param leaseTimeouts
+	 * @param idleMillis
+	 */
+	public PoolStatistics(String host, int maxConnections, int leased,
+		long totalLeases, long totalWaitMillis, long maxWaitMillis,
+		long leaseTimeouts, long idleMillis)
+	{
+		this.host = host;
+		this.maxConnections = maxConnections;
+		this.leased = leased;
+		this.totalLeases = totalLeases;
+		this.totalWaitMillis = totalWaitMillis;
+		this.maxWaitMillis = maxWaitMillis;
+		this.leaseTimeouts = leaseTimeouts;
+		this.idleMillis = idleMillis;
+	}
+
+	public int getAvailable()
+	{
+		return maxConnections-leased;
+	}
+
+	public String getHost()
+	{
+		return host;
+	}
+
+	public long getIdleMillis()
+	{
+		return idleMillis;
+	}
+
+	public int getLeased()
+	{
+		return leased;
+	}
+
+	public long getLeaseTimeouts()
+	{
+		return leaseTimeouts;
+	}
+
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	public long getMaxWaitMillis()
+	{
+		return maxWaitMillis;
+	}
+
+	public long getTotalLeases()
+	{
+		return totalLeases;
+	}
+
+	public long getTotalWaitMillis()
+	{
+		return totalWaitMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return host+": "+leased+"/"+maxConnections+" leased, "+totalLeases+
+			" leases, "+((totalLeases == 0) ? 0 : totalWaitMillis/totalLeases)+
+			" ms mean wait, "+maxWaitMillis+" ms max wait, "+leaseTimeouts+
+			" timeouts";
+	}
+
+}
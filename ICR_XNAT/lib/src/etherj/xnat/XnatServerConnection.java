@@ -9,6 +9,8 @@ import etherj.Displayable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.w3c.dom.Document;
 
 /**
@@ -28,6 +30,33 @@ public interface XnatServerConnection extends Closeable, Displayable
 	 */
 	public InputStream get(String command) throws IOException;
 
+	/**
+	 * Asynchronous version of {@link #get(java.lang.String)}. The caller must
+	 * close the stream. A stream that arrives after the future has been
+	 * cancelled is closed automatically.
+	 * @param command
+	 * @return
+	 */
+	public CompletableFuture<InputStream> getAsync(String command);
+
+	/**
+	 *
+	 * @return usage of the result set cache shared by all connections
+	 */
+	public CacheStatistics getCacheStatistics();
+
+	/**
+	 *
+	 * @return the executor running asynchronous requests
+	 */
+	public Executor getExecutor();
+
+	/**
+	 *
+	 * @return the maximum number of asynchronous requests in progress at once
+	 */
+	public int getMaxRequestsInFlight();
+
 	/**
 	 *
 	 * @param command
@@ -69,6 +98,35 @@ public interface XnatServerConnection extends Closeable, Displayable
 	public XnatResultSet getResultSet(String command, String xml) throws
 		IOException, XnatException;
 
+	/**
+	 * Asynchronous version of {@link #getResultSet(java.lang.String)}.
+	 * @param command
+	 * @return
+	 */
+	public CompletableFuture<XnatResultSet> getResultSetAsync(String command);
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getResultSet(java.lang.String, java.lang.String)}.
+	 * @param command
+	 * @param xml
+	 * @return
+	 */
+	public CompletableFuture<XnatResultSet> getResultSetAsync(String command,
+		String xml);
+
+	/**
+	 *
+	 * @return the transport used for all requests on this connection
+	 */
+	public HttpTransport getTransport();
+
+	/**
+	 * Discards all cached result sets for this server and user. Called
+	 * automatically by POSTs other than searches.
+	 */
+	public void invalidateCache();
+
 	public boolean isOpen();
 
 	/**
@@ -94,4 +152,19 @@ public interface XnatServerConnection extends Closeable, Displayable
 	 */
 	public InputStream post(String command, String xml) throws IOException;
 
+	/**
+	 * Sets the executor for asynchronous requests. Any executor may be used,
+	 * including one creating a thread per task.
+	 * @param executor
+	 */
+	public void setExecutor(Executor executor);
+
+	/**
+	 * Sets the maximum number of asynchronous requests in progress at once.
+	 * Further requests are queued, without occupying a thread of the executor,
+	 * until a slot is free.
+	 * @param maxRequests
+	 */
+	public void setMaxRequestsInFlight(int maxRequests);
+
 }
@@ -83,6 +83,39 @@ public class XnatToolkit
 		return xnatFactory.createDataSource(connection);
 	}
 
+	/**
+	 *
+	 * @param maxConnectionsPerHost
+	 * @param connectTimeout
+	 * @param readTimeout
+	 * @param idleEvictionTime
+	 * @return
+	 */
+	public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+		int connectTimeout, int readTimeout, long idleEvictionTime)
+	{
+		return xnatFactory.createHttpTransport(maxConnectionsPerHost,
+			connectTimeout, readTimeout, idleEvictionTime);
+	}
+
+	/**
+	 *
+	 * @param maxConnectionsPerHost
+	 * @param connectTimeout
+	 * @param readTimeout
+	 * @param idleEvictionTime
+	 * @param leaseTimeout time in ms allowed for waiting for a free connection,
+	 * zero meaning no limit
+	 * @return
+	 */
+	public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+		int connectTimeout, int readTimeout, long idleEvictionTime,
+		int leaseTimeout)
+	{
+		return xnatFactory.createHttpTransport(maxConnectionsPerHost,
+			connectTimeout, readTimeout, idleEvictionTime, leaseTimeout);
+	}
+
 	public XnatResultSet createResultSet(Document doc)
 	{
 		return xnatFactory.createResultSet(doc);
@@ -106,6 +139,44 @@ public class XnatToolkit
 		return xnatFactory.createServerConnection(serverUrl, userId, password);
 	}
 
+	public XnatServerConnection createServerConnection(URL serverUrl,
+		String userId, String password, HttpTransport transport)
+		throws XnatException
+	{
+		return xnatFactory.createServerConnection(serverUrl, userId, password,
+			transport);
+	}
+
+	/**
+	 * Returns the transport shared by connections created without one.
+	 * @return
+	 */
+	public HttpTransport getDefaultHttpTransport()
+	{
+		return xnatFactory.getDefaultHttpTransport();
+	}
+
+	/**
+	 * Sets the maximum approximate memory used by the result set cache shared
+	 * by all connections.
+	 * @param maxBytes
+	 */
+	public void setCacheMaxBytes(long maxBytes)
+	{
+		xnatFactory.setCacheMaxBytes(maxBytes);
+	}
+
+	/**
+	 * Sets how long result sets for matching REST commands are cached. Later
+	 * calls override earlier ones for commands matched by both.
+	 * @param commandRegex regular expression matched against the whole command
+	 * @param ttl time-to-live in milliseconds, zero disables caching
+	 */
+	public void setCacheTimeToLive(String commandRegex, long ttl)
+	{
+		xnatFactory.setCacheTimeToLive(commandRegex, ttl);
+	}
+
 	/*
 	 *	Private constructor to prevent direct instantiation
 	 */
@@ -125,6 +196,30 @@ public class XnatToolkit
 		 */
 		public DataSource createDataSource(XnatServerConnection connection);
 
+		/**
+		 *
+		 * @param maxConnectionsPerHost
+		 * @param connectTimeout
+		 * @param readTimeout
+		 * @param idleEvictionTime
+		 * @return
+		 */
+		public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+			int connectTimeout, int readTimeout, long idleEvictionTime);
+
+		/**
+		 *
+		 * @param maxConnectionsPerHost
+		 * @param connectTimeout
+		 * @param readTimeout
+		 * @param idleEvictionTime
+		 * @param leaseTimeout
+		 * @return
+		 */
+		public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+			int connectTimeout, int readTimeout, long idleEvictionTime,
+			int leaseTimeout);
+
 		/**
 		 *
 		 * @param doc
@@ -148,5 +243,37 @@ public class XnatToolkit
 		 */
 		public XnatServerConnection createServerConnection(URL serverUrl,
 			String userId, String password) throws XnatException;
+
+		/**
+		 *
+		 * @param serverUrl
+		 * @param userId
+		 * @param password
+		 * @param transport
+		 * @return
+		 * @throws etherj.xnat.XnatException
+		 */
+		public XnatServerConnection createServerConnection(URL serverUrl,
+			String userId, String password, HttpTransport transport)
+			throws XnatException;
+
+		/**
+		 *
+		 * @return
+		 */
+		public HttpTransport getDefaultHttpTransport();
+
+		/**
+		 *
+		 * @param maxBytes
+		 */
+		public void setCacheMaxBytes(long maxBytes);
+
+		/**
+		 *
+		 * @param commandRegex
+		 * @param ttl
+		 */
+		public void setCacheTimeToLive(String commandRegex, long ttl);
 	}
 }
@@ -6,11 +6,16 @@
 package etherj.xnat.impl;
 
 import etherj.dicom.DataSource;
+import etherj.xnat.HttpTransport;
 import etherj.xnat.XnatException;
 import etherj.xnat.XnatResultSet;
 import etherj.xnat.XnatServerConnection;
 import etherj.xnat.XnatToolkit.XnatFactory;
 import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -23,6 +28,15 @@ public class DefaultXnatFactory implements XnatFactory
 {
 	private static final Logger logger =
 		LoggerFactory.getLogger(DefaultXnatFactory.class);
+	private static final int DefaultConnectTimeout = 5000;
+	private static final long DefaultIdleEvictionTime = 60000;
+	private static final int DefaultLeaseTimeout = 60000;
+	private static final int DefaultMaxConnectionsPerHost = 8;
+	private static final int DefaultReadTimeout = 0;
+
+	private Executor defaultExecutor = null;
+	private HttpTransport defaultTransport = null;
+	private final ResultSetCache resultSetCache = new ResultSetCache();
 
 	@Override
 	public DataSource createDataSource(XnatServerConnection xsc)
@@ -30,6 +44,23 @@ public class DefaultXnatFactory implements XnatFactory
 		return new XnatDataSource(xsc);
 	}
 
+	@Override
+	public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+		int connectTimeout, int readTimeout, long idleEvictionTime)
+	{
+		return new PooledHttpTransport(maxConnectionsPerHost, connectTimeout,
+			readTimeout, idleEvictionTime, DefaultLeaseTimeout);
+	}
+
+	@Override
+	public HttpTransport createHttpTransport(int maxConnectionsPerHost,
+		int connectTimeout, int readTimeout, long idleEvictionTime,
+		int leaseTimeout)
+	{
+		return new PooledHttpTransport(maxConnectionsPerHost, connectTimeout,
+			readTimeout, idleEvictionTime, leaseTimeout);
+	}
+
 	@Override
 	public XnatResultSet createResultSet(Document doc)
 	{
@@ -46,7 +77,73 @@ public class DefaultXnatFactory implements XnatFactory
 	public XnatServerConnection createServerConnection(URL serverUrl,
 		String userId, String password) throws XnatException
 	{
-		return new DefaultXnatServerConnection(serverUrl, userId, password);
+		return new DefaultXnatServerConnection(serverUrl, userId, password,
+			getDefaultHttpTransport(), resultSetCache, getDefaultExecutor());
+	}
+
+	@Override
+	public XnatServerConnection createServerConnection(URL serverUrl,
+		String userId, String password, HttpTransport transport)
+		throws XnatException
+	{
+		return new DefaultXnatServerConnection(serverUrl, userId, password,
+			transport, resultSetCache, getDefaultExecutor());
+	}
+
+	@Override
+	public synchronized HttpTransport getDefaultHttpTransport()
+	{
+		if (defaultTransport == null)
+		{
+			// Only effective if no HTTP connection has been made yet
+			if (System.getProperty("http.maxConnections") == null)
+			{
+				System.setProperty("http.maxConnections",
+					Integer.toString(DefaultMaxConnectionsPerHost));
+			}
+			defaultTransport = new PooledHttpTransport(
+				DefaultMaxConnectionsPerHost, DefaultConnectTimeout,
+				DefaultReadTimeout, DefaultIdleEvictionTime, DefaultLeaseTimeout);
+		}
+		return defaultTransport;
+	}
+
+	/*
+	 *	Shared by all connections, each of which hands a request to the
+	 *	executor only once it holds one of its slots for requests in flight,
+	 *	so the number of threads is bounded by the total number of slots.
+	 */
+	private synchronized Executor getDefaultExecutor()
+	{
+		if (defaultExecutor == null)
+		{
+			defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r,
+						"XnatAsync-"+count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
+	@Override
+	public void setCacheMaxBytes(long maxBytes)
+	{
+		resultSetCache.setMaxBytes(maxBytes);
+	}
+
+	@Override
+	public void setCacheTimeToLive(String commandRegex, long ttl)
+	{
+		resultSetCache.setTimeToLive(commandRegex, ttl);
 	}
 	
 }
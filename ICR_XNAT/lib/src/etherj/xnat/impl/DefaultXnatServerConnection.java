@@ -7,11 +7,13 @@ package etherj.xnat.impl;
 
 import etherj.IoUtils;
 import etherj.codec.Base64;
+import etherj.xnat.CacheStatistics;
+import etherj.xnat.HttpTransport;
 import etherj.xnat.XnatException;
 import etherj.xnat.XnatResultSet;
 import etherj.xnat.XnatServerConnection;
 import etherj.xnat.XnatToolkit;
-import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
@@ -20,6 +22,13 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
@@ -44,10 +53,21 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 	private static final String GET = "GET";
 	private static final String POST = "POST";
 	private static final String REST_JSESSION = "/REST/JSESSION";
+	private static final String REST_SEARCH = "/data/search";
+	private static final int DefaultMaxRequestsInFlight = 4;
+
+	private final ResultSetCache cache;
+	private volatile Executor executor;
+	private final AdjustableSemaphore inFlight =
+		new AdjustableSemaphore(DefaultMaxRequestsInFlight);
+	private int maxRequestsInFlight = DefaultMaxRequestsInFlight;
+	private final Queue<PendingRequest<?>> pending =
+		new ConcurrentLinkedQueue<>();
 
 	private final String password;
 	private String sessionId = null;
 	private final XnatToolkit toolkit = XnatToolkit.getToolkit();
+	private final HttpTransport transport;
 	private final URL url;
 	private final String userId;
 	// Hack to allow self-signed certs. Needs proper handling
@@ -74,12 +94,16 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		}
 	};
 
-	DefaultXnatServerConnection(URL serverUrl, String userId, String password)
+	DefaultXnatServerConnection(URL serverUrl, String userId, String password,
+		HttpTransport transport, ResultSetCache cache, Executor executor)
 		throws XnatException
 	{
 		this.url = serverUrl;
 		this.userId = userId;
 		this.password = password;
+		this.transport = transport;
+		this.cache = cache;
+		this.executor = executor;
 		try
 		{
 			SSLContext sc = SSLContext.getInstance("SSL");
@@ -144,14 +168,50 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		HttpsURLConnection conn;
 		String rest = url.toString()+command;
 		conn = getHttpsConnection(new URL(rest), GET);
-		conn.connect();
+		try
+		{
+			conn.connect();
+			logger.debug("GET "+command+" - Code: {}, Message: {}",
+				conn.getResponseCode(), conn.getResponseMessage());
+
+			return transport.getInputStream(conn);
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			transport.release(conn);
+			throw ex;
+		}
+	}
+
+	@Override
+	public CompletableFuture<InputStream> getAsync(final String command)
+	{
+		return submit(new Callable<InputStream>()
+		{
+			@Override
+			public InputStream call() throws IOException
+			{
+				return get(command);
+			}
+		});
+	}
 
-		logger.debug("GET "+command+" - Code: {}, Message: {}",
-			conn.getResponseCode(), conn.getResponseMessage());
+	@Override
+	public CacheStatistics getCacheStatistics()
+	{
+		return cache.getStatistics();
+	}
 
-		InputStream is = new BufferedInputStream(conn.getInputStream());
+	@Override
+	public Executor getExecutor()
+	{
+		return executor;
+	}
 
-		return is;
+	@Override
+	public synchronized int getMaxRequestsInFlight()
+	{
+		return maxRequestsInFlight;
 	}
 
 	@Override
@@ -171,7 +231,14 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 	public XnatResultSet getResultSet(String command) throws IOException,
 		XnatException
 	{
-		return toolkit.createResultSet(streamToDoc(get(command)));
+		String key = getCacheKey();
+		XnatResultSet resultSet = cache.get(key, command);
+		if (resultSet == null)
+		{
+			resultSet = toolkit.createResultSet(streamToDoc(get(command)));
+			cache.put(key, command, resultSet);
+		}
+		return resultSet;
 	}
 
 	@Override
@@ -181,6 +248,46 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		return toolkit.createResultSet(streamToDoc(post(command, xml)));
 	}
 
+	@Override
+	public CompletableFuture<XnatResultSet> getResultSetAsync(
+		final String command)
+	{
+		return submit(new Callable<XnatResultSet>()
+		{
+			@Override
+			public XnatResultSet call() throws IOException, XnatException
+			{
+				return getResultSet(command);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<XnatResultSet> getResultSetAsync(
+		final String command, final String xml)
+	{
+		return submit(new Callable<XnatResultSet>()
+		{
+			@Override
+			public XnatResultSet call() throws IOException, XnatException
+			{
+				return getResultSet(command, xml);
+			}
+		});
+	}
+
+	@Override
+	public HttpTransport getTransport()
+	{
+		return transport;
+	}
+
+	@Override
+	public void invalidateCache()
+	{
+		cache.invalidate(getCacheKey());
+	}
+
 	@Override
 	public boolean isOpen()
 	{
@@ -193,7 +300,8 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		InputStream is = null;
 		try
 		{
-			sessionId = IoUtils.toString(post(REST_JSESSION));
+			is = post(REST_JSESSION);
+			sessionId = IoUtils.toString(is);
 		}
 		catch (IOException ex)
 		{
@@ -221,24 +329,66 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 	@Override
 	public InputStream post(String command, String xml) throws IOException
 	{
+		if (!command.startsWith(REST_SEARCH) && !command.equals(REST_JSESSION))
+		{
+			// May modify the server so cached listings can't be trusted
+			invalidateCache();
+		}
 		HttpsURLConnection conn;
 		String rest = url.toString()+command;
 		conn = getHttpsConnection(new URL(rest), POST);
-		if (xml != null)
+		try
 		{
-			conn.setDoOutput(true);
-			OutputStreamWriter osw = new OutputStreamWriter(conn.getOutputStream());
-			osw.write(xml);
-			osw.close();
-		}
-		conn.connect();
+			if (xml != null)
+			{
+				conn.setDoOutput(true);
+				OutputStreamWriter osw = new OutputStreamWriter(conn.getOutputStream());
+				osw.write(xml);
+				osw.close();
+			}
+			conn.connect();
+			logger.debug("POST "+command+" - Code: {}, Message: {}",
+				conn.getResponseCode(), conn.getResponseMessage());
 
-		logger.debug("POST "+command+" - Code: {}, Message: {}",
-			conn.getResponseCode(), conn.getResponseMessage());
+			return transport.getInputStream(conn);
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			transport.release(conn);
+			throw ex;
+		}
+	}
 
-		InputStream is = new BufferedInputStream(conn.getInputStream());
+	@Override
+	public void setExecutor(Executor executor)
+	{
+		if (executor == null)
+		{
+			throw new IllegalArgumentException("Executor must not be null");
+		}
+		this.executor = executor;
+	}
 
-		return is;
+	@Override
+	public synchronized void setMaxRequestsInFlight(int maxRequests)
+	{
+		if (maxRequests < 1)
+		{
+			throw new IllegalArgumentException(
+				"At least one request in flight is required");
+		}
+		int delta = maxRequests-maxRequestsInFlight;
+		if (delta > 0)
+		{
+			inFlight.release(delta);
+			dispatch();
+		}
+		else
+		{
+			// Requests already in flight are allowed to finish
+			inFlight.reduce(-delta);
+		}
+		maxRequestsInFlight = maxRequests;
 	}
 
 	private void delete(String command) throws IOException
@@ -246,9 +396,17 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		HttpsURLConnection conn;
 		String rest = url.toString()+command;
 		conn = getHttpsConnection(new URL(rest), DELETE);
-		conn.connect();
-		logger.debug("DELETE - Code: {}, Message: {}", conn.getResponseCode(),
-			conn.getResponseMessage());
+		try
+		{
+			conn.connect();
+			logger.debug("DELETE - Code: {}, Message: {}", conn.getResponseCode(),
+				conn.getResponseMessage());
+			IoUtils.safeClose(transport.getInputStream(conn));
+		}
+		finally
+		{
+			transport.release(conn);
+		}
 	}
 
 	private String getAuthorization()
@@ -257,12 +415,16 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 			new Base64().encodeToString((userId+":"+password).getBytes()).trim();
 	}
 
+	private String getCacheKey()
+	{
+		return url.toString()+" "+userId;
+	}
+
 	private HttpsURLConnection getHttpsConnection(URL restUrl, String type)
 		throws IOException
 	{
 		HttpsURLConnection conn;
-		conn = (HttpsURLConnection) restUrl.openConnection();
-		conn.setRequestMethod(type);
+		conn = (HttpsURLConnection) transport.openConnection(restUrl, type);
 		if (sessionId == null)
 		{
 			conn.setRequestProperty("Authorization", getAuthorization());
@@ -271,10 +433,66 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		{
 			conn.setRequestProperty("Cookie", "JSESSIONID=" + sessionId);
 		}
-		conn.setConnectTimeout(5000);
 		return conn;
 	}
 
+	/*
+	 *	Requests are handed to the executor only once they hold a slot, so a
+	 *	burst of requests waits in the queue rather than in executor threads
+	 */
+	private void dispatch()
+	{
+		while (inFlight.tryAcquire())
+		{
+			final PendingRequest<?> request = pending.poll();
+			if (request == null)
+			{
+				inFlight.release();
+				// A request queued after the poll would otherwise be stranded
+				if (pending.isEmpty())
+				{
+					return;
+				}
+				continue;
+			}
+			try
+			{
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							request.run();
+						}
+						finally
+						{
+							// The slot is held until the response has arrived, a
+							// stream result is then limited only by the transport's
+							// pool
+							inFlight.release();
+							dispatch();
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException ex)
+			{
+				inFlight.release();
+				request.future.completeExceptionally(ex);
+			}
+		}
+	}
+
+	private <T> CompletableFuture<T> submit(Callable<T> callable)
+	{
+		PendingRequest<T> request = new PendingRequest<>(callable);
+		pending.add(request);
+		dispatch();
+		return request.future;
+	}
+
 	private Document streamToDoc(InputStream is) throws IOException, XnatException
 	{
 		Document doc = null;
@@ -288,7 +506,61 @@ public class DefaultXnatServerConnection implements XnatServerConnection
 		{
 			throw new XnatException("Response cannot be parsed.", ex);
 		}
+		finally
+		{
+			IoUtils.safeClose(is);
+		}
 		return doc;
 	}
 
+	private static class PendingRequest<T> implements Runnable
+	{
+		private final Callable<T> callable;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		PendingRequest(Callable<T> callable)
+		{
+			this.callable = callable;
+		}
+
+		@Override
+		public void run()
+		{
+			// Cancelled while waiting for a slot
+			if (future.isDone())
+			{
+				return;
+			}
+			try
+			{
+				T result = callable.call();
+				// Nobody will close a stream delivered after cancellation
+				if (!future.complete(result) && (result instanceof Closeable))
+				{
+					IoUtils.safeClose((Closeable) result);
+				}
+			}
+			catch (Exception ex)
+			{
+				future.completeExceptionally(ex);
+			}
+		}
+	}
+
+	/*
+	 *	Semaphore.reducePermits() is protected
+	 */
+	private static class AdjustableSemaphore extends Semaphore
+	{
+		AdjustableSemaphore(int permits)
+		{
+			super(permits, true);
+		}
+
+		void reduce(int reduction)
+		{
+			reducePermits(reduction);
+		}
+	}
+
 }
@@ -0,0 +1,397 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat.impl;
+
+import etherj.xnat.HttpTransport;
+import etherj.xnat.PoolExhaustedException;
+import etherj.xnat.PoolStatistics;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the number of simultaneous connections to each host. The sockets are
+ * kept alive and reused by the JDK's persistent connection cache, which needs
+ * every response to be read to the end and closed; the streams returned by
+ * {@link #getInputStream(java.net.HttpURLConnection)} do this on close.
+ */
+class PooledHttpTransport implements HttpTransport
+{
+	private static final Logger logger =
+		LoggerFactory.getLogger(PooledHttpTransport.class);
+	// Beyond this many unread bytes it is cheaper to reconnect than to drain
+	private static final int MaxDrainBytes = 65536;
+
+	private final ReferenceQueue<PooledInputStream> abandoned =
+		new ReferenceQueue<>();
+	private final int connectTimeout;
+	private final long idleEvictionTime;
+	private final int leaseTimeout;
+	private final Map<HttpURLConnection,HostPool> leases =
+		new ConcurrentHashMap<>();
+	private final int maxConnectionsPerHost;
+	private final Map<String,HostPool> pools = new HashMap<>();
+	private final int readTimeout;
+	private final Set<StreamReference> references = Collections.newSetFromMap(
+		new ConcurrentHashMap<StreamReference,Boolean>());
+
+	PooledHttpTransport(int maxConnectionsPerHost, int connectTimeout,
+		int readTimeout, long idleEvictionTime, int leaseTimeout)
+	{
+		if (maxConnectionsPerHost < 1)
+		{
+			throw new IllegalArgumentException(
+				"At least one connection per host is required");
+		}
+		if (leaseTimeout < 0)
+		{
+			throw new IllegalArgumentException(
+				"Lease timeout must not be negative");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.idleEvictionTime = idleEvictionTime;
+		this.leaseTimeout = leaseTimeout;
+	}
+
+	@Override
+	public InputStream getInputStream(HttpURLConnection conn) throws IOException
+	{
+		PooledInputStream pis = new PooledInputStream(conn,
+			new BufferedInputStream(conn.getInputStream()));
+		references.add(pis.reference);
+		return pis;
+	}
+
+	@Override
+	public int getConnectTimeout()
+	{
+		return connectTimeout;
+	}
+
+	@Override
+	public long getIdleEvictionTime()
+	{
+		return idleEvictionTime;
+	}
+
+	@Override
+	public int getLeaseTimeout()
+	{
+		return leaseTimeout;
+	}
+
+	@Override
+	public int getMaxConnectionsPerHost()
+	{
+		return maxConnectionsPerHost;
+	}
+
+	@Override
+	public int getReadTimeout()
+	{
+		return readTimeout;
+	}
+
+	@Override
+	public List<PoolStatistics> getStatistics()
+	{
+		List<PoolStatistics> stats = new ArrayList<>();
+		synchronized (pools)
+		{
+			for (HostPool pool : pools.values())
+			{
+				stats.add(pool.getStatistics());
+			}
+		}
+		return stats;
+	}
+
+	@Override
+	public HttpURLConnection openConnection(URL url, String method)
+		throws IOException
+	{
+		HostPool pool = reservePool(url);
+		try
+		{
+			pool.acquire(leaseTimeout);
+		}
+		catch (IOException ex)
+		{
+			pool.unreserve();
+			throw ex;
+		}
+
+		HttpURLConnection conn;
+		try
+		{
+			conn = (HttpURLConnection) url.openConnection();
+			conn.setRequestMethod(method);
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			pool.release();
+			throw ex;
+		}
+		leases.put(conn, pool);
+
+		return conn;
+	}
+
+	@Override
+	public void release(HttpURLConnection conn)
+	{
+		HostPool pool = leases.remove(conn);
+		if (pool == null)
+		{
+			return;
+		}
+		// The body of an error response must be consumed before the socket can
+		// be reused
+		InputStream es = conn.getErrorStream();
+		if (es != null)
+		{
+			drain(es);
+			try
+			{
+				es.close();
+			}
+			catch (IOException ex)
+			{
+				logger.trace("Error closing error stream", ex);
+			}
+		}
+		pool.release();
+	}
+
+	private static void drain(InputStream is)
+	{
+		byte[] buffer = new byte[8192];
+		int total = 0;
+		int n;
+		try
+		{
+			while ((total < MaxDrainBytes) && ((n = is.read(buffer)) != -1))
+			{
+				total += n;
+			}
+		}
+		catch (IOException ex)
+		{
+			logger.trace("Error draining stream", ex);
+		}
+	}
+
+	/*
+	 *	Must hold the lock on pools
+	 */
+	private void evictIdlePools()
+	{
+		long cutoff = System.currentTimeMillis()-idleEvictionTime;
+		Iterator<HostPool> iter = pools.values().iterator();
+		while (iter.hasNext())
+		{
+			HostPool pool = iter.next();
+			if (pool.isIdleSince(cutoff))
+			{
+				logger.debug("Evicting idle pool - {}", pool.getStatistics());
+				iter.remove();
+			}
+		}
+	}
+
+	private void reclaimAbandonedStreams()
+	{
+		StreamReference ref;
+		while ((ref = (StreamReference) abandoned.poll()) != null)
+		{
+			if (references.remove(ref))
+			{
+				logger.warn("Response stream not closed, reclaiming connection");
+				release(ref.conn);
+			}
+		}
+	}
+
+	/*
+	 *	Marks the pool as in use so it can't be evicted between lookup and lease
+	 */
+	private HostPool reservePool(URL url)
+	{
+		int port = (url.getPort() == -1) ? url.getDefaultPort() : url.getPort();
+		String key = url.getProtocol()+"://"+url.getHost()+":"+port;
+
+		reclaimAbandonedStreams();
+		synchronized (pools)
+		{
+			evictIdlePools();
+			HostPool pool = pools.get(key);
+			if (pool == null)
+			{
+				pool = new HostPool(key, maxConnectionsPerHost);
+				pools.put(key, pool);
+			}
+			pool.reserve();
+			return pool;
+		}
+	}
+
+	private static class HostPool
+	{
+		private final String host;
+		private long lastReturned = System.currentTimeMillis();
+		private final AtomicLong leaseTimeouts = new AtomicLong();
+		private final int maxConnections;
+		private long maxWaitMillis = 0;
+		private final Semaphore permits;
+		private final AtomicLong totalLeases = new AtomicLong();
+		private final AtomicLong totalWaitMillis = new AtomicLong();
+		private int users = 0;
+
+		HostPool(String host, int maxConnections)
+		{
+			this.host = host;
+			this.maxConnections = maxConnections;
+			permits = new Semaphore(maxConnections, true);
+		}
+
+		void acquire(int timeout) throws IOException
+		{
+			long start = System.currentTimeMillis();
+			boolean acquired;
+			try
+			{
+				if (timeout == 0)
+				{
+					permits.acquire();
+					acquired = true;
+				}
+				else
+				{
+					acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+					"Interrupted waiting for connection to "+host);
+			}
+			if (!acquired)
+			{
+				leaseTimeouts.incrementAndGet();
+				throw new PoolExhaustedException("No connection to "+host+
+					" became free within "+timeout+"ms");
+			}
+			long wait = System.currentTimeMillis()-start;
+			totalLeases.incrementAndGet();
+			totalWaitMillis.addAndGet(wait);
+			synchronized (this)
+			{
+				maxWaitMillis = Math.max(maxWaitMillis, wait);
+			}
+		}
+
+		synchronized PoolStatistics getStatistics()
+		{
+			return new PoolStatistics(host, maxConnections,
+				maxConnections-permits.availablePermits(), totalLeases.get(),
+				totalWaitMillis.get(), maxWaitMillis, leaseTimeouts.get(),
+				(users == 0) ? System.currentTimeMillis()-lastReturned : 0);
+		}
+
+		synchronized boolean isIdleSince(long time)
+		{
+			return (users == 0) && (lastReturned < time);
+		}
+
+		void release()
+		{
+			permits.release();
+			unreserve();
+		}
+
+		synchronized void reserve()
+		{
+			users++;
+		}
+
+		synchronized void unreserve()
+		{
+			users--;
+			lastReturned = System.currentTimeMillis();
+		}
+	}
+
+	private class PooledInputStream extends FilterInputStream
+	{
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+		private final HttpURLConnection conn;
+		private final StreamReference reference;
+
+		PooledInputStream(HttpURLConnection conn, InputStream is)
+		{
+			super(is);
+			this.conn = conn;
+			reference = new StreamReference(this, conn, abandoned);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (!closed.compareAndSet(false, true))
+			{
+				return;
+			}
+			try
+			{
+				drain(in);
+				in.close();
+			}
+			finally
+			{
+				references.remove(reference);
+				release(conn);
+			}
+		}
+	}
+
+	private static class StreamReference extends PhantomReference<PooledInputStream>
+	{
+		private final HttpURLConnection conn;
+
+		StreamReference(PooledInputStream pis, HttpURLConnection conn,
+			ReferenceQueue<PooledInputStream> queue)
+		{
+			super(pis, queue);
+			this.conn = conn;
+		}
+	}
+
+}
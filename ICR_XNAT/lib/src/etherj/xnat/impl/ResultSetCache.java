@@ -0,0 +1,213 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package etherj.xnat.impl;
+
+import etherj.xnat.CacheStatistics;
+import etherj.xnat.XnatResultSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Memory-bounded cache of result sets keyed by server, user and REST command.
+ * Entries expire after a time-to-live chosen by matching the command against
+ * a list of rules. Result sets are never modified after creation so are
+ * shared between callers without copying.
+ */
+class ResultSetCache
+{
+	static final long DefaultListTtl = 300000;
+	static final long DefaultMaxBytes = 16*1024*1024;
+	static final long DefaultTtl = 60000;
+
+	private long bytes = 0;
+	private long defaultTtl = DefaultTtl;
+	private final LinkedHashMap<String,Entry> entries =
+		new LinkedHashMap<>(256, 0.75f, true);
+	private long evictions = 0;
+	private long expirations = 0;
+	private long hits = 0;
+	private long invalidations = 0;
+	private long maxBytes = DefaultMaxBytes;
+	private long misses = 0;
+	private final List<Rule> rules = new ArrayList<>();
+
+	ResultSetCache()
+	{
+		// Listings change only when data are uploaded
+		setTimeToLive(".*/scans(\\?.*)?", DefaultListTtl);
+		setTimeToLive(".*/resources(\\?.*)?", DefaultListTtl);
+		setTimeToLive(".*/files(\\?.*)?", DefaultListTtl);
+	}
+
+	synchronized XnatResultSet get(String server, String command)
+	{
+		String key = server+" "+command;
+		Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			misses++;
+			return null;
+		}
+		if (System.currentTimeMillis() > entry.expiry)
+		{
+			entries.remove(key);
+			bytes -= entry.size;
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.resultSet;
+	}
+
+	synchronized CacheStatistics getStatistics()
+	{
+		return new CacheStatistics(entries.size(), bytes, hits, misses,
+			expirations, evictions, invalidations);
+	}
+
+	synchronized void invalidate(String server)
+	{
+		String prefix = server+" ";
+		Iterator<Map.Entry<String,Entry>> iter = entries.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			Map.Entry<String,Entry> me = iter.next();
+			if (me.getKey().startsWith(prefix))
+			{
+				bytes -= me.getValue().size;
+				iter.remove();
+				invalidations++;
+			}
+		}
+	}
+
+	synchronized void put(String server, String command,
+		XnatResultSet resultSet)
+	{
+		long ttl = getTimeToLive(command);
+		if ((resultSet == null) || (ttl == 0))
+		{
+			return;
+		}
+		long size = estimateSize(command, resultSet);
+		if (size > maxBytes)
+		{
+			return;
+		}
+		Entry old = entries.put(server+" "+command,
+			new Entry(resultSet, size, System.currentTimeMillis()+ttl));
+		if (old != null)
+		{
+			bytes -= old.size;
+		}
+		bytes += size;
+		evict();
+	}
+
+	synchronized void setDefaultTimeToLive(long ttl)
+	{
+		if (ttl < 0)
+		{
+			throw new IllegalArgumentException(
+				"Time-to-live must not be negative");
+		}
+		defaultTtl = ttl;
+	}
+
+	synchronized void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	// Later rules override earlier ones
+	synchronized void setTimeToLive(String commandRegex, long ttl)
+	{
+		if (ttl < 0)
+		{
+			throw new IllegalArgumentException(
+				"Time-to-live must not be negative");
+		}
+		rules.add(0, new Rule(Pattern.compile(commandRegex), ttl));
+	}
+
+	private long estimateSize(String command, XnatResultSet resultSet)
+	{
+		// Two bytes per char plus String and row overheads
+		long size = 200+2*command.length();
+		int nCols = resultSet.getColumnCount();
+		for (int i=0; i<nCols; i++)
+		{
+			size += 200;
+		}
+		int nRows = resultSet.getRowCount();
+		for (int i=0; i<nRows; i++)
+		{
+			size += 40;
+			for (int j=0; j<nCols; j++)
+			{
+				String cell = resultSet.get(i, j);
+				size += 48+((cell == null) ? 0 : 2*cell.length());
+			}
+		}
+		return size;
+	}
+
+	private void evict()
+	{
+		Iterator<Entry> iter = entries.values().iterator();
+		while ((bytes > maxBytes) && iter.hasNext())
+		{
+			bytes -= iter.next().size;
+			iter.remove();
+			evictions++;
+		}
+	}
+
+	private long getTimeToLive(String command)
+	{
+		for (Rule rule : rules)
+		{
+			if (rule.pattern.matcher(command).matches())
+			{
+				return rule.ttl;
+			}
+		}
+		return defaultTtl;
+	}
+
+	private static class Entry
+	{
+		final long expiry;
+		final XnatResultSet resultSet;
+		final long size;
+
+		Entry(XnatResultSet resultSet, long size, long expiry)
+		{
+			this.resultSet = resultSet;
+			this.size = size;
+			this.expiry = expiry;
+		}
+	}
+
+	private static class Rule
+	{
+		final Pattern pattern;
+		final long ttl;
+
+		Rule(Pattern pattern, long ttl)
+		{
+			this.pattern = pattern;
+			this.ttl = ttl;
+		}
+	}
+
+}
@@ -796,10 +796,12 @@ public class AIMOutput extends XnatUpload
    {
 		
       XNATRESTToolkit     xnrt = new XNATRESTToolkit(xnprf);
-      BufferedInputStream bis;
-      try
+      DicomObject         bdo  = new BasicDicomObject();
+      try (BufferedInputStream bis
+              = new BufferedInputStream(xnrt.RESTGetFileAsStream(RESTCommand)))
       {
-         bis = new BufferedInputStream(xnrt.RESTGetFileAsStream(RESTCommand));
+         // Parsing of the downloaded file is currently disabled (see below),
+         // but the stream must still be closed to release the connection.
       }
       catch (XNATException exXNAT)
       {
@@ -808,7 +810,7 @@ public class AIMOutput extends XnatUpload
                   + exXNAT.getMessage());
          return null;
       }
-      DicomObject bdo     = new BasicDicomObject();
+      catch (IOException exIOignore) {}
 		/*
       boolean     success = false;
       try
@@ -1093,25 +1093,13 @@ public final class MRIWOutput extends XnatUpload
     */
    private DicomObject getDicomObjectFromXNATFile(String RESTCommand, String filename)
    {
-      XNATRESTToolkit     xnrt = new XNATRESTToolkit(xnprf);
-      BufferedInputStream bis;
-      try
-      {
-         bis = new BufferedInputStream(xnrt.RESTGetFileAsStream(RESTCommand));
-      }
-      catch (XNATException exXNAT)
-      {
-         logger.warn("Couldn't download DICOM file " + filename
-                  + " while trying to extract the slice location.\n"
-                  + exXNAT.getMessage());
-         return null;
-      }
-      DicomObject bdo     = new BasicDicomObject();
-      boolean     success = false;
-      try
+      XNATRESTToolkit     xnrt    = new XNATRESTToolkit(xnprf);
+      DicomObject         bdo     = new BasicDicomObject();
+      boolean             success = false;
+      try (BufferedInputStream bis
+              = new BufferedInputStream(xnrt.RESTGetFileAsStream(RESTCommand));
+           DicomInputStream    dis = new DicomInputStream(bis))
       {
-         DicomInputStream  dis = new DicomInputStream(bis);
-
          try
          {
             dis.readDicomObject(bdo, -1);
@@ -1137,11 +1125,13 @@ public final class MRIWOutput extends XnatUpload
                         + filename + ".\n" + e.getMessage());
             return null;
          }
-
-         finally
-         {
-            dis.close();
-         }
+      }
+      catch (XNATException exXNAT)
+      {
+         logger.warn("Couldn't download DICOM file " + filename
+                  + " while trying to extract the slice location.\n"
+                  + exXNAT.getMessage());
+         return null;
       }
       catch (IOException ex)
       {
@@ -0,0 +1,754 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: CacheManager.java
+* First created on Oct 18, 2026 at 3:05 PM
+* 
+* Manage the local cache of files downloaded from XNAT. Every file in
+* the cache is recorded in an on-disk index, together with its size,
+* its MD5 digest and the time at which it was last used. A file is only
+* ever served from the cache if it is present in the index, so that a
+* partial file left behind by an interrupted download can never be
+* mistaken for a valid copy. Files are written to a temporary file
+* alongside their final location and renamed into place only once the
+* size and digest given by the XNAT catalogue have been checked. When
+* the total size of the cache exceeds its quota, the least-recently
+* used files are removed. A partial file is kept after a failed
+* download, so that the transfer can be resumed from where it stopped.
+*********************************************************************/
+
+package fileDownloads;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import xnatRestToolkit.RangedInputStream;
+import xnatRestToolkit.XNATResultSet;
+
+public class CacheManager
+{
+   static  Logger logger = Logger.getLogger(CacheManager.class);
+   
+   public  static final long   DEFAULT_QUOTA      = 10L*1024*1024*1024;
+   public  static final long   MIN_RETENTION_TIME = 60*60*1000;
+   public  static final String INDEX_FILENAME     = ".cacheIndex";
+   public  static final String PARTIAL_SUFFIX     = ".part";
+   public  static final int    RESUME_ATTEMPTS    = 3;
+   
+   private static final Map<String, CacheManager> instances = new HashMap<>();
+   
+   private final File                     cacheDir;
+   private final File                     indexFile;
+   private final LinkedHashMap<String, Entry> index
+                                          = new LinkedHashMap<>(256, 0.75f, true);
+   private final Set<String>              inProgress = new HashSet<>();
+   private long                           totalSize;
+   private long                           quota = DEFAULT_QUOTA;
+   private boolean                        dirty;
+   
+   
+   /**
+    * Details of a single file held in the cache.
+    */
+   private static class Entry
+   {
+      final long   size;
+      final String digest;
+      long         lastAccess;
+      
+      Entry(long size, String digest, long lastAccess)
+      {
+         this.size       = size;
+         this.digest     = digest;
+         this.lastAccess = lastAccess;
+      }
+   }
+   
+   
+   /**
+    * The size and digest of a file as given in the XNAT catalogue of the
+    * resource containing it. Either may be unknown, in which case the
+    * corresponding check is not made when the file is stored.
+    */
+   public static class CatalogEntry
+   {
+      private final long   size;
+      private final String digest;
+      
+      public CatalogEntry(long size, String digest)
+      {
+         this.size   = size;
+         this.digest = digest;
+      }
+      
+      /**
+       * @return the size of the file in bytes, or -1 if unknown
+       */
+      public long getSize()
+      {
+         return size;
+      }
+      
+      /**
+       * @return the MD5 digest of the file as a hex string, or null if unknown
+       */
+      public String getDigest()
+      {
+         return digest;
+      }
+   }
+   
+   
+   /**
+    * Interface to the code that actually opens a connection to retrieve a
+    * file, e.g., XNATServerConnection.doRESTGetRange().
+    */
+   public interface Source
+   {
+      /**
+       * @param offset the position in the file from which data are wanted
+       * @return a stream whose offset records where its data actually start
+       * @throws Exception 
+       */
+      public RangedInputStream open(long offset) throws Exception;
+   }
+   
+   
+   private CacheManager(File cacheDir)
+   {
+      this.cacheDir  = cacheDir;
+      this.indexFile = new File(cacheDir, INDEX_FILENAME);
+      readIndex();
+   }
+   
+   
+   /**
+    * Get the cache manager for a given cache directory. There is only ever
+    * one manager per directory, shared by all the workers using it.
+    * @param cacheDirName the name of the root directory of the cache
+    * @return the cache manager
+    */
+   public static synchronized CacheManager getInstance(String cacheDirName)
+   {
+      if (instances.isEmpty())
+      {
+         Runtime.getRuntime().addShutdownHook(new Thread("CacheManager-flush")
+         {
+            @Override
+            public void run()
+            {
+               flushAll();
+            }
+         });
+      }
+      
+      File         dir = new File(cacheDirName).getAbsoluteFile();
+      CacheManager cm  = instances.get(dir.getPath());
+      if (cm == null)
+      {
+         cm = new CacheManager(dir);
+         instances.put(dir.getPath(), cm);
+      }
+      return cm;
+   }
+   
+   
+   /**
+    * Write the indices of all the cache managers to disk.
+    */
+   public static synchronized void flushAll()
+   {
+      for (CacheManager cm : instances.values()) cm.flush();
+   }
+   
+   
+   /**
+    * Extract the size and digest of each file from the result of a REST
+    * "files?format=xml" query on a resource. The columns are identified by
+    * their headings, since older versions of XNAT do not return a digest.
+    * @param resultSet the result set returned by XNATRESTToolkit
+    * @return a map from the REST URI of each file to its catalogue entry
+    */
+   public static Map<String, CatalogEntry> getCatalogEntries(XNATResultSet resultSet)
+   {
+      Map<String, CatalogEntry> entries = new HashMap<>();
+      if (resultSet == null) return entries;
+      
+      int uriCol    = resultSet.getColumnIndex("URI");
+      int sizeCol   = resultSet.getColumnIndex("Size");
+      int digestCol = resultSet.getColumnIndex("digest");
+      if (uriCol == -1) uriCol = 2;
+      
+      for (int i=0; i<resultSet.getRowCount(); i++)
+      {
+         List<String> row = resultSet.getRow(i);
+         long size = -1;
+         if (sizeCol != -1)
+         {
+            try {size = Long.parseLong(row.get(sizeCol).trim());}
+            catch (NumberFormatException exNFignore) {}
+         }
+         String digest = (digestCol == -1) ? null : row.get(digestCol);
+         if ((digest != null) && digest.trim().isEmpty()) digest = null;
+         
+         entries.put(row.get(uriCol), new CatalogEntry(size, digest));
+      }
+      return entries;
+   }
+   
+   
+   /**
+    * @param URI the REST URI of a file
+    * @return the location in the cache of the file, whether or not it has
+    * been retrieved
+    */
+   public File getCacheFile(String URI)
+   {
+      return new File(cacheDir.getPath() + URI);
+   }
+   
+   
+   /**
+    * Look up a file in the cache. Only files recorded in the index are
+    * returned: anything else in the cache directory is ignored and will be
+    * downloaded again.
+    * @param URI the REST URI of the file
+    * @return the cache file, or null if there is no valid copy in the cache
+    */
+   public synchronized File lookup(String URI)
+   {
+      Entry entry = index.get(URI);
+      if (entry == null) return null;
+      
+      File cacheFile = getCacheFile(URI);
+      if (cacheFile.length() != entry.size)
+      {
+         // The file has been removed or altered behind our back.
+         index.remove(URI);
+         totalSize -= entry.size;
+         dirty      = true;
+         return null;
+      }
+      
+      entry.lastAccess = System.currentTimeMillis();
+      dirty            = true;
+      return cacheFile;
+   }
+   
+   
+   /**
+    * Write a file into the cache from the given stream. The data are written
+    * to a temporary file, which replaces any existing copy only once it has
+    * been verified against the catalogue entry. The stream is always closed.
+    * @param URI the REST URI of the file
+    * @param is a stream containing the data of the file
+    * @param catalogEntry the size and digest expected, or null if unknown
+    * @return the cache file
+    * @throws IOException if the data could not be written or did not match
+    * the catalogue entry
+    */
+   public File store(String URI, InputStream is, CatalogEntry catalogEntry)
+          throws IOException
+   {
+      File partFile = getPartFile(URI);
+      
+      try
+      {
+         File stored = beginStore(URI);
+         if (stored != null)
+         {
+            try {is.close();} catch (IOException exIOignore) {}
+            return stored;
+         }
+      }
+      catch (InterruptedException exIE)
+      {
+         try {is.close();} catch (IOException exIOignore) {}
+         throw interrupted(URI);
+      }
+      
+      try
+      {
+         MessageDigest md = getMD5();
+         long          n  = writePart(is, partFile, false, md);
+         return commit(URI, partFile, n, toHex(md.digest()), catalogEntry);
+      }
+      catch (IOException exIO)
+      {
+         partFile.delete();
+         throw exIO;
+      }
+      finally
+      {
+         endStore(URI);
+      }
+   }
+   
+   
+   /**
+    * Retrieve a file into the cache from a source that can start part way
+    * through the file. If the transfer is interrupted, the bytes already
+    * received are kept and only the remainder is requested, both on the
+    * retries made here and on any later call for the same file. If the
+    * source cannot supply a partial file, it is fetched again in full.
+    * @param URI the REST URI of the file
+    * @param source the source of the data, e.g., the XNAT server
+    * @param catalogEntry the size and digest expected, or null if unknown
+    * @return the cache file
+    * @throws IOException if the file could not be retrieved, or the complete
+    * file did not match the catalogue entry
+    */
+   public File retrieve(String URI, Source source, CatalogEntry catalogEntry)
+          throws IOException
+   {
+      File partFile = getPartFile(URI);
+      
+      try
+      {
+         File stored = beginStore(URI);
+         if (stored != null) return stored;
+      }
+      catch (InterruptedException exIE)
+      {
+         throw interrupted(URI);
+      }
+      
+      try
+      {
+         long expectedSize = (catalogEntry == null) ? -1 : catalogEntry.getSize();
+         for (int attempt=1; ; attempt++)
+         {
+            long offset = partFile.exists() ? partFile.length() : 0;
+            if ((expectedSize >= 0) && (offset > expectedSize))
+            {
+               partFile.delete();
+               offset = 0;
+            }
+            
+            RangedInputStream ris;
+            try
+            {
+               ris = source.open(offset);
+               if (ris == null) throw new IOException("null response from XNAT");
+            }
+            catch (Exception ex)
+            {
+               if (attempt == RESUME_ATTEMPTS)
+                  throw (ex instanceof IOException) ? (IOException) ex
+                                                    : new IOException(ex.getMessage(), ex);
+               logger.info("Retrying " + URI + ": " + ex.getMessage());
+               continue;
+            }
+            
+            boolean resume = (offset > 0) && (ris.getOffset() == offset);
+            if ((offset > 0) && !resume)
+               logger.info("Server ignored range request for " + URI
+                           + ": retrieving the whole file");
+            if (expectedSize < 0) expectedSize = ris.getLength();
+            
+            // The digest covers the whole file, so include the bytes
+            // already received.
+            MessageDigest md = getMD5();
+            if (resume) digestFile(partFile, md);
+            
+            long n;
+            try
+            {
+               n = writePart(ris, partFile, resume, md);
+            }
+            catch (IOException exIO)
+            {
+               // Keep whatever was received for the next attempt.
+               if (attempt == RESUME_ATTEMPTS) throw exIO;
+               logger.info("Download of " + URI + " interrupted at byte "
+                           + partFile.length() + ", resuming: " + exIO.getMessage());
+               continue;
+            }
+            
+            long total = resume ? offset + n : n;
+            if ((expectedSize >= 0) && (total < expectedSize))
+            {
+               // The server closed the connection early without an error.
+               if (attempt == RESUME_ATTEMPTS)
+                  throw new IOException("Only " + total + " of " + expectedSize
+                                        + " bytes of " + URI + " were received");
+               continue;
+            }
+            
+            try
+            {
+               return commit(URI, partFile, total, toHex(md.digest()),
+                             new CatalogEntry(expectedSize,
+                                (catalogEntry == null) ? null : catalogEntry.getDigest()));
+            }
+            catch (IOException exIO)
+            {
+               // The data are wrong, so they are of no use for resuming.
+               partFile.delete();
+               throw exIO;
+            }
+         }
+      }
+      finally
+      {
+         endStore(URI);
+      }
+   }
+   
+   
+   /**
+    * Remove a file from the cache.
+    * @param URI the REST URI of the file
+    */
+   public synchronized void invalidate(String URI)
+   {
+      Entry entry = index.remove(URI);
+      if (entry == null) return;
+      
+      getCacheFile(URI).delete();
+      totalSize -= entry.size;
+      dirty      = true;
+   }
+   
+   
+   /**
+    * @return the total size in bytes of the files recorded in the index
+    */
+   public synchronized long getSize()
+   {
+      return totalSize;
+   }
+   
+   
+   public synchronized long getQuota()
+   {
+      return quota;
+   }
+   
+   
+   /**
+    * Set the maximum total size of the cache. If the cache is already larger
+    * than this, files are removed immediately.
+    * @param quota the quota in bytes
+    */
+   public synchronized void setQuota(long quota)
+   {
+      if (quota <= 0) throw new IllegalArgumentException("Cache quota must be positive");
+      this.quota = quota;
+      evict();
+   }
+   
+   
+   /**
+    * Write the index to disk if it has changed. The index is written to a
+    * temporary file and renamed, so that a crash part-way through cannot
+    * leave a corrupt index.
+    */
+   public synchronized void flush()
+   {
+      if (!dirty) return;
+      
+      cacheDir.mkdirs();
+      File tmpFile = new File(indexFile.getPath() + PARTIAL_SUFFIX);
+      try
+      {
+         try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                                     new FileOutputStream(tmpFile), StandardCharsets.UTF_8)))
+         {
+            // Entries are written least-recently used first, so that the
+            // order is preserved when the index is read back.
+            for (Map.Entry<String, Entry> me : index.entrySet())
+            {
+               Entry entry = me.getValue();
+               bw.write(me.getKey());
+               bw.write('\t');
+               bw.write(Long.toString(entry.size));
+               bw.write('\t');
+               bw.write(entry.digest);
+               bw.write('\t');
+               bw.write(Long.toString(entry.lastAccess));
+               bw.newLine();
+            }
+         }
+         moveIntoPlace(tmpFile, indexFile);
+         dirty = false;
+      }
+      catch (IOException exIO)
+      {
+         logger.warn("Unable to write cache index " + indexFile + ": " + exIO.getMessage());
+         tmpFile.delete();
+      }
+   }
+   
+   
+   private void readIndex()
+   {
+      if (!indexFile.exists()) return;
+      
+      try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                                  new FileInputStream(indexFile), StandardCharsets.UTF_8)))
+      {
+         String line;
+         while ((line = br.readLine()) != null)
+         {
+            String[] fields = line.split("\t");
+            if (fields.length != 4) continue;
+            try
+            {
+               Entry entry = new Entry(Long.parseLong(fields[1]), fields[2],
+                                       Long.parseLong(fields[3]));
+               Entry old   = index.put(fields[0], entry);
+               if (old != null) totalSize -= old.size;
+               totalSize += entry.size;
+            }
+            catch (NumberFormatException exNFignore) {}
+         }
+         logger.debug("Read cache index " + indexFile + ": " + index.size()
+                      + " files, " + totalSize + " bytes");
+      }
+      catch (IOException exIO)
+      {
+         // Losing the index means only that files are downloaded again.
+         logger.warn("Unable to read cache index " + indexFile + ": " + exIO.getMessage());
+         index.clear();
+         totalSize = 0;
+      }
+   }
+   
+   
+   /**
+    * Remove least-recently used files until the cache is within its quota.
+    * Files used very recently are never removed, as they are likely to
+    * belong to the download currently in progress, so the quota may be
+    * exceeded temporarily.
+    */
+   private void evict()
+   {
+      long now = System.currentTimeMillis();
+      
+      Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+      while ((totalSize > quota) && it.hasNext())
+      {
+         Map.Entry<String, Entry> me = it.next();
+         Entry entry = me.getValue();
+         if (now - entry.lastAccess < MIN_RETENTION_TIME) break;
+         
+         File cacheFile = getCacheFile(me.getKey());
+         if (cacheFile.exists() && !cacheFile.delete())
+         {
+            logger.warn("Unable to remove " + cacheFile + " from the cache");
+            continue;
+         }
+         it.remove();
+         totalSize -= entry.size;
+         dirty      = true;
+      }
+   }
+   
+   
+   private File getPartFile(String URI)
+   {
+      return new File(getCacheFile(URI).getPath() + PARTIAL_SUFFIX);
+   }
+   
+   
+   /**
+    * Copy a stream into a partial file, updating the digest, and close it.
+    * @return the number of bytes written
+    */
+   private long writePart(InputStream is, File partFile, boolean append, MessageDigest md)
+           throws IOException
+   {
+      partFile.getParentFile().mkdirs();
+      long n = 0;
+      try (DigestInputStream    dis = new DigestInputStream(is, md);
+           BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(partFile, append)))
+      {
+         byte[] buf = new byte[8192];
+         int    length;
+         while ((length = dis.read(buf)) != -1)
+         {
+            bos.write(buf, 0, length);
+            n += length;
+         }
+      }
+      return n;
+   }
+   
+   
+   private void digestFile(File file, MessageDigest md) throws IOException
+   {
+      try (InputStream is = new FileInputStream(file))
+      {
+         byte[] buf = new byte[65536];
+         int    length;
+         while ((length = is.read(buf)) != -1) md.update(buf, 0, length);
+      }
+   }
+   
+   
+   /**
+    * Check a complete partial file, move it into place and add it to the index.
+    */
+   private File commit(String URI, File partFile, long size, String digest,
+                       CatalogEntry catalogEntry) throws IOException
+   {
+      File cacheFile = getCacheFile(URI);
+      verify(URI, size, digest, catalogEntry);
+      moveIntoPlace(partFile, cacheFile);
+      
+      synchronized (this)
+      {
+         Entry old = index.put(URI, new Entry(size, digest, System.currentTimeMillis()));
+         if (old != null) totalSize -= old.size;
+         totalSize += size;
+         dirty      = true;
+         evict();
+      }
+      return cacheFile;
+   }
+   
+   
+   private IOException interrupted(String URI)
+   {
+      Thread.currentThread().interrupt();
+      return new IOException("Interrupted while waiting to store " + URI);
+   }
+   
+   
+   private void verify(String URI, long size, String digest, CatalogEntry catalogEntry)
+           throws IOException
+   {
+      if (catalogEntry == null) return;
+      
+      if ((catalogEntry.getSize() >= 0) && (catalogEntry.getSize() != size))
+         throw new IOException("Size of " + URI + " is " + size + " bytes, but "
+                               + catalogEntry.getSize() + " were expected");
+      
+      if ((catalogEntry.getDigest() != null) && !catalogEntry.getDigest().equalsIgnoreCase(digest))
+         throw new IOException("Digest of " + URI + " does not match the XNAT catalogue");
+   }
+   
+   
+   private synchronized File beginStore(String URI) throws InterruptedException
+   {
+      // Two workers may ask for the same file at once, in which case the
+      // second waits rather than writing the same temporary file. If the
+      // first succeeded, the second uses its copy instead of downloading
+      // again, and returns without reserving the file. Otherwise null is
+      // returned and the caller must call endStore when finished.
+      boolean waited = false;
+      while (inProgress.contains(URI))
+      {
+         wait();
+         waited = true;
+      }
+      
+      if (waited)
+      {
+         File cacheFile = lookup(URI);
+         if (cacheFile != null) return cacheFile;
+      }
+      
+      inProgress.add(URI);
+      return null;
+   }
+   
+   
+   private synchronized void endStore(String URI)
+   {
+      inProgress.remove(URI);
+      notifyAll();
+   }
+   
+   
+   private static void moveIntoPlace(File source, File target) throws IOException
+   {
+      try
+      {
+         Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException exAMNS)
+      {
+         Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+   
+   
+   private static MessageDigest getMD5()
+   {
+      try
+      {
+         return MessageDigest.getInstance("MD5");
+      }
+      catch (NoSuchAlgorithmException exNSA)
+      {
+         // Every Java platform is required to support MD5.
+         throw new RuntimeException(exNSA);
+      }
+   }
+   
+   
+   private static String toHex(byte[] bytes)
+   {
+      StringBuilder sb = new StringBuilder(2*bytes.length);
+      for (byte b : bytes) sb.append(String.format("%02x", b));
+      return sb.toString();
+   }
+}
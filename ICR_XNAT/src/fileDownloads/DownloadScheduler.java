@@ -0,0 +1,230 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: DownloadScheduler.java
+* First created on Oct 18, 2026 at 2:20 PM
+* 
+* Fetch a list of files concurrently on a bounded pool of threads.
+* The number of fetches in progress against any one server is limited
+* across all schedulers, so that several download workers running at
+* once cannot overload it. Results are always returned in the order in
+* which the files were requested, irrespective of the order in which
+* the individual downloads complete.
+*********************************************************************/
+
+package fileDownloads;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+public class DownloadScheduler
+{
+   static  Logger logger = Logger.getLogger(DownloadScheduler.class);
+   
+   public  static final int DEFAULT_CONCURRENT_FETCHES = 4;
+   
+   private static final Map<String, Integer>   concurrencyMap = new HashMap<>();
+   private static final Map<String, Semaphore> serverPermits  = new HashMap<>();
+   
+   private final String          server;
+   private final Semaphore       permits;
+   private final ExecutorService executor;
+   
+   
+   /**
+    * Interface to the code that actually performs the retrieval of a
+    * single file, e.g., FileListWorker.retrieveFileToCache().
+    */
+   public interface Fetcher
+   {
+      /**
+       * @param URI the REST URI of the file to retrieve
+       * @return the local file, or null if the retrieval failed
+       */
+      public File fetch(String URI);
+      
+      /**
+       * @return true if no further files should be fetched
+       */
+      public boolean isCancelled();
+   }
+   
+   
+   /**
+    * Create a scheduler for downloads from a given server.
+    * @param server a String identifying the server (typically its URL), used
+    * to look up the number of concurrent fetches permitted
+    */
+   public DownloadScheduler(String server)
+   {
+      final int n = getMaxConcurrentFetches(server);
+      
+      this.server   = server;
+      this.permits  = getServerPermits(server);
+      this.executor = Executors.newFixedThreadPool(n, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+         
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "DownloadScheduler-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+   
+   
+   /**
+    * Set the maximum number of files that may be fetched simultaneously
+    * from the given server. This takes effect for schedulers created
+    * subsequently.
+    * @param server a String identifying the server
+    * @param n the maximum number of concurrent fetches
+    */
+   public static synchronized void setMaxConcurrentFetches(String server, int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one fetch must be allowed.");
+      concurrencyMap.put(server, n);
+      serverPermits.remove(server);
+   }
+   
+   
+   public static synchronized int getMaxConcurrentFetches(String server)
+   {
+      Integer n = concurrencyMap.get(server);
+      return (n == null) ? DEFAULT_CONCURRENT_FETCHES : n;
+   }
+   
+   
+   private static synchronized Semaphore getServerPermits(String server)
+   {
+      Semaphore s = serverPermits.get(server);
+      if (s == null)
+      {
+         s = new Semaphore(getMaxConcurrentFetches(server), true);
+         serverPermits.put(server, s);
+      }
+      return s;
+   }
+   
+   
+   /**
+    * Fetch all the files in the list and wait for them to complete.
+    * @param URIs the REST URIs of the files to retrieve
+    * @param fetcher the object that performs each individual retrieval
+    * @return a list of the same length as URIs, in the same order, containing
+    * the retrieved files, with null entries for files that could not be
+    * retrieved or were skipped because the download was cancelled
+    * @throws InterruptedException if the calling thread is interrupted while
+    * waiting, in which case all outstanding fetches are abandoned
+    */
+   public List<File> fetchAll(List<String> URIs, final Fetcher fetcher)
+          throws InterruptedException
+   {
+      List<Future<File>> futures = new ArrayList<>(URIs.size());
+      for (final String URI : URIs)
+      {
+         futures.add(executor.submit(new Callable<File>()
+         {
+            @Override
+            public File call() throws InterruptedException
+            {
+               if (fetcher.isCancelled()) return null;
+               
+               permits.acquire();
+               try
+               {
+                  if (fetcher.isCancelled()) return null;
+                  return fetcher.fetch(URI);
+               }
+               finally
+               {
+                  permits.release();
+               }
+            }
+         }));
+      }
+      
+      List<File> results = new ArrayList<>(URIs.size());
+      try
+      {
+         for (Future<File> f : futures)
+         {
+            try
+            {
+               results.add(f.get());
+            }
+            catch (ExecutionException exEE)
+            {
+               logger.warn("Unexpected error while fetching from " + server + ": "
+                           + exEE.getCause());
+               results.add(null);
+            }
+         }
+      }
+      catch (InterruptedException exIE)
+      {
+         for (Future<File> f : futures) f.cancel(true);
+         throw exIE;
+      }
+      
+      return results;
+   }
+   
+   
+   /**
+    * Release the threads used by this scheduler. Downloads in progress are
+    * allowed to finish.
+    */
+   public void shutdown()
+   {
+      executor.shutdown();
+   }
+}
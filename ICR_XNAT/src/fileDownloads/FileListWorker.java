@@ -68,17 +68,22 @@ import treeTable.DAOMutableTreeNode;
 import treeTable.DAOOutline;
 import treeTable.DAOTreeNodeUserObject;
 import configurationLists.DAOSearchableElementsList;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import xnatDAO.ThumbnailPreview;
 import xnatDAO.XNATDAO;
+import xnatRestToolkit.RangedInputStream;
 import xnatRestToolkit.XNATRESTToolkit;
+import xnatRestToolkit.XNATResultSet;
 import xnatRestToolkit.XNATServerConnection;
 
 
@@ -105,6 +110,9 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
 	private ArrayList<File>            sourceListCurrentRow = new ArrayList<>();
 	private ArrayList<ArrayList<File>> sourceListAllRows    = new ArrayList<>();
 	private ArrayList<ArrayList<File>> outputListAllRows    = new ArrayList<>();
+	private DownloadScheduler          scheduler;
+	private CacheManager               cache;
+	private Map<String, CacheManager.CatalogEntry> catalogEntries = new ConcurrentHashMap<>();
 
    /**
     * Create a worker thread to return a list of files corresponding to the resources
@@ -131,6 +139,7 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
       this.preview      = preview;
       this.rootElement  = rootElement;
       this.cacheDirName = cacheDirName;
+      this.cache        = CacheManager.getInstance(cacheDirName);
    }
 
    
@@ -147,7 +156,17 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
          if (pfs.isCancelled()) return outputListAllRows;
       }
 		
-		sourceListAllRows = downloadResources(od);
+		// The scheduler's threads exist only for the duration of the download.
+		scheduler = new DownloadScheduler(xnsc.getServerURL().toString());
+		try
+		{
+			sourceListAllRows = downloadResources(od);
+		}
+		finally
+		{
+			scheduler.shutdown();
+			cache.flush();
+		}
 		if (!isCancelled()) performPostFetchActions(od, pfsMap);
 		
 		// outputList is built up by the executeAction() method of the concrete
@@ -185,7 +204,7 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
    }
 
    
-   protected void publishDownloadProgress(String filename)
+   protected synchronized void publishDownloadProgress(String filename)
    {
       StringBuilder sb = new StringBuilder();
       sb.append(nFilesDownloaded);
@@ -379,7 +398,7 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
 	 */
 	protected ArrayList<File> downloadResourceSet(String type, Map<String, String> od,
 			                                        String restPrefix)
-			    throws IOException, XNATException
+			    throws IOException, XNATException, InterruptedException
 	{
 		// Check for multiple elements in the name and format entries.
 		HashMap<String, String> nameFormat     = getNameAndFormatMap(type, od, restPrefix);
@@ -391,87 +410,255 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
 			String format = nameFormat.get(resourceName);
 			
 			ArrayList<String> filenames = getFilenamesForResource(resourceName, restPrefix);
-			for (String fname : filenames)
+			
+			// Either way, the files are returned in the order of the original list,
+			// so that each row's file list is built up in exactly the same order as
+			// it would be by a serial download, one file at a time.
+			List<File> retrievedList = isZipRetrieval(od)
+					                   ? retrieveResourceAsZip(resourceName, restPrefix, filenames)
+					                   : retrieveFilesToCache(filenames);
+			for (File retrieved : retrievedList)
 			{
 				// The status will be cancelled, for example, if a selection on the
 				// table has been modified to add extra lines, in which case, a new
 				// FileListWorker will have been created to handle the retrieval of
 				// all lines.
-				if (!isCancelled())
+				if (isCancelled()) break;
+				
+				boolean success = false;
+				if (retrieved != null)
 				{
-					File    retrieved = retrieveFileToCache(fname);
-					boolean success   = false;
-					if (retrieved != null)
+					if (resourceName.equals(od.get("thumbnailName")))
+					{
+						// If this is a thumbnail type, then we have a further check,
+						// over and above simply whether any file data were retrieved,
+						// to tell us whether the download was successful.
+						success = preview.addFile(retrieved, format);
+					}
+					else
 					{
-						if (resourceName.equals(od.get("thumbnailName")))
-						{
-							// If this is a thumbnail type, then we have a further check,
-							// over and above simply whether any file data were retrieved,
-							// to tell us whether the download was successful.
-							success = preview.addFile(retrieved, format);
-						}
-						else
-						{
-							success = true;
-						}
+						success = true;
 					}
-					if (success) filesRetrieved.add(retrieved);
-					else nFileFailures++;
-//					System.out.println(this.toString());
-//					if (((DAOOutput.STOP_ICON - 1) * nFilesDownloaded / nFilesToDownload) > 100)
-//						System.out.println("Too large");
-					setProgress((DAOOutput.STOP_ICON - 1) * nFilesDownloaded / nFilesToDownload);
 				}
+				if (success) filesRetrieved.add(retrieved);
+				else recordFailure();
+				setProgress((DAOOutput.STOP_ICON - 1) * nFilesDownloaded / nFilesToDownload);
 			}
 		}
 		return filesRetrieved;
 	}
 
 	
-	protected File retrieveFileToCache(String URI)
+	/**
+	 * Retrieve a list of files to the cache, using the worker's download
+	 * scheduler to fetch several files at once.
+	 * @param URIs REST URIs of the files to retrieve
+	 * @return a list of cache files in the same order as URIs, with null
+	 * entries for files that could not be retrieved
+	 * @throws InterruptedException 
+	 */
+	protected List<File> retrieveFilesToCache(List<String> URIs)
+			    throws InterruptedException
 	{
-		// Build the local cache filename where the data will be stored.
-		// The directory structure is a bit long-winded, but should be
-		// easy to manage.
-		File                 cacheFile = new File(cacheDirName + URI);
-		File                 parent    = new File(cacheFile.getParent());
-		BufferedInputStream  bis       = null;
-		BufferedOutputStream bos       = null;
-		
-		if (!cacheFile.exists())
+		return scheduler.fetchAll(URIs, new DownloadScheduler.Fetcher()
 		{
-			// Retrieve the actual data and store it in the cache.
-			try
+			@Override
+			public File fetch(String URI)
 			{
-				parent.mkdirs();
-				bos = new BufferedOutputStream(new FileOutputStream(cacheFile, true));
-				bis = new BufferedInputStream(xnsc.doRESTGet(URI));
-
-				byte[] buf = new byte[8192];
+				return retrieveFileToCache(URI);
+			}
 
-				while (true)
+			@Override
+			public boolean isCancelled()
+			{
+				return FileListWorker.this.isCancelled();
+			}
+		});
+	}
+	
+	
+	/**
+	 * The output definition may specify that each resource is retrieved as
+	 * a single ZIP archive, rather than one request per file, using the
+	 * property retrievalMode = zip. This is much faster for resources
+	 * containing many small files, such as DICOM series.
+	 * @param od the output definition
+	 * @return true if resources are to be retrieved as ZIP archives
+	 */
+	protected boolean isZipRetrieval(Map<String, String> od)
+	{
+		return "zip".equals(od.get("retrievalMode"));
+	}
+	
+	
+	/**
+	 * Retrieve all the files in a resource with a single request, for which
+	 * XNAT packages them into a ZIP archive. The archive is unpacked into the
+	 * cache as it arrives and is never itself written to disk. Each entry is
+	 * stored in the same place as retrieveFileToCache would have put it.
+	 * The archive is purely an optimisation: any file that it does not
+	 * deliver, because the request failed part-way through or because an
+	 * entry could not be matched or extracted, is then retrieved on its own.
+	 * @param resourceName name of the resource in XNAT, e.g., DICOM
+	 * @param restPrefix REST URI of the resources of the current item
+	 * @param URIs REST URIs of the individual files in the resource, as
+	 * returned by getFilenamesForResource
+	 * @return a list of cache files in the same order as URIs, with null
+	 * entries for files that could not be retrieved either way
+	 * @throws InterruptedException 
+	 */
+	protected List<File> retrieveResourceAsZip(String resourceName, String restPrefix,
+			                                     List<String> URIs)
+			    throws InterruptedException
+	{
+		File[] retrieved = new File[URIs.size()];
+		
+		// Index the files by their path relative to the resource's "files"
+		// directory, which is how the archive entries are identified.
+		Map<String, Integer> positionMap = new HashMap<>();
+		boolean              allCached   = true;
+		for (int i=0; i<URIs.size(); i++)
+		{
+			String URI       = URIs.get(i);
+			File   cacheFile = cache.lookup(URI);
+			if (cacheFile != null) retrieved[i] = cacheFile;
+			else allCached = false;
+			
+			int pos = URI.indexOf("/files/");
+			positionMap.put((pos == -1) ? cache.getCacheFile(URI).getName() : URI.substring(pos + 7), i);
+		}
+		if (allCached) return Arrays.asList(retrieved);
+		
+		String         restCommand = restPrefix + "/" + resourceName + "/files?format=zip";
+		ZipInputStream zis         = null;
+		try
+		{
+			InputStream is = xnsc.doRESTGet(restCommand);
+			if (is == null) throw new IOException("null response from XNAT");
+			zis = new ZipInputStream(is);
+			
+			ZipEntry entry;
+			while (!isCancelled() && ((entry = zis.getNextEntry()) != null))
+			{
+				Integer i = entry.isDirectory() ? null : findZipEntry(entry.getName(), positionMap);
+				if ((i != null) && (retrieved[i] == null))
 				{
-					int length = bis.read(buf);
-					if (length < 0) break;
-					bos.write(buf, 0, length);
+					String URI = URIs.get(i);
+					try
+					{
+						retrieved[i] = cache.store(URI, new ZipEntryInputStream(zis),
+						                           catalogEntries.get(URI));
+						recordDownload(retrieved[i].getName());
+					}
+					catch (IOException exIO)
+					{
+						// A corrupt entry is simply treated as a failed download.
+						logger.warn("Failed to extract " + URI + ": " + exIO.getMessage());
+					}
 				}
-				nFilesDownloaded++;	
-				logger.debug("Worker ID = " + this.toString() + " Downloaded " + cacheFile.toString());
-				publishDownloadProgress(cacheFile.getName());
+				zis.closeEntry();
 			}
-			catch (Exception ex)
+		}
+		catch (Exception ex)
+		{
+			logger.warn("Failed to download resource " + resourceName + " as a ZIP archive: "
+			            + ex.getMessage());
+		}
+		finally
+		{
+			try {if (zis != null) zis.close();}
+			catch (IOException exIOignore) {}
+		}
+		
+		List<Integer> missing = new ArrayList<>();
+		for (int i=0; i<retrieved.length; i++)
+			if (retrieved[i] == null) missing.add(i);
+		
+		if (!missing.isEmpty() && !isCancelled())
+		{
+			logger.info("Retrieving " + missing.size() + " file(s) of resource " + resourceName
+			            + " not delivered in the ZIP archive individually.");
+			List<String> missingURIs = new ArrayList<>();
+			for (int i : missing) missingURIs.add(URIs.get(i));
+			
+			List<File> fetched = retrieveFilesToCache(missingURIs);
+			for (int j=0; j<missing.size(); j++) retrieved[missing.get(j)] = fetched.get(j);
+		}
+		
+		return Arrays.asList(retrieved);
+	}
+	
+	
+	/**
+	 * The archive entry names include XNAT's own directory structure, which
+	 * contains labels rather than IDs, so match on the trailing part of the
+	 * name only.
+	 */
+	private Integer findZipEntry(String entryName, Map<String, Integer> positionMap)
+	{
+		String name = entryName;
+		while (true)
+		{
+			Integer i = positionMap.get(name);
+			if (i != null) return i;
+			
+			int pos = name.indexOf('/');
+			if (pos == -1) return null;
+			name = name.substring(pos + 1);
+		}
+	}
+	
+	
+	/**
+	 * The cache manager closes the stream it is given, but only the current
+	 * entry of the archive has been consumed at that point.
+	 */
+	private static class ZipEntryInputStream extends FilterInputStream
+	{
+		ZipEntryInputStream(ZipInputStream zis)
+		{
+			super(zis);
+		}
+		
+		@Override
+		public void close()
+		{
+		}
+	}
+	
+	
+	/**
+	 * Retrieve a single file to the cache. This may be called on several
+	 * of the download scheduler's threads at once.
+	 * @param URI REST URI of the file to retrieve
+	 * @return the cache file, or null if the retrieval failed
+	 */
+	protected File retrieveFileToCache(final String URI)
+	{
+		// Only files recorded in the cache index are trusted. Anything else,
+		// such as a partial file left by an earlier failed download, is
+		// retrieved again and replaced.
+		File cacheFile = cache.lookup(URI);
+		if (cacheFile != null) return cacheFile;
+		
+		try
+		{
+			// An interrupted download resumes from where it stopped.
+			cacheFile = cache.retrieve(URI, new CacheManager.Source()
 			{
-				logger.warn("Failed to download " + cacheFile.getName());
-				return null;
-			}
-			finally
-			{				
-				try{bis.close();}
-				catch (IOException | NullPointerException ignore) {}
-
-				try{bos.close();}
-				catch (IOException | NullPointerException ignore) {}  
-			}
+				@Override
+				public RangedInputStream open(long offset) throws Exception
+				{
+					return xnsc.doRESTGetRange(URI, offset);
+				}
+			}, catalogEntries.get(URI));
+			logger.debug("Worker ID = " + this.toString() + " Downloaded " + cacheFile.toString());
+			recordDownload(cacheFile.getName());
+		}
+		catch (Exception ex)
+		{
+			logger.warn("Failed to download " + URI + ": " + ex.getMessage());
+			return null;
 		}
 		
 		return cacheFile;
@@ -479,14 +666,33 @@ public class FileListWorker extends SwingWorker<ArrayList<ArrayList<File>>, Stri
 	
 	
 	
+	private synchronized void recordDownload(String filename)
+	{
+		nFilesDownloaded++;
+		publishDownloadProgress(filename);
+		setProgress((DAOOutput.STOP_ICON - 1) * nFilesDownloaded / nFilesToDownload);
+	}
+	
+	
+	private synchronized void recordFailure()
+	{
+		nFileFailures++;
+	}
+	
+	
+	
 	protected ArrayList<String> getFilenamesForResource(String resourceName, String restPrefix)
 			                      throws XNATException
 	{
 		String restCommand = restPrefix + "/" + resourceName + "/files?format=xml";
-		Vector2D resultSet;
+		XNATResultSet resultSet;
 		try
 		{
-			resultSet = (new XNATRESTToolkit(xnsc)).RESTGetResultSet(restCommand);
+			resultSet = (new XNATRESTToolkit(xnsc)).getResultSet(restCommand);
+			
+			// Keep the sizes and digests from the catalogue, against which the
+			// files are checked when they are downloaded.
+			catalogEntries.putAll(CacheManager.getCatalogEntries(resultSet));
 		}
 		catch(XNATException exXNAT)
 		{
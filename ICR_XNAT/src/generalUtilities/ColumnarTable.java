@@ -0,0 +1,673 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: ColumnarTable.java
+* First created on Oct 18, 2026 at 11:40 AM
+* 
+* Compact, immutable table of strings, intended as the replacement for
+* Vector2D in holding the results of XNAT queries and searches.
+* 
+* The table is stored by column. Each column keeps its distinct values
+* once, in ascending order, and an int array of codes into them, one
+* per row. Search results repeat the same project, subject and session
+* values on row after row, so this is far smaller than a Vector of
+* Vectors of separate String objects. Because the codes are in the same
+* order as the values, rows can be sorted and values looked up without
+* comparing strings.
+* 
+* Columns chosen when the table is built, typically the ones holding
+* IDs or URIs, can also carry a hash index, giving constant-time
+* lookup of the rows containing a value. Columns without an index are
+* searched by binary search of the distinct values followed by a scan
+* of the codes.
+* 
+* The lists returned by getRow and getColumn are read-only views of the
+* table rather than copies, and selectColumns and sortRows share the
+* stored strings with the original. As nothing can change after
+* construction, a table may be shared between threads without locking.
+*********************************************************************/
+
+package generalUtilities;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Vector;
+
+public final class ColumnarTable
+{
+   /**
+    * Order of the stored values: null, where present, sorts first.
+    */
+   private static final Comparator<String> VALUE_ORDER = new Comparator<String>()
+   {
+      @Override
+      public int compare(String s1, String s2)
+      {
+         if (s1 == null) return (s2 == null) ? 0 : -1;
+         if (s2 == null) return 1;
+         return s1.compareTo(s2);
+      }
+   };
+   
+   private static final int[] NO_ROWS = new int[0];
+   
+   private final List<String> columnHeadings;
+   private final Column[]     columns;
+   private final int          nRows;
+   
+   
+   private ColumnarTable(List<String> columnHeadings, Column[] columns, int nRows)
+   {
+      this.columnHeadings = columnHeadings;
+      this.columns        = columns;
+      this.nRows          = nRows;
+   }
+   
+   
+   /**
+    * @param columnHeadings the headings of the columns of the table to be built
+    * @return a builder for a new table
+    */
+   public static Builder builder(List<String> columnHeadings)
+   {
+      return new Builder(columnHeadings);
+   }
+   
+   
+   /**
+    * Create a table from rows of values, e.g., those of an existing Vector2D.
+    * @param columnHeadings the column headings
+    * @param rows the rows of the table, each no longer than the list of
+    * headings; shorter rows are padded with empty strings
+    * @return the new table
+    */
+   public static ColumnarTable fromRows(List<String> columnHeadings,
+                                        List<? extends List<String>> rows)
+   {
+      Builder builder = new Builder(columnHeadings);
+      for (List<String> row : rows) builder.addRow(row);
+      return builder.build();
+   }
+   
+   
+   /**
+    * @return an unmodifiable list of the column headings
+    */
+   public List<String> getColumnHeadings()
+   {
+      return columnHeadings;
+   }
+   
+   
+   /**
+    * @param heading a column heading, e.g., "URI"
+    * @return the index of the column, or -1 if there is no such column
+    */
+   public int getColumnIndex(String heading)
+   {
+      return columnHeadings.indexOf(heading);
+   }
+   
+   
+   public int getColumnCount()
+   {
+      return columns.length;
+   }
+   
+   
+   public int getRowCount()
+   {
+      return nRows;
+   }
+   
+   
+   public boolean isEmpty()
+   {
+      return nRows == 0;
+   }
+   
+   
+   /**
+    * @param row the row index
+    * @param col the column index
+    * @return the value in the given cell
+    */
+   public String get(int row, int col)
+   {
+      checkRow(row);
+      Column c = columns[col];
+      return c.values[c.codes[row]];
+   }
+   
+   
+   /**
+    * @param row the row index
+    * @return a read-only view of the values in the row
+    */
+   public List<String> getRow(final int row)
+   {
+      checkRow(row);
+      return new ReadOnlyList()
+      {
+         @Override
+         public String get(int col)
+         {
+            Column c = columns[col];
+            return c.values[c.codes[row]];
+         }
+
+         @Override
+         public int size()
+         {
+            return columns.length;
+         }
+      };
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @return a read-only view of the values in the column
+    */
+   public List<String> getColumn(int col)
+   {
+      final Column c = columns[col];
+      return new ReadOnlyList()
+      {
+         @Override
+         public String get(int row)
+         {
+            checkRow(row);
+            return c.values[c.codes[row]];
+         }
+
+         @Override
+         public int size()
+         {
+            return nRows;
+         }
+      };
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @return a read-only list of the distinct values in the column, in
+    * ascending order
+    */
+   public List<String> getDistinctValues(int col)
+   {
+      return Collections.unmodifiableList(Arrays.asList(columns[col].values));
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @return true if the column has a hash index
+    */
+   public boolean isIndexed(int col)
+   {
+      return columns[col].index != null;
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @param value the value sought
+    * @return true if the value occurs in the column
+    */
+   public boolean columnContains(int col, String value)
+   {
+      return columns[col].codeOf(value) >= 0;
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @param value the value sought
+    * @return the first row in which the column has the value, or -1 if
+    * there is none
+    */
+   public int indexOf(int col, String value)
+   {
+      Column c    = columns[col];
+      int    code = c.codeOf(value);
+      if (code < 0) return -1;
+      
+      if (c.index != null) return c.index.rows[c.index.start[code]];
+      for (int i=0; i<nRows; i++) if (c.codes[i] == code) return i;
+      return -1;
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @param value the value sought
+    * @return the rows in which the column has the value, in ascending order
+    */
+   public int[] indicesOf(int col, String value)
+   {
+      Column c    = columns[col];
+      int    code = c.codeOf(value);
+      if (code < 0) return NO_ROWS;
+      
+      if (c.index != null)
+         return Arrays.copyOfRange(c.index.rows, c.index.start[code], c.index.start[code+1]);
+      
+      int   n       = 0;
+      int[] indices = new int[16];
+      for (int i=0; i<nRows; i++)
+      {
+         if (c.codes[i] != code) continue;
+         if (n == indices.length) indices = Arrays.copyOf(indices, 2*n);
+         indices[n++] = i;
+      }
+      return Arrays.copyOf(indices, n);
+   }
+   
+   
+   /**
+    * Create a table consisting of some of the columns of this one, in any
+    * order. A column may be selected more than once. The new table shares
+    * the stored columns, including their indexes, with this one.
+    * @param cols the indices of the columns required
+    * @return the new table
+    */
+   public ColumnarTable selectColumns(int... cols)
+   {
+      List<String> headings = new ArrayList<>(cols.length);
+      Column[]     selected = new Column[cols.length];
+      for (int i=0; i<cols.length; i++)
+      {
+         headings.add(columnHeadings.get(cols[i]));
+         selected[i] = columns[cols[i]];
+      }
+      
+      return new ColumnarTable(Collections.unmodifiableList(headings), selected, nRows);
+   }
+   
+   
+   /**
+    * Create a table with a hash index on the given columns in addition to any
+    * existing ones. The other columns are shared with this table.
+    * @param cols the indices of the columns to be indexed
+    * @return the new table, or this one if the columns are already indexed
+    */
+   public ColumnarTable withIndexes(int... cols)
+   {
+      Column[] indexed = columns.clone();
+      boolean  changed = false;
+      for (int col : cols)
+      {
+         if (indexed[col].index != null) continue;
+         indexed[col] = new Column(indexed[col].values, indexed[col].codes, true);
+         changed      = true;
+      }
+      
+      return changed ? new ColumnarTable(columnHeadings, indexed, nRows) : this;
+   }
+   
+   
+   /**
+    * Create a table with the same columns as this one and the rows sorted
+    * lexicographically: by the first column, then for equal values by the
+    * second, and so on. The sort is stable and, as the codes are in the
+    * same order as the values, compares no strings.
+    * @return the sorted table
+    */
+   public ColumnarTable sortRows()
+   {
+      // A least-significant-column-first radix sort, with a counting sort
+      // of the codes of each column in turn.
+      int[] order = new int[nRows];
+      for (int i=0; i<nRows; i++) order[i] = i;
+      
+      for (int col=columns.length-1; col>=0; col--)
+      {
+         Column c      = columns[col];
+         int[]  start  = new int[c.values.length + 1];
+         int[]  sorted = new int[nRows];
+         for (int i=0; i<nRows; i++) start[c.codes[i] + 1]++;
+         for (int k=1; k<start.length; k++) start[k] += start[k-1];
+         for (int i=0; i<nRows; i++) sorted[start[c.codes[order[i]]]++] = order[i];
+         order = sorted;
+      }
+      
+      // Columns selected more than once are permuted only once.
+      Map<Column, Column> permuted = new IdentityHashMap<>();
+      Column[]            sorted   = new Column[columns.length];
+      for (int col=0; col<columns.length; col++)
+      {
+         Column c = columns[col];
+         if (!permuted.containsKey(c))
+         {
+            int[] codes = new int[nRows];
+            for (int i=0; i<nRows; i++) codes[i] = c.codes[order[i]];
+            permuted.put(c, new Column(c.values, codes, c.index != null));
+         }
+         sorted[col] = permuted.get(c);
+      }
+      
+      return new ColumnarTable(columnHeadings, sorted, nRows);
+   }
+   
+   
+   /**
+    * Convert to the representation used by older parts of the code.
+    * @return a new Vector2D, which the caller is free to modify
+    */
+   public Vector2D<String> toVector2D()
+   {
+      Vector2D<String> v2d = new Vector2D<>();
+      for (int i=0; i<nRows; i++) v2d.add(new Vector<>(getRow(i)));
+      return v2d;
+   }
+   
+   
+   /**
+    * Rough estimate of the heap occupied by the table: the distinct values
+    * of each column, four bytes per cell and the indexes.
+    * @return the estimated size in bytes
+    */
+   public long estimateSize()
+   {
+      long size = 64;
+      for (String heading : columnHeadings) size += 48 + 2*heading.length();
+      
+      Map<Column, Boolean> counted = new IdentityHashMap<>();
+      for (Column c : columns)
+      {
+         if (counted.put(c, Boolean.TRUE) != null) continue;
+         size += 32 + 4L*c.codes.length + 4L*c.values.length;
+         for (String s : c.values) size += 48 + ((s == null) ? 0 : 2*s.length());
+         if (c.index != null) size += 4L*(c.codes.length + c.values.length) + 48L*c.values.length;
+      }
+      
+      return size;
+   }
+   
+   
+   private void checkRow(int row)
+   {
+      if ((row < 0) || (row >= nRows))
+         throw new IndexOutOfBoundsException("row=" + row + ", max=" + (nRows-1));
+   }
+   
+   
+   private abstract static class ReadOnlyList extends AbstractList<String>
+                                              implements RandomAccess
+   {
+   }
+   
+   
+   /**
+    * One column of the table: the distinct values in ascending order and,
+    * for each row, the position of its value in that array.
+    */
+   private static final class Column
+   {
+      final String[] values;
+      final int[]    codes;
+      final Index    index;
+      
+      Column(String[] values, int[] codes, boolean isIndexed)
+      {
+         this.values = values;
+         this.codes  = codes;
+         this.index  = isIndexed ? new Index(values, codes) : null;
+      }
+      
+      /**
+       * @return the code of the value, or a negative number if the value
+       * does not occur in the column
+       */
+      int codeOf(String value)
+      {
+         if (index != null)
+         {
+            Integer code = index.codes.get(value);
+            return (code == null) ? -1 : code;
+         }
+         
+         return Arrays.binarySearch(values, value, VALUE_ORDER);
+      }
+   }
+   
+   
+   /**
+    * Hash index of a column: the code of each value and, for each code,
+    * the rows containing it, which are held contiguously in rows from
+    * start[code] to start[code+1].
+    */
+   private static final class Index
+   {
+      final Map<String, Integer> codes;
+      final int[]                start;
+      final int[]                rows;
+      
+      Index(String[] values, int[] columnCodes)
+      {
+         codes = new HashMap<>(2*values.length);
+         for (int k=0; k<values.length; k++) codes.put(values[k], k);
+         
+         start = new int[values.length + 1];
+         rows  = new int[columnCodes.length];
+         for (int code : columnCodes) start[code + 1]++;
+         for (int k=1; k<start.length; k++) start[k] += start[k-1];
+         
+         int[] next = Arrays.copyOf(start, values.length);
+         for (int i=0; i<columnCodes.length; i++) rows[next[columnCodes[i]]++] = i;
+      }
+   }
+   
+   
+   /**
+    * Accumulates the table one cell at a time, in row order, as the values
+    * arrive from a parser, or one row at a time. Values are dictionary-
+    * encoded as they are added, so that repeated strings are held only once
+    * even while the table is being built. A builder is not thread-safe and
+    * can be used to build only one table.
+    */
+   public static final class Builder
+   {
+      private final List<String>                columnHeadings;
+      private final int                         nCols;
+      private final boolean[]                   isIndexed;
+      private final List<Map<String, Integer>>  codeMaps;
+      private final List<List<String>>          values;
+      private final int[][]                     codes;
+      private int                               nRows;
+      private int                               cell;
+      private boolean                           isBuilt;
+      
+      private Builder(List<String> columnHeadings)
+      {
+         this.columnHeadings = Collections.unmodifiableList(new ArrayList<>(columnHeadings));
+         nCols     = columnHeadings.size();
+         isIndexed = new boolean[nCols];
+         codeMaps  = new ArrayList<>(nCols);
+         values    = new ArrayList<>(nCols);
+         codes     = new int[nCols][16];
+         for (int i=0; i<nCols; i++)
+         {
+            codeMaps.add(new HashMap<String, Integer>());
+            values.add(new ArrayList<String>());
+         }
+      }
+      
+      
+      /**
+       * Request a hash index on a column.
+       * @param heading the heading of the column; a heading not present in
+       * the table is ignored, so that the same key columns can be requested
+       * for any query
+       * @return this builder
+       */
+      public Builder index(String heading)
+      {
+         int col = columnHeadings.indexOf(heading);
+         if (col != -1) isIndexed[col] = true;
+         return this;
+      }
+      
+      
+      /**
+       * Add the next value of the current row.
+       * @param value the value, which may be null
+       * @return this builder
+       */
+      public Builder add(String value)
+      {
+         checkNotBuilt();
+         if (cell == nCols)
+            throw new IllegalArgumentException("Row " + nRows + " has more than "
+                                               + nCols + " values.");
+         
+         Map<String, Integer> codeMap = codeMaps.get(cell);
+         Integer code = codeMap.get(value);
+         if (code == null)
+         {
+            code = codeMap.size();
+            codeMap.put(value, code);
+            values.get(cell).add(value);
+         }
+         
+         if (nRows == codes[cell].length)
+            codes[cell] = Arrays.copyOf(codes[cell], 2*nRows);
+         codes[cell][nRows] = code;
+         cell++;
+         
+         return this;
+      }
+      
+      
+      /**
+       * Complete the current row, padding it with empty strings if fewer
+       * values were added than there are columns.
+       * @return this builder
+       */
+      public Builder endRow()
+      {
+         while (cell < nCols) add("");
+         nRows++;
+         cell = 0;
+         
+         return this;
+      }
+      
+      
+      /**
+       * Add a complete row.
+       * @param row the values of the row
+       * @return this builder
+       */
+      public Builder addRow(List<String> row)
+      {
+         for (String value : row) add(value);
+         return endRow();
+      }
+      
+      
+      /**
+       * @return the number of complete rows added so far
+       */
+      public int getRowCount()
+      {
+         return nRows;
+      }
+      
+      
+      /**
+       * Sort the values of each column and renumber the codes to match.
+       * Any incomplete last row is discarded.
+       * @return the table
+       */
+      public ColumnarTable build()
+      {
+         checkNotBuilt();
+         isBuilt = true;
+         
+         Column[] columns = new Column[nCols];
+         for (int col=0; col<nCols; col++)
+         {
+            final List<String> unsorted = values.get(col);
+            int     nValues = unsorted.size();
+            Integer[] order = new Integer[nValues];
+            for (int k=0; k<nValues; k++) order[k] = k;
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+               @Override
+               public int compare(Integer k1, Integer k2)
+               {
+                  return VALUE_ORDER.compare(unsorted.get(k1), unsorted.get(k2));
+               }
+            });
+            
+            String[] sorted = new String[nValues];
+            int[]    recode = new int[nValues];
+            for (int k=0; k<nValues; k++)
+            {
+               sorted[k]        = unsorted.get(order[k]);
+               recode[order[k]] = k;
+            }
+            
+            int[] columnCodes = Arrays.copyOf(codes[col], nRows);
+            for (int i=0; i<nRows; i++) columnCodes[i] = recode[columnCodes[i]];
+            
+            columns[col] = new Column(sorted, columnCodes, isIndexed[col]);
+            codes[col]   = null;
+         }
+         codeMaps.clear();
+         values.clear();
+         
+         return new ColumnarTable(columnHeadings, columns, nRows);
+      }
+      
+      
+      private void checkNotBuilt()
+      {
+         if (isBuilt) throw new IllegalStateException("The table has already been built.");
+      }
+   }
+}
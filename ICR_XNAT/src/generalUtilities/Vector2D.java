@@ -400,8 +400,8 @@ public class Vector2D<E>
       int ind = 0;
       do
       {
-         ind = vRow.indexOf(searchElement);
-         if (ind != -1) indices.add(ind);
+         ind = vRow.indexOf(searchElement, ind);
+         if (ind != -1) indices.add(ind++);
       }
       while (ind != -1);
       
@@ -475,8 +475,8 @@ public class Vector2D<E>
       int ind = 0;
       do
       {
-         ind = vCol.indexOf(searchElement);
-         if (ind != -1) indices.add(ind);
+         ind = vCol.indexOf(searchElement, ind);
+         if (ind != -1) indices.add(ind++);
       }
       while (ind != -1);
       
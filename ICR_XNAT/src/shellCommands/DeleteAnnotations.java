@@ -44,6 +44,7 @@ package shellCommands;
 
 import exceptions.XNATException;
 import generalUtilities.Vector2D;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -190,7 +191,8 @@ public class DeleteAnnotations
                                           "/assessors/"   + xnatAssLabel  +
                                           "?removeFiles=true";
 
-                     xnprf.doRESTDelete(restCommand);
+                     InputStream is = xnprf.doRESTDelete(restCommand);
+                     if (is != null) is.close();
                   }
                   catch (Exception ex)
                   {
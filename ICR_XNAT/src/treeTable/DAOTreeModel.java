@@ -44,6 +44,7 @@
 
 package treeTable;
 
+import generalUtilities.ColumnarTable;
 import generalUtilities.UidGenerator;
 import generalUtilities.SimpleColourTable;
 import imageUtilities.DownloadIcon;
@@ -136,7 +137,7 @@ public class DAOTreeModel extends DefaultTreeModel
 	 * to repeat root for every entry.
 	 */
 
-	public void populateTreeModel(String[][]     treeTableData,
+	public void populateTreeModel(ColumnarTable  treeTableData,
                                  Vector<String> treeColTypes,
                                  boolean        isLazySearch)
 	{
@@ -148,7 +149,7 @@ public class DAOTreeModel extends DefaultTreeModel
 		 */
       String IRL_ROOT_NAME = "XNAT database";
 
-		int nRows = treeTableData.length;
+		int nRows = treeTableData.getRowCount();
 		boolean newNodeNeeded;
 
 		// Before we start, erase the old model.
@@ -182,14 +183,14 @@ public class DAOTreeModel extends DefaultTreeModel
 				if (curColNode[i] != null)
 				{
                DAOTreeNodeUserObject uo = curColNode[i].getUserObject();
-					if (uo.getDisplayName().equals(treeTableData[j][i]))
+					if (uo.getDisplayName().equals(treeTableData.get(j, i)))
                   newNodeNeeded = false;
 				}
 
 				if (newNodeNeeded)
 				{
-               String nodeName = treeTableData[j][i];
-               String leafName = isLeaf ? treeTableData[j][i+1] : "";
+               String nodeName = treeTableData.get(j, i);
+               String leafName = isLeaf ? treeTableData.get(j, i+1) : "";
                String nodeType = isLeaf ? treeColTypes.elementAt(i+1)
                                         : treeColTypes.elementAt(i);
 
@@ -197,7 +198,7 @@ public class DAOTreeModel extends DefaultTreeModel
                // only for leaf nodes.
                String[] tableData = new String[nTableCols];
                if (isLeaf)
-                  for (int k=0; k<nTableCols; k++) tableData[k] = treeTableData[j][nTreeCols+k];
+                  for (int k=0; k<nTableCols; k++) tableData[k] = treeTableData.get(j, nTreeCols+k);
 
                // Retrieve the tooltip and create icons from the render list.
                Vector<String>  nodeProperties = irl.getIconInfoProperties().get(nodeType);
@@ -253,13 +254,13 @@ public class DAOTreeModel extends DefaultTreeModel
     * the lazy search. Notice that this is a significantly easier task than
     * populating the complete tree from scratch, as all we have to do is populate
     * a single level, given the parent node path.
-    * @param treeTableData a 2D String array, containing the data with which to
+    * @param treeTableData a ColumnarTable, containing the data with which to
     * fill both the tree and table (if this is a leaf)
     * @param treeColTypes a list of the column types for the tree and the table
     * @param expansionNodePath a DAOMutableTreeNode array describing the path to
     * the node that is being expanded
     */
-   public void populateTreeModelNode(String[][]           treeTableData,
+   public void populateTreeModelNode(ColumnarTable        treeTableData,
                                      Vector<String>       treeColTypes,
                                      TreeNode[]           expansionNodePath)
    {
@@ -273,7 +274,7 @@ public class DAOTreeModel extends DefaultTreeModel
       // previous stage of the lazy search to be FETCHING.
       nd.remove(child);
   
-      for (int j=0; j<treeTableData.length; j++)
+      for (int j=0; j<treeTableData.getRowCount(); j++)
 		{         
          boolean newNodeNeeded;
          if (j == 0) newNodeNeeded = true;
@@ -283,15 +284,15 @@ public class DAOTreeModel extends DefaultTreeModel
             for (int k=0; k<nd.getChildCount(); k++)
             {
                DAOMutableTreeNode ch = (DAOMutableTreeNode) nd.getChildAt(k);
-               if (ch.getUserObject().getDisplayName().equals(treeTableData[j][i]))
+               if (ch.getUserObject().getDisplayName().equals(treeTableData.get(j, i)))
                   newNodeNeeded = false;
             }
          }
 
          if (newNodeNeeded)
          {
-            String nodeName = treeTableData[j][i];
-            String leafName = isLeaf ? treeTableData[j][i+1] : "";
+            String nodeName = treeTableData.get(j, i);
+            String leafName = isLeaf ? treeTableData.get(j, i+1) : "";
             String nodeType = isLeaf ? treeColTypes.elementAt(i+1)
                                        : treeColTypes.elementAt(i);
 
@@ -299,7 +300,7 @@ public class DAOTreeModel extends DefaultTreeModel
             // only for leaf nodes.
             String[] tableData = new String[nTableCols];
             if (isLeaf)
-               for (int k=0; k<nTableCols; k++) tableData[k] = treeTableData[j][nTreeCols+k];
+               for (int k=0; k<nTableCols; k++) tableData[k] = treeTableData.get(j, nTreeCols+k);
 
             // If 
             if (isLeaf && nodeName.equals(""))
@@ -44,10 +44,9 @@
 package treeTable;
 
 
-import generalUtilities.Vector2D;
+import generalUtilities.ColumnarTable;
 import imageUtilities.DownloadIcon;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Vector;
 import javax.swing.GroupLayout;
@@ -199,7 +198,7 @@ public class DAOTreeTable extends JPanel
    }
 
 
-   public void refresh(Vector2D<String>          unsortedTreeTableData,
+   public void refresh(ColumnarTable             unsortedTreeTableData,
                        Vector<String>            treeColTypes,
                        Vector<String>            tableColHeadings,
                        String                    searchRootElement,
@@ -217,9 +216,9 @@ public class DAOTreeTable extends JPanel
        * of the tree part of the query result, the leafDisplay field. This is the
        * reason for the -1 in the assignment of nTreeCols.
 		 */
-      int        nTreeCols     = treeColTypes.size();
-      int        nTableCols    = tableColHeadings.size();
-      String[][] treeTableData = sortData(unsortedTreeTableData);
+      int           nTreeCols     = treeColTypes.size();
+      int           nTableCols    = tableColHeadings.size();
+      ColumnarTable treeTableData = sortData(unsortedTreeTableData);
       
       if (expansionNodePath.length == 1)
       {
@@ -438,59 +437,14 @@ public class DAOTreeTable extends JPanel
     * We work our way along the rows: if at any column the "letters" are different,
     * the comparison ends straight away; if the "letters" are the same, then we
     * have to move on to the next letter to discriminate the two words.
-    * @param treeTableData
-    * @return sorted version of treeTableData
+    * ColumnarTable.sortRows does this on the codes of the values, so that no
+    * strings are compared or copied.
+    * @param data the unsorted table
+    * @return sorted version of data, sharing its values
     */
-   private String[][] sortData(Vector2D<String> dataS2DV)
-                      throws ClassCastException
+   private ColumnarTable sortData(ColumnarTable data)
    {
-      dataS2DV.sortRows(new Comparator<Vector<String>>()
-      {
-         int col;
-         Vector<String> o1;
-         Vector<String> o2;
-
-         @Override
-         public int compare(Vector<String> o1, Vector<String> o2)
-         {
-            this.o1 = o1;
-            this.o2 = o2;
-            if (o1.size() != o2.size())
-               throw new ClassCastException("Not all rows in the Searchable2DVector have the same size.");
-            col = 0;
-
-            return compareVectors();
-         }
-
-         private int compareVectors()
-         {
-            int colComparison = 0;
-            try
-            {
-               colComparison = o1.elementAt(col).compareTo(o2.elementAt(col));
-            }
-            catch (Exception ex)
-            {
-               logger.warn("Error in comparing vectors for sorting tree table.");
-            }
-            if (colComparison != 0) return colComparison;
-            else if (col == o1.size()-1) return 0;
-            else
-            {
-               col++;
-               return compareVectors();
-            }
-         }
-      });
-
-      int nx = dataS2DV.getRow(0).size();
-      int ny = dataS2DV.size();
-      String[][] treeTableData = new String[ny][nx];
-      for (int j=0; j<ny; j++)
-         for (int i=0; i<nx; i++)
-            treeTableData[j][i] = dataS2DV.atom(i, j);
-
-      return treeTableData;
+      return data.sortRows();
    }
 
 
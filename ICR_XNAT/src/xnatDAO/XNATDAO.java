@@ -53,7 +53,7 @@ import configurationLists.DAOReturnTypesList;
 import configurationLists.DAOOutputFormatsList;
 import fileDownloads.FileListWorker;
 import generalUtilities.ColouredCellRenderer;
-import generalUtilities.Vector2D;
+import generalUtilities.ColumnarTable;
 import imageUtilities.DownloadIcon;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
@@ -102,7 +102,7 @@ public final class XNATDAO extends XNATGUI
    private static final int           DATA_SELECTED        = 0;
    private boolean                    ignoreSettingsChange = false;
    private DAOTreeTableSettingsList   settingsList;
-   private Vector2D                   latestQueryResult;
+   private ColumnarTable              latestQueryResult;
    private boolean                    queryInProgress      = false;
    private boolean                    isLazySearch         = true;
    private TreeNode[]                 expansionNodePath;
@@ -1066,10 +1066,10 @@ public final class XNATDAO extends XNATGUI
 
    /**
     * Refresh the tree table with the results of an XNAT query.
-    * @param distinctQueryResult a Vector2D containing the information to display
+    * @param distinctQueryResult a ColumnarTable containing the information to display
     */
-   private void recreateTreeTable(Vector2D   distinctQueryResult,
-                                  TreeNode[] expansionNodePath)
+   private void recreateTreeTable(ColumnarTable distinctQueryResult,
+                                  TreeNode[]    expansionNodePath)
    {
       // Occasionally this routine may be called with no valid data. If this
       // occurs, just return without attempting to display anything.
@@ -1078,7 +1078,6 @@ public final class XNATDAO extends XNATGUI
       TreeTableProperties ttp = new TreeTableProperties();
 
       int nTreeColumns        = ttp.treeElements.size();
-      int nRows               = distinctQueryResult.size();
 
       int nCols               = nTreeColumns + nTableColumns;
 
@@ -1096,23 +1095,15 @@ public final class XNATDAO extends XNATGUI
       }
       else
       {
-         Vector2D queryResult    = new Vector2D<String>();
-
          // Because of the way the XNAT searches work, the query only returns
          // distinct columns regardless of whether any fields are repeated in
          // what is passed to xnrt.search above. In order to populate the tree
-         // and the table properly, we now need to reconstruct any duplicated columns.
+         // and the table properly, we now need to reconstruct any duplicated
+         // columns. The selected table shares its columns with the original.
+         int[] columnsInDistinct = new int[nCols];
          for (int i=0; i<nCols; i++)
-         {
-            int columnInDistinct = ttp.tableColumnElements.indexOf(ttp.searchElements.elementAt(i));
-            for (int j=0; j<nRows; j++)
-            {
-               if (i == 0) queryResult.add(new Vector<String>());
-               Vector<String> row = queryResult.getRow(j);
-               row.add((String) distinctQueryResult.atom(columnInDistinct, j));
-               queryResult.replaceRow(row, j);
-            }
-         }
+            columnsInDistinct[i] = ttp.tableColumnElements.indexOf(ttp.searchElements.elementAt(i));
+         ColumnarTable queryResult = distinctQueryResult.selectColumns(columnsInDistinct);
 
          dAOTreeTable1.refresh(queryResult,
                               ttp.treeElements,
@@ -95,8 +95,9 @@ public abstract class XNATGUI extends javax.swing.JDialog implements ActionListe
    protected String            log4jProps;
    protected boolean           authenticationInProgress = false;
    protected boolean           selectedProfileDidChange = false;
-   protected String            version          = "2.1 (alpha) 08/12/2016";
+   protected String            version          = VERSION;
    
+   public    static final String  VERSION                = "2.1 (alpha) 08/12/2016";
    protected static final boolean REQUIRE_AUTHENTICATION = true;           
    
 
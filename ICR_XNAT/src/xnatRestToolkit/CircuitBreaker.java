@@ -0,0 +1,208 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: CircuitBreaker.java
+* First created on Oct 18, 2026 at 8:30 PM
+* 
+* Circuit breaker for a single XNAT server, shared by all connections to
+* it. After a run of transient failures the breaker opens and requests
+* fail immediately, rather than each waiting for its own timeouts, until
+* a trial request shows that the server has recovered. The breaker also
+* keeps the counters reported by ResilienceStatistics.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+public class CircuitBreaker
+{
+   static  Logger logger = Logger.getLogger(CircuitBreaker.class);
+   
+   public enum State {CLOSED, OPEN, HALF_OPEN}
+   
+   private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+   
+   private final String server;
+   private State        state = State.CLOSED;
+   private int          consecutiveFailures;
+   private long         openUntil;
+   private boolean      isTrialInProgress;
+   private long         successes;
+   private long         failures;
+   private long         retries;
+   private long         trips;
+   private long         rejections;
+   
+   
+   private CircuitBreaker(String server)
+   {
+      this.server = server;
+   }
+   
+   
+   /**
+    * @param server a String identifying the server, typically its URL
+    * @return the breaker for the server
+    */
+   public static synchronized CircuitBreaker getInstance(String server)
+   {
+      CircuitBreaker cb = breakers.get(server);
+      if (cb == null)
+      {
+         cb = new CircuitBreaker(server);
+         breakers.put(server, cb);
+      }
+      return cb;
+   }
+   
+   
+   /**
+    * @return a snapshot of the counters for every server contacted
+    */
+   public static synchronized List<ResilienceStatistics> getAllStatistics()
+   {
+      List<ResilienceStatistics> stats = new ArrayList<>();
+      for (CircuitBreaker cb : breakers.values()) stats.add(cb.getStatistics());
+      
+      return stats;
+   }
+   
+   
+   /**
+    * Decide whether a request may be sent. Every request allowed must be
+    * followed by a call to recordOutcome or recordIgnored.
+    * @param policy the policy giving the open interval
+    * @return false if the breaker is open and the request should fail
+    * without being sent
+    */
+   public synchronized boolean allowRequest(RetryPolicy policy)
+   {
+      if (state == State.OPEN)
+      {
+         if (System.currentTimeMillis() < openUntil)
+         {
+            rejections++;
+            return false;
+         }
+         state = State.HALF_OPEN;
+         logger.info("Circuit breaker for " + server + " half-open: sending a trial request.");
+      }
+      
+      if (state == State.HALF_OPEN)
+      {
+         // Only one request at a time is allowed to test the server.
+         if (isTrialInProgress)
+         {
+            rejections++;
+            return false;
+         }
+         isTrialInProgress = true;
+      }
+      
+      return true;
+   }
+   
+   
+   /**
+    * Record the result of a request allowed by allowRequest.
+    * @param isTransientFailure true if the request failed in a way that
+    * suggests the server is unavailable, false if the server responded,
+    * even with an error
+    * @param policy the policy giving the failure threshold and open interval
+    */
+   public synchronized void recordOutcome(boolean isTransientFailure, RetryPolicy policy)
+   {
+      isTrialInProgress = false;
+      
+      if (!isTransientFailure)
+      {
+         successes++;
+         consecutiveFailures = 0;
+         if (state != State.CLOSED)
+         {
+            state = State.CLOSED;
+            logger.info("Circuit breaker for " + server + " closed.");
+         }
+         return;
+      }
+      
+      failures++;
+      consecutiveFailures++;
+      if ((state == State.HALF_OPEN) || (consecutiveFailures >= policy.getFailureThreshold()))
+      {
+         if (state != State.OPEN) trips++;
+         state     = State.OPEN;
+         openUntil = System.currentTimeMillis() + policy.getOpenInterval();
+         logger.warn("Circuit breaker for " + server + " opened after "
+                     + consecutiveFailures + " consecutive failures.");
+      }
+   }
+   
+   
+   /**
+    * Record that a request allowed by allowRequest failed before reaching
+    * the server, so that it counts neither for nor against the server. In
+    * the half-open state, the next request becomes the trial.
+    */
+   public synchronized void recordIgnored()
+   {
+      isTrialInProgress = false;
+   }
+   
+   
+   public synchronized void recordRetry()
+   {
+      retries++;
+   }
+   
+   
+   public synchronized State getState()
+   {
+      return state;
+   }
+   
+   
+   public synchronized ResilienceStatistics getStatistics()
+   {
+      return new ResilienceStatistics(server, state.name(), successes, failures,
+                                      retries, trips, rejections);
+   }
+}
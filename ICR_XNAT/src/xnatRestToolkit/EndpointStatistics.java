@@ -0,0 +1,239 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: EndpointStatistics.java
+* First created on Oct 18, 2026 at 9:10 PM
+* 
+* Immutable snapshot of the requests made to one normalised REST
+* endpoint, e.g., "GET /files", as recorded by RestMetrics. Latencies
+* are kept as a histogram with fixed bucket bounds, from which the
+* percentiles are estimated.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.util.Arrays;
+
+public class EndpointStatistics
+{
+   /**
+    * Upper bounds in milliseconds of the latency histogram buckets. The
+    * last bucket holds everything slower than the final bound.
+    */
+   private static final long[] BUCKET_BOUNDS_MILLIS =
+      {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+   
+   public static final int N_BUCKETS = BUCKET_BOUNDS_MILLIS.length + 1;
+   
+   private final String endpoint;
+   private final long   requests;
+   private final long   errors;
+   private final long   bytesSent;
+   private final long   bytesReceived;
+   private final long   totalLatencyNanos;
+   private final long   maxLatencyNanos;
+   private final long[] buckets;
+   
+   
+   public EndpointStatistics(String endpoint, long requests, long errors,
+                             long bytesSent, long bytesReceived,
+                             long totalLatencyNanos, long maxLatencyNanos,
+                             long[] buckets)
+   {
+      if (buckets.length != N_BUCKETS)
+         throw new IllegalArgumentException("The histogram must have " + N_BUCKETS + " buckets.");
+      
+      this.endpoint          = endpoint;
+      this.requests          = requests;
+      this.errors            = errors;
+      this.bytesSent         = bytesSent;
+      this.bytesReceived     = bytesReceived;
+      this.totalLatencyNanos = totalLatencyNanos;
+      this.maxLatencyNanos   = maxLatencyNanos;
+      this.buckets           = Arrays.copyOf(buckets, buckets.length);
+   }
+   
+   
+   /**
+    * @param nanos the latency of a request in nanoseconds
+    * @return the index of the histogram bucket into which it falls
+    */
+   public static int getBucket(long nanos)
+   {
+      long millis = nanos / 1000000;
+      for (int i=0; i<BUCKET_BOUNDS_MILLIS.length; i++)
+         if (millis < BUCKET_BOUNDS_MILLIS[i]) return i;
+      
+      return BUCKET_BOUNDS_MILLIS.length;
+   }
+   
+   
+   /**
+    * @return the upper bounds in milliseconds of the histogram buckets,
+    * of which there is one more than there are bounds
+    */
+   public static long[] getBucketBoundsMillis()
+   {
+      return Arrays.copyOf(BUCKET_BOUNDS_MILLIS, BUCKET_BOUNDS_MILLIS.length);
+   }
+   
+   
+   /**
+    * @return the method and normalised path, e.g., "POST /data/search"
+    */
+   public String getEndpoint()
+   {
+      return endpoint;
+   }
+   
+   
+   public long getRequests()
+   {
+      return requests;
+   }
+   
+   
+   /**
+    * @return the number of requests that failed to connect or to which the
+    * server responded with an error
+    */
+   public long getErrors()
+   {
+      return errors;
+   }
+   
+   
+   public long getBytesSent()
+   {
+      return bytesSent;
+   }
+   
+   
+   public long getBytesReceived()
+   {
+      return bytesReceived;
+   }
+   
+   
+   public long getTotalLatencyNanos()
+   {
+      return totalLatencyNanos;
+   }
+   
+   
+   public double getMeanLatencyMillis()
+   {
+      return (requests == 0) ? 0.0 : totalLatencyNanos / 1.0e6 / requests;
+   }
+   
+   
+   public long getMaxLatencyMillis()
+   {
+      return maxLatencyNanos / 1000000;
+   }
+   
+   
+   public long[] getHistogram()
+   {
+      return Arrays.copyOf(buckets, buckets.length);
+   }
+   
+   
+   /**
+    * Estimate a latency percentile from the histogram. The result is
+    * accurate only to the width of the bucket in which it falls.
+    * @param percentile a value between 0 and 100
+    * @return the estimated latency in milliseconds
+    */
+   public long getLatencyPercentileMillis(double percentile)
+   {
+      if ((percentile < 0) || (percentile > 100))
+         throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+      
+      long total = 0;
+      for (long count : buckets) total += count;
+      if (total == 0) return 0;
+      
+      long target     = Math.max(1, (long) Math.ceil(percentile * total / 100.0));
+      long maxMillis  = getMaxLatencyMillis();
+      long cumulative = 0;
+      for (int i=0; i<BUCKET_BOUNDS_MILLIS.length; i++)
+      {
+         cumulative += buckets[i];
+         if (cumulative >= target) return Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis);
+      }
+      
+      return maxMillis;
+   }
+   
+   
+   /**
+    * Find the activity between an earlier snapshot of the same endpoint
+    * and this one. The maximum latency cannot be divided up by interval
+    * and so remains that of this snapshot.
+    * @param earlier the earlier snapshot, or null
+    * @return the difference between the two snapshots
+    */
+   public EndpointStatistics since(EndpointStatistics earlier)
+   {
+      if (earlier == null) return this;
+      
+      long[] delta = new long[buckets.length];
+      for (int i=0; i<buckets.length; i++) delta[i] = buckets[i] - earlier.buckets[i];
+      
+      return new EndpointStatistics(endpoint,
+                                    requests          - earlier.requests,
+                                    errors            - earlier.errors,
+                                    bytesSent         - earlier.bytesSent,
+                                    bytesReceived     - earlier.bytesReceived,
+                                    totalLatencyNanos - earlier.totalLatencyNanos,
+                                    maxLatencyNanos, delta);
+   }
+   
+   
+   @Override
+   public String toString()
+   {
+      return endpoint + ": " + requests + " requests, " + errors + " errors, "
+             + String.format("%.1f", getMeanLatencyMillis()) + " ms mean, "
+             + getLatencyPercentileMillis(50) + " ms p50, "
+             + getLatencyPercentileMillis(95) + " ms p95, "
+             + getLatencyPercentileMillis(99) + " ms p99, "
+             + getMaxLatencyMillis() + " ms max, "
+             + bytesSent + " bytes sent, "
+             + bytesReceived + " bytes received";
+   }
+}
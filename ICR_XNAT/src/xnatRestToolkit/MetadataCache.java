@@ -0,0 +1,336 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: MetadataCache.java
+* First created on Oct 18, 2026 at 5:20 PM
+* 
+* Shared, memory-bounded cache of the result sets returned by XNAT REST
+* queries, keyed by server, user and REST URI. Each entry expires after
+* a time-to-live that depends on the endpoint queried, and all entries
+* for a server are discarded whenever that server is modified through
+* the same XNATServerConnection, so that repeated listings within a
+* session cost no network round trip but uploads are seen at once.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.apache.log4j.Logger;
+
+public class MetadataCache
+{
+   static  Logger logger = Logger.getLogger(MetadataCache.class);
+   
+   public  static final long DEFAULT_TTL       = 60*1000;
+   public  static final long DEFAULT_LIST_TTL  = 5*60*1000;
+   public  static final long DEFAULT_MAX_BYTES = 16*1024*1024;
+   
+   private static MetadataCache defaultCache;
+   
+   private final LinkedHashMap<String, CacheEntry> entries
+                                  = new LinkedHashMap<>(256, 0.75f, true);
+   private final List<TtlRule>    rules = new ArrayList<>();
+   private long                   defaultTtl = DEFAULT_TTL;
+   private long                   maxBytes   = DEFAULT_MAX_BYTES;
+   private long                   bytes;
+   private long                   hits;
+   private long                   misses;
+   private long                   expirations;
+   private long                   evictions;
+   private long                   invalidations;
+   
+   
+   private static class CacheEntry
+   {
+      final XNATResultSet result;
+      final long          size;
+      final long          expiry;
+      
+      CacheEntry(XNATResultSet result, long size, long expiry)
+      {
+         this.result = result;
+         this.size   = size;
+         this.expiry = expiry;
+      }
+   }
+   
+   
+   private static class TtlRule
+   {
+      final Pattern pattern;
+      final long    ttl;
+      
+      TtlRule(Pattern pattern, long ttl)
+      {
+         this.pattern = pattern;
+         this.ttl     = ttl;
+      }
+   }
+   
+   
+   public MetadataCache()
+   {
+      // Listings of files, resources and scans are the queries repeated most
+      // often by the download workers and change only when data are uploaded.
+      setTimeToLive(".*/scans(\\?.*)?",     DEFAULT_LIST_TTL);
+      setTimeToLive(".*/resources(\\?.*)?", DEFAULT_LIST_TTL);
+      setTimeToLive(".*/files(\\?.*)?",     DEFAULT_LIST_TTL);
+   }
+   
+   
+   /**
+    * @return the cache shared by all XNATRESTToolkit instances
+    */
+   public static synchronized MetadataCache getDefault()
+   {
+      if (defaultCache == null) defaultCache = new MetadataCache();
+      return defaultCache;
+   }
+   
+   
+   /**
+    * Set the time for which the results of queries on matching URIs are
+    * kept. Rules are tried in reverse order of their addition, so a later
+    * rule overrides an earlier one for the URIs that both match.
+    * @param URIRegex a regular expression matched against the whole REST URI
+    * @param ttl the time-to-live in milliseconds, or zero not to cache at all
+    */
+   public synchronized void setTimeToLive(String URIRegex, long ttl)
+   {
+      if (ttl < 0) throw new IllegalArgumentException("Time-to-live must not be negative");
+      rules.add(0, new TtlRule(Pattern.compile(URIRegex), ttl));
+   }
+   
+   
+   /**
+    * @param ttl the time-to-live in milliseconds for URIs not matched by any
+    * rule, or zero not to cache them
+    */
+   public synchronized void setDefaultTimeToLive(long ttl)
+   {
+      if (ttl < 0) throw new IllegalArgumentException("Time-to-live must not be negative");
+      defaultTtl = ttl;
+   }
+   
+   
+   /**
+    * @param maxBytes the approximate upper limit on the memory used by the cache
+    */
+   public synchronized void setMaxBytes(long maxBytes)
+   {
+      this.maxBytes = maxBytes;
+      evict();
+   }
+   
+   
+   /**
+    * Look up the result of a previous query.
+    * @param xnsc the connection through which the query is made
+    * @param RESTCommand the REST URI of the query
+    * @return the cached result, or null if there is no current entry
+    */
+   public synchronized XNATResultSet get(XNATServerConnection xnsc, String RESTCommand)
+   {
+      String     key   = getKey(xnsc, RESTCommand);
+      CacheEntry entry = entries.get(key);
+      if (entry == null)
+      {
+         misses++;
+         return null;
+      }
+      
+      if (System.currentTimeMillis() > entry.expiry)
+      {
+         entries.remove(key);
+         bytes -= entry.size;
+         expirations++;
+         misses++;
+         return null;
+      }
+      
+      hits++;
+      return entry.result;
+   }
+   
+   
+   /**
+    * Record the result of a query. Result sets are immutable, so the same
+    * instance is returned to every caller.
+    * @param xnsc the connection through which the query was made
+    * @param RESTCommand the REST URI of the query
+    * @param resultSet the result set returned
+    */
+   public synchronized void put(XNATServerConnection xnsc, String RESTCommand,
+                                XNATResultSet resultSet)
+   {
+      if (resultSet == null) return;
+      
+      long ttl = getTimeToLive(RESTCommand);
+      if (ttl == 0) return;
+      
+      long size = estimateSize(RESTCommand, resultSet);
+      if (size > maxBytes) return;
+      
+      CacheEntry old = entries.put(getKey(xnsc, RESTCommand),
+                          new CacheEntry(resultSet, size, System.currentTimeMillis() + ttl));
+      if (old != null) bytes -= old.size;
+      bytes += size;
+      evict();
+   }
+   
+   
+   /**
+    * Discard all the entries for the server and user of a given connection.
+    * This is called whenever data are uploaded to or deleted from the server.
+    * @param xnsc the connection
+    */
+   public synchronized void invalidate(XNATServerConnection xnsc)
+   {
+      String prefix = getKey(xnsc, "");
+      Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+      while (it.hasNext())
+      {
+         Map.Entry<String, CacheEntry> me = it.next();
+         if (me.getKey().startsWith(prefix))
+         {
+            bytes -= me.getValue().size;
+            it.remove();
+            invalidations++;
+         }
+      }
+   }
+   
+   
+   /**
+    * Discard every entry in the cache.
+    */
+   public synchronized void invalidateAll()
+   {
+      invalidations += entries.size();
+      entries.clear();
+      bytes = 0;
+   }
+   
+   
+   public synchronized long getHits()
+   {
+      return hits;
+   }
+   
+   
+   public synchronized long getMisses()
+   {
+      return misses;
+   }
+   
+   
+   public synchronized long getExpirations()
+   {
+      return expirations;
+   }
+   
+   
+   public synchronized long getEvictions()
+   {
+      return evictions;
+   }
+   
+   
+   public synchronized long getInvalidations()
+   {
+      return invalidations;
+   }
+   
+   
+   /**
+    * @return the approximate memory currently used by the cache in bytes
+    */
+   public synchronized long getSize()
+   {
+      return bytes;
+   }
+   
+   
+   @Override
+   public synchronized String toString()
+   {
+      return "MetadataCache: " + entries.size() + " entries, " + bytes + " bytes, "
+             + hits + " hits, " + misses + " misses, " + expirations + " expired, "
+             + evictions + " evicted, " + invalidations + " invalidated";
+   }
+   
+   
+   private long getTimeToLive(String RESTCommand)
+   {
+      for (TtlRule rule : rules)
+         if (rule.pattern.matcher(RESTCommand).matches()) return rule.ttl;
+      
+      return defaultTtl;
+   }
+   
+   
+   private void evict()
+   {
+      Iterator<CacheEntry> it = entries.values().iterator();
+      while ((bytes > maxBytes) && it.hasNext())
+      {
+         bytes -= it.next().size;
+         it.remove();
+         evictions++;
+      }
+   }
+   
+   
+   private static String getKey(XNATServerConnection xnsc, String RESTCommand)
+   {
+      return xnsc.getServerURL() + " " + xnsc.getUserid() + " " + RESTCommand;
+   }
+   
+   
+   /**
+    * Rough estimate of the heap occupied by an entry: the key and the
+    * table's own estimate of its size.
+    */
+   private static long estimateSize(String RESTCommand, XNATResultSet resultSet)
+   {
+      return 200 + 2*RESTCommand.length() + resultSet.getTable().estimateSize();
+   }
+}
@@ -0,0 +1,520 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: PooledRestTransport.java
+* First created on Oct 18, 2026 at 10:05 AM
+* 
+* Default implementation of RestTransport. The number of concurrent
+* connections to each host is bounded, so that a large number of
+* worker threads cannot swamp the XNAT server. The sockets themselves
+* are kept alive and reused by the JDK's persistent connection cache,
+* which requires that every response is read to the end and closed:
+* the streams handed out by this class take care of that when closed.
+* Streams that are abandoned without being closed have their
+* connection reclaimed once they are garbage collected.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+public class PooledRestTransport implements RestTransport
+{
+   static  Logger logger = Logger.getLogger(PooledRestTransport.class);
+   
+   public  static final int  DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+   public  static final int  DEFAULT_CONNECT_TIMEOUT          = 5000;
+   public  static final int  DEFAULT_READ_TIMEOUT             = 0;
+   public  static final long DEFAULT_IDLE_EVICTION_TIME       = 60000;
+   public  static final int  DEFAULT_LEASE_TIMEOUT            = 60000;
+   
+   // Maximum number of unread bytes that we are prepared to discard in order
+   // to allow a socket to be reused. Beyond this, it is cheaper to reconnect.
+   private static final int  MAX_DRAIN_BYTES = 65536;
+   
+   private static PooledRestTransport defaultTransport;
+   
+   private final int                                     maxConnectionsPerHost;
+   private final int                                     connectTimeout;
+   private final int                                     readTimeout;
+   private final long                                    idleEvictionTime;
+   private final int                                     leaseTimeout;
+   private final Map<String, HostPool>                   pools  = new HashMap<>();
+   private final Map<HttpURLConnection, HostPool>        leases = new ConcurrentHashMap<>();
+   private final ReferenceQueue<PooledInputStream>       abandonedStreams = new ReferenceQueue<>();
+   private final Set<StreamReference>                    streamReferences
+           = Collections.newSetFromMap(new ConcurrentHashMap<StreamReference, Boolean>());
+   
+   
+   /**
+    * Create a transport with a given connection limit and timeouts, which
+    * waits up to DEFAULT_LEASE_TIMEOUT ms for a free connection, so that a
+    * leaked stream cannot block every later request to the same host.
+    * @param maxConnectionsPerHost the maximum number of simultaneous
+    * connections to any one host
+    * @param connectTimeout time in ms allowed for establishing a connection
+    * (0 = wait indefinitely)
+    * @param readTimeout time in ms allowed for each read from the server
+    * (0 = wait indefinitely)
+    * @param idleEvictionTime time in ms after which the pool for a host that
+    * has not been used is discarded
+    */
+   public PooledRestTransport(int maxConnectionsPerHost, int connectTimeout,
+                              int readTimeout, long idleEvictionTime)
+   {
+      this(maxConnectionsPerHost, connectTimeout, readTimeout, idleEvictionTime,
+           DEFAULT_LEASE_TIMEOUT);
+   }
+   
+   
+   /**
+    * Create a transport with a given connection limit and timeouts.
+    * @param maxConnectionsPerHost the maximum number of simultaneous
+    * connections to any one host
+    * @param connectTimeout time in ms allowed for establishing a connection
+    * (0 = wait indefinitely)
+    * @param readTimeout time in ms allowed for each read from the server
+    * (0 = wait indefinitely)
+    * @param idleEvictionTime time in ms after which the pool for a host that
+    * has not been used is discarded
+    * @param leaseTimeout time in ms allowed for waiting for one of the host's
+    * connections to become free, after which a PoolExhaustedException is
+    * thrown (0 = wait indefinitely, or until the thread is interrupted)
+    */
+   public PooledRestTransport(int maxConnectionsPerHost, int connectTimeout,
+                              int readTimeout, long idleEvictionTime,
+                              int leaseTimeout)
+   {
+      if (maxConnectionsPerHost < 1)
+         throw new IllegalArgumentException("At least one connection per host is required.");
+      if (leaseTimeout < 0)
+         throw new IllegalArgumentException("The lease timeout cannot be negative.");
+      
+      this.maxConnectionsPerHost = maxConnectionsPerHost;
+      this.connectTimeout        = connectTimeout;
+      this.readTimeout           = readTimeout;
+      this.idleEvictionTime      = idleEvictionTime;
+      this.leaseTimeout          = leaseTimeout;
+   }
+   
+   
+   /**
+    * Return the transport shared by all server connections that have not
+    * been given one explicitly. Sharing the transport means that the
+    * per-host limit applies across the whole application.
+    * @return the default transport
+    */
+   public static synchronized PooledRestTransport getDefault()
+   {
+      if (defaultTransport == null)
+      {
+         // The JDK reads the size of its keep-alive cache once only, so this
+         // has an effect only if no HTTP connection has yet been made.
+         if (System.getProperty("http.maxConnections") == null)
+            System.setProperty("http.maxConnections",
+                               Integer.toString(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+         
+         defaultTransport = new PooledRestTransport(DEFAULT_MAX_CONNECTIONS_PER_HOST,
+                                                    DEFAULT_CONNECT_TIMEOUT,
+                                                    DEFAULT_READ_TIMEOUT,
+                                                    DEFAULT_IDLE_EVICTION_TIME,
+                                                    DEFAULT_LEASE_TIMEOUT);
+      }
+      return defaultTransport;
+   }
+   
+   
+   @Override
+   public HttpURLConnection openConnection(URL url, String method)
+          throws IOException
+   {
+      HostPool pool = reservePool(url);
+      try
+      {
+         pool.acquire(leaseTimeout);
+      }
+      catch (IOException exIO)
+      {
+         pool.unreserve();
+         throw exIO;
+      }
+      
+      HttpURLConnection connection;
+      try
+      {
+         connection = (HttpURLConnection) url.openConnection();
+         connection.setRequestMethod(method);
+         connection.setConnectTimeout(connectTimeout);
+         connection.setReadTimeout(readTimeout);
+      }
+      catch (IOException | RuntimeException ex)
+      {
+         pool.release();
+         throw ex;
+      }
+      
+      leases.put(connection, pool);
+      return connection;
+   }
+   
+   
+   @Override
+   public InputStream getResponseStream(HttpURLConnection connection)
+          throws IOException
+   {
+      PooledInputStream pis = new PooledInputStream(connection,
+                     new BufferedInputStream(connection.getInputStream()));
+      streamReferences.add(pis.reference);
+      
+      return pis;
+   }
+   
+   
+   @Override
+   public void release(HttpURLConnection connection)
+   {
+      HostPool pool = leases.remove(connection);
+      if (pool == null) return;
+      
+      // After an HTTP error, the body is in the error stream and must be
+      // consumed for the socket to be eligible for reuse.
+      InputStream es = connection.getErrorStream();
+      if (es != null)
+      {
+         drain(es);
+         try {es.close();} catch (IOException exIOignore) {}
+      }
+      pool.release();
+   }
+   
+   
+   @Override
+   public int getConnectTimeout()
+   {
+      return connectTimeout;
+   }
+   
+   
+   @Override
+   public int getReadTimeout()
+   {
+      return readTimeout;
+   }
+   
+   
+   /**
+    * @return the time in ms allowed for waiting for a free connection
+    * (0 = wait indefinitely)
+    */
+   public int getLeaseTimeout()
+   {
+      return leaseTimeout;
+   }
+   
+   
+   public int getMaxConnectionsPerHost()
+   {
+      return maxConnectionsPerHost;
+   }
+   
+   
+   public long getIdleEvictionTime()
+   {
+      return idleEvictionTime;
+   }
+   
+   
+   @Override
+   public List<RestTransportStatistics> getStatistics()
+   {
+      List<RestTransportStatistics> stats = new ArrayList<>();
+      synchronized (pools)
+      {
+         for (HostPool pool : pools.values()) stats.add(pool.getStatistics());
+      }
+      return stats;
+   }
+   
+   
+   /**
+    * Find or create the pool for the host of the given URL and mark it as
+    * being in use, so that it cannot be evicted between lookup and lease.
+    */
+   private HostPool reservePool(URL url)
+   {
+      String key = url.getProtocol() + "://" + url.getHost() + ":"
+                   + ((url.getPort() == -1) ? url.getDefaultPort() : url.getPort());
+      
+      reclaimAbandonedStreams();
+      
+      synchronized (pools)
+      {
+         evictIdlePools();
+         
+         HostPool pool = pools.get(key);
+         if (pool == null)
+         {
+            pool = new HostPool(key, maxConnectionsPerHost);
+            pools.put(key, pool);
+         }
+         pool.reserve();
+         return pool;
+      }
+   }
+   
+   
+   // Must be called with the lock on pools held.
+   private void evictIdlePools()
+   {
+      long now = System.currentTimeMillis();
+      for (Iterator<HostPool> it = pools.values().iterator(); it.hasNext();)
+      {
+         HostPool pool = it.next();
+         if (pool.isIdleSince(now - idleEvictionTime))
+         {
+            logger.debug("Evicting idle connection pool " + pool.getStatistics());
+            it.remove();
+         }
+      }
+   }
+   
+   
+   /**
+    * Give back the connections belonging to response streams that were
+    * garbage collected without having been closed.
+    */
+   private void reclaimAbandonedStreams()
+   {
+      StreamReference ref;
+      while ((ref = (StreamReference) abandonedStreams.poll()) != null)
+      {
+         if (streamReferences.remove(ref))
+         {
+            logger.warn("A response stream was not closed. Reclaiming its connection.");
+            release(ref.connection);
+         }
+      }
+   }
+   
+   
+   private static void drain(InputStream is)
+   {
+      byte[] buf = new byte[8192];
+      int    total = 0;
+      try
+      {
+         int n;
+         while ((total < MAX_DRAIN_BYTES) && ((n = is.read(buf)) != -1)) total += n;
+      }
+      catch (IOException exIOignore) {}
+   }
+   
+   
+   
+   /**
+    * Book-keeping for the connections to a single host.
+    */
+   private static class HostPool
+   {
+      private final String     host;
+      private final int        maxConnections;
+      private final Semaphore  permits;
+      private final AtomicLong totalLeases     = new AtomicLong();
+      private final AtomicLong totalWaitMillis = new AtomicLong();
+      private final AtomicLong leaseTimeouts   = new AtomicLong();
+      private long             maxWaitMillis   = 0;
+      private int              users           = 0;
+      private long             lastReturned    = System.currentTimeMillis();
+      
+      
+      HostPool(String host, int maxConnections)
+      {
+         this.host           = host;
+         this.maxConnections = maxConnections;
+         this.permits        = new Semaphore(maxConnections, true);
+      }
+      
+      
+      synchronized void reserve()
+      {
+         users++;
+      }
+      
+      
+      synchronized void unreserve()
+      {
+         users--;
+         lastReturned = System.currentTimeMillis();
+      }
+      
+      
+      synchronized boolean isIdleSince(long time)
+      {
+         return (users == 0) && (lastReturned < time);
+      }
+      
+      
+      void acquire(int timeout) throws IOException
+      {
+         long    start = System.currentTimeMillis();
+         boolean ok;
+         try
+         {
+            if (timeout == 0)
+            {
+               permits.acquire();
+               ok = true;
+            }
+            else ok = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException exIE)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + host);
+         }
+         
+         if (!ok)
+         {
+            leaseTimeouts.incrementAndGet();
+            throw new PoolExhaustedException("No connection to " + host
+                                  + " became free within " + timeout + " ms.");
+         }
+         
+         long wait = System.currentTimeMillis() - start;
+         totalLeases.incrementAndGet();
+         totalWaitMillis.addAndGet(wait);
+         synchronized (this)
+         {
+            if (wait > maxWaitMillis) maxWaitMillis = wait;
+         }
+      }
+      
+      
+      void release()
+      {
+         permits.release();
+         unreserve();
+      }
+      
+      
+      synchronized RestTransportStatistics getStatistics()
+      {
+         int leased = maxConnections - permits.availablePermits();
+         return new RestTransportStatistics(host, maxConnections, leased,
+                        totalLeases.get(), totalWaitMillis.get(), maxWaitMillis,
+                        leaseTimeouts.get(),
+                        (users == 0) ? System.currentTimeMillis() - lastReturned : 0);
+      }
+   }
+   
+   
+   
+   /**
+    * Response stream that gives the connection back to the pool exactly
+    * once, when the caller closes it.
+    */
+   private class PooledInputStream extends FilterInputStream
+   {
+      private final HttpURLConnection connection;
+      private final StreamReference   reference;
+      private final AtomicBoolean     closed = new AtomicBoolean(false);
+      
+      
+      PooledInputStream(HttpURLConnection connection, InputStream in)
+      {
+         super(in);
+         this.connection = connection;
+         this.reference  = new StreamReference(this, connection, abandonedStreams);
+      }
+      
+      
+      @Override
+      public void close() throws IOException
+      {
+         if (!closed.compareAndSet(false, true)) return;
+         try
+         {
+            drain(in);
+            in.close();
+         }
+         finally
+         {
+            streamReferences.remove(reference);
+            release(connection);
+         }
+      }
+   }
+   
+   
+   
+   /**
+    * Allows the connection of a stream to be recovered after the stream
+    * itself has become unreachable.
+    */
+   private static class StreamReference extends PhantomReference<PooledInputStream>
+   {
+      private final HttpURLConnection connection;
+      
+      
+      StreamReference(PooledInputStream pis, HttpURLConnection connection,
+                      ReferenceQueue<PooledInputStream> queue)
+      {
+         super(pis, queue);
+         this.connection = connection;
+      }
+   }
+}
@@ -39,7 +39,8 @@
 * First created on Apr 29, 2010, 10:55:36 AM
 * 
 * Wrapper routine to allow a potentially long XNAT search to be
-* conducted in a worker thread. 
+* conducted in a worker thread. The result is returned as a
+* ColumnarTable, parsed by XNATRESTToolkit.parseResultSet.
 *********************************************************************/
 
 
@@ -48,8 +49,7 @@ package xnatRestToolkit;
 import exceptions.FailedToConnectException;
 import exceptions.XMLException;
 import exceptions.XNATException;
-import generalUtilities.Vector2D;
-import java.io.BufferedInputStream;
+import generalUtilities.ColumnarTable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -59,22 +59,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
 import javax.swing.SwingWorker;
 import javax.swing.tree.TreeNode;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
-import org.xml.sax.Attributes;
-import org.xml.sax.Locator;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 import xmlUtilities.XMLUtilities;
 import xnatDAO.XNATDAO;
 
 
-public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
+public class RESTSearchWorker extends SwingWorker<ColumnarTable, Void>
 {
    static  Logger                      logger = Logger.getLogger(RESTSearchWorker.class);
    private final XNATDAO               xnd;
@@ -85,8 +78,7 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
    private final XNATSearchCriterion[] searchCriteria;
    private final ArrayList<String>     projectList;
    private final TreeNode[]            expansionNodePath;
-   private Vector2D                    RESTResult;
-   private Vector<String>              columnHeadings;;
+   private ColumnarTable               RESTResult;
 
    
    public RESTSearchWorker(
@@ -114,7 +106,7 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
 
    
    @Override
-   protected Vector2D<String> doInBackground() throws Exception
+   protected ColumnarTable doInBackground() throws Exception
    {
       logger.debug("RESTSearchWorker started");
       
@@ -146,7 +138,7 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
 
       try
       {
-         parseOutputSAX(new BufferedInputStream(is), new XNATSearchSAXAdapter());
+         RESTResult = XNATRESTToolkit.parseResultSet(is, true).getTable();
       }
 
       catch (XNATException exXNAT){throw exXNAT;}
@@ -169,47 +161,6 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
    }
 
 
-   /**
-    * Parse the XML output of an XNAT REST query. The main function of this
-    * method is as a wrapper around the SAXParser API. It is called by both
-    * {@link XNATRESTToolkit#RESTGetResultSet(java.lang.String)} and
-    * {@link XNATRESTToolkit#search(java.lang.String, xnat_experiments.XNATReturnedField[], java.lang.String, xnat_experiments.XNATSearchCriterion[])}.
-    *
-    * @param XNATOutput
-    * @param SAXAdapter
-    * @throws exceptions.XNATException
-    * @throws java.io.IOException
-    */
-   private void parseOutputSAX(
-                     BufferedInputStream XNATOutput,
-                     DefaultHandler SAXAdapter)
-                throws XNATException, IOException
-   {
-      // Use a standard XML parser to extract the elements. Refer to methods
-      // startElement and endElement for further details.
-      try
-      {
-         SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-         parser.parse(XNATOutput, SAXAdapter);
-      }
-      catch (Exception ex)
-      {
-         throw new XNATException(XNATException.PARSE, ex.getMessage());
-      }
-      finally
-      {
-         try
-         {
-            XNATOutput.close();
-         }
-         catch (IOException exIO)
-         {
-            throw new XNATException(XNATException.STREAM_CLOSE);
-         }
-      }
-   }
-   
-   
    /**
     * This is a very crude bit of ad hoc coding developed in response to a
     * particular need for reporting some statistics. It is retained for
@@ -235,7 +186,7 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
                                                         expPath2);
          // This is going to be a big file!
          is = xnsc.doRESTPost(RESTGetCommand, statsSearchDoc);
-         parseOutputSAX(new BufferedInputStream(is), new XNATSearchSAXAdapter());
+         RESTResult = XNATRESTToolkit.parseResultSet(is, true).getTable();
       }
       catch (Exception ex)
       {
@@ -250,11 +201,11 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
       Map<String, Map<String, Set<String>>> statsTree = new HashMap<>();
 
       // Extract the data needed from the tree structure.
-      for (int j=0; j<RESTResult.size(); j++)
+      for (int j=0; j<RESTResult.getRowCount(); j++)
       {
-         String manufacturer = (String) RESTResult.atom(1, j);
-         String scanType     = (String) RESTResult.atom(2, j);
-         String patientName  = (String) RESTResult.atom(3, j);
+         String manufacturer = RESTResult.get(j, 1);
+         String scanType     = RESTResult.get(j, 2);
+         String patientName  = RESTResult.get(j, 3);
 
          if (!statsTree.containsKey(manufacturer))
             statsTree.put(manufacturer, new HashMap<String, Set<String>>());
@@ -287,124 +238,5 @@ public class RESTSearchWorker extends SwingWorker<Vector2D<String>, Void>
       }
       System.out.println("Output for stats here.");
    }
-
-   /**
-    * An extension of the {@link DefaultHandler} class to provide the context-
-    * specific parsing of XML input streams that result from XNAT searches.
-    */
-   private class XNATSearchSAXAdapter extends DefaultHandler
-	{
-      protected  int            nRecords      = 0;
-      protected  int            nColumns      = 0;
-      protected  int            row           = -1;
-      protected  int            cell          = -1;
-      protected  boolean        cellStarted   = false;
-      protected  boolean        columnStarted = false;
-      protected  StringBuffer   textBuffer    = null;
-      protected  Locator        locator;
-
-
-      @Override
-      public void setDocumentLocator(Locator locator)
-      {
-         this.locator = locator;
-      }
-
-		@Override
-		public void startElement(String uri, String localName, String qName,
-			Attributes attributes) throws SAXException
-		{
-         int         col   = -1;
-         int         line  = -1;
-
-         if (locator != null)
-         {
-            col  = locator.getColumnNumber();
-            line = locator.getLineNumber();
-         }
-
-			if (qName.equals("ResultSet"))
-			{
-            nRecords = (int) Integer.parseInt(attributes.getValue("totalRecords"));
-         }
-
-         if (qName.equals("columns"))
-         {
-            columnHeadings = new Vector<String>();
-         }
-
-         if (qName.equals("column"))
-         {
-            nColumns     += 1;
-            columnStarted = true;
-         }
-
-         if (qName.equals("row"))
-         {
-            row += 1;
-            cell = -1;
-            if (row >= nRecords)
-               throw new SAXException("Incorrect number of records at " + line
-                                       + " of search output.");
-            RESTResult.add(new Vector<String>());
-         }
-
-         if (qName.equals("cell"))
-         {
-            cell       += 1;
-            cellStarted = true;
-            if (cell > nColumns)
-               throw new SAXException("Incorrect number of cells (columns) at " + line
-                                       + " of search output.");
-         }
-
-	   }
-
-
-      @Override
-      public void characters(char[] ch, int start, int length)
-      {
-         /* The characters is slightly tricky as there is no guarantee that it
-          * will be called only once per element! Sometimes, SAXParser builds up
-          * the element value by multiple calls. I'm sure there is a good
-          * reason ...? Hence, we use a string buffer and "read it out" when the
-          * endElement method for cell is closed.
-          */
-         if (cellStarted || columnStarted )
-         {
-             String s = new String(ch, start, length);
-             if (textBuffer == null) textBuffer = new StringBuffer(s);
-             else textBuffer.append(s);
-         }
-      }
-
-
-
-		@Override
-		public void endElement(String uri, String localName, String qName)
-				throws SAXException
-		{
-			if (qName.equals("columns"))
-         {
-            RESTResult = new Vector2D<String>();
-         }
-
-         if (qName.equals("column"))
-         {
-            columnStarted = false;
-            if (textBuffer != null) columnHeadings.add(textBuffer.toString());
-            textBuffer = null;
-         }
-
-         if (qName.equals("cell"))
-         {
-            cellStarted             = false;
-            RESTResult.elementAt(row)
-               .add(textBuffer == null ? "" : textBuffer.toString());
-            textBuffer              = null;
-         }
-      }
-
-   }  // End of class XNATSearchSAXAdapter
  
 }
@@ -0,0 +1,121 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: ResilienceStatistics.java
+* First created on Oct 18, 2026 at 8:45 PM
+* 
+* Immutable snapshot of the counters kept by the CircuitBreaker for a
+* single server: requests that succeeded or failed transiently, retries,
+* breaker trips and requests rejected while the breaker was open.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+public class ResilienceStatistics
+{
+   private final String server;
+   private final String state;
+   private final long   successes;
+   private final long   failures;
+   private final long   retries;
+   private final long   trips;
+   private final long   rejections;
+   
+   
+   public ResilienceStatistics(String server, String state, long successes,
+                               long failures, long retries, long trips,
+                               long rejections)
+   {
+      this.server     = server;
+      this.state      = state;
+      this.successes  = successes;
+      this.failures   = failures;
+      this.retries    = retries;
+      this.trips      = trips;
+      this.rejections = rejections;
+   }
+   
+   
+   public String getServer()
+   {
+      return server;
+   }
+   
+   
+   public String getState()
+   {
+      return state;
+   }
+   
+   
+   public long getSuccesses()
+   {
+      return successes;
+   }
+   
+   
+   public long getFailures()
+   {
+      return failures;
+   }
+   
+   
+   public long getRetries()
+   {
+      return retries;
+   }
+   
+   
+   public long getTrips()
+   {
+      return trips;
+   }
+   
+   
+   public long getRejections()
+   {
+      return rejections;
+   }
+   
+   
+   @Override
+   public String toString()
+   {
+      return server + ": breaker " + state + ", " + successes + " succeeded, "
+             + failures + " failed, " + retries + " retries, " + trips
+             + " trips, " + rejections + " rejected";
+   }
+}
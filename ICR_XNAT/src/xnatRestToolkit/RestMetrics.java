@@ -0,0 +1,456 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: RestMetrics.java
+* First created on Oct 18, 2026 at 9:15 PM
+* 
+* Records latency, byte counts and errors for the REST requests made by
+* XNATServerConnection. Requests are grouped by method and normalised
+* endpoint, so that, for example, every file download counts against
+* "GET /files", whatever the project or scan. Each endpoint is published
+* as an MBean under "xnatRestToolkit:type=RestEndpoint" and a summary of
+* the activity since the previous one is logged periodically. This shows
+* whether slow browsing comes from searches, listings or file transfer.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.apache.log4j.Logger;
+
+public class RestMetrics
+{
+   static  Logger logger = Logger.getLogger(RestMetrics.class);
+   
+   public static final long DEFAULT_SUMMARY_INTERVAL = 300000;
+   private static final String JMX_DOMAIN = "xnatRestToolkit";
+   
+   // Path segments that are followed by an identifier.
+   private static final Set<String> ID_COLLECTIONS = new HashSet<>(Arrays.asList(
+      "projects", "subjects", "experiments", "scans", "resources",
+      "assessors", "reconstructions", "out", "users", "prearchive"));
+   
+   private static final RestMetrics defaultMetrics = new RestMetrics();
+   
+   private final ConcurrentMap<String, Endpoint>  endpoints   = new ConcurrentHashMap<>();
+   private final Map<String, EndpointStatistics>  lastSummary = new HashMap<>();
+   private ScheduledExecutorService               summaryExecutor;
+   private ScheduledFuture<?>                     summaryTask;
+   private long                                   summaryInterval = DEFAULT_SUMMARY_INTERVAL;
+   
+   
+   /**
+    * JMX view of a single endpoint.
+    */
+   public interface EndpointMBean
+   {
+      String getEndpoint();
+      long   getRequestCount();
+      long   getErrorCount();
+      long   getBytesSent();
+      long   getBytesReceived();
+      double getLatencyMeanMillis();
+      long   getLatencyMedianMillis();
+      long   getLatency95thPercentileMillis();
+      long   getLatency99thPercentileMillis();
+      long   getLatencyMaxMillis();
+      long[] getLatencyHistogram();
+   }
+   
+   
+   private RestMetrics()
+   {
+   }
+   
+   
+   /**
+    * @return the instance shared by all connections
+    */
+   public static RestMetrics getDefault()
+   {
+      return defaultMetrics;
+   }
+   
+   
+   /**
+    * Reduce a REST command to the kind of resource that it addresses, e.g.,
+    * "/data/projects/P/subjects/S/experiments/E/scans/1/resources/DICOM/files"
+    * becomes "/files" and "/data/projects/P/subjects" becomes "/subjects".
+    * Searches become "/data/search" and session requests "/JSESSION".
+    * @param RESTCommand the path, with or without a query string
+    * @return the normalised endpoint
+    */
+   public static String normaliseEndpoint(String RESTCommand)
+   {
+      String path  = RESTCommand;
+      int    query = path.indexOf('?');
+      if (query >= 0) path = path.substring(0, query);
+      
+      String   endpoint = null;
+      String[] segments = path.split("/");
+      for (int i=0; i<segments.length; i++)
+      {
+         String segment = segments[i];
+         if (segment.equals("JSESSION")) return "/JSESSION";
+         if (segment.equals("search"))   return "/data/search";
+         
+         // Everything after "files" is the name of the file.
+         if (segment.equals("files"))    return "/files";
+         
+         if (ID_COLLECTIONS.contains(segment))
+         {
+            endpoint = "/" + segment;
+            i++;
+         }
+      }
+      if (endpoint != null) return endpoint;
+      
+      for (String segment : segments)
+         if (!segment.isEmpty()) return "/" + segment;
+      
+      return "/";
+   }
+   
+   
+   /**
+    * Record a completed request. The response body is counted separately
+    * by the stream returned from countReceived.
+    * @param method the HTTP method
+    * @param RESTCommand the command sent
+    * @param nanos the time from opening the connection to receiving the
+    * response headers
+    * @param bytesSent the size of the request body
+    * @param isError true if the request failed or the server returned an
+    * error
+    */
+   public void record(String method, String RESTCommand, long nanos,
+                      long bytesSent, boolean isError)
+   {
+      getEndpoint(method, RESTCommand).record(nanos, bytesSent, isError);
+   }
+   
+   
+   /**
+    * Wrap a response body so that the bytes read from it are counted
+    * against its endpoint.
+    * @param method the HTTP method
+    * @param RESTCommand the command sent
+    * @param is the response body, which may be null
+    * @return the wrapped stream
+    */
+   public InputStream countReceived(String method, String RESTCommand, InputStream is)
+   {
+      if (is == null) return null;
+      
+      return new CountingInputStream(is, getEndpoint(method, RESTCommand));
+   }
+   
+   
+   /**
+    * @return a snapshot of every endpoint used so far, sorted by name
+    */
+   public List<EndpointStatistics> getStatistics()
+   {
+      List<String> names = new ArrayList<>(endpoints.keySet());
+      Collections.sort(names);
+      
+      List<EndpointStatistics> statsList = new ArrayList<>();
+      for (String name : names) statsList.add(endpoints.get(name).getSnapshot());
+      
+      return statsList;
+   }
+   
+   
+   /**
+    * Log the activity of each endpoint since the previous summary.
+    * Endpoints that have not been used in the meantime are omitted.
+    */
+   public synchronized void logSummary()
+   {
+      StringBuilder sb     = new StringBuilder("REST activity since the last summary:");
+      boolean       isUsed = false;
+      for (EndpointStatistics stats : getStatistics())
+      {
+         EndpointStatistics delta = stats.since(lastSummary.get(stats.getEndpoint()));
+         lastSummary.put(stats.getEndpoint(), stats);
+         if (delta.getRequests() > 0)
+         {
+            sb.append("\n   ").append(delta);
+            isUsed = true;
+         }
+      }
+      
+      if (isUsed) logger.info(sb.toString());
+   }
+   
+   
+   public synchronized long getSummaryInterval()
+   {
+      return summaryInterval;
+   }
+   
+   
+   /**
+    * Set the interval between logged summaries.
+    * @param millis the interval in milliseconds, or zero to disable the
+    * summaries
+    */
+   public synchronized void setSummaryInterval(long millis)
+   {
+      if (millis < 0)
+         throw new IllegalArgumentException("The summary interval cannot be negative.");
+      
+      summaryInterval = millis;
+      if (summaryTask != null)
+      {
+         summaryTask.cancel(false);
+         summaryTask = null;
+      }
+      if (!endpoints.isEmpty()) scheduleSummary();
+   }
+   
+   
+   private Endpoint getEndpoint(String method, String RESTCommand)
+   {
+      String   name     = method + " " + normaliseEndpoint(RESTCommand);
+      Endpoint endpoint = endpoints.get(name);
+      if (endpoint == null)
+      {
+         Endpoint created = new Endpoint(name);
+         endpoint = endpoints.putIfAbsent(name, created);
+         if (endpoint == null)
+         {
+            endpoint = created;
+            register(created);
+            scheduleSummary();
+         }
+      }
+      
+      return endpoint;
+   }
+   
+   
+   private void register(Endpoint endpoint)
+   {
+      try
+      {
+         ObjectName name = new ObjectName(JMX_DOMAIN + ":type=RestEndpoint,name="
+                                          + ObjectName.quote(endpoint.name));
+         ManagementFactory.getPlatformMBeanServer()
+                          .registerMBean(new StandardMBean(endpoint, EndpointMBean.class), name);
+      }
+      catch (JMException | SecurityException ex)
+      {
+         logger.warn("Unable to publish the metrics for " + endpoint.name + " via JMX: "
+                     + ex.getMessage());
+      }
+   }
+   
+   
+   private synchronized void scheduleSummary()
+   {
+      if ((summaryTask != null) || (summaryInterval == 0)) return;
+      
+      if (summaryExecutor == null)
+      {
+         summaryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+         {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "RestMetricsSummary");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      
+      summaryTask = summaryExecutor.scheduleAtFixedRate(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               logSummary();
+            }
+            catch (RuntimeException exRT)
+            {
+               logger.warn("Error logging the REST metrics: " + exRT.getMessage());
+            }
+         }
+      }, summaryInterval, summaryInterval, TimeUnit.MILLISECONDS);
+   }
+   
+   
+   /**
+    * Live counters for one endpoint. The counters are read individually,
+    * so a snapshot may straddle a request, which is harmless here.
+    */
+   private static class Endpoint implements EndpointMBean
+   {
+      final String          name;
+      final AtomicLong      requests      = new AtomicLong();
+      final AtomicLong      errors        = new AtomicLong();
+      final AtomicLong      bytesSent     = new AtomicLong();
+      final AtomicLong      bytesReceived = new AtomicLong();
+      final AtomicLong      totalNanos    = new AtomicLong();
+      final AtomicLong      maxNanos      = new AtomicLong();
+      final AtomicLongArray buckets       = new AtomicLongArray(EndpointStatistics.N_BUCKETS);
+      
+      Endpoint(String name)
+      {
+         this.name = name;
+      }
+      
+      void record(long nanos, long sent, boolean isError)
+      {
+         requests.incrementAndGet();
+         if (isError)  errors.incrementAndGet();
+         if (sent > 0) bytesSent.addAndGet(sent);
+         totalNanos.addAndGet(nanos);
+         buckets.incrementAndGet(EndpointStatistics.getBucket(nanos));
+         
+         long max = maxNanos.get();
+         while ((nanos > max) && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get();
+      }
+      
+      EndpointStatistics getSnapshot()
+      {
+         long[] counts = new long[buckets.length()];
+         for (int i=0; i<counts.length; i++) counts[i] = buckets.get(i);
+         
+         return new EndpointStatistics(name, requests.get(), errors.get(),
+                                       bytesSent.get(), bytesReceived.get(),
+                                       totalNanos.get(), maxNanos.get(), counts);
+      }
+      
+      @Override
+      public String getEndpoint()                  {return name;}
+      
+      @Override
+      public long getRequestCount()                {return requests.get();}
+      
+      @Override
+      public long getErrorCount()                  {return errors.get();}
+      
+      @Override
+      public long getBytesSent()                   {return bytesSent.get();}
+      
+      @Override
+      public long getBytesReceived()               {return bytesReceived.get();}
+      
+      @Override
+      public double getLatencyMeanMillis()         {return getSnapshot().getMeanLatencyMillis();}
+      
+      @Override
+      public long getLatencyMedianMillis()         {return getSnapshot().getLatencyPercentileMillis(50);}
+      
+      @Override
+      public long getLatency95thPercentileMillis() {return getSnapshot().getLatencyPercentileMillis(95);}
+      
+      @Override
+      public long getLatency99thPercentileMillis() {return getSnapshot().getLatencyPercentileMillis(99);}
+      
+      @Override
+      public long getLatencyMaxMillis()            {return maxNanos.get() / 1000000;}
+      
+      @Override
+      public long[] getLatencyHistogram()          {return getSnapshot().getHistogram();}
+   }
+   
+   
+   /**
+    * Counts the bytes read from a response body.
+    */
+   private static class CountingInputStream extends FilterInputStream
+   {
+      private final Endpoint endpoint;
+      
+      CountingInputStream(InputStream is, Endpoint endpoint)
+      {
+         super(is);
+         this.endpoint = endpoint;
+      }
+      
+      @Override
+      public int read() throws IOException
+      {
+         int b = super.read();
+         if (b >= 0) endpoint.bytesReceived.incrementAndGet();
+         return b;
+      }
+      
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         int n = super.read(b, off, len);
+         if (n > 0) endpoint.bytesReceived.addAndGet(n);
+         return n;
+      }
+      
+      @Override
+      public long skip(long n) throws IOException
+      {
+         long skipped = super.skip(n);
+         endpoint.bytesReceived.addAndGet(skipped);
+         return skipped;
+      }
+   }
+}
@@ -0,0 +1,107 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: RestTransport.java
+* First created on Oct 18, 2026 at 09:12 AM
+* 
+* Abstraction of the HTTP layer used by XNATServerConnection to
+* send REST commands to XNAT. Implementations are responsible for
+* the management of the underlying connections to the server.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+public interface RestTransport
+{
+   /**
+    * Obtain a connection to the given URL, configured with the transport's
+    * timeouts and the requested HTTP method. The connection counts against
+    * the transport's limits until the stream returned by
+    * {@link #getResponseStream(java.net.HttpURLConnection)} is closed or
+    * {@link #release(java.net.HttpURLConnection)} is called.
+    * @param url the full REST URL
+    * @param method a String with enumerated values "GET", "POST", "PUT" or "DELETE"
+    * @return a connection that has not yet been connected
+    * @throws PoolExhaustedException if no connection becomes free in time
+    * @throws IOException if the connection cannot be created
+    */
+   public HttpURLConnection openConnection(URL url, String method)
+          throws IOException;
+   
+   
+   /**
+    * Return the response body of a connection obtained from this transport.
+    * Closing the stream returns the connection to the transport.
+    * @param connection a connection previously returned by openConnection
+    * @return an InputStream containing the server response
+    * @throws IOException 
+    */
+   public InputStream getResponseStream(HttpURLConnection connection)
+          throws IOException;
+   
+   
+   /**
+    * Give back a connection for which no response stream will be read,
+    * typically because an error occurred. Calling this more than once, or
+    * after the response stream has been closed, has no effect.
+    * @param connection a connection previously returned by openConnection
+    */
+   public void release(HttpURLConnection connection);
+   
+   
+   /**
+    * @return the connect timeout in milliseconds applied to new connections
+    */
+   public int getConnectTimeout();
+   
+   
+   /**
+    * @return the read timeout in milliseconds applied to new connections
+    */
+   public int getReadTimeout();
+   
+   
+   /**
+    * @return a snapshot of the connection usage for each host contacted
+    */
+   public List<RestTransportStatistics> getStatistics();
+}
@@ -0,0 +1,156 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: RestTransportStatistics.java
+* First created on Oct 18, 2026 at 09:40 AM
+* 
+* Immutable snapshot of the connection usage for a single host, as
+* reported by a RestTransport. Used to size the connection pool.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+public class RestTransportStatistics
+{
+   private final String host;
+   private final int    maxConnections;
+   private final int    leased;
+   private final long   totalLeases;
+   private final long   totalWaitMillis;
+   private final long   maxWaitMillis;
+   private final long   leaseTimeouts;
+   private final long   idleMillis;
+   
+   
+   public RestTransportStatistics(String host, int maxConnections, int leased,
+                                  long totalLeases, long totalWaitMillis,
+                                  long maxWaitMillis, long leaseTimeouts,
+                                  long idleMillis)
+   {
+      this.host            = host;
+      this.maxConnections  = maxConnections;
+      this.leased          = leased;
+      this.totalLeases     = totalLeases;
+      this.totalWaitMillis = totalWaitMillis;
+      this.maxWaitMillis   = maxWaitMillis;
+      this.leaseTimeouts   = leaseTimeouts;
+      this.idleMillis      = idleMillis;
+   }
+   
+   
+   public String getHost()
+   {
+      return host;
+   }
+   
+   
+   public int getMaxConnections()
+   {
+      return maxConnections;
+   }
+   
+   
+   /**
+    * @return the number of connections in use at the time of the snapshot
+    */
+   public int getLeased()
+   {
+      return leased;
+   }
+   
+   
+   public int getAvailable()
+   {
+      return maxConnections - leased;
+   }
+   
+   
+   /**
+    * @return the total number of connections handed out since the pool for
+    * this host was created
+    */
+   public long getTotalLeases()
+   {
+      return totalLeases;
+   }
+   
+   
+   /**
+    * @return the total time in milliseconds that callers spent waiting for a
+    * free connection
+    */
+   public long getTotalWaitMillis()
+   {
+      return totalWaitMillis;
+   }
+   
+   
+   public long getMaxWaitMillis()
+   {
+      return maxWaitMillis;
+   }
+   
+   
+   /**
+    * @return the number of requests that gave up because no connection
+    * became free within the connect timeout
+    */
+   public long getLeaseTimeouts()
+   {
+      return leaseTimeouts;
+   }
+   
+   
+   /**
+    * @return the time in milliseconds since a connection to this host was
+    * last returned, or zero if connections are currently in use
+    */
+   public long getIdleMillis()
+   {
+      return idleMillis;
+   }
+   
+   
+   @Override
+   public String toString()
+   {
+      return host + ": " + leased + "/" + maxConnections + " leased, "
+             + totalLeases + " leases, "
+             + ((totalLeases == 0) ? 0 : totalWaitMillis/totalLeases) + " ms mean wait, "
+             + maxWaitMillis + " ms max wait, "
+             + leaseTimeouts + " timeouts";
+   }
+}
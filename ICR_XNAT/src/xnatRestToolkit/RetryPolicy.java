@@ -0,0 +1,199 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: RetryPolicy.java
+* First created on Oct 18, 2026 at 8:15 PM
+* 
+* Settings governing how XNATServerConnection responds to transient
+* failures: how often and how quickly requests that can safely be
+* repeated are retried, and when the circuit breaker for a server stops
+* requests being sent to it at all.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import java.util.Random;
+
+public class RetryPolicy
+{
+   public  static final int  DEFAULT_MAX_ATTEMPTS      = 4;
+   public  static final long DEFAULT_INITIAL_BACKOFF   = 500;
+   public  static final long DEFAULT_MAX_BACKOFF       = 30000;
+   public  static final int  DEFAULT_FAILURE_THRESHOLD = 5;
+   public  static final long DEFAULT_OPEN_INTERVAL     = 30000;
+   
+   private static final RetryPolicy defaultPolicy = new RetryPolicy();
+   private static final Random      random        = new Random();
+   
+   private volatile int  maxAttempts      = DEFAULT_MAX_ATTEMPTS;
+   private volatile long initialBackoff   = DEFAULT_INITIAL_BACKOFF;
+   private volatile long maxBackoff       = DEFAULT_MAX_BACKOFF;
+   private volatile int  failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+   private volatile long openInterval     = DEFAULT_OPEN_INTERVAL;
+   
+   
+   /**
+    * @return the policy shared by all connections that have not been given
+    * one of their own
+    */
+   public static RetryPolicy getDefault()
+   {
+      return defaultPolicy;
+   }
+   
+   
+   /**
+    * Return a policy under which nothing is retried and the circuit
+    * breaker never opens.
+    * @return a new RetryPolicy
+    */
+   public static RetryPolicy noRetry()
+   {
+      RetryPolicy p = new RetryPolicy();
+      p.setMaxAttempts(1);
+      p.setFailureThreshold(Integer.MAX_VALUE);
+      return p;
+   }
+   
+   
+   /**
+    * Return the time to wait before a given retry. The delay grows
+    * exponentially up to the maximum and is then chosen at random between
+    * zero and that limit, so that many clients failing together do not all
+    * retry together.
+    * @param retry the number of the retry, starting from 1
+    * @return the delay in milliseconds
+    */
+   public long getBackoff(int retry)
+   {
+      long limit = initialBackoff;
+      for (int i=1; (i<retry) && (limit < maxBackoff); i++) limit *= 2;
+      limit = Math.min(limit, maxBackoff);
+      
+      synchronized (random)
+      {
+         return (long) (random.nextDouble() * limit);
+      }
+   }
+   
+   
+   /**
+    * Decide whether an HTTP error status indicates a condition that may
+    * clear if the request is repeated, e.g., an overloaded server or a
+    * load balancer that cannot reach it.
+    * @param responseCode the HTTP status code
+    * @return true if the request may be retried
+    */
+   public boolean isRetryableStatus(int responseCode)
+   {
+      return (responseCode == 429) || (responseCode == 502) ||
+             (responseCode == 503) || (responseCode == 504);
+   }
+   
+   
+   public int getMaxAttempts()
+   {
+      return maxAttempts;
+   }
+   
+   
+   /**
+    * @param n the maximum number of times a request is sent, including the
+    * first attempt
+    */
+   public void setMaxAttempts(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one attempt must be allowed.");
+      maxAttempts = n;
+   }
+   
+   
+   public long getInitialBackoff()
+   {
+      return initialBackoff;
+   }
+   
+   
+   public void setInitialBackoff(long millis)
+   {
+      initialBackoff = millis;
+   }
+   
+   
+   public long getMaxBackoff()
+   {
+      return maxBackoff;
+   }
+   
+   
+   public void setMaxBackoff(long millis)
+   {
+      maxBackoff = millis;
+   }
+   
+   
+   public int getFailureThreshold()
+   {
+      return failureThreshold;
+   }
+   
+   
+   /**
+    * @param n the number of consecutive transient failures after which the
+    * circuit breaker for a server opens
+    */
+   public void setFailureThreshold(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("The threshold must be at least one failure.");
+      failureThreshold = n;
+   }
+   
+   
+   public long getOpenInterval()
+   {
+      return openInterval;
+   }
+   
+   
+   /**
+    * @param millis the time for which an open circuit breaker rejects
+    * requests before letting a single trial request through
+    */
+   public void setOpenInterval(long millis)
+   {
+      openInterval = millis;
+   }
+}
@@ -48,6 +48,9 @@
 * Vector2D. Since Vector itself has now long been deprecated, this
 * whole methodology is much overdue for refactoring, but it has
 * permeated so much of the codebase that this is a major task.
+* New code should prefer getResultSet and searchResultSet, which return
+* an immutable XNATResultSet, parsed directly into a ColumnarTable. The toolkit keeps no per-call state, so a
+* single instance may serve queries from many threads at once.
 ********************************************************************/
 
 package xnatRestToolkit;
@@ -71,6 +74,7 @@ import org.xml.sax.helpers.DefaultHandler;
 import xmlUtilities.XMLUtilities;
 import com.generationjava.io.xml.SimpleXmlWriter;
 import exceptions.FailedToConnectException;
+import generalUtilities.ColumnarTable;
 import generalUtilities.Vector2D;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -87,11 +91,7 @@ import xmlUtilities.DelayedPrettyPrinterXmlWriter;
 public class XNATRESTToolkit
 {
    static  Logger                logger = Logger.getLogger(XNATRESTToolkit.class);
-   private XNATServerConnection  xnsc;
-   private Vector2D<String>      RESTResult;
-   private boolean               isLocked = false;
-   private Vector<String>        columnHeadings;
-   private String                thumbnailFilename;
+   private final XNATServerConnection xnsc;
 
 
    private String createScanXMLFilename = System.getProperty("user.home")
@@ -100,7 +100,9 @@ public class XNATRESTToolkit
 
    
    /**
-    * Create a new instance of the XNATToolkit. 
+    * Create a new instance of the XNATToolkit. The toolkit holds no state
+    * between calls other than the connection, so a single instance may be
+    * used by many threads at once.
     * @param xnsc the currently selected connection to the XNAT database in use
     */
    public XNATRESTToolkit(XNATServerConnection xnsc)
@@ -119,50 +121,68 @@ public class XNATRESTToolkit
     * 
     * The result sets are "tables of data" with a set of column headings and a
     * set of rows, one for each returned value from the database.
+    * 
+    * This is a convenience wrapper around getResultSet for the many callers
+    * that work with Vector2D.
     * @param RESTGetCommand - an appropriate REST URI (e.g., <code>
     * /data/archive/projects/TESTPROJ1/subjects/XNAT_S00004/experiments/XNAT_E00004?format=xml
     * </code>
     * @return A 2-D string array containing one row for each returned "match" in
     * the XNAT database and with a set of columns giving database information on
     * that match (e.g., XNAT ID, access dates, etc.) The information returned will
-    * depend on the specific URI.
+    * depend on the specific URI. The caller is free to modify it.
     * @throws exceptions.XNATException
     */
    public Vector2D<String> RESTGetResultSet(String RESTGetCommand)
                   throws XNATException
    {
-      if (isLocked) throw new XNATException(XNATException.LOCKED);
-      isLocked   = true;
-      RESTResult = null;
-
-      Document XNATResponseDoc    = xnsc.getDOMDocument(RESTGetCommand);
-      String   XNATResponseString = xnsc.getMostRecentOutputAsString();
+      return getResultSet(RESTGetCommand).toVector2D();
+   }
+   
+   
+   
+   /**
+    * Return the result set given by the REST URI RESTGetCommand, together with
+    * its column headings, as an immutable value.
+    * 
+    * The response is streamed straight into the result table. For the rare
+    * cases where the whole response is needed as a DOM, see RESTGetDoc.
+    * 
+    * Result sets are kept in the shared MetadataCache, so that a query
+    * repeated within its time-to-live does not go back to the server.
+    * @param RESTGetCommand an appropriate REST URI, as for RESTGetResultSet
+    * @return the result set
+    * @throws XNATException 
+    */
+   public XNATResultSet getResultSet(String RESTGetCommand)
+                        throws XNATException
+   {
+      XNATResultSet cached = MetadataCache.getDefault().get(xnsc, RESTGetCommand);
+      if (cached != null) return cached;
 
-      if (XNATResponseDoc == null)
-      {
-         isLocked = false;
-         throw new XNATException(XNATException.GET, xnsc.getMostRecentErrorMessage());
-      }
+      // The result table is filled in a single pass as the response arrives
+      // from the server, without holding a copy of the whole response. Callers
+      // that genuinely need a DOM representation should use RESTGetDoc.
+      XNATResultSet result;
       try
       {
-         BufferedInputStream bis = new BufferedInputStream(
-                                    new ByteArrayInputStream(XNATResponseString.getBytes("UTF-8")));
-         parseOutputSAX(bis, new XNATGETSAXAdapter());
+         InputStream is = xnsc.doRESTGet(RESTGetCommand);
+         if (is == null)
+            throw new XNATException(XNATException.GET, "null response from XNAT");
+         
+         result = parseResultSet(is, false);
       }
       catch (XNATException exXNAT)
       {
          throw exXNAT;
       }
-		catch (IOException exIO)
-		{
-			throw new XNATException(XNATException.PARSE, exIO.getMessage());
-		}
-      finally
+      catch (Exception ex)
       {
-         isLocked = false;
+         throw new XNATException(XNATException.GET, ex.getMessage());
       }
-
-      return RESTResult;
+      
+      MetadataCache.getDefault().put(xnsc, RESTGetCommand, result);
+      return result;
    }
 
 
@@ -201,12 +221,28 @@ public class XNATRESTToolkit
                      TreeNode[]            expansionNodePath)
                      throws XNATException, IOException, Exception
    {
-      // Reset the search output to null so that we don't accidentally return
-      // the result of a prior search.
-      if (isLocked) throw new XNATException(XNATException.LOCKED);
-      isLocked   = true;
-      RESTResult = null;
-
+      return searchResultSet(rootElement, returnedFields, combinationOperator,
+                             searchCriteria, projectList, expansionNodePath).toVector2D();
+   }
+   
+   
+   
+   /**
+    * Perform a search query as for search, returning the result together with
+    * its column headings as an immutable value. Searches are never cached.
+    * @return the result set
+    * @throws XNATException
+    * @throws IOException 
+    */
+   public XNATResultSet searchResultSet(
+                     String                rootElement,
+                     XNATReturnedField[]   returnedFields,
+                     String                combinationOperator,
+                     XNATSearchCriterion[] searchCriteria,
+                     ArrayList<String>     projectList,
+                     TreeNode[]            expansionNodePath)
+                     throws XNATException, IOException
+   {
       String RESTGetCommand = "/data/search?format=xml";
       InputStream is;
       try
@@ -228,23 +264,45 @@ public class XNATRESTToolkit
       {
          throw new XNATException(XNATException.PARSE, exXML.getMessage());
       }
-
-      try
+      catch (IOException exIO)
       {
-         parseOutputSAX(new BufferedInputStream(is), new XNATSearchSAXAdapter());
+         throw exIO;
       }
-
-      catch (XNATException exXNAT){throw exXNAT;}
-
-      catch (IOException exIO){throw exIO;}
-
-      finally
+      catch (Exception ex)
       {
-         isLocked = false;
-         try {is.close();} catch (IOException exIOignore) {}
+         throw new XNATException(XNATException.SEARCH_CREATE, ex.getMessage());
       }
+      
+      if (is == null)
+         throw new XNATException(XNATException.SEARCH_CREATE, "null response from XNAT");
 
-      return RESTResult;
+      return parseResultSet(is, true);
+   }
+   
+   
+   
+   /**
+    * Parse the XML output of an XNAT REST query into a result set. This is
+    * the parse used by getResultSet and searchResultSet, and is available
+    * separately for output that has already been retrieved, e.g., saved
+    * responses used by the benchmarks.
+    * @param is the XML output, which is closed on return
+    * @param isSearch true for the output of /data/search, which states the
+    * number of records in advance, false for other listings, which do not
+    * @return the result set
+    * @throws XNATException
+    * @throws IOException 
+    */
+   public static XNATResultSet parseResultSet(InputStream is, boolean isSearch)
+                               throws XNATException, IOException
+   {
+      // A new adapter is used for each parse, so that concurrent queries
+      // cannot interfere with each other.
+      XNATSearchSAXAdapter adapter = isSearch ? new XNATSearchSAXAdapter()
+                                              : new XNATGETSAXAdapter();
+      parseOutputSAX(new BufferedInputStream(is), adapter);
+      
+      return adapter.getResultSet();
    }
 
 
@@ -413,19 +471,31 @@ public class XNATRESTToolkit
    public Document RESTGetDoc(String RESTGetCommand)
                    throws XNATException
    {
-      if (isLocked) throw new XNATException(XNATException.LOCKED);
-      isLocked   = true;
-      RESTResult = null;
-
-      Document XNATResponseDoc    = xnsc.getDOMDocument(RESTGetCommand);
-      String   XNATResponseString = xnsc.getMostRecentOutputAsString();
-
-
-      isLocked = false;
-      if (XNATResponseDoc == null) throw
-         new XNATException(XNATException.GET, xnsc.getMostRecentErrorMessage());
-
-      return XNATResponseDoc;
+      // Parse the response directly, rather than via xnsc.getDOMDocument,
+      // which records the most recent output and error on the shared
+      // connection and so cannot be used from several threads at once.
+      InputStream is = null;
+      try
+      {
+         is = xnsc.doRESTGet(RESTGetCommand);
+         if (is == null)
+            throw new XNATException(XNATException.GET, "null response from XNAT");
+         
+         return XMLUtilities.getDOMDocument(new BufferedInputStream(is));
+      }
+      catch (XNATException exXNAT)
+      {
+         throw exXNAT;
+      }
+      catch (Exception ex)
+      {
+         throw new XNATException(XNATException.GET, ex.getMessage());
+      }
+      finally
+      {
+         try {if (is != null) is.close();}
+         catch (IOException exIOignore) {}
+      }
 	}
    
    
@@ -441,9 +511,6 @@ public class XNATRESTToolkit
    public InputStream RESTGetFileAsStream(String RESTGetCommand)
                       throws XNATException
    {
-      if (isLocked) throw new XNATException(XNATException.LOCKED);
-      isLocked   = true;
-
       InputStream dataStream = null;
       try
       {
@@ -453,12 +520,6 @@ public class XNATRESTToolkit
       {
          throw new XNATException(XNATException.GET, ex.getMessage());
       }
-      finally
-      {
-         isLocked = false;
-      }
-      
-      String   XNATResponseString = xnsc.getMostRecentOutputAsString();
       
       if (dataStream == null)
          throw new XNATException(XNATException.GET, "null response from XNAT");
@@ -485,18 +546,6 @@ public class XNATRESTToolkit
    }
 
 
-   /**
-    * Get the column headings returned by the most recent call to a GET
-    * or search call to the API.
-    *
-    * @return the set of column headings as a String array
-    */
-   public Vector<String> getColumnHeadings()
-   {
-      return columnHeadings;
-   }
-
-
    /**
     * Parse the XML output of an XNAT REST query. The main function of this
     * method is as a wrapper around the SAXParser API. It is called by both
@@ -508,7 +557,7 @@ public class XNATRESTToolkit
     * @throws exceptions.XNATException
     * @throws java.io.IOException
     */
-   private void parseOutputSAX(
+   private static void parseOutputSAX(
                      BufferedInputStream XNATOutput,
                      DefaultHandler SAXAdapter)
                 throws XNATException, IOException
@@ -550,7 +599,7 @@ public class XNATRESTToolkit
     * an additional implementation of the {@link DefaultHandler} methods. With
     * luck, this is a temporary fix that should be resolved soon.
     */
-   private class XNATGETSAXAdapter extends XNATSearchSAXAdapter
+   private static class XNATGETSAXAdapter extends XNATSearchSAXAdapter
 	{
       @Override
 		public void startElement(String uri, String localName, String qName,
@@ -580,14 +629,13 @@ public class XNATRESTToolkit
          {
             row += 1;
             cell = -1;
-            RESTResult.add(new Vector<String>());
          }
 
          if (qName.equals("cell"))
          {
             cell       += 1;
             cellStarted = true;
-            if (cell > nColumns)
+            if (cell >= nColumns)
                throw new SAXException("Incorrect number of cells (columns) at " + line
                                        + " of search output.");
          }
@@ -600,13 +648,13 @@ public class XNATRESTToolkit
 		{
          if (qName.equals("columns"))
          {
-            RESTResult = new Vector2D<String>();
+            builder = XNATResultSet.newBuilder(columnHeadings);
          }
 
          if (qName.equals("column"))
          {
             columnStarted = false;
-            if (textBuffer != null) columnHeadings.add(textBuffer.toString());
+            columnHeadings.add(textBuffer == null ? "" : textBuffer.toString());
             textBuffer = null;
          }
 
@@ -614,10 +662,11 @@ public class XNATRESTToolkit
          if (qName.equals("cell"))
          {
             cellStarted = false;
-            RESTResult.elementAt(row)
-               .add(textBuffer == null ? "" : textBuffer.toString());
+            builder.add(textBuffer == null ? "" : textBuffer.toString());
             textBuffer = null;
          }
+         
+         if (qName.equals("row")) builder.endRow();
       }
 
      // End of class XNATGETSAXAdapter
@@ -628,9 +677,13 @@ public class XNATRESTToolkit
    /**
     * An extension of the {@link DefaultHandler} class to provide the context-
     * specific parsing of XML input streams that result from XNAT searches.
+    * The table is built up in the adapter itself, so a new adapter must be
+    * used for each parse.
     */
-   private class XNATSearchSAXAdapter extends DefaultHandler
+   private static class XNATSearchSAXAdapter extends DefaultHandler
 	{
+      protected  ColumnarTable.Builder builder;
+      protected  Vector<String>   columnHeadings;
       protected  int            nRecords      = 0;
       protected  int            nColumns      = 0;
       protected  int            row           = -1;
@@ -683,14 +736,13 @@ public class XNATRESTToolkit
             if (row >= nRecords)
                throw new SAXException("Incorrect number of records at " + line
                                        + " of search output.");
-            RESTResult.add(new Vector<String>());
          }
          
          if (qName.equals("cell"))
          {
             cell       += 1;
             cellStarted = true;
-            if (cell > nColumns)
+            if (cell >= nColumns)
                throw new SAXException("Incorrect number of cells (columns) at " + line
                                        + " of search output.");
          }
@@ -723,23 +775,36 @@ public class XNATRESTToolkit
 		{
 			if (qName.equals("columns"))
          {
-            RESTResult = new Vector2D<String>();
+            builder = XNATResultSet.newBuilder(columnHeadings);
          }
 
          if (qName.equals("column"))
          {
             columnStarted = false;
-            if (textBuffer != null) columnHeadings.add(textBuffer.toString());
+            columnHeadings.add(textBuffer == null ? "" : textBuffer.toString());
             textBuffer = null;
          }
 
          if (qName.equals("cell"))
          {
             cellStarted             = false;
-            RESTResult.elementAt(row)
-               .add(textBuffer == null ? "" : textBuffer.toString());
+            builder.add(textBuffer == null ? "" : textBuffer.toString());
             textBuffer              = null;
          }
+         
+         if (qName.equals("row")) builder.endRow();
+      }
+
+      
+      /**
+       * @return the result of the parse as an immutable result set
+       */
+      public XNATResultSet getResultSet()
+      {
+         if (builder == null)
+            builder = XNATResultSet.newBuilder((columnHeadings == null) ? new Vector<String>()
+                                                                        : columnHeadings);
+         return new XNATResultSet(builder.build());
       }
 
    }  // End of class XNATSearchSAXAdapter
@@ -0,0 +1,208 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: XNATResultSet.java
+* First created on Oct 18, 2026 at 6:30 PM
+* 
+* Immutable result of an XNAT REST query or search, consisting of the
+* column headings and a table of string values, one row per match. As
+* it cannot be changed after construction, a single instance may be
+* shared between threads and held in caches without copying.
+* 
+* The values are held in a ColumnarTable, with a hash index on the ID
+* and URI columns of listings that have them, and the lists returned
+* are read-only views of that table.
+*********************************************************************/
+
+package xnatRestToolkit;
+
+import generalUtilities.ColumnarTable;
+import generalUtilities.Vector2D;
+import java.util.List;
+
+public final class XNATResultSet
+{
+   /**
+    * Columns of REST listings that are looked up by value and so are
+    * indexed whenever they are present.
+    */
+   private static final String[] KEY_COLUMNS = {"ID", "URI"};
+   
+   private final ColumnarTable table;
+   
+   
+   /**
+    * @param columnHeadings the column headings returned by XNAT
+    * @param rows the table of values, which is copied
+    */
+   public XNATResultSet(List<String> columnHeadings, List<? extends List<String>> rows)
+   {
+      ColumnarTable.Builder builder = newBuilder(columnHeadings);
+      for (List<String> row : rows) builder.addRow(row);
+      table = builder.build();
+   }
+   
+   
+   /**
+    * @param table the table of values, typically from a builder obtained
+    * from newBuilder
+    */
+   public XNATResultSet(ColumnarTable table)
+   {
+      this.table = table;
+   }
+   
+   
+   /**
+    * @param columnHeadings the column headings returned by XNAT
+    * @return a builder for the table of a result set, which indexes the
+    * key columns
+    */
+   public static ColumnarTable.Builder newBuilder(List<String> columnHeadings)
+   {
+      ColumnarTable.Builder builder = ColumnarTable.builder(columnHeadings);
+      for (String key : KEY_COLUMNS) builder.index(key);
+      return builder;
+   }
+   
+   
+   /**
+    * @return the underlying table, for callers that can work with it
+    * directly
+    */
+   public ColumnarTable getTable()
+   {
+      return table;
+   }
+   
+   
+   /**
+    * @return an unmodifiable list of the column headings
+    */
+   public List<String> getColumnHeadings()
+   {
+      return table.getColumnHeadings();
+   }
+   
+   
+   /**
+    * @param heading a column heading, e.g., "URI"
+    * @return the index of the column, or -1 if there is no such column
+    */
+   public int getColumnIndex(String heading)
+   {
+      return table.getColumnIndex(heading);
+   }
+   
+   
+   public int getColumnCount()
+   {
+      return table.getColumnCount();
+   }
+   
+   
+   public int getRowCount()
+   {
+      return table.getRowCount();
+   }
+   
+   
+   /**
+    * @param row the row index
+    * @param col the column index
+    * @return the value in the given cell
+    */
+   public String get(int row, int col)
+   {
+      return table.get(row, col);
+   }
+   
+   
+   /**
+    * @param row the row index
+    * @return a read-only view of the values in the row
+    */
+   public List<String> getRow(int row)
+   {
+      return table.getRow(row);
+   }
+   
+   
+   /**
+    * @param col the column index
+    * @return a read-only view of the values in the column
+    */
+   public List<String> getColumn(int col)
+   {
+      return table.getColumn(col);
+   }
+   
+   
+   /**
+    * @param heading a column heading, e.g., "URI"
+    * @return a read-only view of the values in the column, or null if
+    * there is no such column
+    */
+   public List<String> getColumn(String heading)
+   {
+      int col = getColumnIndex(heading);
+      return (col == -1) ? null : getColumn(col);
+   }
+   
+   
+   /**
+    * @param heading a column heading, e.g., "ID"
+    * @param value the value sought
+    * @return the first row in which the column has the value, or -1 if
+    * there is no such row or column
+    */
+   public int indexOf(String heading, String value)
+   {
+      int col = getColumnIndex(heading);
+      return (col == -1) ? -1 : table.indexOf(col, value);
+   }
+   
+   
+   /**
+    * Convert to the representation used throughout the rest of the code.
+    * @return a new Vector2D, which the caller is free to modify
+    */
+   public Vector2D<String> toVector2D()
+   {
+      return table.toVector2D();
+   }
+
+}
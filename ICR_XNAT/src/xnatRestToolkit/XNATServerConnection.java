@@ -39,7 +39,10 @@
 * First created on March 16, 2010, 9:14 PM
 * 
 * Establish a connection with an XNAT database, which persists across
-* multiple calls to the data access object. 
+* multiple calls to the data access object. All requests are made within
+* a single JSESSION shared by every thread using the connection. If XNAT
+* reports that the session has expired, it is renewed and the request
+* is replayed once, without the caller needing to know.
 ********************************************************************/
 
 package xnatRestToolkit;
@@ -55,8 +58,11 @@ import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.log4j.Logger;
 //import org.apache.commons.codec.binary.Base64;
 import base64.Base64;
@@ -75,12 +81,116 @@ public class XNATServerConnection
    protected URL     serverURL;
    protected String  userid;
    protected String  password;
-   protected String  JSessionID;
+   protected volatile String JSessionID;
    protected boolean connected;
    protected String  XNATVersion;
    protected String  mostRecentErrorMessage = null;
    protected int     mostRecentErrorCode = -1;
    protected String  mostRecentOutput;
+   protected RestTransport transport = PooledRestTransport.getDefault();
+   protected RetryPolicy   retryPolicy = RetryPolicy.getDefault();
+   
+   private static final long SESSION_RETRY_INTERVAL = 60*1000;
+   
+   // Size of the blocks in which file and stream uploads are written to
+   // the connection. This is also the chunk size when the length of the
+   // upload is not known in advance.
+   private static final int  UPLOAD_BLOCK_SIZE = 256*1024;
+   
+   private final Object  sessionLock = new Object();
+   private volatile long sessionFailureTime;
+   
+   private static final List<WriteListener> writeListeners = new CopyOnWriteArrayList<>();
+   
+   
+   /**
+    * Notified of every request that may have changed the data on a server,
+    * so that information cached elsewhere can be discarded.
+    */
+   public interface WriteListener
+   {
+      /**
+       * Called after the request has completed, whether or not it succeeded.
+       * @param serverURL the server to which the request was sent
+       * @param RESTCommand the REST URI of the request
+       */
+      void dataWritten(URL serverURL, String RESTCommand);
+   }
+   
+   
+   /**
+    * Thrown internally when the server rejects the session cookie sent with
+    * a request, so that the session can be renewed and the request replayed.
+    */
+   private static class SessionExpiredException extends IOException
+   {
+      private static final long serialVersionUID = 1L;
+      
+      SessionExpiredException(String message)
+      {
+         super(message);
+      }
+   }
+   
+   
+   /**
+    * Failure of a request, carrying the HTTP status returned by the server,
+    * or 0 if no response was received, so that it can be decided whether
+    * the request is worth repeating.
+    */
+   private static class HttpStatusException extends IOException
+   {
+      private static final long serialVersionUID = 1L;
+      
+      final int responseCode;
+      
+      HttpStatusException(int responseCode, String message, Throwable cause)
+      {
+         super(message, cause);
+         this.responseCode = responseCode;
+      }
+   }
+   
+   
+   /**
+    * Failure to read the data being uploaded, as opposed to failure to
+    * send it, which is a problem on the client and not worth repeating.
+    */
+   private static class UploadSourceException extends IOException
+   {
+      private static final long serialVersionUID = 1L;
+      
+      UploadSourceException(String message, Throwable cause)
+      {
+         super(message, cause);
+      }
+   }
+   
+   
+   /**
+    * A request that sendWithRetries may send more than once.
+    */
+   private interface RestCall<T>
+   {
+      T execute() throws FailedToConnectException, XMLException, IOException;
+   }
+   
+
+   /**
+    * Register a listener for the requests, sent through any connection, that
+    * may have changed the data on a server.
+    * @param listener the listener
+    */
+   public static void addWriteListener(WriteListener listener)
+   {
+      writeListeners.add(listener);
+   }
+   
+   
+   public static void removeWriteListener(WriteListener listener)
+   {
+      writeListeners.remove(listener);
+   }
    
 
    /**
@@ -193,6 +303,52 @@ public class XNATServerConnection
    {
       return connected;
    }
+   
+   
+   public RestTransport getTransport()
+   {
+      return transport;
+   }
+   
+   
+   /**
+    * Replace the HTTP transport used for all subsequent REST commands. By
+    * default, all connections share the pool returned by
+    * {@link PooledRestTransport#getDefault()}.
+    * @param transport the new transport
+    */
+   public void setTransport(RestTransport transport)
+   {
+      this.transport = transport;
+   }
+   
+   
+   public RetryPolicy getRetryPolicy()
+   {
+      return retryPolicy;
+   }
+   
+   
+   /**
+    * Replace the policy governing retries and the circuit breaker for
+    * subsequent REST commands. By default, all connections share the
+    * policy returned by {@link RetryPolicy#getDefault()}.
+    * @param policy the new policy
+    */
+   public void setRetryPolicy(RetryPolicy policy)
+   {
+      retryPolicy = policy;
+   }
+   
+   
+   /**
+    * @return the counts of retries, failures and circuit breaker trips for
+    * the server to which this connection refers
+    */
+   public ResilienceStatistics getResilienceStatistics()
+   {
+      return CircuitBreaker.getInstance(serverURL.toString()).getStatistics();
+   }
 
  
    /**
@@ -369,10 +525,7 @@ public class XNATServerConnection
 
       try
       {
-         StringBuilder sb = new StringBuilder();
-         int           b;
-         while ((b = is.read()) != -1) sb.append((char) b);
-         JSessionID = sb.toString();
+         JSessionID = readAsString(is).trim();
       }
       catch (IOException exIO)
       {
@@ -415,11 +568,7 @@ public class XNATServerConnection
 
       try
       {
-         StringBuilder sb = new StringBuilder();
-         int           b;
-         while ((b = is.read()) != -1) sb.append((char) b);
-
-         XNATVersion = sb.toString();
+         XNATVersion = readAsString(is);
 			// Temporary kludge.
 			if (XNATVersion.equals("Unknown version")) XNATVersion = "1.6.4";
 			
@@ -459,6 +608,139 @@ public class XNATServerConnection
    }
 
 
+   /**
+    * Retrieve a file starting part way through, which is used to resume an
+    * interrupted download. The server may ignore the Range header, in which
+    * case the whole file is returned, and the caller must check the offset
+    * of the stream returned before using it.
+    * @param RESTCommand a String containing the REST URI of the file
+    * @param offset the position in the file from which data are wanted
+    * @return a RangedInputStream, which callers must always close
+    * @throws FailedToConnectException
+    * @throws IOException 
+    */
+   public RangedInputStream doRESTGetRange(final String RESTCommand, final long offset)
+          throws FailedToConnectException, IOException
+   {
+      try
+      {
+         return sendWithRetries(RESTCommand, true, new RestCall<RangedInputStream>()
+         {
+            @Override
+            public RangedInputStream execute() throws FailedToConnectException, IOException
+            {
+               return executeRESTGetRangeWithSession(RESTCommand, offset);
+            }
+         });
+      }
+      catch (XMLException exXML)
+      {
+         // No XML is involved in retrieving a file, so this cannot happen.
+         throw new IOException(exXML.getMessage());
+      }
+   }
+   
+   
+   private RangedInputStream executeRESTGetRangeWithSession(String RESTCommand, long offset)
+           throws FailedToConnectException, IOException
+   {
+      String session = getSession(RESTCommand);
+      try
+      {
+         return executeRESTGetRange(RESTCommand, offset, session);
+      }
+      catch (SessionExpiredException exSE)
+      {
+         renewSessionOrFail(session, exSE);
+         try
+         {
+            return executeRESTGetRange(RESTCommand, offset, JSessionID);
+         }
+         catch (SessionExpiredException exSE2)
+         {
+            throw authenticationFailure(exSE2);
+         }
+      }
+   }
+   
+   
+   private RangedInputStream executeRESTGetRange(String RESTCommand, long offset,
+                                                 String session)
+           throws FailedToConnectException, IOException
+   {
+      URL               RESTURL      = new URL(serverURL.toString() + RESTCommand);
+      long              startNanos   = System.nanoTime();
+      HttpURLConnection connection   = transport.openConnection(RESTURL, "GET");
+      int               responseCode = 0;
+      InputStream       body         = null;
+      
+      try
+      {
+         setAuthentication(connection, session);
+         if (offset > 0) connection.setRequestProperty("Range", "bytes=" + offset + "-");
+         
+         responseCode = connection.getResponseCode();
+         logger.debug("HTTP request " + RESTURL.toString() + " from byte " + offset
+                      + " returned with response code " + responseCode);
+         checkSession(connection, responseCode, session);
+         
+         if (responseCode == 416)
+         {
+            // Requested range not satisfiable: what we already have is no
+            // use, so start again from the beginning.
+            transport.release(connection);
+            return executeRESTGetRange(RESTCommand, 0, session);
+         }
+         
+         long start  = 0;
+         long length = connection.getContentLengthLong();
+         if (responseCode == HttpURLConnection.HTTP_PARTIAL)
+         {
+            // Content-Range has the form "bytes first-last/total".
+            String range = connection.getHeaderField("Content-Range");
+            try
+            {
+               int dash  = range.indexOf('-');
+               int slash = range.indexOf('/');
+               start  = Long.parseLong(range.substring(range.indexOf(' ') + 1, dash).trim());
+               String total = range.substring(slash + 1).trim();
+               length = total.equals("*") ? -1 : Long.parseLong(total);
+            }
+            catch (NullPointerException | IndexOutOfBoundsException | NumberFormatException ex)
+            {
+               throw new IOException("Invalid Content-Range header " + range);
+            }
+         }
+         
+         body = transport.getResponseStream(connection);
+         return new RangedInputStream(RestMetrics.getDefault().countReceived("GET", RESTCommand, body),
+                                      start, length);
+      }
+      catch (SocketTimeoutException exST)
+      {
+         transport.release(connection);
+         throw new FailedToConnectException(FailedToConnectException.SOCKET_TIMEOUT,
+            "The attempted connection to URL " + serverURL + " timed out.\n"
+            + exST.getMessage());
+      }
+      catch (SessionExpiredException exSE)
+      {
+         transport.release(connection);
+         throw exSE;
+      }
+      catch (IOException exIO)
+      {
+         transport.release(connection);
+         throw new HttpStatusException(responseCode, exIO.getMessage(), exIO);
+      }
+      finally
+      {
+         RestMetrics.getDefault().record("GET", RESTCommand, System.nanoTime() - startNanos,
+                                         0, body == null);
+      }
+   }
+
+
    public InputStream doRESTPost(String RESTCommand)
            throws FailedToConnectException, XMLException, Exception
    {
@@ -513,6 +795,45 @@ public class XNATServerConnection
    {
       return doRESTCommand(RESTCommand, "PUT", null, null, is);
    }
+   
+   
+   /**
+    * Upload a file with a PUT, streaming it with a fixed Content-Length
+    * rather than buffering it in memory.
+    * @param RESTCommand a String containing the REST URI to process
+    * @param file the File to upload
+    * @param listener notified as each block is sent, or null
+    * @return an InputStream to allow the XNAT REST response to be processed 
+    * @throws FailedToConnectException
+    * @throws XMLException
+    * @throws IOException
+    */
+   public InputStream doRESTPut(String RESTCommand, File file,
+                                UploadProgressListener listener)
+           throws FailedToConnectException, XMLException, IOException
+   {
+      return doRESTCommand(RESTCommand, "PUT", null, file, null, -1, listener);
+   }
+   
+   
+   /**
+    * Upload the contents of a stream with a PUT. If the length is known the
+    * request has a fixed Content-Length, otherwise it is sent chunked.
+    * @param RESTCommand a String containing the REST URI to process
+    * @param is the InputStream to upload, which is closed on completion
+    * @param length the number of bytes in the stream, or -1 if not known
+    * @param listener notified as each block is sent, or null
+    * @return an InputStream to allow the XNAT REST response to be processed 
+    * @throws FailedToConnectException
+    * @throws XMLException
+    * @throws IOException
+    */
+   public InputStream doRESTPut(String RESTCommand, InputStream is, long length,
+                                UploadProgressListener listener)
+           throws FailedToConnectException, XMLException, IOException
+   {
+      return doRESTCommand(RESTCommand, "PUT", null, null, is, length, listener);
+   }
 
 
    /**
@@ -525,6 +846,12 @@ public class XNATServerConnection
     * generated if more than one doc, file or os is non-null.
     * Normally speaking, do RESTCommand would not be called directly, but
     * rather via doRESTGet, doRESTPost or doRESTPut above.
+    * The connection is obtained from the transport returned by getTransport()
+    * and is given back when the returned stream is closed, so callers must
+    * always close it, even if they are not interested in the response.
+    * Any PUT, POST or DELETE other than a search discards the cached result
+    * sets for this server held in MetadataCache and is reported to the
+    * listeners registered with addWriteListener.
     * @param RESTCommand a String containing the REST URI to process
     * @param RESTMethod a String with enumerated values "GET", "POST" or "PUT"
     * @param doc a Document to upload
@@ -538,6 +865,187 @@ public class XNATServerConnection
    public InputStream doRESTCommand(String RESTCommand, String RESTMethod,
                                     Document doc, File file, InputStream is)
           throws FailedToConnectException, XMLException, IOException
+   {
+      return doRESTCommand(RESTCommand, RESTMethod, doc, file, is, -1, null);
+   }
+   
+   
+   private InputStream doRESTCommand(final String RESTCommand, final String RESTMethod,
+                                     final Document doc, final File file,
+                                     final InputStream is, final long length,
+                                     final UploadProgressListener listener)
+          throws FailedToConnectException, XMLException, IOException
+   {
+      try
+      {
+         // Only requests that can be sent again unchanged are retried: GETs
+         // and PUTs, unless the data come from a stream, which can be read
+         // only once.
+         boolean isRepeatable = (RESTMethod.equals("GET") || RESTMethod.equals("PUT"))
+                                && (is == null);
+         
+         return sendWithRetries(RESTCommand, isRepeatable, new RestCall<InputStream>()
+         {
+            @Override
+            public InputStream execute()
+                   throws FailedToConnectException, XMLException, IOException
+            {
+               return executeRESTCommandWithSession(RESTCommand, RESTMethod, doc,
+                                                    file, is, length, listener);
+            }
+         });
+      }
+      finally
+      {
+         // Anything other than a query may have changed the data on the
+         // server, even if it failed part way through, so cached listings
+         // can no longer be trusted.
+         if (!RESTMethod.equals("GET") && !RESTCommand.startsWith("/data/search")
+                                       && !isSessionCommand(RESTCommand))
+         {
+            MetadataCache.getDefault().invalidate(this);
+            for (WriteListener wl : writeListeners) wl.dataWritten(serverURL, RESTCommand);
+         }
+      }
+   }
+   
+   
+   private InputStream executeRESTCommandWithSession(String RESTCommand, String RESTMethod,
+                                      Document doc, File file, InputStream is,
+                                      long length, UploadProgressListener listener)
+          throws FailedToConnectException, XMLException, IOException
+   {
+      String session = getSession(RESTCommand);
+      try
+      {
+         return executeRESTCommand(RESTCommand, RESTMethod, doc, file, is,
+                                   length, listener, session);
+      }
+      catch (SessionExpiredException exSE)
+      {
+         // The data from a stream have already been sent and cannot be
+         // sent again, but the session is still renewed for later requests.
+         renewSessionOrFail(session, exSE);
+         if (is != null) throw authenticationFailure(exSE);
+         
+         try
+         {
+            return executeRESTCommand(RESTCommand, RESTMethod, doc, file, is,
+                                      length, listener, JSessionID);
+         }
+         catch (SessionExpiredException exSE2)
+         {
+            throw authenticationFailure(exSE2);
+         }
+      }
+   }
+   
+   
+   /**
+    * Send a request, repeating it after a randomised, exponentially
+    * increasing delay if it fails in a way that suggests a temporary
+    * problem, e.g., a timeout or a 502 from a load balancer. All requests
+    * pass through the circuit breaker for the server, which rejects them
+    * immediately after repeated failures.
+    * @param RESTCommand the command, used only for reporting
+    * @param isRepeatable true if the request may safely be sent again
+    * @param call the request
+    */
+   private <T> T sendWithRetries(String RESTCommand, boolean isRepeatable, RestCall<T> call)
+           throws FailedToConnectException, XMLException, IOException
+   {
+      RetryPolicy    policy  = retryPolicy;
+      CircuitBreaker breaker = CircuitBreaker.getInstance(serverURL.toString());
+      
+      for (int attempt=1; ; attempt++)
+      {
+         if (!breaker.allowRequest(policy))
+            throw new FailedToConnectException(FailedToConnectException.IO,
+               "Requests to " + serverURL + " are suspended after repeated failures.");
+         
+         boolean isTransient = false;
+         boolean isLocal     = false;
+         try
+         {
+            return call.execute();
+         }
+         catch (FailedToConnectException | IOException ex)
+         {
+            isLocal     = isLocalFailure(ex);
+            isTransient = !isLocal && isTransientFailure(ex);
+            if (!isTransient || !isRepeatable || (attempt >= policy.getMaxAttempts()))
+               throw ex;
+            
+            logger.warn("Attempt " + attempt + " of " + RESTCommand + " failed and will be retried: "
+                        + ex.getMessage());
+         }
+         finally
+         {
+            // A failure that never reached the server says nothing about it
+            // and must neither trip nor reset the breaker.
+            if (isLocal) breaker.recordIgnored();
+            else breaker.recordOutcome(isTransient, policy);
+         }
+         
+         breaker.recordRetry();
+         try
+         {
+            Thread.sleep(policy.getBackoff(attempt));
+         }
+         catch (InterruptedException exIE)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + RESTCommand);
+         }
+      }
+   }
+   
+   
+   /**
+    * Decide whether a failure happened on the client before the request
+    * reached the network, e.g., because all the connections to the server
+    * were in use or because the data to be uploaded could not be read.
+    */
+   private boolean isLocalFailure(Exception ex)
+   {
+      return (ex instanceof PoolExhaustedException) || (ex instanceof UploadSourceException);
+   }
+   
+   
+   /**
+    * Decide whether a failure indicates a problem with the server or the
+    * network that may clear by itself, rather than a fault in the request.
+    * Only timeouts, socket errors and retryable HTTP status codes qualify.
+    */
+   private boolean isTransientFailure(Exception ex)
+   {
+      if (ex instanceof FailedToConnectException)
+      {
+         int code = ((FailedToConnectException) ex).getReturnCode();
+         return (code == FailedToConnectException.SOCKET_TIMEOUT) ||
+                (code == FailedToConnectException.IO);
+      }
+      
+      if (ex instanceof SessionExpiredException) return false;
+      
+      Throwable t = ex;
+      if (ex instanceof HttpStatusException)
+      {
+         int code = ((HttpStatusException) ex).responseCode;
+         if (code != 0) return retryPolicy.isRetryableStatus(code);
+         if (ex.getCause() != null) t = ex.getCause();
+      }
+      
+      // SocketException includes refused and reset connections.
+      return (t instanceof SocketTimeoutException) || (t instanceof SocketException);
+   }
+   
+   
+   private InputStream executeRESTCommand(String RESTCommand, String RESTMethod,
+                                          Document doc, File file, InputStream is,
+                                          long length, UploadProgressListener listener,
+                                          String session)
+           throws FailedToConnectException, XMLException, IOException
    {
       int                  responseCode    = 0;
       String               responseMessage = null;
@@ -545,6 +1053,8 @@ public class XNATServerConnection
       HttpURLConnection    connection      = null;
       InputStream          bis             = null;
       String               xmlString       = null;
+      long                 startNanos      = System.nanoTime();
+      long                 bytesSent       = 0;
 
       StringBuilder sb = new StringBuilder(serverURL.toString());
       sb.append(RESTCommand);
@@ -578,25 +1088,30 @@ public class XNATServerConnection
 
       try
       {
-         connection = (HttpURLConnection) RESTURL.openConnection();
+         connection = transport.openConnection(RESTURL, RESTMethod);
 
          connection.setDoOutput(true);
          connection.setDoInput(true);
-         connection.setRequestMethod(RESTMethod);
-         if (RESTMethod.equals("POST")) connection.setChunkedStreamingMode(-1);
          
-         if (JSessionID == null)
-			{
-				connection.setRequestProperty("Authorization", getAuthorization());
-			}
-         else connection.setRequestProperty("Cookie", "JSESSIONID=" + JSessionID);
-         connection.setConnectTimeout(5000); // 5 seconds
+         // Files and streams are sent as they are read, rather than being
+         // buffered in memory by HttpURLConnection to find their length.
+         // Fixed-length and chunked streaming cannot be combined.
+         if (file != null) length = file.length();
+         if ((file != null) || (is != null))
+         {
+            if (length >= 0) connection.setFixedLengthStreamingMode(length);
+            else connection.setChunkedStreamingMode(UPLOAD_BLOCK_SIZE);
+         }
+         else if (RESTMethod.equals("POST")) connection.setChunkedStreamingMode(-1);
+         
+         setAuthentication(connection, session);
 
          if (doc != null)
          {
             OutputStreamWriter osw = new OutputStreamWriter(connection.getOutputStream());
             osw.write(xmlString);
             osw.close();
+            bytesSent = xmlString.getBytes().length;
 				
 				// Calculate the content length.
 				//byte[] 
@@ -610,41 +1125,64 @@ public class XNATServerConnection
 			   connection.setRequestProperty("Connection", "Keep-Alive");
             connection.setRequestProperty("Content-Type", "application/octet-stream");
 
-            BufferedOutputStream bos  = new BufferedOutputStream(connection.getOutputStream());
-            if (file != null)     is  = new FileInputStream(file);
-            byte[]               buff = new byte[256];
-            int bytesRead;
-
+            if (file != null)
+            {
+               try
+               {
+                  is = new FileInputStream(file);
+               }
+               catch (FileNotFoundException exFNF)
+               {
+                  throw new UploadSourceException("Couldn't open " + file.getPath()
+                                                  + " for upload.\n" + exFNF.getMessage(), exFNF);
+               }
+            }
             assert (is != null);
-				while (-1 != (bytesRead = is.read(buff, 0, buff.length)))
+            try (OutputStream os = connection.getOutputStream())
             {
-               bos.write(buff, 0, bytesRead);
-               bos.flush();
+               bytesSent = writeUpload(is, os, length, listener);
+            }
+            finally
+            {
+               is.close();
             }
-
-            is.close();
-            bos.flush();
-            bos.close();
          }
 
          connection.connect();
          responseCode    = connection.getResponseCode();
          responseMessage = connection.getResponseMessage();
+         checkSession(connection, responseCode, session);
          
-         bis = new BufferedInputStream(connection.getInputStream());
+         bis = transport.getResponseStream(connection);
          
       }
       catch (SocketTimeoutException exST)
       {
+         if (connection != null) transport.release(connection);
          throw new FailedToConnectException(FailedToConnectException.SOCKET_TIMEOUT,
-            "The attempted connection to URL " + serverURL + " timed out after 5 s.");
+            "The attempted connection to URL " + serverURL + " timed out.\n"
+            + exST.getMessage());
+      }
+
+      catch (SessionExpiredException exSE)
+      {
+         transport.release(connection);
+         throw exSE;
+      }
+      
+      catch (PoolExhaustedException | UploadSourceException exLocal)
+      {
+         if (connection != null) transport.release(connection);
+         throw exLocal;
       }
 
       catch (IOException exIO)
       {
-         throw new IOException("Unexpected response\n" + responseMessage + "\n"
-                               + "from " + serverURL.toString() + ".\n"
-                               + exIO.getMessage());
+         if (connection != null) transport.release(connection);
+         throw new HttpStatusException(responseCode,
+                                       "Unexpected response\n" + responseMessage + "\n"
+                                       + "from " + serverURL.toString() + ".\n"
+                                       + exIO.getMessage(), exIO);
       }
 
       catch (IllegalStateException exIS)
@@ -655,10 +1193,11 @@ public class XNATServerConnection
          {
             responseCode    = connection.getResponseCode();
             responseMessage = connection.getResponseMessage();
-            bis             = new BufferedInputStream(connection.getInputStream());
+            bis             = transport.getResponseStream(connection);
          }
          catch (IOException exIO)
          {
+            transport.release(connection);
             throw new FailedToConnectException(FailedToConnectException.IO,
             "Couldn't open connection to " + serverURL.toString() + ". "
             + exIO.getMessage());
@@ -667,18 +1206,208 @@ public class XNATServerConnection
 
       catch (NullPointerException exNP)
       {
+         if (connection != null) transport.release(connection);
          throw new FailedToConnectException(FailedToConnectException.NULL_AUTH,
             "A null pointer was given as the authorization. This shouldn't happen!");
       }
+      
+      finally
+      {
+         RestMetrics.getDefault().record(RESTMethod, RESTCommand, System.nanoTime() - startNanos,
+                                         bytesSent, bis == null);
+      }
 
 
       logger.debug("HTTP request " + RESTURL.toString() + " returned with response "
               + responseMessage + " code " + responseCode);
 
-      return bis;
+      return RestMetrics.getDefault().countReceived(RESTMethod, RESTCommand, bis);
    }
 
 
+   /**
+    * Copy an upload to the connection in large blocks. The output stream is
+    * not flushed between blocks, so that the underlying socket sees writes
+    * of a useful size.
+    * @return the number of bytes sent
+    */
+   private long writeUpload(InputStream is, OutputStream os, long length,
+                            UploadProgressListener listener)
+           throws IOException
+   {
+      byte[] buff = new byte[UPLOAD_BLOCK_SIZE];
+      long   sent = 0;
+      int    bytesRead;
+      
+      while (-1 != (bytesRead = readUpload(is, buff)))
+      {
+         os.write(buff, 0, bytesRead);
+         sent += bytesRead;
+         if (listener != null) listener.bytesSent(sent, length);
+      }
+      
+      return sent;
+   }
+   
+   
+   private int readUpload(InputStream is, byte[] buff) throws UploadSourceException
+   {
+      try
+      {
+         return is.read(buff, 0, buff.length);
+      }
+      catch (IOException exIO)
+      {
+         throw new UploadSourceException("Couldn't read the data to upload.\n"
+                                         + exIO.getMessage(), exIO);
+      }
+   }
+   
+   
+   private void setAuthentication(HttpURLConnection connection, String session)
+   {
+      if (session == null)
+      {
+         connection.setRequestProperty("Authorization", getAuthorization());
+      }
+      else connection.setRequestProperty("Cookie", "JSESSIONID=" + session);
+   }
+   
+   
+   private static boolean isSessionCommand(String RESTCommand)
+   {
+      return RESTCommand.startsWith("/data/JSESSION")
+          || RESTCommand.startsWith("/REST/JSESSION");
+   }
+   
+   
+   /**
+    * Return the session with which to send a request, first establishing one
+    * if necessary, so that the credentials are checked by XNAT only once
+    * rather than on every request.
+    */
+   private String getSession(String RESTCommand)
+   {
+      if (isSessionCommand(RESTCommand)) return JSessionID;
+      
+      // After a failure, don't try again on every request.
+      if ((JSessionID == null) && (userid != null) && (password != null) &&
+          (System.currentTimeMillis() - sessionFailureTime > SESSION_RETRY_INTERVAL))
+         renewSession(null);
+      
+      // If no session could be created, fall back to Basic authentication.
+      return JSessionID;
+   }
+   
+   
+   /**
+    * Detect a request that failed because XNAT no longer recognises its
+    * session: either a 401 response, or a redirect to the login page, which
+    * HttpURLConnection will normally have followed already.
+    */
+   private void checkSession(HttpURLConnection connection, int responseCode,
+                             String session) throws SessionExpiredException
+   {
+      if (session == null) return;
+      
+      boolean expired = (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED);
+      if ((responseCode / 100) == 3)
+      {
+         String location = connection.getHeaderField("Location");
+         if ((location != null) && isLoginPage(location)) expired = true;
+      }
+      if (isLoginPage(connection.getURL().getPath())) expired = true;
+      
+      if (expired)
+         throw new SessionExpiredException("Session " + session + " has expired on "
+                                           + serverURL + " (response code " + responseCode + ")");
+   }
+   
+   
+   private static boolean isLoginPage(String path)
+   {
+      String lcPath = path.toLowerCase();
+      int    pos    = lcPath.indexOf('?');
+      if (pos != -1) lcPath = lcPath.substring(0, pos);
+      
+      return lcPath.endsWith("/login") || lcPath.endsWith("login.vm");
+   }
+   
+   
+   /**
+    * Replace an expired session with a new one. The profile is shared by all
+    * the workers using it, so several may find that the session has expired
+    * at the same time, but only the first of them authenticates again and
+    * the rest use its session.
+    * @param expiredSession the session that the server rejected, or null
+    * @return true if there is now a live session
+    */
+   protected boolean renewSession(String expiredSession)
+   {
+      synchronized (sessionLock)
+      {
+         String current = JSessionID;
+         if ((current != null) && !current.equals(expiredSession)) return true;
+         
+         JSessionID = null;
+         InputStream is = null;
+         try
+         {
+            is = executeRESTCommand("/data/JSESSION", "POST", null, null, null,
+                                    -1, null, null);
+            String session = readAsString(is).trim();
+            
+            // A failed login may produce an HTML page rather than an ID.
+            if (session.isEmpty() || session.contains("<"))
+               throw new IOException("Invalid JSESSION response from " + serverURL);
+            
+            JSessionID = session;
+            connected  = true;
+            logger.debug("New session established on " + serverURL);
+            return true;
+         }
+         catch (Exception ex)
+         {
+            logger.warn("Unable to establish a session on " + serverURL + ": "
+                        + ex.getMessage());
+            connected          = false;
+            sessionFailureTime = System.currentTimeMillis();
+            return false;
+         }
+         finally
+         {
+            try {if (is != null) is.close();} catch (IOException exIOignore) {}
+         }
+      }
+   }
+   
+   
+   private void renewSessionOrFail(String expiredSession, SessionExpiredException exSE)
+           throws FailedToConnectException
+   {
+      logger.info(exSE.getMessage() + ": authenticating again");
+      if (!renewSession(expiredSession)) throw authenticationFailure(exSE);
+   }
+   
+   
+   private FailedToConnectException authenticationFailure(SessionExpiredException exSE)
+   {
+      return new FailedToConnectException(FailedToConnectException.AUTH_FAILURE,
+                                          exSE.getMessage());
+   }
+   
+   
+   private static String readAsString(InputStream is) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      byte[]                buf  = new byte[1024];
+      int                   length;
+      while ((length = is.read(buf)) != -1) baos.write(buf, 0, length);
+      
+      return baos.toString("UTF-8");
+   }
+   
+   
    private String getAuthorization()
    {
       final StringBuilder sb = new StringBuilder(userid);
@@ -97,6 +97,7 @@ import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.Tag;
 import org.dcm4che2.io.DicomInputStream;
 import org.dcm4che2.io.DicomOutputStream;
+import org.dcm4che2.io.StopTagInputHandler;
 import org.w3c.dom.Document;
 import xnatDAO.XNATProfile;
 import xnatMetadataCreators.IcrAimImageAnnCollDataMdComplexType;
@@ -323,28 +324,24 @@ public class AimImageAnnotationCollectionDataUploader extends DataUploader
                   try
                   {
                      parent.mkdirs();
-                     BufferedOutputStream bos
-                        = new BufferedOutputStream(new FileOutputStream(cacheFile, true));
-
-                     BufferedInputStream  bis
-                        = new BufferedInputStream(xnprf.doRESTGet(URI.elementAt(i)));
-
-                     byte[] buf = new byte[8192];
-
-                     while (true)
+                     // Both streams must be closed even if the transfer fails,
+                     // otherwise the pooled connection is never returned.
+                     try (BufferedInputStream  bis
+                             = new BufferedInputStream(xnprf.doRESTGet(URI.elementAt(i)));
+                          BufferedOutputStream bos
+                             = new BufferedOutputStream(new FileOutputStream(cacheFile, true)))
                      {
-                        int length = bis.read(buf);
-                        if (length < 0) break;
-                        bos.write(buf, 0, length);
+                        byte[] buf = new byte[8192];
+
+                        while (true)
+                        {
+                           int length = bis.read(buf);
+                           if (length < 0) break;
+                           bos.write(buf, 0, length);
+                        }
                      }
 
                      logger.debug("Worker ID = " + this.toString() + " Downloaded " + cacheFile.toString());
-
-                     try{bis.close();}
-                     catch (IOException ignore) {;}
-
-                     try{bos.close();}
-                     catch (IOException ignore) {;}                                  
                   }
                   catch (Exception ex)
                   {
@@ -360,6 +357,10 @@ public class AimImageAnnotationCollectionDataUploader extends DataUploader
                {
                   bdo = new BasicDicomObject();
                   DicomInputStream dis = new DicomInputStream(cacheFile);
+                  
+                  // Only the header is needed to build the RT-STRUCT, so stop
+                  // before the pixel data rather than hold every image in memory.
+                  dis.setHandler(new StopTagInputHandler(Tag.PixelData));
                   dis.readDicomObject(bdo, -1);
                }
                catch(Exception ex)
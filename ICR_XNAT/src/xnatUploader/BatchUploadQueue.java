@@ -0,0 +1,393 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: BatchUploadQueue.java
+* First created on Oct 18, 2026 at 6:10 PM
+* 
+* Durable record of the files in a batch upload and of what has become
+* of each of them. Every change is appended to a journal file in the
+* queue directory, so that a batch interrupted by a crash or a restart
+* can resume where it left off without uploading anything twice.
+*********************************************************************/
+
+package xnatUploader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+public class BatchUploadQueue
+{
+   static  Logger logger = Logger.getLogger(BatchUploadQueue.class);
+   
+   public static final String JOURNAL_NAME = "batchUpload.journal";
+   
+   /**
+    * PENDING files have still to be uploaded. UPLOADING is recorded just
+    * before the upload of a file starts: if it is still the state when the
+    * queue is next opened, the upload was cut short and the file is marked
+    * as FAILED, because part of it may already be on the server. SKIPPED
+    * files are those that the uploader could not prepare, e.g., because
+    * they are not of the right type.
+    */
+   public enum State {PENDING, UPLOADING, DONE, FAILED, SKIPPED}
+   
+   private final File                journalFile;
+   private final Map<String, State>  stateMap   = new LinkedHashMap<>();
+   private final Map<String, String> messageMap = new HashMap<>();
+   private FileOutputStream          fos;
+   private Writer                    journal;
+   
+   
+   /**
+    * Open the queue held in a given directory, creating it if necessary.
+    * @param queueDir the directory in which the journal is kept
+    * @throws IOException if the journal cannot be read or written
+    */
+   public BatchUploadQueue(File queueDir) throws IOException
+   {
+      if (!queueDir.isDirectory() && !queueDir.mkdirs())
+         throw new IOException("Unable to create queue directory " + queueDir.getPath());
+      
+      journalFile = new File(queueDir, JOURNAL_NAME);
+      if (journalFile.exists()) readJournal();
+      
+      for (Map.Entry<String, State> e : stateMap.entrySet())
+      {
+         if (e.getValue() == State.UPLOADING)
+         {
+            e.setValue(State.FAILED);
+            messageMap.put(e.getKey(), "The upload was interrupted. Check the "
+                           + "server for partial data before retrying.");
+         }
+      }
+      
+      // Rewrite the journal with one line per file, so that it does not
+      // grow without limit over many restarts.
+      compactJournal();
+      fos     = new FileOutputStream(journalFile, true);
+      journal = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+   }
+   
+   
+   private void readJournal() throws IOException
+   {
+      try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                  new FileInputStream(journalFile), StandardCharsets.UTF_8)))
+      {
+         String line;
+         while ((line = br.readLine()) != null)
+         {
+            // A line truncated by a crash part way through a write is ignored.
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3) continue;
+            
+            State state;
+            try
+            {
+               state = State.valueOf(fields[0]);
+            }
+            catch (IllegalArgumentException exIA)
+            {
+               continue;
+            }
+            
+            String path = unescape(fields[1]);
+            stateMap.put(path, state);
+            if (fields[2].isEmpty()) messageMap.remove(path);
+            else messageMap.put(path, unescape(fields[2]));
+         }
+      }
+   }
+   
+   
+   private void compactJournal() throws IOException
+   {
+      File tmp = new File(journalFile.getPath() + ".tmp");
+      try (FileOutputStream tfos = new FileOutputStream(tmp))
+      {
+         Writer w = new BufferedWriter(new OutputStreamWriter(tfos, StandardCharsets.UTF_8));
+         for (Map.Entry<String, State> e : stateMap.entrySet())
+            writeEntry(w, e.getKey(), e.getValue(), messageMap.get(e.getKey()));
+         w.flush();
+         tfos.getFD().sync();
+      }
+      Files.move(tmp.toPath(), journalFile.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+   }
+   
+   
+   private static void writeEntry(Writer w, String path, State state, String message)
+           throws IOException
+   {
+      w.write(state.name());
+      w.write('\t');
+      w.write(escape(path));
+      w.write('\t');
+      if (message != null) w.write(escape(message));
+      w.write('\n');
+   }
+   
+   
+   /**
+    * Record a change of state, forcing it to disk if sync is true.
+    */
+   private void record(String path, State state, String message, boolean sync)
+           throws IOException
+   {
+      if (journal == null) throw new IOException("The batch upload queue has been closed.");
+      
+      stateMap.put(path, state);
+      if (message == null) messageMap.remove(path);
+      else messageMap.put(path, message);
+      
+      writeEntry(journal, path, state, message);
+      if (sync) sync();
+   }
+   
+   
+   private void sync() throws IOException
+   {
+      journal.flush();
+      fos.getFD().sync();
+   }
+   
+   
+   private static String escape(String s)
+   {
+      return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n")
+              .replace("\r", "\\r");
+   }
+   
+   
+   private static String unescape(String s)
+   {
+      StringBuilder sb = new StringBuilder(s.length());
+      for (int i=0; i<s.length(); i++)
+      {
+         char c = s.charAt(i);
+         if ((c == '\\') && (i+1 < s.length()))
+         {
+            char n = s.charAt(++i);
+            switch (n)
+            {
+               case 't': sb.append('\t'); break;
+               case 'n': sb.append('\n'); break;
+               case 'r': sb.append('\r'); break;
+               default:  sb.append(n);
+            }
+         }
+         else sb.append(c);
+      }
+      return sb.toString();
+   }
+   
+   
+   private static String key(File f)
+   {
+      return f.getAbsoluteFile().toPath().normalize().toString();
+   }
+   
+   
+   /**
+    * Add a file to the queue, unless it is already known to the queue in
+    * any state.
+    * @param f the file to upload
+    * @return true if the file was added
+    * @throws IOException if the journal cannot be written
+    */
+   public synchronized boolean add(File f) throws IOException
+   {
+      String path = key(f);
+      if (stateMap.containsKey(path)) return false;
+      
+      record(path, State.PENDING, null, true);
+      return true;
+   }
+   
+   
+   /**
+    * Add every regular file below a directory to the queue. Files already
+    * known to the queue are left in their current state, so the same
+    * directory may be added again when resuming a batch.
+    * @param root the top of the directory tree
+    * @return the number of files added
+    * @throws IOException if the tree cannot be read or the journal written
+    */
+   public synchronized int addDirectory(File root) throws IOException
+   {
+      final int[] nAdded = new int[1];
+      Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>()
+      {
+         @Override
+         public FileVisitResult visitFile(Path p, BasicFileAttributes attrs)
+                throws IOException
+         {
+            if (attrs.isRegularFile())
+            {
+               String path = key(p.toFile());
+               if (!stateMap.containsKey(path))
+               {
+                  record(path, State.PENDING, null, false);
+                  nAdded[0]++;
+               }
+            }
+            return FileVisitResult.CONTINUE;
+         }
+         
+         @Override
+         public FileVisitResult visitFileFailed(Path p, IOException exIO)
+         {
+            logger.warn("Unable to read " + p + ": " + exIO.getMessage());
+            return FileVisitResult.CONTINUE;
+         }
+      });
+      
+      // One sync for the whole tree: if this is lost, the files are simply
+      // found again when the directory is next added.
+      sync();
+      return nAdded[0];
+   }
+   
+   
+   /**
+    * Return all the FAILED files to the PENDING state.
+    * @return the number of files affected
+    * @throws IOException if the journal cannot be written
+    */
+   public synchronized int retryFailed() throws IOException
+   {
+      List<String> failed = new ArrayList<>();
+      for (Map.Entry<String, State> e : stateMap.entrySet())
+         if (e.getValue() == State.FAILED) failed.add(e.getKey());
+      
+      for (String path : failed) record(path, State.PENDING, null, false);
+      sync();
+      return failed.size();
+   }
+   
+   
+   /**
+    * @return the files still to be uploaded, in the order in which they
+    * were added
+    */
+   public synchronized List<File> getPending()
+   {
+      List<File> pending = new ArrayList<>();
+      for (Map.Entry<String, State> e : stateMap.entrySet())
+         if (e.getValue() == State.PENDING) pending.add(new File(e.getKey()));
+      
+      return pending;
+   }
+   
+   
+   public synchronized void markUploading(File f) throws IOException
+   {
+      record(key(f), State.UPLOADING, null, true);
+   }
+   
+   
+   public synchronized void markDone(File f) throws IOException
+   {
+      record(key(f), State.DONE, null, true);
+   }
+   
+   
+   public synchronized void markFailed(File f, String message) throws IOException
+   {
+      record(key(f), State.FAILED, message, true);
+   }
+   
+   
+   public synchronized void markSkipped(File f, String message) throws IOException
+   {
+      record(key(f), State.SKIPPED, message, true);
+   }
+   
+   
+   public synchronized State getState(File f)
+   {
+      return stateMap.get(key(f));
+   }
+   
+   
+   public synchronized String getMessage(File f)
+   {
+      return messageMap.get(key(f));
+   }
+   
+   
+   /**
+    * @return the number of files in each state
+    */
+   public synchronized Map<State, Integer> getCounts()
+   {
+      Map<State, Integer> counts = new LinkedHashMap<>();
+      for (State s : State.values()) counts.put(s, 0);
+      for (State s : stateMap.values()) counts.put(s, counts.get(s) + 1);
+      
+      return counts;
+   }
+   
+   
+   public synchronized void close() throws IOException
+   {
+      if (journal == null) return;
+      
+      sync();
+      journal.close();
+      journal = null;
+   }
+}
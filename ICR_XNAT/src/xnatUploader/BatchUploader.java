@@ -0,0 +1,542 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: BatchUploader.java
+* First created on Oct 18, 2026 at 6:40 PM
+* 
+* Headless engine for uploading large numbers of files to XNAT without
+* the XNATUploader GUI. The files are held in a BatchUploadQueue on disk
+* and pass through two pipeline stages, each with its own pool of
+* workers: preparation (reading, parsing and checking the dependencies
+* of the file) and upload. A bounded hand-off between the stages stops
+* preparation running far ahead of the upload.
+*********************************************************************/
+
+package xnatUploader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import xnatDAO.XNATGUI;
+import xnatDAO.XNATProfile;
+import xnatRestToolkit.XNATProfileList;
+
+public class BatchUploader
+{
+   static  Logger logger = Logger.getLogger(BatchUploader.class);
+   
+   public  static final int    DEFAULT_PREPARE_WORKERS = 2;
+   public  static final int    DEFAULT_UPLOAD_WORKERS  = 2;
+   
+   // Version recorded in the provenance of uploaded data.
+   public  static final String DEFAULT_VERSION = XNATGUI.VERSION;
+   
+   // Exit status of the command line tool.
+   public  static final int    EXIT_FAILED = 1;
+   public  static final int    EXIT_USAGE  = 2;
+   
+   private static volatile boolean isShuttingDown;
+   
+   // Types of data accepted on the command line, as offered by XNATUploader.
+   private static final Map<String, Class<? extends DataUploader>> uploaderTypeMap = new HashMap<>();
+   static
+   {
+      uploaderTypeMap.put("rtstruct", RtStructDataUploader.class);
+      uploaderTypeMap.put("aim",      AimImageAnnotationCollectionDataUploader.class);
+   }
+   
+   private final DataUploader     template;
+   private final BatchUploadQueue queue;
+   private int                    nPrepareWorkers = DEFAULT_PREPARE_WORKERS;
+   private int                    nUploadWorkers  = DEFAULT_UPLOAD_WORKERS;
+   private volatile boolean       isCancelled;
+   
+   
+   /**
+    * A file that has been prepared successfully, waiting for upload.
+    */
+   private static class PreparedUpload
+   {
+      static final PreparedUpload END = new PreparedUpload(null, null);
+      
+      final File         file;
+      final DataUploader uploader;
+      
+      PreparedUpload(File file, DataUploader uploader)
+      {
+         this.file     = file;
+         this.uploader = uploader;
+      }
+   }
+   
+   
+   /**
+    * Create a batch upload engine.
+    * @param template an uploader of the required type, configured with any
+    * settings (version, label template, batch note and editable fields) to
+    * be applied to every file. It is never used to upload anything itself.
+    * @param queue the queue of files to upload
+    */
+   public BatchUploader(DataUploader template, BatchUploadQueue queue)
+   {
+      this.template = template;
+      this.queue    = queue;
+   }
+   
+   
+   public void setPrepareWorkers(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one preparation worker is needed.");
+      nPrepareWorkers = n;
+   }
+   
+   
+   public void setUploadWorkers(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one upload worker is needed.");
+      nUploadWorkers = n;
+   }
+   
+   
+   /**
+    * Stop the batch as soon as the uploads in progress have finished. Files
+    * not yet uploaded remain PENDING in the queue for the next run.
+    */
+   public void cancel()
+   {
+      isCancelled = true;
+   }
+   
+   
+   /**
+    * Upload all the PENDING files in the queue, returning when every one has
+    * been dealt with or the batch has been cancelled. The outcome for each
+    * file is recorded in the queue as soon as it is known.
+    * @throws InterruptedException if the calling thread is interrupted, in
+    * which case the workers are stopped
+    */
+   public void run() throws InterruptedException
+   {
+      List<File> pending = queue.getPending();
+      logger.info("Batch upload starting: " + pending.size() + " files to process.");
+      if (pending.isEmpty()) return;
+      
+      final ConcurrentLinkedQueue<File>   toPrepare = new ConcurrentLinkedQueue<>(pending);
+      final BlockingQueue<PreparedUpload> toUpload  = new ArrayBlockingQueue<>(2*nUploadWorkers);
+      final AtomicInteger                 nFinished = new AtomicInteger();
+      final int                           nTotal    = pending.size();
+      
+      ExecutorService preparePool = createPool("BatchPrepare", nPrepareWorkers);
+      ExecutorService uploadPool  = createPool("BatchUpload",  nUploadWorkers);
+      try
+      {
+         for (int i=0; i<nPrepareWorkers; i++)
+         {
+            preparePool.execute(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  File f;
+                  while (!isCancelled && ((f = toPrepare.poll()) != null))
+                  {
+                     DataUploader uploader = prepare(f, nFinished, nTotal);
+                     if (uploader == null) continue;
+                     try
+                     {
+                        toUpload.put(new PreparedUpload(f, uploader));
+                     }
+                     catch (InterruptedException exIE)
+                     {
+                        return;
+                     }
+                  }
+               }
+            });
+         }
+         
+         for (int i=0; i<nUploadWorkers; i++)
+         {
+            uploadPool.execute(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     PreparedUpload pu;
+                     while ((pu = toUpload.take()) != PreparedUpload.END)
+                     {
+                        // After cancellation, keep draining the hand-off so
+                        // that no preparation worker is left blocked on it.
+                        if (!isCancelled) upload(pu, nFinished, nTotal);
+                     }
+                  }
+                  catch (InterruptedException exIE)
+                  {
+                     // Fall through and exit.
+                  }
+               }
+            });
+         }
+         
+         preparePool.shutdown();
+         while (!preparePool.awaitTermination(1, TimeUnit.MINUTES))
+            logger.info(summary());
+         
+         for (int i=0; i<nUploadWorkers; i++) toUpload.put(PreparedUpload.END);
+         uploadPool.shutdown();
+         while (!uploadPool.awaitTermination(1, TimeUnit.MINUTES))
+            logger.info(summary());
+      }
+      catch (InterruptedException exIE)
+      {
+         isCancelled = true;
+         preparePool.shutdownNow();
+         uploadPool.shutdownNow();
+         throw exIE;
+      }
+      
+      logger.info("Batch upload " + (isCancelled ? "cancelled. " : "finished. ") + summary());
+   }
+   
+   
+   private static ExecutorService createPool(final String name, int n)
+   {
+      return Executors.newFixedThreadPool(n, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+         
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            return new Thread(r, name + "-" + count.incrementAndGet());
+         }
+      });
+   }
+   
+   
+   /**
+    * Read, parse and check a single file using a fresh uploader.
+    * @return the prepared uploader, or null if the file cannot be uploaded
+    */
+   private DataUploader prepare(File f, AtomicInteger nFinished, int nTotal)
+   {
+      try
+      {
+         DataUploader uploader = template.getFreshCopyForBatchUpload();
+         uploader.setUploadFile(f);
+         uploader.prepareUpload();
+         
+         if (uploader.isPreparedForUpload() && uploader.rightMetadataPresent())
+            return uploader;
+         
+         String reason = uploader.isPreparedForUpload()
+                            ? "Required metadata are missing."
+                            : uploader.getErrorMessage();
+         queue.markSkipped(f, reason);
+         logger.info("[" + nFinished.incrementAndGet() + "/" + nTotal + "] Skipped "
+                     + f.getPath() + ": " + reason);
+      }
+      catch (InstantiationException   | IllegalAccessException |
+             IllegalArgumentException | InvocationTargetException ex)
+      {
+         // This is a programming error that affects every file alike.
+         logger.error("Unable to create uploader: " + ex.getMessage());
+         isCancelled = true;
+      }
+      catch (IOException exIO)
+      {
+         journalFailure(exIO);
+      }
+      catch (RuntimeException exRT)
+      {
+         recordFailure(f, exRT, nFinished, nTotal);
+      }
+      return null;
+   }
+   
+   
+   /**
+    * Upload a single prepared file, recording the outcome in the queue.
+    */
+   private void upload(PreparedUpload pu, AtomicInteger nFinished, int nTotal)
+   {
+      try
+      {
+         queue.markUploading(pu.file);
+      }
+      catch (IOException exIO)
+      {
+         // Without a record of the upload starting, an interruption could
+         // lead to the file being uploaded twice.
+         journalFailure(exIO);
+         return;
+      }
+      
+      try
+      {
+         pu.uploader.uploadMetadataAndCascade();
+         pu.uploader.uploadResourcesToRepository();
+      }
+      catch (Exception ex)
+      {
+         recordFailure(pu.file, ex, nFinished, nTotal);
+         return;
+      }
+      
+      try
+      {
+         queue.markDone(pu.file);
+         logger.info("[" + nFinished.incrementAndGet() + "/" + nTotal + "] Uploaded "
+                     + pu.file.getPath());
+      }
+      catch (IOException exIO)
+      {
+         journalFailure(exIO);
+      }
+   }
+   
+   
+   private void recordFailure(File f, Exception ex, AtomicInteger nFinished, int nTotal)
+   {
+      logger.warn("[" + nFinished.incrementAndGet() + "/" + nTotal + "] FAILED to upload "
+                  + f.getPath() + ": " + ex.getMessage());
+      try
+      {
+         queue.markFailed(f, String.valueOf(ex.getMessage()));
+      }
+      catch (IOException exIO)
+      {
+         journalFailure(exIO);
+      }
+   }
+   
+   
+   /**
+    * If the outcome of an upload cannot be recorded, a resumed batch would
+    * not know about it, so there is no point in carrying on.
+    */
+   private void journalFailure(IOException exIO)
+   {
+      logger.error("Unable to write the batch upload journal: " + exIO.getMessage());
+      isCancelled = true;
+   }
+   
+   
+   private String summary()
+   {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<BatchUploadQueue.State, Integer> e : queue.getCounts().entrySet())
+      {
+         if (sb.length() != 0) sb.append(", ");
+         sb.append(e.getKey().name().toLowerCase()).append(": ").append(e.getValue());
+      }
+      return sb.toString();
+   }
+   
+   
+   /**
+    * Run a batch upload from the command line.
+    * Usage: BatchUploader -type rtstruct|aim -queue queueDir [-dir dataDir]
+    *                      [-profile name] [-prepare n] [-upload n]
+    *                      [-label template] [-note text] [-version text] [-retry]
+    * The XNAT profile must be one of those saved by the GUI, with its
+    * credentials, and must refer to a single project. If no profile is
+    * named, the preferred profile is used. Files below dataDir are added
+    * to the queue; running the same command again after an interruption
+    * uploads only the files not yet dealt with. With -retry, files that
+    * previously failed are attempted again. The exit status is EXIT_FAILED
+    * if any file in the queue ends up FAILED or the batch cannot be run,
+    * and EXIT_USAGE if the arguments are invalid.
+    * @param args the command line arguments
+    */
+   public static void main(String args[])
+   {
+      int status = runFromCommandLine(args);
+      
+      // Once the JVM has begun to shut down, System.exit would block forever.
+      if ((status != 0) && !isShuttingDown) System.exit(status);
+   }
+   
+   
+   private static int runFromCommandLine(String args[])
+   {
+      Map<String, String> opts = new HashMap<>();
+      for (int i=0; i<args.length; i++)
+      {
+         if (args[i].equals("-retry")) opts.put("retry", "true");
+         else if (args[i].startsWith("-") && (i+1 < args.length))
+            opts.put(args[i].substring(1), args[++i]);
+         else return usage("Unexpected argument " + args[i]);
+      }
+      
+      Class<? extends DataUploader> type = uploaderTypeMap.get(opts.get("type"));
+      if (type == null)               return usage("A valid -type must be given.");
+      if (!opts.containsKey("queue")) return usage("A -queue directory must be given.");
+      
+      XNATProfile xnprf = findProfile(opts.get("profile"));
+      if (xnprf == null) return usage("No suitable XNAT profile found.");
+      
+      xnprf.connect();
+      if (!xnprf.isConnected())
+      {
+         logger.error("Unable to connect to " + xnprf.getServerURL() + ": "
+                      + xnprf.getMostRecentErrorMessage());
+         return EXIT_FAILED;
+      }
+      
+      BatchUploadQueue queue    = null;
+      Thread           shutdown = null;
+      try
+      {
+         DataUploader template = type.getDeclaredConstructor(XNATProfile.class).newInstance(xnprf);
+         template.setVersion(opts.containsKey("version") ? opts.get("version") : DEFAULT_VERSION);
+         template.setBatchModeEnabled(true);
+         if (opts.containsKey("label")) template.setLabelTemplate(opts.get("label"));
+         if (opts.containsKey("note"))  template.setBatchNote(opts.get("note"));
+         
+         queue = new BatchUploadQueue(new File(opts.get("queue")));
+         if (opts.containsKey("retry"))
+            logger.info(queue.retryFailed() + " failed files queued for retry.");
+         if (opts.containsKey("dir"))
+            logger.info(queue.addDirectory(new File(opts.get("dir"))) + " new files queued.");
+         
+         final BatchUploader bu     = new BatchUploader(template, queue);
+         final Thread        runner = Thread.currentThread();
+         try
+         {
+            if (opts.containsKey("prepare")) bu.setPrepareWorkers(Integer.parseInt(opts.get("prepare")));
+            if (opts.containsKey("upload"))  bu.setUploadWorkers(Integer.parseInt(opts.get("upload")));
+         }
+         catch (IllegalArgumentException exIA)
+         {
+            // Includes NumberFormatException.
+            return usage("Invalid number of workers: " + exIA.getMessage());
+         }
+         
+         // On a normal shutdown of the JVM, let the uploads in progress finish
+         // so that they are recorded as done rather than interrupted.
+         shutdown = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               bu.cancel();
+               try
+               {
+                  runner.join();
+               }
+               catch (InterruptedException exIE) {} // ignore
+            }
+         };
+         Runtime.getRuntime().addShutdownHook(shutdown);
+         
+         bu.run();
+         
+         Integer nFailed = queue.getCounts().get(BatchUploadQueue.State.FAILED);
+         return ((nFailed == null) || (nFailed == 0)) ? 0 : EXIT_FAILED;
+      }
+      catch (IOException | ReflectiveOperationException | InterruptedException ex)
+      {
+         logger.error("Batch upload stopped: " + ex.getMessage());
+         return EXIT_FAILED;
+      }
+      finally
+      {
+         // The hook waits for this thread, so it must not be run by the
+         // System.exit in main.
+         if (shutdown != null)
+         {
+            try
+            {
+               Runtime.getRuntime().removeShutdownHook(shutdown);
+            }
+            catch (IllegalStateException exIS)
+            {
+               isShuttingDown = true;
+            }
+         }
+         
+         if (queue != null)
+         {
+            try
+            {
+               queue.close();
+            }
+            catch (IOException exIO)
+            {
+               logger.error("Unable to close the batch upload journal: " + exIO.getMessage());
+            }
+         }
+      }
+   }
+   
+   
+   private static XNATProfile findProfile(String name)
+   {
+      XNATProfileList profileList = new XNATProfileList(false, true);
+      if (name == null) return profileList.getCurrentProfile();
+      
+      for (XNATProfile xnprf : profileList)
+         if (xnprf.getProfileName().equals(name)) return xnprf;
+      
+      return null;
+   }
+   
+   
+   private static int usage(String message)
+   {
+      System.err.println(message);
+      System.err.println("Usage: BatchUploader -type rtstruct|aim -queue queueDir [-dir dataDir]\n"
+                       + "                     [-profile name] [-prepare n] [-upload n]\n"
+                       + "                     [-label template] [-note text] [-version text]\n"
+                       + "                     [-retry]");
+      return EXIT_USAGE;
+   }
+}
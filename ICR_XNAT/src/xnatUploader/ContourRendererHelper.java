@@ -55,7 +55,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImagingOpException;
-import java.io.BufferedInputStream;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 import java.util.HashMap;
@@ -65,21 +64,23 @@ import org.dcm4che2.data.Tag;
 import org.dcm4che2.io.DicomInputStream;
 import org.dcm4che2.iod.module.composite.ImagePixel;
 import exceptions.XNATException;
+import fileDownloads.CacheManager;
 import generalUtilities.Vector2D;
 import java.awt.BasicStroke;
 import java.awt.geom.GeneralPath;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 import org.dcm4che2.data.DicomObject;
 import xnatDAO.XNATProfile;
+import xnatRestToolkit.RangedInputStream;
 import xnatRestToolkit.XNATRESTToolkit;
+import xnatRestToolkit.XNATResultSet;
 
 public class ContourRendererHelper
 {
@@ -210,9 +211,9 @@ public class ContourRendererHelper
 		
 		filenameCacheFileMap = new HashMap<>();
 		
-		String homeDir   = System.getProperty("user.home");
-      String fileSep   = System.getProperty("file.separator");
-		String cacheDir  = homeDir + fileSep + ".XNAT_DAO";
+		String       homeDir  = System.getProperty("user.home");
+      String       fileSep  = System.getProperty("file.separator");
+		CacheManager cache    = CacheManager.getInstance(homeDir + fileSep + ".XNAT_DAO");
 
 		// Notice that we need to cater explicitly for the allowed possibility
 		// that a single structure set can reference base data from more than
@@ -225,11 +226,14 @@ public class ContourRendererHelper
 					  + "/resources/DICOM"
 					  + "/files"
 					  + "?format=xml";
-			Vector2D  resultSet;
+			Vector2D<String> resultSet;
+			Map<String, CacheManager.CatalogEntry> catalogEntries;
 			try
 			{
 				XNATRESTToolkit xnrt = new XNATRESTToolkit(xnatProfile);
-				resultSet = xnrt.RESTGetResultSet(RESTCommand);
+				XNATResultSet   xnrs = xnrt.getResultSet(RESTCommand);
+				resultSet      = xnrs.toVector2D();
+				catalogEntries = CacheManager.getCatalogEntries(xnrs);
 			}
 			catch(XNATException exXNAT)
 			{
@@ -242,57 +246,38 @@ public class ContourRendererHelper
 				String name = URI.elementAt(i).substring(pos+1);
 				if (filenameSet.contains(name))
 				{
-					// Build the local cache filename where the data will be stored.
-					// The directory structure is a bit long-winded, but should be
-					// easy to manage.
-					StringBuilder sb = new StringBuilder(cacheDir);
-					sb.append(URI.elementAt(i));
-					File cacheFile = new File(sb.toString());
-					File parent    = new File(cacheFile.getParent());
-
-					boolean success = true;
-					if (!(cacheFile.exists()))
+					// Only files recorded in the cache index are trusted, so that
+					// a partial file left by a failed download is retrieved again.
+					File cacheFile = cache.lookup(URI.elementAt(i));
+					if (cacheFile == null)
 					{
 						// Retrieve the actual data and store it in the cache.
 						try
 						{
-							parent.mkdirs();
-							BufferedOutputStream bos
-									  = new BufferedOutputStream(new FileOutputStream(cacheFile, true));
-							
-							BufferedInputStream  bis
-									  = new BufferedInputStream(xnatProfile.doRESTGet(URI.elementAt(i)));
-							
-							byte[] buf = new byte[8192];
-
-							while (true)
+							final String fileURI = URI.elementAt(i);
+							cacheFile = cache.retrieve(fileURI, new CacheManager.Source()
 							{
-								int length = bis.read(buf);
-								if (length < 0) break;
-								bos.write(buf, 0, length);
-							}
+								@Override
+								public RangedInputStream open(long offset) throws Exception
+								{
+									return xnatProfile.doRESTGetRange(fileURI, offset);
+								}
+							}, catalogEntries.get(fileURI));
 
 							logger.debug("Worker ID = " + this.toString() + " Downloaded " + cacheFile.toString());
-
-							try{bis.close();}
-							catch (IOException ignore) {;}
-
-							try{bos.close();}
-							catch (IOException ignore) {;}
-							
 						}
 						catch (Exception ex)
 						{
-							logger.warn("Failed to download " + cacheFile.getName());
+							logger.warn("Failed to download " + URI.elementAt(i) + ": " + ex.getMessage());
 							nDownloadFailures++;
-							success = false;
 						}
 					}
 					
-					if (success) filenameCacheFileMap.put(name, cacheFile);
+					if (cacheFile != null) filenameCacheFileMap.put(name, cacheFile);
 				}				
 			}
 		}
+		cache.flush();
 		if (nDownloadFailures != 0)
 		{
 			throw new XNATException(XNATException.DATA_NOT_PRESENT,
@@ -649,4 +634,28 @@ public class ContourRendererHelper
 		xnatScanIdSet = ss;
 	}
 	
+	
+	/**
+	 * Supply base images that have already been retrieved, e.g., by another
+	 * helper, in place of calling retrieveBaseImagesToCache. The map is
+	 * only read, so it may be shared between helpers on different threads.
+	 * @param m a Map from base image filename to the file in the cache
+	 */
+	public void setFilenameCacheFileMap(Map<String, File> m)
+	{
+		filenameCacheFileMap = m;
+	}
+	
+	
+	/**
+	 * @return a read-only Map from base image filename to the file in the
+	 * cache, containing the images retrieved so far, or null if none has
+	 * been requested
+	 */
+	public Map<String, File> getFilenameCacheFileMap()
+	{
+		return (filenameCacheFileMap == null) ? null
+		          : Collections.unmodifiableMap(filenameCacheFileMap);
+	}
+	
 }
@@ -77,10 +77,21 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import xnatMetadataCreators.CatCatalogMdComplexType;
+import xnatRestToolkit.UploadProgressListener;
 import xnatRestToolkit.XnatResource;
 import static xnatUploader.NextMatchingFileWorker.logger;
 
@@ -89,6 +100,9 @@ public abstract class DataUploader
 {
 	static  Logger                          logger = Logger.getLogger(DataUploader.class);
 	
+   public  static final int                DEFAULT_CONCURRENT_UPLOADS = 4;
+   private static volatile int             maxConcurrentUploads = DEFAULT_CONCURRENT_UPLOADS;
+	
 	protected XnatResource					    primaryResource;
 	protected ArrayList<XnatResource>       auxiliaryResources;
 	protected XMLUtilities                  XMLUtil;
@@ -129,6 +143,7 @@ public abstract class DataUploader
    protected String                        batchNote;
    protected boolean                       isBatchMode;
    protected String                        version;
+   protected UploadProgressListener        progressListener;
 
 
    public DataUploader(XNATProfile xnprf)
@@ -290,6 +305,7 @@ public abstract class DataUploader
          int         n  = is.available();
          byte[]      b  = new byte[n];
          is.read(b, 0, n);
+         is.close();
          String XNATUploadMessage = new String(b);
          
          if ((xnrt.XNATRespondsWithError(XNATUploadMessage)) ||
@@ -318,24 +334,8 @@ public abstract class DataUploader
    {
       try
       {
-			String rootCmd = getUploadRootCommand(XNATAccessionID);
-			String cmd     = xr.getResourceDataUploadCommand(rootCmd);
-			
-         InputStream is = null;
-			if (xr.getFile()     != null) is = xnprf.doRESTPut(cmd, xr.getFile());
-			if (xr.getDocument() != null) is = xnprf.doRESTPut(cmd, xr.getDocument());
-			if (xr.getStream()   != null) is = xnprf.doRESTPut(cmd, xr.getStream());
-			
-			assert (is != null);
-         int         n  = is.available( );
-         byte[]      b  = new byte[n];
-         is.read(b, 0, n);
-         String XNATUploadMessage = new String(b);
-         
-         if (xnrt.XNATRespondsWithError(XNATUploadMessage))
-            throw new XNATException(XNATException.FILE_UPLOAD,
-                                    "XNAT generated the message:\n"
-                                    + XNATUploadMessage);         
+         putXnatResource(xr, getUploadRootCommand(XNATAccessionID),
+                         new ResourceSetProgress(Collections.singletonList(xr)));
       }
       catch (Exception ex)
       {
@@ -352,6 +352,100 @@ public abstract class DataUploader
    }
    
    
+   /**
+    * Upload the data of a single resource, without touching the error
+    * variables, so that this may be called from several threads at once.
+    */
+   private void putXnatResource(XnatResource xr, String rootCmd,
+                                ResourceSetProgress progress) throws Exception
+   {
+      String cmd = xr.getResourceDataUploadCommand(rootCmd);
+
+      // Files and streams are sent to the server as they are read,
+      // rather than being held in memory for the whole upload.
+      UploadProgressListener upl = getResourceProgressListener(xr, progress);
+      InputStream is = null;
+      if (xr.getFile()     != null) is = xnprf.doRESTPut(cmd, xr.getFile(), upl);
+      if (xr.getDocument() != null) is = xnprf.doRESTPut(cmd, xr.getDocument());
+      if (xr.getStream()   != null) is = xnprf.doRESTPut(cmd, xr.getStream(), -1, upl);
+
+      assert (is != null);
+      int         n  = is.available( );
+      byte[]      b  = new byte[n];
+      is.read(b, 0, n);
+      is.close();
+      String XNATUploadMessage = new String(b);
+
+      if (xnrt.XNATRespondsWithError(XNATUploadMessage))
+         throw new XNATException(XNATException.FILE_UPLOAD,
+                                 "XNAT generated the message:\n"
+                                 + XNATUploadMessage);         
+   }
+   
+   
+   /**
+    * Bytes sent so far for a set of resources uploaded together, possibly
+    * on several threads, so that the listener registered with
+    * setUploadProgressListener sees one figure for the whole set. Only
+    * files count, since the length of a stream is not known in advance.
+    */
+   protected static class ResourceSetProgress
+   {
+      final AtomicLong sent = new AtomicLong();
+      final long       total;
+      
+      ResourceSetProgress(List<XnatResource> xrList)
+      {
+         long t = 0;
+         for (XnatResource xr : xrList)
+            if (xr.getFile() != null) t += xr.getFile().length();
+         total = t;
+      }
+   }
+   
+   
+   /**
+    * Return a listener that logs the progress of a resource upload and
+    * adds it to the progress of the set of resources being uploaded, which
+    * is passed on to any listener registered with setUploadProgressListener.
+    * @param xr the resource being uploaded
+    * @param progress the progress of the whole set of resources
+    * @return the listener to pass to the REST call
+    */
+   protected UploadProgressListener getResourceProgressListener(final XnatResource xr,
+                                                     final ResourceSetProgress progress)
+   {
+      final UploadProgressListener upl = progressListener;
+      return new UploadProgressListener()
+      {
+         private long nextReport = 0;
+         private long lastSent   = 0;
+         
+         @Override
+         public void bytesSent(long bytesSent, long totalBytes)
+         {
+            // The count restarts from zero if the request is repeated, in
+            // which case the set's total goes back by the same amount.
+            if (xr.getFile() != null)
+            {
+               long setSent = progress.sent.addAndGet(bytesSent - lastSent);
+               lastSent = bytesSent;
+               if (upl != null) upl.bytesSent(setSent, progress.total);
+            }
+            
+            // Log roughly every 10 MB rather than for every block.
+            if (bytesSent >= nextReport)
+            {
+               logger.debug("Resource " + xr.getName() + ": " + bytesSent
+                       + ((totalBytes < 0) ? "" : (" of " + totalBytes))
+                       + " bytes sent");
+               nextReport = bytesSent + 10*1024*1024;
+            }
+         }
+      };
+   }
+   
+   
   	/**
 	 * Create the XNAT resources corresponding to the types of data being
 	 * uploaded. This call will create a resource for the primary data file
@@ -377,18 +471,7 @@ public abstract class DataUploader
 				
 				try
 				{
-					String rootCmd = getUploadRootCommand(XNATAccessionID);
-					String cmd     = xr.getResourceCreationCommand(rootCmd);
-               InputStream is = xnprf.doRESTPut(cmd);
-               int    n = is.available();
-					byte[] b = new byte[n];
-					is.read(b, 0, n);
-					String XNATUploadMessage = new String(b);
-
-					if (xnrt.XNATRespondsWithError(XNATUploadMessage))
-						throw new XNATException(XNATException.RESOURCE_CREATE,
-														"XNAT generated the message:\n"
-														+ XNATUploadMessage);         
+					createXnatResource(xr, getUploadRootCommand(XNATAccessionID));
 				}
 				catch (Exception ex)
 				{
@@ -406,11 +489,37 @@ public abstract class DataUploader
 		}
    }
    
+   
+   /**
+    * Create the resource folder on the server for a single resource,
+    * without touching the error variables.
+    */
+   private void createXnatResource(XnatResource xr, String rootCmd) throws Exception
+   {
+      String cmd     = xr.getResourceCreationCommand(rootCmd);
+      InputStream is = xnprf.doRESTPut(cmd);
+      int    n = is.available();
+      byte[] b = new byte[n];
+      is.read(b, 0, n);
+      is.close();
+      String XNATUploadMessage = new String(b);
+
+      if (xnrt.XNATRespondsWithError(XNATUploadMessage))
+         throw new XNATException(XNATException.RESOURCE_CREATE,
+                                 "XNAT generated the message:\n"
+                                 + XNATUploadMessage);
+   }
+   
 
 
    
 	/**
     * This is the method called by the upload worker thread.
+    * The primary and auxiliary resources are independent of one another,
+    * so they are uploaded concurrently, with at most getMaxConcurrentUploads()
+    * transfers in progress. Each resource folder is created before any data
+    * are sent to it. A failure does not stop the remaining uploads: all the
+    * failures are reported together in a single exception at the end.
     * @throws XNATException 
     */
    public void uploadResourcesToRepository() throws XNATException
@@ -420,22 +529,165 @@ public abstract class DataUploader
          createPrimaryResource();
       }
 		createAuxiliaryResources();
-		createXnatResources();
-
-
-		if (primaryResource != null)
-		{
-			uploadXnatResource(primaryResource);
-			if (errorOccurred)
-				throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
-		}
-
-		for (XnatResource ar : auxiliaryResources)
+      
+		List<XnatResource> xrList = new ArrayList<>();
+		if (primaryResource != null) xrList.add(primaryResource);
+		xrList.addAll(auxiliaryResources);
+      
+      List<String> failures = uploadXnatResourcesConcurrently(xrList);
+      if (!failures.isEmpty())
       {
-			uploadXnatResource(ar);
-			if (errorOccurred)
-				throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
-		}  
+         StringBuilder sb = new StringBuilder();
+         sb.append(failures.size()).append(" of ").append(xrList.size())
+           .append(" resources could not be uploaded:");
+         for (String f : failures) sb.append("\n").append(f);
+         
+         errorOccurred = true;
+         errorMessage  = sb.toString();
+         throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
+      }
+   }
+   
+   
+   /**
+    * Upload a list of resources on a bounded pool of threads. The resource
+    * folders are created first, one request for each distinct name, and
+    * the data for each resource are sent as soon as its folder exists.
+    * @param xrList the resources to upload
+    * @return a description of each failure, empty if all succeeded
+    * @throws XNATException if the calling thread is interrupted
+    */
+   protected List<String> uploadXnatResourcesConcurrently(List<XnatResource> xrList)
+             throws XNATException
+   {
+      final String       rootCmd  = getUploadRootCommand(XNATAccessionID);
+      final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+      if (xrList.isEmpty()) return failures;
+      
+      final ResourceSetProgress progress = new ResourceSetProgress(xrList);
+      
+      int nThreads = Math.min(getMaxConcurrentUploads(), xrList.size());
+      ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+         
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "ResourceUpload-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      
+      // The creation tasks are all queued ahead of the data tasks, so a data
+      // task waiting for its folder can never hold up the folder's creation.
+      Map<String, Future<Boolean>> created = new HashMap<>();
+      List<Future<?>> futures = new ArrayList<>();
+      try
+      {
+         for (final XnatResource xr : xrList)
+         {
+            if (created.containsKey(xr.getName())) continue;
+            
+            Future<Boolean> f = executor.submit(new Callable<Boolean>()
+            {
+               @Override
+               public Boolean call()
+               {
+                  try
+                  {
+                     createXnatResource(xr, rootCmd);
+                     return true;
+                  }
+                  catch (Exception ex)
+                  {
+                     failures.add("Resource " + xr.getName() + ": "
+                                  + "unable to create resource: " + ex.getMessage());
+                     return false;
+                  }
+               }
+            });
+            created.put(xr.getName(), f);
+            futures.add(f);
+         }
+         
+         for (final XnatResource xr : xrList)
+         {
+            final Future<Boolean> folder = created.get(xr.getName());
+            futures.add(executor.submit(new Callable<Void>()
+            {
+               @Override
+               public Void call() throws InterruptedException
+               {
+                  String desc = "Resource " + xr.getName()
+                                + (xr.getFile() == null ? "" : (", file " + xr.getFile().getName()));
+                  try
+                  {
+                     if (!folder.get())
+                     {
+                        failures.add(desc + ": not uploaded because its resource could not be created");
+                        return null;
+                     }
+                     putXnatResource(xr, rootCmd, progress);
+                  }
+                  catch (InterruptedException exIE)
+                  {
+                     throw exIE;
+                  }
+                  catch (Exception ex)
+                  {
+                     failures.add(desc + ": " + ex.getMessage());
+                  }
+                  return null;
+               }
+            }));
+         }
+         
+         for (Future<?> f : futures)
+         {
+            try
+            {
+               f.get();
+            }
+            catch (ExecutionException exEE)
+            {
+               failures.add("Unexpected error: " + exEE.getCause());
+            }
+         }
+      }
+      catch (InterruptedException exIE)
+      {
+         for (Future<?> f : futures) f.cancel(true);
+         Thread.currentThread().interrupt();
+         errorOccurred = true;
+         errorMessage  = "Upload of resources was interrupted.";
+         throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+      
+      return failures;
+   }
+   
+   
+   /**
+    * Set the maximum number of resources that an uploader sends to the
+    * server simultaneously.
+    * @param n the maximum number of concurrent uploads
+    */
+   public static void setMaxConcurrentUploads(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one upload must be allowed.");
+      maxConcurrentUploads = n;
+   }
+   
+   
+   public static int getMaxConcurrentUploads()
+   {
+      return maxConcurrentUploads;
    }
 	
 	
@@ -779,6 +1031,9 @@ public abstract class DataUploader
       freshUploader = (DataUploader) con.newInstance(xnprf);              
       freshUploader.copyVariablesForEditableFields(this);
       freshUploader.setBatchModeEnabled(true);
+      freshUploader.version       = version;
+      freshUploader.labelTemplate = labelTemplate;
+      freshUploader.batchNote     = batchNote;
       
       return freshUploader;
    }
@@ -1016,6 +1271,20 @@ public abstract class DataUploader
    
    
    
+   /**
+    * Register a listener to be told of the bytes sent while resource files
+    * are uploaded by uploadResourcesToRepository. The listener is called
+    * afresh, starting from zero, for each resource. Resources are uploaded
+    * concurrently, so it may be called from several threads at once.
+    * @param listener the listener, or null to remove it
+    */
+   public void setUploadProgressListener(UploadProgressListener listener)
+   {
+      progressListener = listener;
+   }
+   
+   
+   
    /**
     * Method used only by the GUI to communicate with the uploader. This should
     * not need to be called by users.
@@ -349,6 +349,7 @@ public class MRIWDataUploader extends QCAssessmentDataUploader
          int         n  = is.available();
          byte[]      b  = new byte[n];
          is.read(b, 0, n);
+         is.close();
          String XNATUploadMessage = new String(b);
          
          if ((xnrt.XNATRespondsWithError(XNATUploadMessage)) ||
@@ -120,6 +120,7 @@ class RegionFromRtStructDataUploader extends DataUploader implements ContourRend
    private Map<String, String>  filenameSopMap;
 	private Map<String, String>  filenameScanMap;
    private String               originalDataType;
+   private Map<String, File>    baseImageCacheFileMap;
    
 	
 	RegionFromRtStructDataUploader(XNATProfile xnprf)
@@ -446,7 +447,14 @@ class RegionFromRtStructDataUploader extends DataUploader implements ContourRend
       try
       {
          crh = createContourRendererHelper();
-         crh.retrieveBaseImagesToCache();
+         
+         // Use the base images fetched once by the parent uploader if they
+         // cover this ROI, rather than every ROI listing and checking them.
+         if ((baseImageCacheFileMap != null) &&
+             baseImageCacheFileMap.keySet().containsAll(filenameSet))
+            crh.setFilenameCacheFileMap(baseImageCacheFileMap);
+         else
+            crh.retrieveBaseImagesToCache();
       }
       catch (DataFormatException | XNATException ex)
       {
@@ -614,6 +622,17 @@ class RegionFromRtStructDataUploader extends DataUploader implements ContourRend
    }
    
    
+   /**
+    * Supply the base images already retrieved for the whole structure set.
+    * The map is shared with other ROI uploaders and must not be modified.
+    * @param m a Map from base image filename to the file in the cache
+    */
+   void setBaseImageCacheFileMap(Map<String, File> m)
+   {
+      baseImageCacheFileMap = m;
+   }
+   
+   
    void setLabelParent(String s)
    {
       labelParent = s;
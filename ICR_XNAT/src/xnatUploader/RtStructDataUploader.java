@@ -71,6 +71,7 @@ import exceptions.XNATException;
 import generalUtilities.DicomXnatDateTime;
 import generalUtilities.UidGenerator;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -80,15 +81,25 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.dcm4che2.data.BasicDicomObject;
 import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
 import org.dcm4che2.io.DicomInputStream;
+import org.dcm4che2.io.StopTagInputHandler;
 import org.w3c.dom.Document;
 import xmlUtilities.XMLUtilities;
 import xnatDAO.XNATProfile;
@@ -112,6 +123,46 @@ class RtStructDataUploader extends DataUploader
 	private int                 nRois;
    private String              originalDataType;
    private String              labelParent;
+   private boolean             isParallelCascade  = true;
+   private int                 maxConcurrentRois  = DEFAULT_CONCURRENT_ROIS;
+   private List<RoiUploadStatus> roiStatusList    = new ArrayList<>();
+   
+   // Each ROI sends up to DataUploader.getMaxConcurrentUploads() resources
+   // at once, so the number of simultaneous requests is the product of the
+   // two limits. The upload is bound by the server, not by local processors.
+   public static final int DEFAULT_CONCURRENT_ROIS = 2;
+   
+   
+   /**
+    * Progress of the upload of a single ROI during the cascade. The state
+    * and message are updated by the thread performing the upload and may
+    * be read from any other thread.
+    */
+   public static class RoiUploadStatus
+   {
+      public enum State {PENDING, RUNNING, SUCCEEDED, FAILED}
+      
+      public final    int    roiPosition;
+      public final    String roiName;
+      public final    String accessionId;
+      public volatile State  state   = State.PENDING;
+      public volatile String message = "";
+      
+      RoiUploadStatus(int roiPosition, String roiName, String accessionId)
+      {
+         this.roiPosition = roiPosition;
+         this.roiName     = roiName;
+         this.accessionId = accessionId;
+      }
+      
+      @Override
+      public String toString()
+      {
+         return "ROI " + roiPosition + " (" + roiName + ", " + accessionId + "): "
+                + state + (message.isEmpty() ? "" : (" - " + message));
+      }
+   }
+   
 	
 	RtStructDataUploader(XNATProfile xnprf)
 	{
@@ -135,6 +186,10 @@ class RtStructDataUploader extends DataUploader
          BufferedInputStream bis
             = new BufferedInputStream(new FileInputStream(uploadFile));
          DicomInputStream dis = new DicomInputStream(bis);
+         
+         // The structure set never needs pixel data, so don't read any that a
+         // non-conformant file might carry.
+         dis.setHandler(new StopTagInputHandler(Tag.PixelData));
          dis.readDicomObject(bdo, -1);
       }
       catch (IOException exIO)
@@ -269,35 +324,24 @@ class RtStructDataUploader extends DataUploader
       // Step 2: Upload the icr:regionData metadata and data files for
       //         each ROI referred to by the structure set.
       // -------------------------------------------------------------    
+      
+      roiStatusList = new ArrayList<>();
+      for (int i=0; i<nRois; i++)
+         roiStatusList.add(new RoiUploadStatus(i,
+                    rts.structureSet.structureSetRoiList.get(i).roiName,
+                    assignedRegionIdList.get(i)));
+      
+      if (isParallelCascade && (nRois > 1))
+      {
+         uploadRoisConcurrently();
+         return;
+      }
       	
-      for (int i=0; i<rts.structureSet.structureSetRoiList.size(); i++)
+      for (int i=0; i<nRois; i++)
       {
-         RegionFromRtStructDataUploader ru = new RegionFromRtStructDataUploader(xnprf);
          try
          {
-            ru.setVersion(version);
-            ru.setOriginalDataType(originalDataType);
-            ru.setAccessionId(assignedRegionIdList.get(i));
-				ru.setParentAccessionId(XNATAccessionID);
-            ru.setRoiPositionInSSRoiSequence(i);
-            ru.setSubjectId(XNATSubjectID);
-				ru.setSubjectLabel(XNATSubjectLabel);
-            ru.setExperimentId(XNATExperimentID);
-				ru.setExperimentLabel(XNATExperimentLabel);
-				ru.setParentProvenance(prov);
-				ru.setParentRtStruct(rts);
-            ru.setUploadFileParent(uploadFile);
-            ru.setParentLabel(label);
-            ru.setParentNRois(nRois);
-            ru.setSopFilenameMap(sopFilenameMap);
-            ru.setFilenameSopMap(filenameSopMap);
-            ru.setFilenameScanMap(filenameScanMap);
-            ru.setDate(date);
-            ru.setTime(time);
-            ru.setNote(note);
-                    
-				ru.uploadMetadataAndCascade();
-            ru.uploadResourcesToRepository();
+            uploadRoi(i, null);
          }
          catch (Exception ex)
          {
@@ -308,6 +352,210 @@ class RtStructDataUploader extends DataUploader
          }
       }
    }
+   
+   
+   /**
+    * Upload the metadata and resources for a single ROI, recording its
+    * progress in the corresponding RoiUploadStatus.
+    * @param i the position of the ROI in the structure set ROI sequence
+    * @param baseImages the base images already retrieved for all ROIs,
+    * or null if each ROI should retrieve its own
+    * @throws Exception if the upload fails
+    */
+   private void uploadRoi(int i, Map<String, File> baseImages) throws Exception
+   {
+      RoiUploadStatus status = roiStatusList.get(i);
+      status.state = RoiUploadStatus.State.RUNNING;
+      
+      RegionFromRtStructDataUploader ru = new RegionFromRtStructDataUploader(xnprf);
+      try
+      {
+         ru.setVersion(version);
+         ru.setOriginalDataType(originalDataType);
+         ru.setAccessionId(assignedRegionIdList.get(i));
+         ru.setParentAccessionId(XNATAccessionID);
+         ru.setRoiPositionInSSRoiSequence(i);
+         ru.setSubjectId(XNATSubjectID);
+         ru.setSubjectLabel(XNATSubjectLabel);
+         ru.setExperimentId(XNATExperimentID);
+         ru.setExperimentLabel(XNATExperimentLabel);
+         ru.setParentProvenance(prov);
+         ru.setParentRtStruct(rts);
+         ru.setUploadFileParent(uploadFile);
+         ru.setParentLabel(label);
+         ru.setParentNRois(nRois);
+         ru.setSopFilenameMap(sopFilenameMap);
+         ru.setFilenameSopMap(filenameSopMap);
+         ru.setFilenameScanMap(filenameScanMap);
+         ru.setBaseImageCacheFileMap(baseImages);
+         ru.setDate(date);
+         ru.setTime(time);
+         ru.setNote(note);
+
+         ru.uploadMetadataAndCascade();
+         ru.uploadResourcesToRepository();
+         
+         status.state = RoiUploadStatus.State.SUCCEEDED;
+      }
+      catch (Exception ex)
+      {
+         status.message = ex.getMessage();
+         status.state   = RoiUploadStatus.State.FAILED;
+         throw ex;
+      }
+   }
+   
+   
+   /**
+    * Upload all the ROIs on a pool of threads. The parsed RT-STRUCT and the
+    * lookup maps are only read by the ROI uploaders, and the base images
+    * for the thumbnails are retrieved once, here, and then shared. Every
+    * ROI is attempted, and the failures are reported together at the end.
+    * @throws XNATException if any ROI fails to upload
+    */
+   private void uploadRoisConcurrently() throws XNATException
+   {
+      final Map<String, File> baseImages = retrieveSharedBaseImages();
+      
+      int nThreads = Math.min(maxConcurrentRois, nRois);
+      ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+         
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "RoiUpload-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      
+      List<Future<Void>> futures = new ArrayList<>(nRois);
+      try
+      {
+         for (int i=0; i<nRois; i++)
+         {
+            final int roi = i;
+            futures.add(executor.submit(new Callable<Void>()
+            {
+               @Override
+               public Void call() throws Exception
+               {
+                  uploadRoi(roi, baseImages);
+                  return null;
+               }
+            }));
+         }
+         
+         for (Future<Void> f : futures)
+         {
+            try
+            {
+               f.get();
+            }
+            catch (ExecutionException exEE)
+            {
+               // Already recorded in the ROI's status.
+            }
+         }
+      }
+      catch (InterruptedException exIE)
+      {
+         for (Future<Void> f : futures) f.cancel(true);
+         Thread.currentThread().interrupt();
+         errorOccurred = true;
+         errorMessage  = "Upload of ROI data to XNAT was interrupted.";
+         throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+      
+      StringBuilder sb = new StringBuilder();
+      int nFailed = 0;
+      for (RoiUploadStatus status : roiStatusList)
+      {
+         logger.info(status.toString());
+         if (status.state == RoiUploadStatus.State.FAILED)
+         {
+            nFailed++;
+            sb.append("\n").append(status.toString());
+         }
+      }
+      
+      if (nFailed != 0)
+      {
+         errorOccurred = true;
+         errorMessage  = "Problem uploading ROI data to XNAT.\n"
+                         + nFailed + " of " + nRois + " ROIs failed:" + sb.toString();
+         throw new XNATException(XNATException.FILE_UPLOAD, errorMessage);
+      }
+   }
+   
+   
+   /**
+    * Retrieve to the cache, in one pass, the base images referenced by any
+    * of the ROIs, so that the ROI uploaders do not each list and check the
+    * same scans.
+    * @return a read-only Map from base image filename to cached file, which
+    * may be incomplete if some images could not be retrieved, or null
+    */
+   private Map<String, File> retrieveSharedBaseImages()
+   {
+      ContourRendererHelper crh = new ContourRendererHelper();
+      crh.setFilenameSet(new HashSet<>(sopFilenameMap.values()));
+      crh.setXnatScanIdSet(XNATScanIdSet);
+      crh.setXnatExperimentId(XNATExperimentID);
+      crh.setXnatProfile(xnprf);
+      try
+      {
+         crh.retrieveBaseImagesToCache();
+      }
+      catch (XNATException exXNAT)
+      {
+         // Any ROI whose images are missing from the map retrieves them
+         // itself and reports the failure in its own status.
+         logger.warn("Unable to retrieve all base images for thumbnails: "
+                     + exXNAT.getMessage());
+      }
+      return crh.getFilenameCacheFileMap();
+   }
+   
+   
+   /**
+    * Choose whether the ROIs of the structure set are uploaded concurrently
+    * (the default) or one after another, stopping at the first failure.
+    * @param b true for concurrent upload
+    */
+   public void setParallelCascadeEnabled(boolean b)
+   {
+      isParallelCascade = b;
+   }
+   
+   
+   /**
+    * Set the maximum number of ROIs uploaded at once during a concurrent
+    * cascade. Each of them may itself have several resource uploads in
+    * flight.
+    * @param n the number of ROIs, at least 1
+    */
+   public void setMaxConcurrentRois(int n)
+   {
+      if (n < 1) throw new IllegalArgumentException("At least one ROI must be uploaded at a time.");
+      maxConcurrentRois = n;
+   }
+   
+   
+   /**
+    * @return the status of each ROI in the most recent cascade, in the order
+    * of the structure set ROI sequence
+    */
+   public List<RoiUploadStatus> getRoiUploadStatusList()
+   {
+      return Collections.unmodifiableList(roiStatusList);
+   }
 	
 	
 	
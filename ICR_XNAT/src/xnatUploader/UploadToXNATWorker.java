@@ -44,6 +44,7 @@
 
 package xnatUploader;
 import javax.swing.SwingWorker;
+import xnatRestToolkit.UploadProgressListener;
 
 public class UploadToXNATWorker extends SwingWorker<Void, Void>
 {
@@ -62,6 +63,16 @@ public class UploadToXNATWorker extends SwingWorker<Void, Void>
       // are placed in the SQL tables of the PostgreSQL database, by uploading
       // a metadata XML document using REST. Then the data file itself is
       // uploaded, together with any auxiliary files.
+      uploader.setUploadProgressListener(new UploadProgressListener()
+      {
+         @Override
+         public void bytesSent(long bytesSent, long totalBytes)
+         {
+            if (totalBytes > 0)
+               setProgress((int) Math.min(100, (100*bytesSent)/totalBytes));
+         }
+      });
+      
       uploader.uploadMetadataAndCascade();
       uploader.uploadResourcesToRepository();
       
@@ -737,9 +737,9 @@ public final class XNATUploader extends XNATGUI
     */
    private void processNextMatchingFile(PropertyChangeEvent evt)
    {
-      // Ignore this call if the property change in question is that from "PENDING"
-      // to "STARTED".
-      if (evt.getOldValue().equals(SwingWorker.StateValue.PENDING)) return;
+      // Ignore everything but the worker's completion, e.g., the change from
+      // "PENDING" to "STARTED".
+      if (!isWorkerDone(evt)) return;
 
       try
       {
@@ -834,9 +834,9 @@ public final class XNATUploader extends XNATGUI
     */
    private void processNextMatchingFileDuringBatchUpload(PropertyChangeEvent evt)
    {
-      // Ignore this call if the property change in question is that from "PENDING"
-      // to "STARTED".
-      if (evt.getOldValue().equals(SwingWorker.StateValue.PENDING)) return;
+      // Ignore everything but the worker's completion, e.g., the change from
+      // "PENDING" to "STARTED".
+      if (!isWorkerDone(evt)) return;
 
       searchProgress = null;
       
@@ -943,9 +943,9 @@ public final class XNATUploader extends XNATGUI
     */
    private void continueUploadPreparation(PropertyChangeEvent evt)
    {
-      // Ignore this call if the property change in question is that from "PENDING"
-      // to "STARTED".
-      if (evt.getOldValue().equals(SwingWorker.StateValue.PENDING)) return;
+      // Ignore everything but the worker's completion, e.g., the change from
+      // "PENDING" to "STARTED".
+      if (!isWorkerDone(evt)) return;
 
       // The PrepareUploadWorker doesn't actually need to return anything,
       // because all it is doing is using methods of uploader and the latter
@@ -1070,11 +1070,40 @@ public final class XNATUploader extends XNATGUI
    
    
    
+   /**
+    * SwingWorkers send their listeners "progress" events as well as changes
+    * of state, so only a change of state to DONE means that they have finished.
+    */
+   private static boolean isWorkerDone(PropertyChangeEvent evt)
+   {
+      return "state".equals(evt.getPropertyName())
+             && (evt.getNewValue() == SwingWorker.StateValue.DONE);
+   }
+   
+   
+   private void showUploadProgress(int percent)
+   {
+      // A progress event may arrive after the uploader has been reset.
+      if (uploader.getUploadFile() == null) return;
+      
+      dataFilenameJLabel.setText(
+         getAbbreviatedString(uploader.getUploadFile().getName(), 30)
+         + "  " + UPLOADING + " " + percent + "%");
+   }
+   
+   
+   
    private void processSingleFileUpload(PropertyChangeEvent evt)
    {
-      // Ignore this call if the property change in question is that from "PENDING"
-      // to "STARTED".
-      if (evt.getOldValue().equals(SwingWorker.StateValue.PENDING)) return;
+      if ("progress".equals(evt.getPropertyName()))
+      {
+         showUploadProgress((Integer) evt.getNewValue());
+         return;
+      }
+      
+      // Ignore everything but the worker's completion, e.g., the change from
+      // "PENDING" to "STARTED".
+      if (!isWorkerDone(evt)) return;
       
       // The uploader is designed to be called in one of two ways, either via
       // instantiation by an external client (e.g., IDL or MATLAB) or via
@@ -1155,9 +1184,15 @@ public final class XNATUploader extends XNATGUI
    
    private void processBatchUpload(PropertyChangeEvent evt)
    {
-      // Ignore this call if the property change in question is that from "PENDING"
-      // to "STARTED".
-      if (evt.getOldValue().equals(SwingWorker.StateValue.PENDING)) return;
+      if ("progress".equals(evt.getPropertyName()))
+      {
+         showUploadProgress((Integer) evt.getNewValue());
+         return;
+      }
+      
+      // Ignore everything but the worker's completion, e.g., the change from
+      // "PENDING" to "STARTED".
+      if (!isWorkerDone(evt)) return;
       
       uploadJButton.setText(UPLOAD);
       if (uploader.errorOccurred())
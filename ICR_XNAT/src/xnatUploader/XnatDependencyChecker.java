@@ -49,6 +49,7 @@ import generalUtilities.Vector2D;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.w3c.dom.Document;
@@ -227,48 +228,27 @@ public class XnatDependencyChecker
    {      
       XNATScanIdSet = new LinkedHashSet<>(); 
       
-		String               restCommand;
-		Vector2D<String>     result;
-		XNATRESTToolkit      xnrt   = new XNATRESTToolkit(xnprf);
-		XNATNamespaceContext xnatNs = new XNATNamespaceContext();
-		String[][]           parseResult;
+      // The contents of the session are shared by all the files that refer
+      // to it, so they are fetched from XNAT only once.
+      XnatDependencyIndex index = XnatDependencyIndex.getInstance(xnprf,
+                                     XNATProject, XNATSubjectID, XNATExperimentID);
 		
-		try
-      {
-         restCommand = "/data/archive/projects/" + XNATProject
-                       + "/subjects/"            + XNATSubjectID
-                       + "/experiments/"         + XNATExperimentID
-                       + "?format=xml";
-         Document resultDoc   = xnrt.RESTGetDoc(restCommand);
-         parseResult = XMLUtilities.getAttributes(resultDoc, xnatNs, "xnat:scan",
-                                             new String[] {"ID", "UID"});
-      }
-      catch (XMLException | XNATException ex)
-      {
-         errorMessage = "Problem retrieving experiment list for subject " + XNATSubjectID
-					          + ": " + ex.getMessage();
-			return;
-      }
-      
       // Now process all the seriesUIDs found when parsing the input DICOM file. 
       for (String seriesUid : seriesUidSet)
       {
-         boolean present = false;
-         for (int j=0; j<parseResult.length; j++)
+         List<String> scanIds;
+         try
          {
-            // Not all of the returned values correspond to scans. Some might be
-            // assessors, with no SOPInstanceUID. These need to be screened out.
-            if (parseResult[j][1] != null)
-            {
-               if (parseResult[j][1].equals(seriesUid))
-               {
-                  present = true;
-                  XNATScanIdSet.add(parseResult[j][0]);
-               }
-            }
+            scanIds = index.getScanIds(seriesUid);
+         }
+         catch (XMLException | XNATException ex)
+         {
+            errorMessage = "Problem retrieving experiment list for subject " + XNATSubjectID
+                           + ": " + ex.getMessage();
+            return;
          }
       
-         if (!present)
+         if (scanIds.isEmpty())
 			{
 				errorMessage = "The DICOM series with UID " + seriesUid + "\n"
                            + " is referenced by the file you are loading,"
@@ -277,6 +257,7 @@ public class XnatDependencyChecker
                            + "structure set is dependent are already loaded into XNAT.";
 				return;
 			}
+         XNATScanIdSet.addAll(scanIds);
       }
       
       // We need a list of the actual data files in the repository
@@ -287,54 +268,66 @@ public class XnatDependencyChecker
       // or remote.       
       for (String scanId : XNATScanIdSet)
       {
-         try
-         {
-            restCommand = "/data/archive/projects/"    + XNATProject
-                             + "/subjects/"            + XNATSubjectID
-                             + "/experiments/"         + XNATExperimentID
-                             + "/scans/"               + scanId
-                             + "/resources/DICOM?format=xml";
-            Document resultDoc   = xnrt.RESTGetDoc(restCommand);
-            parseResult = XMLUtilities.getAttributes(resultDoc, xnatNs, "cat:entry",
-                                                     new String[] {"URI", "UID"});
-         }
-         catch(XNATException | XMLException ex)
+         if (!addScanEntries(index, scanId, false)) return;
+      }
+      
+      // The catalogues may have been fetched before some of the images
+      // referred to were uploaded, in which case they are fetched again.
+      if (!sopFilenameMap.keySet().containsAll(sopInstanceUidSet))
+      {
+         for (String scanId : XNATScanIdSet)
          {
-            errorMessage = "Problem finding correct image data files in the repository for subject "
-				                  + XNATSubjectID + ": " + ex.getMessage();
-				return;
+            if (!addScanEntries(index, scanId, true)) return;
          }
-         
-         // Cater for the obscure case where parseResult comes back null. This
-         // happened to me after I had (manually) screwed up the data repository.
-         if (parseResult == null)
+      }
+   }
+   
+   
+   private boolean addScanEntries(XnatDependencyIndex index, String scanId, boolean reload)
+   {
+      List<XnatDependencyIndex.Entry> entries;
+      try
+      {
+         entries = reload ? index.reloadEntries(scanId) : index.getEntries(scanId);
+      }
+      catch(XNATException | XMLException ex)
+      {
+         errorMessage = "Problem finding correct image data files in the repository for subject "
+			                  + XNATSubjectID + ": " + ex.getMessage();
+			return false;
+      }
+      
+      // Cater for the obscure case where no entries come back. This
+      // happened to me after I had (manually) screwed up the data repository.
+      if (entries == null)
+		{
+			errorMessage = "There are no relevant DICOM image files. This might be an \n"
+                     + " inconsistent condition in the repository. Please contact \n"
+                     + " the system administrator.";
+			return false;
+		}
+
+      for (XnatDependencyIndex.Entry e : entries)
+      {
+         if (sopInstanceUidSet.contains(e.sopInstanceUid))
 			{
-				errorMessage = "There are no relevant DICOM image files. This might be an \n"
-                        + " inconsistent condition in the repository. Please contact \n"
-                        + " the system administrator.";
-				return;
+				// Since there is a one-to-one relationship between SOPInstanceUIDs
+				// and filenames, it is useful to be able to use either filename
+				// or SOPInstanceUID as a key to access the other. Note: This is
+				// only true because we have already specified both the project and
+				// subject. In general, there is nothing to stop the same SOPInstanceUID
+				// appearing in two different projects, or conceivably for two
+				// different subjects within the same project - the latter being
+				// possible if someone is perverse enough to upload the file twice
+				// manually choosing different subject names, rather than letting
+				// XNAT's automatic mechanism route the files to the correct place.
+            filenameSopMap.put(e.filename, e.sopInstanceUid);
+				sopFilenameMap.put(e.sopInstanceUid, e.filename);
 			}
-
-         for (int j=0; j<parseResult.length; j++)
-         {
-            if (sopInstanceUidSet.contains(parseResult[j][1]))
-				{
-					// Since there is a one-to-one relationship between SOPInstanceUIDs
-					// and filenames, it is useful to be able to use either filename
-					// or SOPInstanceUID as a key to access the other. Note: This is
-					// only true because we have already specified both the project and
-					// subject. In general, there is nothing to stop the same SOPInstanceUID
-					// appearing in two different projects, or conceivably for two
-					// different subjects within the same project - the latter being
-					// possible if someone is perverse enough to upload the file twice
-					// manually choosing different subject names, rather than letting
-					// XNAT's automatic mechanism route the files to the correct place.
-               filenameSopMap.put(parseResult[j][0], parseResult[j][1]);
-					sopFilenameMap.put(parseResult[j][1], parseResult[j][0]);
-				}
-            filenameScanMap.put(parseResult[j][0], scanId);
-         }
-      }   
+         filenameScanMap.put(e.filename, scanId);
+      }
+      
+      return true;
    }
 	
 	public String getSubjectId()
@@ -0,0 +1,350 @@
+/********************************************************************
+* Copyright (c) 2016, Institute of Cancer Research
+* All rights reserved.
+* 
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+* 
+* (1) Redistributions of source code must retain the above copyright
+*     notice, this list of conditions and the following disclaimer.
+* 
+* (2) Redistributions in binary form must reproduce the above
+*     copyright notice, this list of conditions and the following
+*     disclaimer in the documentation and/or other materials provided
+*     with the distribution.
+* 
+* (3) Neither the name of the Institute of Cancer Research nor the
+*     names of its contributors may be used to endorse or promote
+*     products derived from this software without specific prior
+*     written permission.
+* 
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+* FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+* COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+* INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+* (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+* SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+* HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+* STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+* ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+* OF THE POSSIBILITY OF SUCH DAMAGE.
+*********************************************************************/
+
+/*********************************************************************
+* Java class: XnatDependencyIndex.java
+* First created on Oct 18, 2026 at 7:30 PM
+* 
+* Index of the DICOM data held in a single XNAT imaging session, mapping
+* series UIDs to scan IDs and SOPInstanceUIDs to the files containing
+* them. An index is built once per session and shared between all the
+* uploaders that refer to that session, e.g., during a batch upload, so
+* that the experiment document and the scan catalogues are fetched only
+* once rather than for every file uploaded. Indexes are discarded when
+* this application writes to the session and after MAX_AGE in any case,
+* since other clients may change the session too.
+*********************************************************************/
+
+package xnatUploader;
+
+import exceptions.XMLException;
+import exceptions.XNATException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import xmlUtilities.XMLUtilities;
+import xnatDAO.XNATProfile;
+import xnatRestToolkit.XNATNamespaceContext;
+import xnatRestToolkit.XNATRESTToolkit;
+import xnatRestToolkit.XNATServerConnection;
+
+public class XnatDependencyIndex
+{
+   static  Logger logger = Logger.getLogger(XnatDependencyIndex.class);
+   
+   // Number of sessions for which indexes are retained.
+   public  static final int  MAX_INDEXES = 64;
+   
+   // Time in ms after which an index is rebuilt, even if no change to the
+   // session has been seen.
+   public  static final long MAX_AGE     = 5*60*1000;
+   
+   // Minimum time in ms between fetches of the same session document or scan
+   // catalogue prompted by data missing from it, so that a batch of files
+   // referring to data that are absent does not fetch it for every file.
+   public  static final long MIN_RELOAD_INTERVAL = 10*1000;
+   
+   private static final Map<String, XnatDependencyIndex> indexMap =
+      new LinkedHashMap<String, XnatDependencyIndex>(16, 0.75f, true)
+      {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, XnatDependencyIndex> eldest)
+         {
+            return size() > MAX_INDEXES;
+         }
+      };
+   
+   static
+   {
+      XNATServerConnection.addWriteListener(new XNATServerConnection.WriteListener()
+      {
+         @Override
+         public void dataWritten(URL serverURL, String RESTCommand)
+         {
+            invalidate(serverURL, RESTCommand);
+         }
+      });
+   }
+   
+   
+   /**
+    * Location in the repository of a single DICOM file.
+    */
+   public static class Entry
+   {
+      public final String filename;
+      public final String sopInstanceUid;
+      public final String scanId;
+      public final String experimentId;
+      
+      Entry(String filename, String sopInstanceUid, String scanId, String experimentId)
+      {
+         this.filename       = filename;
+         this.sopInstanceUid = sopInstanceUid;
+         this.scanId         = scanId;
+         this.experimentId   = experimentId;
+      }
+   }
+   
+   private final XNATProfile               xnprf;
+   private final String                    project;
+   private final String                    subjectId;
+   private final String                    experimentId;
+   private final long                      created      = System.currentTimeMillis();
+   private Map<String, List<String>>       seriesScanMap;
+   private long                            scansLoaded;
+   private final Map<String, List<Entry>>  scanEntryMap = new HashMap<>();
+   private final Map<String, Long>         catalogLoadedMap = new HashMap<>();
+   
+   
+   private XnatDependencyIndex(XNATProfile xnprf, String project,
+                               String subjectId, String experimentId)
+   {
+      this.xnprf        = xnprf;
+      this.project      = project;
+      this.subjectId    = subjectId;
+      this.experimentId = experimentId;
+   }
+   
+   
+   /**
+    * Return the index for a given session, creating an empty one if
+    * necessary. Its contents are fetched from XNAT only when needed.
+    * @param xnprf the profile through which XNAT is accessed
+    * @param project the XNAT project ID
+    * @param subjectId the XNAT subject ID
+    * @param experimentId the XNAT experiment ID of the imaging session
+    * @return the index
+    */
+   public static synchronized XnatDependencyIndex getInstance(XNATProfile xnprf,
+                                 String project, String subjectId, String experimentId)
+   {
+      String key = xnprf.getServerURL() + " " + xnprf.getUserid() + " "
+                   + project + " " + subjectId + " " + experimentId;
+      
+      XnatDependencyIndex index = indexMap.get(key);
+      if ((index == null) || (System.currentTimeMillis() - index.created > MAX_AGE))
+      {
+         index = new XnatDependencyIndex(xnprf, project, subjectId, experimentId);
+         indexMap.put(key, index);
+      }
+      return index;
+   }
+   
+   
+   /**
+    * Discard all indexes, so that the next request fetches fresh data.
+    */
+   public static synchronized void clear()
+   {
+      indexMap.clear();
+   }
+   
+   
+   /**
+    * Discard the indexes that a request modifying data on a server may have
+    * made out of date. A request addressed to a single experiment affects
+    * only the index for that session, and none at all if it concerns the
+    * session's assessors, which are not indexed. Any other request, e.g.,
+    * to the import service, may have added scans to any session.
+    * @param serverURL the server to which the request was sent
+    * @param RESTCommand the REST URI of the request
+    */
+   public static synchronized void invalidate(URL serverURL, String RESTCommand)
+   {
+      String path = RESTCommand;
+      int    pos  = path.indexOf('?');
+      if (pos != -1) path = path.substring(0, pos);
+      
+      String experimentId = null;
+      pos = path.indexOf("/experiments/");
+      if (pos != -1)
+      {
+         String rest  = path.substring(pos + "/experiments/".length());
+         int    slash = rest.indexOf('/');
+         if ((slash != -1) && rest.startsWith("/assessors", slash)) return;
+         experimentId = (slash == -1) ? rest : rest.substring(0, slash);
+      }
+      
+      String server = serverURL.toString();
+      Iterator<XnatDependencyIndex> it = indexMap.values().iterator();
+      while (it.hasNext())
+      {
+         XnatDependencyIndex index = it.next();
+         if (!index.xnprf.getServerURL().toString().equals(server)) continue;
+         if ((experimentId == null) || experimentId.equals(index.experimentId))
+         {
+            it.remove();
+            logger.debug("Discarded index of session " + index.experimentId
+                         + " after " + RESTCommand);
+         }
+      }
+   }
+   
+   
+   private String getSessionCommand()
+   {
+      return "/data/archive/projects/" + project
+             + "/subjects/"            + subjectId
+             + "/experiments/"         + experimentId;
+   }
+   
+   
+   /**
+    * Return the IDs of the scans in the session with a given series UID.
+    * If there are none, the session is fetched again in case the series
+    * has been uploaded since the index was built, unless it was fetched
+    * less than MIN_RELOAD_INTERVAL ago.
+    * @param seriesUid the DICOM SeriesInstanceUID
+    * @return a list of scan IDs, empty if the series is not present
+    * @throws XNATException if the session cannot be retrieved
+    * @throws XMLException if the session document cannot be parsed
+    */
+   public synchronized List<String> getScanIds(String seriesUid)
+          throws XNATException, XMLException
+   {
+      if (seriesScanMap == null) loadScans();
+      
+      List<String> scanIds = seriesScanMap.get(seriesUid);
+      if ((scanIds == null) && (System.currentTimeMillis() - scansLoaded > MIN_RELOAD_INTERVAL))
+      {
+         loadScans();
+         scanIds = seriesScanMap.get(seriesUid);
+      }
+      return (scanIds == null) ? Collections.<String>emptyList()
+                               : Collections.unmodifiableList(new ArrayList<>(scanIds));
+   }
+   
+   
+   private void loadScans() throws XNATException, XMLException
+   {
+      XNATRESTToolkit xnrt      = new XNATRESTToolkit(xnprf);
+      Document        resultDoc = xnrt.RESTGetDoc(getSessionCommand() + "?format=xml");
+      String[][]      parseResult = XMLUtilities.getAttributes(resultDoc,
+                                       new XNATNamespaceContext(), "xnat:scan",
+                                       new String[] {"ID", "UID"});
+      
+      Map<String, List<String>> m = new HashMap<>();
+      if (parseResult != null)
+      {
+         for (String[] scan : parseResult)
+         {
+            // Not all of the returned values correspond to scans. Some might be
+            // assessors, with no SOPInstanceUID. These need to be screened out.
+            if (scan[1] == null) continue;
+            
+            List<String> scanIds = m.get(scan[1]);
+            if (scanIds == null)
+            {
+               scanIds = new ArrayList<>();
+               m.put(scan[1], scanIds);
+            }
+            scanIds.add(scan[0]);
+         }
+      }
+      seriesScanMap = m;
+      scansLoaded   = System.currentTimeMillis();
+      logger.debug("Indexed " + m.size() + " series in session " + experimentId);
+   }
+   
+   
+   /**
+    * Return the DICOM files of a scan, fetching its catalogue on first use.
+    * @param scanId the XNAT scan ID
+    * @return the files, or null if the repository contains no DICOM
+    * catalogue entries for the scan
+    * @throws XNATException if the catalogue cannot be retrieved
+    * @throws XMLException if the catalogue cannot be parsed
+    */
+   public synchronized List<Entry> getEntries(String scanId)
+          throws XNATException, XMLException
+   {
+      if (!scanEntryMap.containsKey(scanId)) loadCatalog(scanId);
+      return scanEntryMap.get(scanId);
+   }
+   
+   
+   /**
+    * Fetch the catalogue of a scan again, e.g., because files have been
+    * added to the scan since the index was built. A catalogue fetched less
+    * than MIN_RELOAD_INTERVAL ago is not fetched again.
+    * @param scanId the XNAT scan ID
+    * @return the files, or null if the repository contains no DICOM
+    * catalogue entries for the scan
+    * @throws XNATException if the catalogue cannot be retrieved
+    * @throws XMLException if the catalogue cannot be parsed
+    */
+   public synchronized List<Entry> reloadEntries(String scanId)
+          throws XNATException, XMLException
+   {
+      Long loaded = catalogLoadedMap.get(scanId);
+      if ((loaded == null) || (System.currentTimeMillis() - loaded > MIN_RELOAD_INTERVAL))
+      {
+         scanEntryMap.remove(scanId);
+         loadCatalog(scanId);
+      }
+      return scanEntryMap.get(scanId);
+   }
+   
+   
+   private void loadCatalog(String scanId) throws XNATException, XMLException
+   {
+      XNATRESTToolkit xnrt      = new XNATRESTToolkit(xnprf);
+      Document        resultDoc = xnrt.RESTGetDoc(getSessionCommand()
+                                     + "/scans/" + scanId
+                                     + "/resources/DICOM?format=xml");
+      String[][]      parseResult = XMLUtilities.getAttributes(resultDoc,
+                                       new XNATNamespaceContext(), "cat:entry",
+                                       new String[] {"URI", "UID"});
+      catalogLoadedMap.put(scanId, System.currentTimeMillis());
+      
+      // A scan with no entries is not remembered, so that it is fetched again
+      // if it is requested later.
+      if (parseResult == null) return;
+      
+      List<Entry> entries = new ArrayList<>(parseResult.length);
+      for (String[] catEntry : parseResult)
+         entries.add(new Entry(catEntry[0], catEntry[1], scanId, experimentId));
+      
+      scanEntryMap.put(scanId, Collections.unmodifiableList(entries));
+   }
+}